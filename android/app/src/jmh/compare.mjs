@@ -0,0 +1,38 @@
+// Compares two JMH JSON result files: node compare.mjs baseline.json current.json
+import { readFileSync } from 'node:fs';
+
+const [baselinePath, currentPath] = process.argv.slice(2);
+if (!baselinePath || !currentPath) {
+  console.error('usage: node compare.mjs <baseline.json> <current.json>');
+  process.exit(1);
+}
+
+const load = (path) => {
+  const results = new Map();
+  for (const run of JSON.parse(readFileSync(path, 'utf8'))) {
+    const name = run.benchmark.replace(/^.*\.(\w+\.\w+)$/, '$1');
+    const params = Object.entries(run.params ?? {}).map(([key, value]) => `${key}=${value}`).join(' ');
+    results.set(`${name} ${params}`.trim(), run.primaryMetric);
+  }
+  return results;
+};
+
+const baseline = load(baselinePath);
+const current = load(currentPath);
+const rows = [];
+for (const [key, metric] of current) {
+  const before = baseline.get(key);
+  if (!before) continue;
+  const change = ((metric.score - before.score) / before.score) * 100;
+  rows.push([
+    key,
+    `${before.score.toFixed(3)} ${before.scoreUnit}`,
+    `${metric.score.toFixed(3)} ${metric.scoreUnit}`,
+    `${change >= 0 ? '+' : ''}${change.toFixed(1)}%`,
+  ]);
+}
+
+const widths = [0, 1, 2, 3].map((i) => Math.max(...rows.map((row) => row[i].length), 0));
+for (const row of rows) {
+  console.log(row.map((cell, i) => (i === 0 ? cell.padEnd(widths[i]) : cell.padStart(widths[i]))).join('  '));
+}
@@ -0,0 +1,48 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Scratch files for the benchmarks, created under java.io.tmpdir
+ */
+final class BenchmarkFiles {
+
+    private static final int WRITE_BLOCK = 1024 * 1024;
+
+    private BenchmarkFiles() {
+    }
+
+    static Path createDirectory(String prefix) throws IOException {
+        return Files.createTempDirectory("cvj-bench-" + prefix);
+    }
+
+    /**
+     * Writes {@code size} bytes of incompressible data
+     */
+    static Path createFile(Path dir, String name, long size) throws IOException {
+        Path file = dir.resolve(name);
+        Random random = new Random(size);
+        byte[] block = new byte[WRITE_BLOCK];
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += block.length) {
+                random.nextBytes(block);
+                out.write(block, 0, (int) Math.min(block.length, size - written));
+            }
+        }
+        return file;
+    }
+
+    static void delete(Path root) throws IOException, InterruptedException {
+        if (root != null && Files.exists(root)) {
+            new TreeOps(newJob(), (files, directories, bytes) -> { }).delete(root);
+        }
+    }
+
+    static ExecutionEngine.Job newJob() {
+        return new ExecutionEngine.Job("benchmark", () -> { });
+    }
+}
@@ -0,0 +1,64 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Single file copy through {@link FileTransfer} by file size, against
+ * Files.copy as a baseline. The destination is overwritten in place each
+ * time, as copyFile does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CopyBenchmark {
+
+    @Param({ "4096", "1048576", "67108864" })
+    public long fileBytes;
+
+    private Path dir;
+    private Path source;
+    private Path destination;
+
+    @Setup
+    public void setUp() throws Exception {
+        dir = BenchmarkFiles.createDirectory("copy");
+        source = BenchmarkFiles.createFile(dir, "source", fileBytes);
+        destination = dir.resolve("destination");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        BenchmarkFiles.delete(dir);
+    }
+
+    @Benchmark
+    public long fileTransfer() throws Exception {
+        FileTransfer transfer = new FileTransfer(BenchmarkFiles.newJob(), (bytes, totalBytes, files, totalFiles) -> { });
+        transfer.copy(source.toFile(), destination.toFile());
+        return transfer.getBytes();
+    }
+
+    @Benchmark
+    public Path filesCopy() throws Exception {
+        return Files.copy(source, destination, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
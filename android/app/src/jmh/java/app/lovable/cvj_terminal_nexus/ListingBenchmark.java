@@ -0,0 +1,73 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full listings through {@link DirectoryLister}, names only or with every
+ * field, straight from disk (cold) or from a primed {@link MetadataCache}
+ * (warm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListingBenchmark {
+
+    @Param({ "10", "1000", "100000" })
+    public int entries;
+
+    @Param({ "names", "all" })
+    public String fields;
+
+    @Param({ "cold", "warm" })
+    public String cache;
+
+    private Path dir;
+    private Set<DirectoryLister.Field> fieldSet;
+    private DirectoryLister warmLister;
+
+    @Setup
+    public void setUp() throws Exception {
+        dir = BenchmarkFiles.createDirectory("list");
+        for (int i = 0; i < entries; i++) {
+            Files.createFile(dir.resolve("entry-" + i));
+        }
+        fieldSet = "all".equals(fields) ? DirectoryLister.allFields() : EnumSet.of(DirectoryLister.Field.NAME);
+        // A watch that never fires keeps the listing cached for the whole run
+        warmLister = new DirectoryLister(new MetadataCache(16, 2 * entries, (path, onChange) -> () -> { }));
+        warmLister.open(dir, DirectoryLister.Sort.NAME, false, DirectoryLister.allFields(), 0, BenchmarkFiles.newJob());
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        BenchmarkFiles.delete(dir);
+    }
+
+    @Benchmark
+    public int list() throws Exception {
+        DirectoryLister lister = "warm".equals(cache)
+            ? warmLister
+            // Without a watch nothing is cached, so every listing reads the disk
+            : new DirectoryLister(new MetadataCache(16, 2 * entries, (path, onChange) -> null));
+        return lister.open(dir, DirectoryLister.Sort.NAME, false, fieldSet, 0, BenchmarkFiles.newJob()).total;
+    }
+}
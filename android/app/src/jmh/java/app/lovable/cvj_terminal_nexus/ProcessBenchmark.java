@@ -0,0 +1,54 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Spawning a process and draining its output, buffered as executeCommand
+ * does and streamed as executeCommand with stream: true does. With no
+ * output the score is the bare fork/exec/wait cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessBenchmark {
+
+    @Param({ "0", "65536", "16777216" })
+    public int outputBytes;
+
+    @Benchmark
+    public int collect() throws Exception {
+        ProcessIo.Result result = ProcessIo.run(command(), false);
+        return result.stdout.length;
+    }
+
+    @Benchmark
+    public int streamText(Blackhole blackhole) throws Exception {
+        OutputStreamer streamer = new OutputStreamer(65536, 0, (stream, data, seq) -> blackhole.consume(data));
+        return streamer.run(command().start());
+    }
+
+    @Benchmark
+    public int streamBinary(Blackhole blackhole) throws Exception {
+        OutputStreamer streamer = new OutputStreamer(65536, 0, true, (stream, data, seq) -> blackhole.consume(data));
+        return streamer.run(command().start());
+    }
+
+    private ProcessBuilder command() {
+        return new ProcessBuilder("head", "-c", String.valueOf(outputBytes), "/dev/zero");
+    }
+}
@@ -0,0 +1,61 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * readFile latency by file size: the ranged read plus the conversion to
+ * the string that goes over the bridge, as UTF-8 text or base64.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadBenchmark {
+
+    @Param({ "1024", "65536", "1048576", "10485760" })
+    public int fileBytes;
+
+    private Path dir;
+    private Path file;
+
+    @Setup
+    public void setUp() throws Exception {
+        dir = BenchmarkFiles.createDirectory("read");
+        file = BenchmarkFiles.createFile(dir, "data", fileBytes);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        BenchmarkFiles.delete(dir);
+    }
+
+    @Benchmark
+    public String utf8() throws Exception {
+        FileRangeReader.Range range = FileRangeReader.read(file.toFile(), 0, fileBytes, true);
+        return new String(range.data, StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String base64() throws Exception {
+        FileRangeReader.Range range = FileRangeReader.read(file.toFile(), 0, fileBytes, false);
+        return Base64.getEncoder().encodeToString(range.data);
+    }
+}
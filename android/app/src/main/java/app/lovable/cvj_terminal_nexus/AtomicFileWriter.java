@@ -0,0 +1,155 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file write that is assembled in chunks and only becomes visible on commit.
+ *
+ * Data goes to a hidden temp file next to the target, so commit is a rename
+ * on the same filesystem and atomically replaces the target. A crash or abort
+ * mid-write leaves the target untouched.
+ *
+ * A target that is a symlink is written through: the temp file goes next to
+ * the file the link points to and replaces that, keeping the link. The
+ * replaced file's permission bits are carried over to the new one.
+ */
+final class AtomicFileWriter {
+
+    final String id;
+    final File target;
+    // The file actually replaced, target with symlinks resolved
+    private final Path destination;
+    private final File temp;
+    private final FileChannel channel;
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    private AtomicFileWriter(String id, File target, Path destination, File temp, FileChannel channel) {
+        this.id = id;
+        this.target = target;
+        this.destination = destination;
+        this.temp = temp;
+        this.channel = channel;
+    }
+
+    /**
+     * Creates the temp file, seeded with the target's current content when
+     * {@code append} is set
+     */
+    static AtomicFileWriter open(String id, File target, boolean append) throws IOException {
+        Path destination = resolveLinks(target.getAbsoluteFile().toPath());
+        File parent = destination.toFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        File temp = new File(parent, "." + destination.getFileName() + ".cvjpart-" + id);
+        FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        try {
+            if (append && target.isFile()) {
+                try (FileChannel existing = FileChannel.open(target.toPath(), StandardOpenOption.READ)) {
+                    long size = existing.size();
+                    long position = 0;
+                    while (position < size) {
+                        position += existing.transferTo(position, size - position, channel);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            channel.close();
+            temp.delete();
+            throw e;
+        }
+        return new AtomicFileWriter(id, target, destination, temp, channel);
+    }
+
+    /**
+     * Follows {@code path} while it is a symlink, also when the last link
+     * dangles, so the write creates the file it names
+     */
+    private static Path resolveLinks(Path path) throws IOException {
+        if (Files.exists(path)) {
+            return path.toRealPath();
+        }
+        // Same limit as the kernel's ELOOP
+        for (int hops = 0; hops < 40 && Files.isSymbolicLink(path); hops++) {
+            Path parent = path.getParent();
+            Path link = Files.readSymbolicLink(path);
+            path = parent != null ? parent.resolve(link).normalize() : link;
+        }
+        return path;
+    }
+
+    /**
+     * Appends a chunk, or writes it at {@code offset} when that is not negative
+     *
+     * @return bytes written to the temp file so far
+     */
+    synchronized long write(byte[] data, long offset) throws IOException {
+        lastUsed = System.currentTimeMillis();
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (offset >= 0) {
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        } else {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        return channel.size();
+    }
+
+    /**
+     * Flushes the data to disk and renames the temp file over the target
+     *
+     * @return size of the committed file
+     */
+    synchronized long commit() throws IOException {
+        channel.force(true);
+        long size = channel.size();
+        channel.close();
+
+        if (Files.exists(destination, LinkOption.NOFOLLOW_LINKS)) {
+            try {
+                Files.setPosixFilePermissions(temp.toPath(),
+                    Files.getPosixFilePermissions(destination, LinkOption.NOFOLLOW_LINKS));
+            } catch (IOException | UnsupportedOperationException e) {
+                // Shared storage has fixed modes; the new file gets the same ones anyway
+            }
+        }
+        try {
+            Files.move(temp.toPath(), destination,
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), destination, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        return size;
+    }
+
+    synchronized void abort() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Temp file is removed either way
+        }
+        temp.delete();
+    }
+
+    long idleMillis() {
+        return System.currentTimeMillis() - lastUsed;
+    }
+}
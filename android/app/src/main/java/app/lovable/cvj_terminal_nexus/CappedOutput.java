@@ -0,0 +1,108 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+
+/**
+ * Collects a stream up to a byte limit, keeping its head and its tail.
+ *
+ * The first half of the limit is kept as written. Past that the most recent
+ * bytes go into a ring buffer, so a runaway command leaves its first and last
+ * output plus a count of what was dropped in between, in bounded memory.
+ */
+final class CappedOutput extends OutputStream {
+
+    private final int headLimit;
+    private final int tailLimit;
+    private final ByteArrayOutputStream head = new ByteArrayOutputStream();
+    private byte[] tail;
+    // Next write position in the ring and number of valid bytes in it
+    private int tailEnd = 0;
+    private int tailCount = 0;
+    private long total = 0;
+
+    /**
+     * @param maxBytes bytes to keep, or 0 for no limit
+     */
+    CappedOutput(long maxBytes) {
+        if (maxBytes <= 0 || maxBytes > Integer.MAX_VALUE - 8) {
+            headLimit = Integer.MAX_VALUE - 8;
+            tailLimit = 0;
+        } else {
+            headLimit = (int) (maxBytes / 2);
+            tailLimit = (int) maxBytes - headLimit;
+        }
+    }
+
+    @Override
+    public void write(int b) {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        total += len;
+        int toHead = Math.min(len, headLimit - head.size());
+        if (toHead > 0) {
+            head.write(b, off, toHead);
+            off += toHead;
+            len -= toHead;
+        }
+        if (len == 0 || tailLimit == 0) {
+            return;
+        }
+        if (tail == null) {
+            tail = new byte[tailLimit];
+        }
+        if (len >= tailLimit) {
+            System.arraycopy(b, off + len - tailLimit, tail, 0, tailLimit);
+            tailEnd = 0;
+            tailCount = tailLimit;
+            return;
+        }
+        int first = Math.min(len, tailLimit - tailEnd);
+        System.arraycopy(b, off, tail, tailEnd, first);
+        System.arraycopy(b, off + first, tail, 0, len - first);
+        tailEnd = (tailEnd + len) % tailLimit;
+        tailCount = Math.min(tailLimit, tailCount + len);
+    }
+
+    /**
+     * Bytes written in total, kept or not
+     */
+    long total() {
+        return total;
+    }
+
+    long omitted() {
+        return total - head.size() - tailCount;
+    }
+
+    /**
+     * Length of the head part of {@link #toByteArray()}; the tail follows it
+     */
+    int headLength() {
+        return head.size();
+    }
+
+    /**
+     * The head followed by the tail, without anything in between
+     */
+    byte[] toByteArray() {
+        byte[] data = new byte[head.size() + tailCount];
+        byte[] headBytes = head.toByteArray();
+        System.arraycopy(headBytes, 0, data, 0, headBytes.length);
+        if (tailCount == 0) {
+            return data;
+        }
+        if (tailCount < tailLimit) {
+            // The ring has not wrapped yet
+            System.arraycopy(tail, 0, data, headBytes.length, tailCount);
+        } else {
+            int older = tailLimit - tailEnd;
+            System.arraycopy(tail, tailEnd, data, headBytes.length, older);
+            System.arraycopy(tail, 0, data, headBytes.length + older, tailEnd);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,232 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Runs an ordered list of commands in one call.
+ *
+ * A step marked as piped gets the previous step's stdout on its stdin, so a
+ * run of piped steps is a pipeline: every process in it starts at once and
+ * the bytes are copied between them natively as they are produced. Only the
+ * last step of a pipeline has its stdout collected. Without stopOnError the
+ * batch goes on after a failed step, otherwise the remaining steps are
+ * reported as skipped.
+ */
+final class CommandBatch {
+
+    static final class Step {
+        final String command;
+        final ProcessBuilder builder;
+        // Feed the previous step's stdout into this one's stdin
+        final boolean pipe;
+
+        Step(String command, ProcessBuilder builder, boolean pipe) {
+            this.command = command;
+            this.builder = builder;
+            this.pipe = pipe;
+        }
+    }
+
+    static final class StepResult {
+        final String command;
+        // Null when the step was skipped or could not be started
+        final ProcessIo.Result result;
+        final boolean timedOut;
+        final long durationMs;
+        // Why the step did not run, null if it did
+        final String failure;
+
+        StepResult(String command, ProcessIo.Result result, boolean timedOut, long durationMs, String failure) {
+            this.command = command;
+            this.result = result;
+            this.timedOut = timedOut;
+            this.durationMs = durationMs;
+            this.failure = failure;
+        }
+
+        boolean succeeded() {
+            return result != null && result.exitCode == 0 && !timedOut;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final List<Step> steps;
+    private final boolean stopOnError;
+    private final long timeoutMs;
+    private final long graceMs;
+    private final long maxOutputBytes;
+
+    /**
+     * @param timeoutMs limit for each step or pipeline, 0 for none
+     */
+    CommandBatch(List<Step> steps, boolean stopOnError, long timeoutMs, long graceMs, long maxOutputBytes) {
+        this.steps = steps;
+        this.stopOnError = stopOnError;
+        this.timeoutMs = timeoutMs;
+        this.graceMs = graceMs;
+        this.maxOutputBytes = maxOutputBytes;
+    }
+
+    List<StepResult> run(ExecutionEngine.Job job) throws InterruptedException {
+        List<StepResult> results = new ArrayList<>();
+        int start = 0;
+        boolean failed = false;
+        while (start < steps.size()) {
+            int end = start + 1;
+            while (end < steps.size() && steps.get(end).pipe) {
+                end++;
+            }
+            List<Step> group = steps.subList(start, end);
+            if (failed && stopOnError) {
+                for (Step step : group) {
+                    results.add(new StepResult(step.command, null, false, 0, "Skipped after a failed step"));
+                }
+            } else {
+                job.throwIfCancelled();
+                List<StepResult> groupResults = runPipeline(group, job);
+                results.addAll(groupResults);
+                // Like a shell, a pipeline's status is its last command's
+                failed = !groupResults.get(groupResults.size() - 1).succeeded();
+            }
+            start = end;
+        }
+        return results;
+    }
+
+    private List<StepResult> runPipeline(List<Step> group, ExecutionEngine.Job job) throws InterruptedException {
+        long started = System.currentTimeMillis();
+        int size = group.size();
+        List<Process> processes = new ArrayList<>();
+        List<ProcessKiller> killers = new ArrayList<>();
+        List<StepResult> results = new ArrayList<>();
+
+        for (Step step : group) {
+            try {
+                Process process = step.builder.start();
+                ProcessKiller killer = ProcessKiller.watch(process, timeoutMs, graceMs);
+                job.onCancel(killer::kill);
+                processes.add(process);
+                killers.add(killer);
+            } catch (IOException e) {
+                for (ProcessKiller killer : killers) {
+                    killer.kill();
+                }
+                for (int i = 0; i < size; i++) {
+                    results.add(new StepResult(group.get(i).command, null, false, 0, i == processes.size()
+                        ? "Failed to start: " + e.getMessage()
+                        : "Pipeline aborted: " + step.command + " failed to start"));
+                }
+                return results;
+            }
+        }
+
+        List<Future<?>> copies = new ArrayList<>();
+        List<CappedOutput> stderrs = new ArrayList<>();
+        List<Future<?>> stderrPumps = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Process process = processes.get(i);
+            if (i == 0) {
+                closeQuietly(process.getOutputStream());
+            } else {
+                Process upstream = processes.get(i - 1);
+                copies.add(ProcessIo.pump(() -> pipe(upstream.getInputStream(), process.getOutputStream())));
+            }
+            CappedOutput stderr = new CappedOutput(maxOutputBytes);
+            stderrs.add(stderr);
+            stderrPumps.add(ProcessIo.pump(() -> drain(process.getErrorStream(), stderr)));
+        }
+
+        CappedOutput stdout = new CappedOutput(maxOutputBytes);
+        try {
+            drain(processes.get(size - 1).getInputStream(), stdout);
+            for (Future<?> future : copies) {
+                future.get();
+            }
+            for (Future<?> future : stderrPumps) {
+                future.get();
+            }
+            int[] exitCodes = new int[size];
+            boolean timedOut = false;
+            for (int i = 0; i < size; i++) {
+                exitCodes[i] = processes.get(i).waitFor();
+                killers.get(i).cancel();
+                timedOut |= killers.get(i).timedOut();
+            }
+            // The limit is on the pipeline as a whole: once one of its steps
+            // was killed for it, none of them counts as having finished
+            for (int i = 0; i < size; i++) {
+                CappedOutput stderr = stderrs.get(i);
+                boolean last = i == size - 1;
+                ProcessIo.Result result = new ProcessIo.Result(
+                    last ? stdout.toByteArray() : EMPTY, last ? stdout.headLength() : 0, last ? stdout.omitted() : 0,
+                    stderr.toByteArray(), stderr.headLength(), stderr.omitted(), exitCodes[i]);
+                results.add(new StepResult(group.get(i).command, result, timedOut,
+                    System.currentTimeMillis() - started, null));
+            }
+        } catch (IOException | ExecutionException e) {
+            for (ProcessKiller killer : killers) {
+                killer.kill();
+            }
+            results.clear();
+            for (Step step : group) {
+                results.add(new StepResult(step.command, null, false, System.currentTimeMillis() - started,
+                    "Pipeline failed: " + e.getMessage()));
+            }
+        } catch (InterruptedException e) {
+            for (ProcessKiller killer : killers) {
+                killer.kill();
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    /**
+     * Copies a step's stdout into the next step's stdin. A reader that exits
+     * early just ends the copy; closing our end then gives the writer SIGPIPE
+     * as a shell pipe would.
+     */
+    private static Void pipe(InputStream from, OutputStream to) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            int read;
+            while ((read = from.read(buffer)) != -1) {
+                to.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            // Broken pipe on either side
+        } finally {
+            closeQuietly(to);
+            closeQuietly(from);
+        }
+        return null;
+    }
+
+    private static Void drain(InputStream in, CappedOutput out) throws IOException {
+        try (InputStream stream = in) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return null;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // Already closed by the other side
+        }
+    }
+}
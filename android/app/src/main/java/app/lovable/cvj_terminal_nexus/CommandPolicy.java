@@ -0,0 +1,259 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides which commands and arguments may be run, per execution mode.
+ *
+ * Everything is compiled when the policy is built so that checking a call
+ * allocates nothing: forbidden characters are a lookup table indexed by
+ * char, and the base command (the text before the first whitespace) is
+ * looked up in an open-addressing table by comparing it in place, without
+ * splitting the string. Each table slot carries the command's argument rule.
+ *
+ * A policy is immutable; loading a new one replaces it as a whole.
+ */
+final class CommandPolicy {
+
+    static final String MODE_USER = "user";
+    static final String MODE_ROOT = "root";
+
+    static final List<String> DEFAULT_COMMANDS = Arrays.asList(
+        // Basic commands
+        "ls", "cat", "echo", "pwd", "whoami", "date", "uname",
+        "df", "du", "ps", "top", "free", "uptime", "which",
+        // File operations
+        "cp", "mv", "rm", "mkdir", "rmdir", "touch", "chmod", "chown",
+        "head", "tail", "wc", "sort", "uniq", "grep", "find", "xargs",
+        // Text processing
+        "awk", "sed", "cut", "tr", "tee",
+        // Network
+        "ping", "curl", "wget", "netstat", "ifconfig", "ip",
+        // System
+        "id", "env", "printenv", "hostname", "arch", "nproc",
+        // Package management
+        "pkg", "apt", "apt-get", "dpkg"
+    );
+
+    // Shell metacharacters; the commands are never run through a shell, but
+    // root commands are, and arguments end up in scripts often enough
+    static final String DEFAULT_FORBIDDEN_CHARS = ";&|`$<>(){}[]\n\r";
+
+    /**
+     * Extra limits on one command's arguments
+     */
+    static final class ArgumentRule {
+        // Most arguments accepted, or -1 for any number
+        final int maxArgs;
+        // Arguments refused as a whole, e.g. "--no-preserve-root"
+        final String[] deniedArgs;
+        // Arguments refused when they start with one of these, e.g. "/system"
+        final String[] deniedPrefixes;
+
+        ArgumentRule(int maxArgs, String[] deniedArgs, String[] deniedPrefixes) {
+            this.maxArgs = maxArgs;
+            this.deniedArgs = deniedArgs;
+            this.deniedPrefixes = deniedPrefixes;
+        }
+
+        boolean allows(List<String> args) {
+            if (maxArgs >= 0 && args.size() > maxArgs) {
+                return false;
+            }
+            for (int i = 0; i < args.size(); i++) {
+                String arg = args.get(i);
+                if (arg == null) {
+                    continue;
+                }
+                for (String denied : deniedArgs) {
+                    if (arg.equals(denied)) {
+                        return false;
+                    }
+                }
+                for (String prefix : deniedPrefixes) {
+                    if (arg.startsWith(prefix)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final ArgumentRule NO_RULE = new ArgumentRule(-1, new String[0], new String[0]);
+
+    /**
+     * Allowed base commands of one mode, open addressing with linear probing
+     */
+    private static final class CommandTable {
+        private final String[] names;
+        private final ArgumentRule[] rules;
+        private final int mask;
+
+        CommandTable(Collection<String> commands, Map<String, ArgumentRule> argumentRules) {
+            int capacity = Integer.highestOneBit(Math.max(4, commands.size() * 2) - 1) << 1;
+            names = new String[capacity];
+            rules = new ArgumentRule[capacity];
+            mask = capacity - 1;
+            for (String name : commands) {
+                int slot = hash(name, 0, name.length()) & mask;
+                while (names[slot] != null && !names[slot].equals(name)) {
+                    slot = (slot + 1) & mask;
+                }
+                names[slot] = name;
+                ArgumentRule rule = argumentRules.get(name);
+                rules[slot] = rule != null ? rule : NO_RULE;
+            }
+        }
+
+        /**
+         * Rule of the command spelled by {@code text[0, length)}, or null
+         * when it is not in the table
+         */
+        ArgumentRule find(String text, int length) {
+            int slot = hash(text, 0, length) & mask;
+            String name;
+            while ((name = names[slot]) != null) {
+                if (name.length() == length && text.regionMatches(0, name, 0, length)) {
+                    return rules[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        private static int hash(String text, int from, int to) {
+            int h = 0;
+            for (int i = from; i < to; i++) {
+                h = 31 * h + text.charAt(i);
+            }
+            // Spread the high bits, as HashMap does, since the mask keeps only the low ones
+            return h ^ (h >>> 16);
+        }
+    }
+
+    private final Map<String, CommandTable> modes;
+    // Indexed by char; chars past the end of the table are always allowed
+    private final boolean[] forbidden;
+
+    private CommandPolicy(Map<String, CommandTable> modes, boolean[] forbidden) {
+        this.modes = modes;
+        this.forbidden = forbidden;
+    }
+
+    /**
+     * The built-in policy: the same commands in every mode, no argument rules
+     */
+    static CommandPolicy defaults() {
+        Map<String, ArgumentRule> noRules = new HashMap<>();
+        Map<String, CommandTable> modes = new HashMap<>();
+        modes.put(MODE_USER, new CommandTable(DEFAULT_COMMANDS, noRules));
+        modes.put(MODE_ROOT, new CommandTable(DEFAULT_COMMANDS, noRules));
+        return new CommandPolicy(modes, forbiddenTable(DEFAULT_FORBIDDEN_CHARS));
+    }
+
+    /**
+     * Builds a policy from per-mode command lists and per-command argument
+     * rules. Modes left out get the default command list, and a null
+     * {@code forbiddenChars} keeps the default set.
+     *
+     * @throws IllegalArgumentException when a command name is empty or contains whitespace
+     */
+    static CommandPolicy of(Map<String, ? extends Collection<String>> modeCommands,
+                            Map<String, ArgumentRule> argumentRules, String forbiddenChars) {
+        Map<String, CommandTable> modes = new HashMap<>();
+        modes.put(MODE_USER, new CommandTable(DEFAULT_COMMANDS, argumentRules));
+        modes.put(MODE_ROOT, new CommandTable(DEFAULT_COMMANDS, argumentRules));
+        for (Map.Entry<String, ? extends Collection<String>> mode : modeCommands.entrySet()) {
+            for (String command : mode.getValue()) {
+                if (command.isEmpty() || !isToken(command)) {
+                    throw new IllegalArgumentException("Invalid command name in mode " + mode.getKey() + ": " + command);
+                }
+            }
+            modes.put(mode.getKey(), new CommandTable(mode.getValue(), argumentRules));
+        }
+        return new CommandPolicy(modes,
+            forbiddenTable(forbiddenChars != null ? forbiddenChars : DEFAULT_FORBIDDEN_CHARS));
+    }
+
+    /**
+     * Whether {@code command} may run in {@code mode}: its base command is
+     * allowed there and it contains no forbidden character. Unknown modes
+     * allow nothing.
+     */
+    boolean allowsCommand(String mode, String command) {
+        if (command == null || command.isEmpty()) {
+            return false;
+        }
+        CommandTable table = modes.get(mode);
+        return table != null && table.find(command, baseLength(command)) != null && isSafe(command);
+    }
+
+    /**
+     * Whether {@code args} are acceptable for {@code command}: free of
+     * forbidden characters and within the command's argument rule
+     */
+    boolean allowsArguments(String mode, String command, List<String> args) {
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            if (arg != null && !isSafe(arg)) {
+                return false;
+            }
+        }
+        CommandTable table = modes.get(mode);
+        ArgumentRule rule = table == null || command == null ? null : table.find(command, baseLength(command));
+        return rule == null || rule.allows(args);
+    }
+
+    /**
+     * True when {@code text} contains no forbidden character
+     */
+    boolean isSafe(CharSequence text) {
+        boolean[] table = forbidden;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c < table.length && table[c]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Length of the text before the first whitespace, matching what
+     * split("\\s+")[0] used to return
+     */
+    private static int baseLength(String command) {
+        for (int i = 0, n = command.length(); i < n; i++) {
+            if (isWhitespace(command.charAt(i))) {
+                return i;
+            }
+        }
+        return command.length();
+    }
+
+    private static boolean isToken(String name) {
+        return baseLength(name) == name.length();
+    }
+
+    // The characters \s matches
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    private static boolean[] forbiddenTable(String chars) {
+        int size = 128;
+        for (int i = 0; i < chars.length(); i++) {
+            size = Math.max(size, chars.charAt(i) + 1);
+        }
+        boolean[] table = new boolean[size];
+        for (int i = 0; i < chars.length(); i++) {
+            table[chars.charAt(i)] = true;
+        }
+        return table;
+    }
+}
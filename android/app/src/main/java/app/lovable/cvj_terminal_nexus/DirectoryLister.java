@@ -0,0 +1,278 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lists directories a page at a time.
+ *
+ * Names come straight from a {@link DirectoryStream}; attributes are read
+ * with one bulk call per entry and only when a requested field or the sort
+ * order needs them, so a names-only listing costs no stat calls at all.
+ * Listings with attributes go through the {@link MetadataCache}.
+ * Listings larger than one page are kept under a cursor until the caller has
+ * paged through them or they sit idle too long.
+ */
+final class DirectoryLister {
+
+    enum Field {
+        NAME("name"),
+        PATH("path"),
+        IS_DIRECTORY("isDirectory"),
+        IS_FILE("isFile"),
+        SIZE("size"),
+        MODIFIED("modified"),
+        READABLE("readable"),
+        WRITABLE("writable"),
+        EXECUTABLE("executable");
+
+        final String key;
+
+        Field(String key) {
+            this.key = key;
+        }
+
+        static Field fromKey(String key) {
+            for (Field field : values()) {
+                if (field.key.equals(key)) {
+                    return field;
+                }
+            }
+            return null;
+        }
+
+        boolean needsAttributes() {
+            return this == IS_DIRECTORY || this == IS_FILE || this == SIZE || this == MODIFIED;
+        }
+    }
+
+    enum Sort { NAME, SIZE, MODIFIED, NONE }
+
+    static final class Entry {
+        final Path path;
+        final String name;
+        BasicFileAttributes attributes;
+
+        Entry(Path path) {
+            this(path, null);
+        }
+
+        Entry(Path path, BasicFileAttributes attributes) {
+            this.path = path;
+            this.name = path.getFileName().toString();
+            this.attributes = attributes;
+        }
+    }
+
+    static final class Page {
+        final String path;
+        final List<Entry> entries;
+        final Set<Field> fields;
+        final int total;
+        // Null once the last page has been returned
+        final String cursor;
+
+        Page(String path, List<Entry> entries, Set<Field> fields, int total, String cursor) {
+            this.path = path;
+            this.entries = entries;
+            this.fields = fields;
+            this.total = total;
+            this.cursor = cursor;
+        }
+    }
+
+    private static final int MAX_LISTINGS = 16;
+    private static final long LISTING_IDLE_TIMEOUT_MS = 2 * 60 * 1000;
+
+    private static final Comparator<Entry> BY_NAME = (a, b) -> {
+        int order = a.name.compareToIgnoreCase(b.name);
+        return order != 0 ? order : a.name.compareTo(b.name);
+    };
+
+    private final MetadataCache cache;
+    private final Map<String, Listing> listings = new ConcurrentHashMap<>();
+    private final AtomicLong cursorCounter = new AtomicLong();
+
+    DirectoryLister(MetadataCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Reads a directory and returns its first page
+     *
+     * @param pageSize entries per page, or 0 for everything at once
+     */
+    Page open(Path dir, Sort sort, boolean reverse, Set<Field> fields, int pageSize,
+              ExecutionEngine.Job job) throws IOException, InterruptedException {
+        // Names-only listings take the cache when it is warm but never pay
+        // for the stat calls needed to fill it
+        boolean needsAttributes = sort == Sort.SIZE || sort == Sort.MODIFIED;
+        for (Field field : fields) {
+            needsAttributes |= field.needsAttributes();
+        }
+        List<Entry> entries = needsAttributes ? cache.list(dir) : cache.peek(dir);
+        if (entries == null) {
+            entries = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path path : stream) {
+                    entries.add(new Entry(path));
+                    if ((entries.size() & 1023) == 0) {
+                        job.throwIfCancelled();
+                    }
+                }
+            }
+        }
+
+        if (sort == Sort.SIZE || sort == Sort.MODIFIED) {
+            for (int i = 0; i < entries.size(); i++) {
+                readAttributes(entries.get(i));
+                if ((i & 1023) == 0) {
+                    job.throwIfCancelled();
+                }
+            }
+        }
+        Comparator<Entry> order = comparator(sort);
+        if (order != null) {
+            Collections.sort(entries, reverse ? order.reversed() : order);
+        } else if (reverse) {
+            Collections.reverse(entries);
+        }
+
+        Listing listing = new Listing(dir.toString(), entries, fields, pageSize);
+        return listing.nextPage(this);
+    }
+
+    /**
+     * Returns the page after the one handed out with {@code cursor}, or null
+     * when the cursor is unknown or has expired
+     */
+    Page next(String cursor) {
+        Listing listing = listings.remove(cursor);
+        if (listing == null) {
+            return null;
+        }
+        return listing.nextPage(this);
+    }
+
+    void clear() {
+        listings.clear();
+    }
+
+    static Set<Field> allFields() {
+        return EnumSet.allOf(Field.class);
+    }
+
+    private String keep(Listing listing) {
+        for (Map.Entry<String, Listing> cached : listings.entrySet()) {
+            if (cached.getValue().idleMillis() > LISTING_IDLE_TIMEOUT_MS) {
+                listings.remove(cached.getKey(), cached.getValue());
+            }
+        }
+        if (listings.size() >= MAX_LISTINGS) {
+            // Drop the listing that has been idle longest
+            String oldest = null;
+            long oldestIdle = -1;
+            for (Map.Entry<String, Listing> cached : listings.entrySet()) {
+                if (cached.getValue().idleMillis() > oldestIdle) {
+                    oldest = cached.getKey();
+                    oldestIdle = cached.getValue().idleMillis();
+                }
+            }
+            if (oldest != null) {
+                listings.remove(oldest);
+            }
+        }
+        String cursor = "list-" + cursorCounter.incrementAndGet();
+        listings.put(cursor, listing);
+        return cursor;
+    }
+
+    private static Comparator<Entry> comparator(Sort sort) {
+        switch (sort) {
+            case NAME:
+                return BY_NAME;
+            case SIZE:
+                return Comparator.<Entry>comparingLong(e -> e.attributes == null ? 0 : e.attributes.size())
+                    .reversed().thenComparing(BY_NAME);
+            case MODIFIED:
+                return Comparator.<Entry>comparingLong(e -> e.attributes == null
+                        ? 0 : e.attributes.lastModifiedTime().toMillis())
+                    .reversed().thenComparing(BY_NAME);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * One bulk attribute read, following symlinks like File did. A dangling
+     * link reports the link itself.
+     */
+    private static void readAttributes(Entry entry) {
+        if (entry.attributes != null) {
+            return;
+        }
+        try {
+            entry.attributes = Files.readAttributes(entry.path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            try {
+                entry.attributes = Files.readAttributes(entry.path, BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException ignored) {
+                // Entry vanished since it was listed, report it without attributes
+            }
+        }
+    }
+
+    private static final class Listing {
+        private final String path;
+        private final List<Entry> entries;
+        private final Set<Field> fields;
+        private final int pageSize;
+        private final boolean needsAttributes;
+        private int position = 0;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        Listing(String path, List<Entry> entries, Set<Field> fields, int pageSize) {
+            this.path = path;
+            this.entries = entries;
+            this.fields = fields;
+            this.pageSize = pageSize <= 0 ? Integer.MAX_VALUE : pageSize;
+            boolean needs = false;
+            for (Field field : fields) {
+                needs |= field.needsAttributes();
+            }
+            this.needsAttributes = needs;
+        }
+
+        Page nextPage(DirectoryLister lister) {
+            lastUsed = System.currentTimeMillis();
+            int end = (int) Math.min(entries.size(), (long) position + pageSize);
+            List<Entry> page = entries.subList(position, end);
+            if (needsAttributes) {
+                for (Entry entry : page) {
+                    readAttributes(entry);
+                }
+            }
+            position = end;
+            String cursor = position < entries.size() ? lister.keep(this) : null;
+            return new Page(path, page, fields, entries.size(), cursor);
+        }
+
+        long idleMillis() {
+            return System.currentTimeMillis() - lastUsed;
+        }
+    }
+}
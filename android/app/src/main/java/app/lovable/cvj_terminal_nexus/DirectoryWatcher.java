@@ -0,0 +1,34 @@
+package app.lovable.cvj_terminal_nexus;
+
+import android.os.FileObserver;
+
+/**
+ * Watches directories for the metadata cache through FileObserver (inotify)
+ */
+final class DirectoryWatcher implements MetadataCache.WatchFactory {
+
+    private static final int CHANGE_EVENTS = FileObserver.CREATE | FileObserver.DELETE
+        | FileObserver.MOVED_FROM | FileObserver.MOVED_TO | FileObserver.MODIFY | FileObserver.ATTRIB
+        | FileObserver.CLOSE_WRITE | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+    // Virtual filesystems never report changes, so their listings are not cached
+    private static final String[] UNWATCHABLE = { "/proc", "/sys", "/dev" };
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public MetadataCache.Watch watch(String dir, Runnable onChange) {
+        for (String prefix : UNWATCHABLE) {
+            if (dir.equals(prefix) || dir.startsWith(prefix + "/")) {
+                return null;
+            }
+        }
+        FileObserver observer = new FileObserver(dir, CHANGE_EVENTS) {
+            @Override
+            public void onEvent(int event, String path) {
+                onChange.run();
+            }
+        };
+        observer.startWatching();
+        return observer::stopWatching;
+    }
+}
@@ -0,0 +1,534 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Downloads files over HTTP with resume, parallel segments and checksum
+ * verification.
+ *
+ * Data goes to {@code <destination>.part}, with a {@code .part.meta} sidecar
+ * recording the server's validator and how far each segment got. A later
+ * download of the same URL picks up from there as long as the server still
+ * reports the same ETag or Last-Modified and length. Large files on servers
+ * that accept Range requests are split into segments fetched on separate
+ * connections. The destination only appears once every byte is in place and
+ * the optional SHA-256 matches.
+ */
+final class DownloadManager {
+
+    interface Progress {
+        void onProgress(long bytes, long totalBytes, int segments);
+    }
+
+    /**
+     * Consumes a response body as it arrives
+     */
+    interface BodyReader<T> {
+        T read(InputStream body, long contentLength) throws IOException, InterruptedException;
+    }
+
+    static final class Result {
+        final File file;
+        final long size;
+        final long resumedFrom;
+        final int segments;
+        final String sha256;
+
+        Result(File file, long size, long resumedFrom, int segments, String sha256) {
+            this.file = file;
+            this.size = size;
+            this.resumedFrom = resumedFrom;
+            this.segments = segments;
+            this.sha256 = sha256;
+        }
+    }
+
+    static final int MAX_SEGMENTS = 8;
+
+    private static final int CONNECT_TIMEOUT_MS = 30000;
+    private static final int READ_TIMEOUT_MS = 30000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Files smaller than this are not worth more than one connection
+    private static final long MIN_SEGMENT_SIZE = 4L * 1024 * 1024;
+    private static final int SEGMENT_RETRIES = 3;
+    private static final long RETRY_DELAY_MS = 1000;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+    private static final long CHECKPOINT_INTERVAL_MS = 1000;
+
+    private static final ExecutorService SEGMENT_WORKERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "NativeShell-download");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static File partFile(File destination) {
+        return new File(destination.getPath() + ".part");
+    }
+
+    static File metaFile(File destination) {
+        return new File(destination.getPath() + ".part.meta");
+    }
+
+    /**
+     * Forgets any partial data for {@code destination}
+     */
+    static void discardPartial(File destination) {
+        partFile(destination).delete();
+        metaFile(destination).delete();
+    }
+
+    /**
+     * Downloads {@code url} to {@code destination}. How many run at once is
+     * up to the caller's pool.
+     *
+     * @param segments        upper bound on parallel connections
+     * @param expectedSha256  hex digest to verify, or null to skip verification
+     */
+    Result download(URL url, File destination, int segments, String expectedSha256,
+                    ExecutionEngine.Job job, Progress progress) throws IOException, InterruptedException {
+        File parent = destination.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        return new Transfer(url, destination, job, progress).run(segments, expectedSha256);
+    }
+
+    /**
+     * Fetches {@code url} and hands the body to {@code reader} without
+     * storing it. Cancelling the job
+     * drops the connection, which fails the reader's next read.
+     */
+    <T> T stream(URL url, ExecutionEngine.Job job, BodyReader<T> reader) throws IOException, InterruptedException {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("GET");
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            // Content-Length then counts the bytes the reader will see
+            connection.setRequestProperty("Accept-Encoding", "identity");
+            HttpURLConnection opened = connection;
+            job.onCancel(opened::disconnect);
+            job.throwIfCancelled();
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + status + " from " + url);
+            }
+            try (InputStream body = connection.getInputStream()) {
+                return reader.read(body, connection.getContentLengthLong());
+            }
+        } catch (IOException e) {
+            // A read failing because the connection was dropped is a cancellation
+            job.throwIfCancelled();
+            throw e;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * State of one download
+     */
+    private static final class Transfer {
+        private final URL url;
+        private final File destination;
+        private final File part;
+        private final File meta;
+        private final ExecutionEngine.Job job;
+        private final Progress progress;
+        private final List<HttpURLConnection> connections = new CopyOnWriteArrayList<>();
+
+        private long total = -1;
+        private String validator;
+        private long[] starts;
+        private long[] ends;
+        private AtomicLongArray done;
+        private long lastReport = System.currentTimeMillis();
+        private long lastCheckpoint = System.currentTimeMillis();
+        private boolean reported = false;
+
+        Transfer(URL url, File destination, ExecutionEngine.Job job, Progress progress) {
+            this.url = url;
+            this.destination = destination;
+            this.part = partFile(destination);
+            this.meta = metaFile(destination);
+            this.job = job;
+            this.progress = progress;
+        }
+
+        Result run(int maxSegments, String expectedSha256) throws IOException, InterruptedException {
+            job.onCancel(() -> {
+                for (HttpURLConnection connection : connections) {
+                    connection.disconnect();
+                }
+            });
+
+            // A one-byte Range request tells us the length and whether the
+            // server can serve ranges at all
+            HttpURLConnection probe = open(url);
+            probe.setRequestProperty("Range", "bytes=0-0");
+            int code = probe.getResponseCode();
+            URL resolved = probe.getURL();
+
+            long resumedFrom;
+            if (code == HttpURLConnection.HTTP_PARTIAL && parseTotal(probe.getHeaderField("Content-Range")) >= 0) {
+                total = parseTotal(probe.getHeaderField("Content-Range"));
+                validator = validatorOf(probe);
+                close(probe);
+                resumedFrom = planRanged(maxSegments);
+                fetchSegments(resolved);
+            } else if (code == HttpURLConnection.HTTP_OK || code == HttpURLConnection.HTTP_PARTIAL || code == 416) {
+                if (code != HttpURLConnection.HTTP_OK) {
+                    // Empty file, unknown length, or a server that rejects the
+                    // probe range: fetch it in one piece
+                    close(probe);
+                    probe = open(url);
+                }
+                resumedFrom = 0;
+                fetchWhole(probe);
+            } else {
+                close(probe);
+                throw new IOException("HTTP " + code);
+            }
+
+            String sha256 = null;
+            if (expectedSha256 != null && !expectedSha256.isEmpty()) {
+                job.throwIfCancelled();
+                sha256 = Digests.sha256Hex(part);
+                if (!sha256.equalsIgnoreCase(expectedSha256.trim())) {
+                    discardPartial(destination);
+                    throw new IOException("Checksum mismatch: expected " + expectedSha256.trim()
+                        + ", got " + sha256);
+                }
+            }
+
+            try {
+                Files.move(part.toPath(), destination.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(part.toPath(), destination.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            meta.delete();
+            if (reported) {
+                progress.onProgress(total, total, starts == null ? 1 : starts.length);
+            }
+            return new Result(destination, destination.length(), resumedFrom,
+                starts == null ? 1 : starts.length, sha256);
+        }
+
+        /**
+         * Restores segment progress from the sidecar when it still describes
+         * the same remote file, otherwise splits the file afresh
+         *
+         * @return bytes that were already on disk
+         */
+        private long planRanged(int maxSegments) throws IOException {
+            if (validator != null && part.isFile() && part.length() == total && loadCheckpoint()) {
+                long present = 0;
+                for (int i = 0; i < starts.length; i++) {
+                    present += done.get(i);
+                }
+                return present;
+            }
+
+            int count = (int) Math.max(1, Math.min(maxSegments, total / MIN_SEGMENT_SIZE));
+            starts = new long[count];
+            ends = new long[count];
+            done = new AtomicLongArray(count);
+            long size = total / count;
+            for (int i = 0; i < count; i++) {
+                starts[i] = i * size;
+                ends[i] = i == count - 1 ? total : (i + 1) * size;
+            }
+            try (FileChannel channel = FileChannel.open(part.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                // Sized up front so segments can write at their own offsets
+                if (total > 0) {
+                    channel.write(ByteBuffer.allocate(1), total - 1);
+                }
+            }
+            meta.delete();
+            return 0;
+        }
+
+        private void fetchSegments(URL resolved) throws IOException, InterruptedException {
+            try (FileChannel channel = FileChannel.open(part.toPath(), StandardOpenOption.WRITE)) {
+                List<Future<?>> pending = new ArrayList<>();
+                for (int i = 0; i < starts.length; i++) {
+                    if (starts[i] + done.get(i) < ends[i]) {
+                        final int index = i;
+                        pending.add(SEGMENT_WORKERS.submit(() -> {
+                            fetchSegment(resolved, channel, index);
+                            return null;
+                        }));
+                    }
+                }
+
+                try {
+                    for (Future<?> future : pending) {
+                        while (true) {
+                            try {
+                                future.get(PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                                break;
+                            } catch (TimeoutException e) {
+                                tick();
+                            }
+                        }
+                    }
+                } catch (ExecutionException e) {
+                    job.throwIfCancelled();
+                    Throwable cause = e.getCause();
+                    throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                } finally {
+                    for (Future<?> future : pending) {
+                        future.cancel(true);
+                    }
+                    for (HttpURLConnection connection : connections) {
+                        connection.disconnect();
+                    }
+                    // Whatever made it to disk is kept for the next attempt
+                    checkpoint();
+                }
+                channel.force(false);
+            }
+        }
+
+        /**
+         * Fetches the rest of one segment, reconnecting from where it stopped
+         * when the connection drops
+         */
+        private void fetchSegment(URL resolved, FileChannel channel, int index)
+                throws IOException, InterruptedException {
+            int attempt = 0;
+            while (true) {
+                long position = starts[index] + done.get(index);
+                if (position >= ends[index]) {
+                    return;
+                }
+                HttpURLConnection connection = open(resolved);
+                connection.setRequestProperty("Range", "bytes=" + position + "-" + (ends[index] - 1));
+                if (validator != null) {
+                    connection.setRequestProperty("If-Range", validator);
+                }
+                try {
+                    int code = connection.getResponseCode();
+                    if (code != HttpURLConnection.HTTP_PARTIAL) {
+                        throw new IOException(code == HttpURLConnection.HTTP_OK
+                            ? "Remote file changed during download" : "HTTP " + code);
+                    }
+                    try (InputStream in = connection.getInputStream()) {
+                        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                        int read;
+                        while (position < ends[index]
+                                && (read = in.read(buffer.array(), 0,
+                                    (int) Math.min(BUFFER_SIZE, ends[index] - position))) != -1) {
+                            job.throwIfCancelled();
+                            buffer.limit(read).position(0);
+                            while (buffer.hasRemaining()) {
+                                position += channel.write(buffer, position);
+                            }
+                            buffer.clear();
+                            done.addAndGet(index, read);
+                            attempt = 0;
+                        }
+                    }
+                    if (position < ends[index]) {
+                        throw new IOException("Connection closed early");
+                    }
+                } catch (IOException e) {
+                    job.throwIfCancelled();
+                    if (e.getMessage() != null && e.getMessage().startsWith("Remote file changed")) {
+                        throw e;
+                    }
+                    if (++attempt > SEGMENT_RETRIES) {
+                        throw e;
+                    }
+                    Thread.sleep(RETRY_DELAY_MS * attempt);
+                } finally {
+                    close(connection);
+                }
+            }
+        }
+
+        /**
+         * Streams a response from the start into the part file, for servers
+         * without Range support
+         */
+        private void fetchWhole(HttpURLConnection connection) throws IOException, InterruptedException {
+            meta.delete();
+            total = connection.getContentLengthLong();
+            long received = 0;
+            try (InputStream in = connection.getInputStream();
+                 FileOutputStream out = new FileOutputStream(part)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    job.throwIfCancelled();
+                    out.write(buffer, 0, read);
+                    received += read;
+                    report(received);
+                }
+                out.getFD().sync();
+            } finally {
+                close(connection);
+            }
+            if (total >= 0 && received != total) {
+                throw new IOException("Connection closed early");
+            }
+            total = received;
+        }
+
+        private void tick() {
+            long bytes = 0;
+            for (int i = 0; i < starts.length; i++) {
+                bytes += done.get(i);
+            }
+            report(bytes);
+            if (System.currentTimeMillis() - lastCheckpoint >= CHECKPOINT_INTERVAL_MS) {
+                checkpoint();
+            }
+        }
+
+        private void report(long bytes) {
+            long now = System.currentTimeMillis();
+            if (now - lastReport >= PROGRESS_INTERVAL_MS) {
+                lastReport = now;
+                reported = true;
+                progress.onProgress(bytes, total, starts == null ? 1 : starts.length);
+            }
+        }
+
+        /**
+         * Records segment progress. The counters are read before the data is
+         * forced, so the sidecar never claims bytes that are not on disk. The
+         * flush goes through its own channel because interrupting a segment
+         * worker closes the shared one.
+         */
+        private void checkpoint() {
+            lastCheckpoint = System.currentTimeMillis();
+            Properties state = new Properties();
+            state.setProperty("url", url.toString());
+            state.setProperty("validator", validator == null ? "" : validator);
+            state.setProperty("length", String.valueOf(total));
+            state.setProperty("segments", String.valueOf(starts.length));
+            for (int i = 0; i < starts.length; i++) {
+                state.setProperty("segment." + i, starts[i] + "," + ends[i] + "," + done.get(i));
+            }
+
+            File temp = new File(meta.getPath() + ".tmp");
+            try {
+                try (FileChannel data = FileChannel.open(part.toPath(), StandardOpenOption.WRITE)) {
+                    data.force(false);
+                }
+                try (FileOutputStream out = new FileOutputStream(temp)) {
+                    state.store(out, null);
+                    out.getFD().sync();
+                }
+                Files.move(temp.toPath(), meta.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                // Losing a checkpoint only costs refetching data on resume
+                temp.delete();
+            }
+        }
+
+        private boolean loadCheckpoint() {
+            if (!meta.isFile()) {
+                return false;
+            }
+            Properties state = new Properties();
+            try (FileInputStream in = new FileInputStream(meta)) {
+                state.load(in);
+                if (!url.toString().equals(state.getProperty("url"))
+                        || !validator.equals(state.getProperty("validator"))
+                        || total != Long.parseLong(state.getProperty("length", "-1"))) {
+                    return false;
+                }
+                int count = Integer.parseInt(state.getProperty("segments", "0"));
+                if (count < 1 || count > MAX_SEGMENTS) {
+                    return false;
+                }
+                starts = new long[count];
+                ends = new long[count];
+                done = new AtomicLongArray(count);
+                for (int i = 0; i < count; i++) {
+                    String[] fields = state.getProperty("segment." + i, "").split(",");
+                    starts[i] = Long.parseLong(fields[0]);
+                    ends[i] = Long.parseLong(fields[1]);
+                    done.set(i, Math.min(Long.parseLong(fields[2]), ends[i] - starts[i]));
+                }
+                return true;
+            } catch (IOException | RuntimeException e) {
+                starts = null;
+                return false;
+            }
+        }
+
+        private HttpURLConnection open(URL target) throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) target.openConnection();
+            connection.setRequestMethod("GET");
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            // Ranges are byte offsets into the stored representation
+            connection.setRequestProperty("Accept-Encoding", "identity");
+            connections.add(connection);
+            return connection;
+        }
+
+        private void close(HttpURLConnection connection) {
+            connection.disconnect();
+            connections.remove(connection);
+        }
+
+        /**
+         * Strong ETag if there is one, otherwise Last-Modified. Weak ETags
+         * cannot be used with If-Range.
+         */
+        private static String validatorOf(HttpURLConnection connection) {
+            String etag = connection.getHeaderField("ETag");
+            if (etag != null && !etag.startsWith("W/")) {
+                return etag;
+            }
+            return connection.getHeaderField("Last-Modified");
+        }
+
+        /**
+         * Total length from a "bytes 0-0/1234" Content-Range, or -1 if unknown
+         */
+        private static long parseTotal(String contentRange) {
+            if (contentRange == null) {
+                return -1;
+            }
+            int slash = contentRange.lastIndexOf('/');
+            try {
+                return slash < 0 ? -1 : Long.parseLong(contentRange.substring(slash + 1).trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs plugin work off the Capacitor plugin thread.
+ *
+ * Process, file and network work each get their own bounded pool, so a slow
+ * download cannot hold up a directory listing. Bulk file work (copies, tree
+ * walks, extraction) runs apart from quick file calls, so a few long copies
+ * never leave a listing waiting for a thread. Downloads have a pool of their
+ * own whose size is the number allowed at once, so one waiting for its turn
+ * sits in the queue instead of holding a network thread. Every job is registered under
+ * its call id and can be cancelled: queued jobs are dropped, running jobs get
+ * their cancel hooks run (destroying processes, closing connections) and are
+ * interrupted.
+ */
+final class ExecutionEngine {
+
+    enum Pool { PROCESS, FILE, BULK, NETWORK, DOWNLOAD }
+
+    static final int MAX_THREADS = 16;
+
+    interface Task {
+        void run(Job job) throws Exception;
+    }
+
+    /**
+     * A submitted task, passed to it while running for cooperative cancellation
+     */
+    static final class Job {
+        final String callId;
+        final long submittedAt = System.nanoTime();
+        private final List<Runnable> cancelHooks = new CopyOnWriteArrayList<>();
+        private final Runnable onDropped;
+        // Claimed either by the worker starting the task or by cancel() dropping it
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
+        private volatile boolean cancelled = false;
+        private volatile Future<?> future;
+
+        Job(String callId, Runnable onDropped) {
+            this.callId = callId;
+            this.onDropped = onDropped;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Registers an action that aborts the job's blocking work. Runs right
+         * away if the job was already cancelled.
+         */
+        void onCancel(Runnable hook) {
+            cancelHooks.add(hook);
+            if (cancelled) {
+                hook.run();
+            }
+        }
+
+        void throwIfCancelled() throws InterruptedException {
+            if (cancelled) {
+                throw new InterruptedException("Cancelled");
+            }
+        }
+
+        private void cancel() {
+            cancelled = true;
+            if (claimed.compareAndSet(false, true)) {
+                if (future != null) {
+                    future.cancel(false);
+                }
+                onDropped.run();
+                return;
+            }
+            for (Runnable hook : cancelHooks) {
+                hook.run();
+            }
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private final Map<Pool, ThreadPoolExecutor> pools = new EnumMap<>(Pool.class);
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    ExecutionEngine(int processThreads, int fileThreads, int bulkThreads, int networkThreads, int downloadThreads,
+                    int queueCapacity) {
+        pools.put(Pool.PROCESS, newPool("process", processThreads, queueCapacity));
+        pools.put(Pool.FILE, newPool("file", fileThreads, queueCapacity));
+        pools.put(Pool.BULK, newPool("bulk", bulkThreads, queueCapacity));
+        pools.put(Pool.NETWORK, newPool("network", networkThreads, queueCapacity));
+        pools.put(Pool.DOWNLOAD, newPool("download", downloadThreads, queueCapacity));
+    }
+
+    /**
+     * Queues a task on a pool. {@code onDropped} runs instead of the task if it
+     * is cancelled before it starts.
+     *
+     * @throws RejectedExecutionException when the pool's queue is full
+     */
+    Job submit(Pool pool, String callId, Task task, Runnable onDropped) {
+        final Job job = new Job(callId, onDropped);
+        jobs.put(callId, job);
+        try {
+            job.future = pools.get(pool).submit(() -> {
+                if (!job.claimed.compareAndSet(false, true)) {
+                    return;
+                }
+                try {
+                    task.run(job);
+                } catch (Exception e) {
+                    // Tasks report their own failures to the call
+                } finally {
+                    jobs.remove(callId, job);
+                    Thread.interrupted();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            jobs.remove(callId, job);
+            throw e;
+        }
+        return job;
+    }
+
+    /**
+     * Cancels the job registered under {@code callId}
+     *
+     * @return false if no such job is queued or running
+     */
+    boolean cancel(String callId) {
+        Job job = jobs.remove(callId);
+        if (job == null) {
+            return false;
+        }
+        job.cancel();
+        return true;
+    }
+
+    /**
+     * Changes the number of threads of a pool, clamped to 1..MAX_THREADS
+     */
+    void setThreads(Pool pool, int threads) {
+        int size = Math.max(1, Math.min(threads, MAX_THREADS));
+        ThreadPoolExecutor executor = pools.get(pool);
+        if (size > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(size);
+            executor.setCorePoolSize(size);
+        } else {
+            executor.setCorePoolSize(size);
+            executor.setMaximumPoolSize(size);
+        }
+    }
+
+    int getThreads(Pool pool) {
+        return pools.get(pool).getMaximumPoolSize();
+    }
+
+    int getActive(Pool pool) {
+        return pools.get(pool).getActiveCount();
+    }
+
+    int getQueued(Pool pool) {
+        return pools.get(pool).getQueue().size();
+    }
+
+    void shutdown() {
+        for (String callId : jobs.keySet()) {
+            cancel(callId);
+        }
+        for (ThreadPoolExecutor executor : pools.values()) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static ThreadPoolExecutor newPool(String name, int threads, int queueCapacity) {
+        final AtomicInteger counter = new AtomicInteger();
+        int size = Math.max(1, Math.min(threads, MAX_THREADS));
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            size, size, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(queueCapacity),
+            runnable -> {
+                Thread thread = new Thread(runnable, "NativeShell-" + name + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
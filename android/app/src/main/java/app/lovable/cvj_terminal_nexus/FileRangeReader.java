@@ -0,0 +1,105 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a byte range of a file with positional {@link FileChannel} reads,
+ * so paging through a multi-GB file only ever holds one page in memory.
+ */
+final class FileRangeReader {
+
+    static final class Range {
+        final byte[] data;
+        final long offset;
+        final long size;
+
+        Range(byte[] data, long offset, long size) {
+            this.data = data;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        long nextOffset() {
+            return offset + data.length;
+        }
+
+        boolean eof() {
+            return nextOffset() >= size;
+        }
+    }
+
+    private FileRangeReader() {
+    }
+
+    /**
+     * Reads up to {@code length} bytes starting at {@code offset}. A negative
+     * offset counts back from the end of the file, as tail does. With
+     * {@code utf8} set the range is trimmed so it neither starts nor ends in
+     * the middle of a UTF-8 sequence; the returned offset and length tell the
+     * caller where the next page starts.
+     */
+    static Range read(File file, long offset, int length, boolean utf8) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = offset < 0 ? Math.max(0, size + offset) : Math.min(offset, size);
+            int count = (int) Math.min(length, size - start);
+
+            byte[] data = new byte[count];
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            // read() may return short counts, keep going until the range is filled
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, start + buffer.position());
+                if (read < 0) {
+                    break;
+                }
+            }
+            int filled = buffer.position();
+
+            int from = 0;
+            int to = filled;
+            if (utf8) {
+                if (start > 0) {
+                    from = skipContinuationBytes(data, filled);
+                }
+                if (start + filled < size) {
+                    to = trimIncompleteSequence(data, from, filled);
+                }
+            }
+
+            byte[] range = from == 0 && to == count ? data : Arrays.copyOfRange(data, from, to);
+            return new Range(range, start + from, size);
+        }
+    }
+
+    /**
+     * Number of leading bytes that continue a sequence started before the range
+     */
+    private static int skipContinuationBytes(byte[] data, int length) {
+        int skip = 0;
+        while (skip < length && skip < 3 && (data[skip] & 0xC0) == 0x80) {
+            skip++;
+        }
+        return skip;
+    }
+
+    /**
+     * End of the range without a trailing multi-byte sequence that continues
+     * past it
+     */
+    private static int trimIncompleteSequence(byte[] data, int from, int to) {
+        for (int i = to - 1; i >= from && i >= to - 4; i--) {
+            int b = data[i] & 0xFF;
+            if ((b & 0xC0) == 0x80) {
+                continue;
+            }
+            int needed = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+            return i + needed > to ? i : to;
+        }
+        return to;
+    }
+}
@@ -0,0 +1,436 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finds files by name, size and mtime, or lines matching a regex, across a
+ * directory tree.
+ *
+ * Every directory is its own fork-join task, so subtrees are listed and
+ * scanned on all cores at once. Hits are handed to the listener in batches as
+ * they turn up rather than after the walk; the first one goes out right away.
+ * Symlinks are reported but never followed, and files that look binary are
+ * not grepped.
+ */
+final class FileSearch {
+
+    interface Listener {
+        void onHits(List<Hit> hits);
+    }
+
+    static final class Criteria {
+        // Glob on the file name, or null for any name
+        PathMatcher name;
+        // True for directories only, false for files only, null for both
+        Boolean directories;
+        long minSize = -1;
+        long maxSize = -1;
+        long modifiedAfter = -1;
+        long modifiedBefore = -1;
+        int maxDepth = Integer.MAX_VALUE;
+        boolean includeHidden = true;
+        // Set for grep: only regular files whose name matches are searched
+        Pattern pattern;
+        int context;
+        long maxFileSize = DEFAULT_MAX_GREP_FILE_SIZE;
+    }
+
+    static final class Hit {
+        final String path;
+        final boolean directory;
+        final long size;
+        final long modified;
+        // Grep hits only
+        final int line;
+        final String text;
+        final List<String> before;
+        final List<String> after;
+
+        Hit(Path path, BasicFileAttributes attributes) {
+            this(path, attributes, 0, null, Collections.<String>emptyList());
+        }
+
+        Hit(Path path, BasicFileAttributes attributes, int line, String text, List<String> before) {
+            this.path = path.toString();
+            this.directory = attributes.isDirectory();
+            this.size = attributes.size();
+            this.modified = attributes.lastModifiedTime().toMillis();
+            this.line = line;
+            this.text = text;
+            this.before = before;
+            this.after = new ArrayList<>();
+        }
+    }
+
+    static final class Summary {
+        final int hits;
+        final long filesScanned;
+        final int errors;
+        final boolean truncated;
+
+        Summary(int hits, long filesScanned, int errors, boolean truncated) {
+            this.hits = hits;
+            this.filesScanned = filesScanned;
+            this.errors = errors;
+            this.truncated = truncated;
+        }
+    }
+
+    static final long DEFAULT_MAX_GREP_FILE_SIZE = 64L * 1024 * 1024;
+
+    private static final int BATCH_SIZE = 64;
+    private static final long FLUSH_INTERVAL_MS = 100;
+    private static final int BINARY_PROBE_SIZE = 8192;
+    // Line text kept in a hit or as context
+    private static final int MAX_LINE_LENGTH = 1000;
+    // Longest piece of a line matched at once; longer lines are matched piece by piece
+    private static final int MAX_MATCH_LENGTH = 64 * 1024;
+
+    private static final ForkJoinPool WALKERS = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private final Criteria criteria;
+    private final int maxHits;
+    private final ExecutionEngine.Job job;
+    private final Listener listener;
+
+    private final AtomicLong filesScanned = new AtomicLong();
+    private final AtomicInteger errors = new AtomicInteger();
+    private volatile boolean stopped = false;
+
+    // Guarded by this
+    private List<Hit> batch = new ArrayList<>();
+    private int hits = 0;
+    private boolean truncated = false;
+    private long lastFlush = 0;
+
+    FileSearch(Criteria criteria, int maxHits, ExecutionEngine.Job job, Listener listener) {
+        this.criteria = criteria;
+        this.maxHits = maxHits;
+        this.job = job;
+        this.listener = listener;
+    }
+
+    /**
+     * Walks {@code root} (or scans it, when it is a single file) until done,
+     * cancelled or {@code maxHits} is reached
+     */
+    Summary run(Path root) throws IOException, InterruptedException {
+        BasicFileAttributes attributes = Files.readAttributes(root, BasicFileAttributes.class);
+        if (!attributes.isDirectory()) {
+            visit(root, attributes);
+            flush();
+            return summary();
+        }
+        if (criteria.maxDepth < 1) {
+            return summary();
+        }
+
+        Future<Void> walk = WALKERS.submit(new DirectoryTask(root, 1));
+        try {
+            while (true) {
+                try {
+                    walk.get(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    flushIfDue();
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } finally {
+            stopped = true;
+            walk.cancel(true);
+        }
+        job.throwIfCancelled();
+        flush();
+        return summary();
+    }
+
+    private final class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final int depth;
+
+        DirectoryTask(Path dir, int depth) {
+            this.dir = dir;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryTask> subtasks = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path entry : stream) {
+                    if (stopped || job.isCancelled()) {
+                        stopped = true;
+                        break;
+                    }
+                    if (!criteria.includeHidden && entry.getFileName().toString().startsWith(".")) {
+                        continue;
+                    }
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        errors.incrementAndGet();
+                        continue;
+                    }
+                    if (attributes.isDirectory() && depth < criteria.maxDepth) {
+                        DirectoryTask subtask = new DirectoryTask(entry, depth + 1);
+                        subtask.fork();
+                        subtasks.add(subtask);
+                    }
+                    visit(entry, attributes);
+                }
+            } catch (IOException e) {
+                // Unreadable directories are counted and skipped, as find does
+                errors.incrementAndGet();
+            }
+            for (DirectoryTask subtask : subtasks) {
+                subtask.join();
+            }
+        }
+    }
+
+    private void visit(Path path, BasicFileAttributes attributes) {
+        if (criteria.pattern != null) {
+            if (attributes.isRegularFile() && (criteria.name == null || criteria.name.matches(path.getFileName()))
+                    && attributes.size() <= criteria.maxFileSize) {
+                filesScanned.incrementAndGet();
+                try {
+                    grep(path, attributes);
+                } catch (IOException e) {
+                    errors.incrementAndGet();
+                }
+            }
+            return;
+        }
+
+        filesScanned.incrementAndGet();
+        if (matches(path, attributes)) {
+            add(new Hit(path, attributes));
+        }
+    }
+
+    private boolean matches(Path path, BasicFileAttributes attributes) {
+        if (criteria.directories != null && criteria.directories != attributes.isDirectory()) {
+            return false;
+        }
+        if (criteria.name != null && !criteria.name.matches(path.getFileName())) {
+            return false;
+        }
+        long size = attributes.size();
+        if ((criteria.minSize >= 0 && size < criteria.minSize) || (criteria.maxSize >= 0 && size > criteria.maxSize)) {
+            return false;
+        }
+        long modified = attributes.lastModifiedTime().toMillis();
+        return (criteria.modifiedAfter < 0 || modified > criteria.modifiedAfter)
+            && (criteria.modifiedBefore < 0 || modified < criteria.modifiedBefore);
+    }
+
+    /**
+     * Scans one file line by line, keeping the last {@code context} lines so
+     * a hit can carry what came before it and collecting the lines after it
+     * as they are read. A line is read at most MAX_MATCH_LENGTH chars at a
+     * time, so a minified or newline-free file never becomes one huge
+     * string; a match spanning two such pieces is missed.
+     */
+    private void grep(Path path, BasicFileAttributes attributes) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), 64 * 1024)) {
+            if (looksBinary(in)) {
+                return;
+            }
+            LineReader reader = new LineReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            Matcher matcher = criteria.pattern.matcher("");
+            ArrayDeque<String> before = new ArrayDeque<>();
+            List<Hit> awaitingContext = new ArrayList<>();
+            String piece;
+            String text = null;
+            int number = 0;
+            int pieces = 0;
+            boolean lineStart = true;
+            boolean lineHit = false;
+            while ((piece = reader.next()) != null && !stopped) {
+                if (lineStart) {
+                    number++;
+                    lineHit = false;
+                    text = piece.length() > MAX_LINE_LENGTH ? piece.substring(0, MAX_LINE_LENGTH) : piece;
+
+                    for (Iterator<Hit> it = awaitingContext.iterator(); it.hasNext(); ) {
+                        Hit hit = it.next();
+                        hit.after.add(text);
+                        if (hit.after.size() >= criteria.context) {
+                            it.remove();
+                            add(hit);
+                        }
+                    }
+                }
+
+                // One hit per line, however many of its pieces match
+                if (!lineHit && (lineStart || !piece.isEmpty()) && matcher.reset(piece).find()) {
+                    lineHit = true;
+                    String shown = lineStart ? text
+                        : piece.substring(matcher.start(), Math.min(piece.length(), matcher.start() + MAX_LINE_LENGTH));
+                    Hit hit = new Hit(path, attributes, number, shown, new ArrayList<>(before));
+                    if (criteria.context > 0) {
+                        awaitingContext.add(hit);
+                    } else {
+                        add(hit);
+                    }
+                }
+
+                lineStart = reader.lineEnded;
+                if (lineStart && criteria.context > 0) {
+                    if (before.size() == criteria.context) {
+                        before.removeFirst();
+                    }
+                    before.addLast(text);
+                }
+                if ((++pieces & 4095) == 0 && job.isCancelled()) {
+                    stopped = true;
+                }
+            }
+            for (Hit hit : awaitingContext) {
+                add(hit);
+            }
+        }
+    }
+
+    /**
+     * Splits text into lines like BufferedReader.readLine, ending them at
+     * \n, \r or \r\n, but hands a line longer than MAX_MATCH_LENGTH over
+     * in pieces of at most that many chars
+     */
+    private static final class LineReader {
+        private final Reader in;
+        private final char[] buffer = new char[8192];
+        private final StringBuilder piece = new StringBuilder();
+        private int position = 0;
+        private int limit = 0;
+        private boolean skipLf = false;
+        // Whether the last piece returned finished its line
+        boolean lineEnded = true;
+
+        LineReader(Reader in) {
+            this.in = in;
+        }
+
+        /**
+         * The next piece of text, or null at the end of the input
+         */
+        String next() throws IOException {
+            piece.setLength(0);
+            while (true) {
+                if (position == limit) {
+                    limit = in.read(buffer, 0, buffer.length);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        lineEnded = true;
+                        return piece.length() > 0 ? piece.toString() : null;
+                    }
+                }
+                char c = buffer[position++];
+                if (skipLf) {
+                    skipLf = false;
+                    if (c == '\n') {
+                        continue;
+                    }
+                }
+                if (c == '\n' || c == '\r') {
+                    skipLf = c == '\r';
+                    lineEnded = true;
+                    return piece.toString();
+                }
+                piece.append(c);
+                if (piece.length() == MAX_MATCH_LENGTH) {
+                    lineEnded = false;
+                    return piece.toString();
+                }
+            }
+        }
+    }
+
+    /**
+     * A NUL byte in the first few KB marks a file as binary, as grep does
+     */
+    private static boolean looksBinary(InputStream in) throws IOException {
+        in.mark(BINARY_PROBE_SIZE);
+        byte[] probe = new byte[BINARY_PROBE_SIZE];
+        int filled = 0;
+        int read;
+        while (filled < probe.length && (read = in.read(probe, filled, probe.length - filled)) != -1) {
+            filled += read;
+        }
+        in.reset();
+        for (int i = 0; i < filled; i++) {
+            if (probe[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void add(Hit hit) {
+        if (hits >= maxHits) {
+            truncated = true;
+            stopped = true;
+            return;
+        }
+        hits++;
+        batch.add(hit);
+        if (batch.size() >= BATCH_SIZE) {
+            flush();
+        } else {
+            flushIfDue();
+        }
+    }
+
+    private synchronized void flushIfDue() {
+        if (System.currentTimeMillis() - lastFlush >= FLUSH_INTERVAL_MS) {
+            flush();
+        }
+    }
+
+    private synchronized void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        lastFlush = System.currentTimeMillis();
+        List<Hit> ready = batch;
+        batch = new ArrayList<>();
+        listener.onHits(ready);
+    }
+
+    private synchronized Summary summary() {
+        return new Summary(hits, filesScanned.get(), errors.get(), truncated);
+    }
+}
@@ -0,0 +1,315 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copies and moves files and directory trees.
+ *
+ * File data goes through {@link FileChannel#transferTo} so the kernel moves
+ * the bytes without them passing through the Java heap; a direct buffer loop
+ * takes over if the channel pair refuses. Files whose size says nothing
+ * about their content, such as /proc and /sys entries, are read until EOF
+ * instead. Directory trees are copied file by file on a small worker pool;
+ * sockets, FIFOs and devices in them are skipped, as the app cannot recreate
+ * them and reading a FIFO could block forever. Moves try a rename first and
+ * fall back to copy and delete when the destination is on another filesystem.
+ */
+final class FileTransfer {
+
+    interface Progress {
+        void onProgress(long bytes, long totalBytes, int files, int totalFiles);
+    }
+
+    // Bytes per transferTo call, also the granularity of progress and cancellation checks
+    private static final long TRANSFER_SLICE = 8L * 1024 * 1024;
+    private static final int FALLBACK_BUFFER_SIZE = 1024 * 1024;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+    private static final int COPY_WORKERS = 4;
+
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(COPY_WORKERS, runnable -> {
+        Thread thread = new Thread(runnable, "NativeShell-copy");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // One fallback buffer per thread, allocated on first use
+    private static final ThreadLocal<ByteBuffer> BUFFERS =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(FALLBACK_BUFFER_SIZE));
+
+    private final ExecutionEngine.Job job;
+    private final Progress progress;
+    private final AtomicLong bytesDone = new AtomicLong();
+    private final AtomicInteger filesDone = new AtomicInteger();
+    private int skipped = 0;
+    private final AtomicLong lastReport = new AtomicLong(System.currentTimeMillis());
+    private volatile boolean reported = false;
+    private long totalBytes;
+    private int totalFiles;
+
+    FileTransfer(ExecutionEngine.Job job, Progress progress) {
+        this.job = job;
+        this.progress = progress;
+    }
+
+    long getBytes() {
+        return bytesDone.get();
+    }
+
+    int getFiles() {
+        return filesDone.get();
+    }
+
+    /**
+     * Special files left out of a tree copy
+     */
+    int getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Copies a file, or a directory tree when {@code source} is a directory
+     */
+    void copy(File source, File destination) throws IOException, InterruptedException {
+        Path src = source.toPath();
+        Path dst = destination.toPath();
+
+        if (!Files.isDirectory(src, LinkOption.NOFOLLOW_LINKS)) {
+            totalBytes = Files.size(src);
+            totalFiles = 1;
+            createParent(dst);
+            copyContents(src, dst);
+            finish();
+            return;
+        }
+
+        // Plan the whole tree first so progress has totals and the
+        // directories exist before workers start filling them
+        final List<Path[]> files = new ArrayList<>();
+        Files.walkFileTree(src, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(dst.resolve(src.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isOther()) {
+                    skipped++;
+                    return FileVisitResult.CONTINUE;
+                }
+                files.add(new Path[] { file, dst.resolve(src.relativize(file).toString()) });
+                if (attrs.isRegularFile()) {
+                    totalBytes += attrs.size();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        totalFiles = files.size();
+
+        List<Future<?>> pending = new ArrayList<>();
+        for (final Path[] pair : files) {
+            pending.add(WORKERS.submit(() -> {
+                copyEntry(pair[0], pair[1]);
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> future : pending) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } finally {
+            for (Future<?> future : pending) {
+                future.cancel(true);
+            }
+        }
+        copyDirectoryTimes(src, dst);
+        finish();
+    }
+
+    /**
+     * Renames when possible, otherwise copies and then deletes the source
+     *
+     * @return true if the move was done by a rename
+     */
+    boolean move(File source, File destination) throws IOException, InterruptedException {
+        createParent(destination.toPath());
+        if (source.renameTo(destination)) {
+            return true;
+        }
+        copy(source, destination);
+        deleteTree(source.toPath());
+        return false;
+    }
+
+    /**
+     * Copies one entry of a tree, recreating symlinks instead of following them
+     */
+    private void copyEntry(Path src, Path dst) throws IOException, InterruptedException {
+        if (Files.isSymbolicLink(src)) {
+            job.throwIfCancelled();
+            Files.deleteIfExists(dst);
+            Files.createSymbolicLink(dst, Files.readSymbolicLink(src));
+            filesDone.incrementAndGet();
+            return;
+        }
+        copyContents(src, dst);
+    }
+
+    private void copyContents(Path src, Path dst) throws IOException, InterruptedException {
+        job.throwIfCancelled();
+        try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(dst, StandardOpenOption.WRITE,
+                 StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            if (!Files.isRegularFile(src) || (size == 0 && isPseudoFile(src))) {
+                // Pseudo-files report no size, pipes and devices none that counts
+                copyUntilEof(in, out);
+            } else if (size > 0) {
+                copySized(in, out, size);
+            }
+        }
+
+        Files.setLastModifiedTime(dst, Files.getLastModifiedTime(src));
+        if (Files.isExecutable(src)) {
+            dst.toFile().setExecutable(true, false);
+        }
+        filesDone.incrementAndGet();
+        report(false);
+    }
+
+    private void copySized(FileChannel in, FileChannel out, long size) throws IOException, InterruptedException {
+        long position = 0;
+        while (position < size) {
+            job.throwIfCancelled();
+            long moved = in.transferTo(position, Math.min(TRANSFER_SLICE, size - position), out);
+            if (moved <= 0) {
+                copyBuffered(in, out, position, size);
+                return;
+            }
+            position += moved;
+            bytesDone.addAndGet(moved);
+            report(false);
+        }
+    }
+
+    private void copyBuffered(FileChannel in, FileChannel out, long position, long size)
+            throws IOException, InterruptedException {
+        ByteBuffer buffer = BUFFERS.get();
+        out.position(position);
+        while (position < size) {
+            job.throwIfCancelled();
+            buffer.clear();
+            int read = in.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            position += read;
+            bytesDone.addAndGet(read);
+            report(false);
+        }
+    }
+
+    private void copyUntilEof(FileChannel in, FileChannel out) throws IOException, InterruptedException {
+        ByteBuffer buffer = BUFFERS.get();
+        buffer.clear();
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            job.throwIfCancelled();
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            buffer.clear();
+            bytesDone.addAndGet(read);
+            report(false);
+        }
+    }
+
+    /**
+     * Whether an empty regular file lives on procfs or sysfs, where the size
+     * is always 0 and only reading tells what is there. The path is
+     * resolved so links into them, like /etc/mtab, count too.
+     */
+    private static boolean isPseudoFile(Path src) throws IOException {
+        Path real = src.toRealPath();
+        return real.startsWith("/proc") || real.startsWith("/sys");
+    }
+
+    private void copyDirectoryTimes(Path src, Path dst) throws IOException {
+        Files.walkFileTree(src, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.setLastModifiedTime(dst.resolve(src.relativize(dir).toString()),
+                    Files.getLastModifiedTime(dir));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void deleteTree(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void createParent(Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+    }
+
+    /**
+     * Reports progress at most every PROGRESS_INTERVAL_MS, so transfers that
+     * finish quicker than that never report at all
+     */
+    private void report(boolean force) {
+        long now = System.currentTimeMillis();
+        long last = lastReport.get();
+        if (force || (now - last >= PROGRESS_INTERVAL_MS && lastReport.compareAndSet(last, now))) {
+            reported = true;
+            progress.onProgress(bytesDone.get(), totalBytes, filesDone.get(), totalFiles);
+        }
+    }
+
+    private void finish() {
+        if (reported) {
+            report(true);
+        }
+    }
+}
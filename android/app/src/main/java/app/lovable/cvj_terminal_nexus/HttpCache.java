@@ -0,0 +1,697 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-bounded LRU cache of HTTP responses on disk.
+ *
+ * Each entry is one file named after the SHA-256 of its URL: a header block
+ * with the status, response headers, the request header values named by
+ * Vary and the freshness deadline, followed by the decoded body. Entries are
+ * written to a temp file while the body streams in and renamed into place
+ * once it is complete, so a partial body is never served. A reader that has
+ * an entry open keeps its snapshot even if the entry is replaced or evicted
+ * meanwhile. Access order survives restarts through the files' mtimes.
+ */
+final class HttpCache {
+
+    /**
+     * A stored response, opened at its body. Must be closed.
+     */
+    static final class Entry implements Closeable {
+        final String url;
+        final int status;
+        final String message;
+        final Map<String, List<String>> headers;
+        final long storedAt;
+        final long freshUntil;
+        final long bodyLength;
+        final InputStream body;
+        private final Map<String, String> vary;
+
+        private Entry(String url, int status, String message, Map<String, List<String>> headers,
+                      Map<String, String> vary, long storedAt, long freshUntil, long bodyLength, InputStream body) {
+            this.url = url;
+            this.status = status;
+            this.message = message;
+            this.headers = headers;
+            this.vary = vary;
+            this.storedAt = storedAt;
+            this.freshUntil = freshUntil;
+            this.bodyLength = bodyLength;
+            this.body = body;
+        }
+
+        boolean isFresh(long now) {
+            return now < freshUntil;
+        }
+
+        String header(String name) {
+            List<String> values = headers.get(name);
+            return values == null || values.isEmpty() ? null : values.get(0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            body.close();
+        }
+    }
+
+    static final class Stats {
+        final int entries;
+        final long bytes;
+        final long maxBytes;
+        final long hits;
+        final long revalidated;
+        final long misses;
+
+        Stats(int entries, long bytes, long maxBytes, long hits, long revalidated, long misses) {
+            this.entries = entries;
+            this.bytes = bytes;
+            this.maxBytes = maxBytes;
+            this.hits = hits;
+            this.revalidated = revalidated;
+            this.misses = misses;
+        }
+    }
+
+    private static final int ENTRY_MAGIC = 0x43564a48;
+    private static final int ENTRY_VERSION = 1;
+    // Magic, version and header block length
+    private static final int PREAMBLE_SIZE = 12;
+    private static final String ENTRY_SUFFIX = ".entry";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Temp files untouched this long belong to no running request
+    private static final long STALE_TEMP_MS = 10 * 60 * 1000;
+    // Freshness guessed from Last-Modified is a tenth of the document's age, at most a day
+    private static final long MAX_HEURISTIC_FRESHNESS_MS = 24L * 60 * 60 * 1000;
+    // Hop-by-hop and per-message headers that make no sense replayed from disk
+    private static final List<String> UNSTORED_HEADERS = Arrays.asList(
+        "connection", "keep-alive", "transfer-encoding", "content-encoding", "content-length",
+        "set-cookie", "proxy-authenticate", "trailer", "upgrade");
+
+    private final File directory;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final AtomicLong tempCounter = new AtomicLong();
+
+    // Entry key to file size, access-ordered, guarded by this
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes = 0;
+    private long hits = 0;
+    private long revalidated = 0;
+    private long misses = 0;
+
+    /**
+     * @param maxBytes total size of all entries; a single entry may use an eighth of it
+     */
+    HttpCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxBytes / 8;
+    }
+
+    static String key(String url) {
+        return Digests.hex(Digests.sha256().digest(url.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Rebuilds the LRU order from the entries on disk, oldest access first,
+     * and removes temp files left behind by interrupted writes
+     */
+    void restore() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<File> entries = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().endsWith(ENTRY_SUFFIX)) {
+                entries.add(file);
+            } else if (file.getName().endsWith(TEMP_SUFFIX)
+                    && System.currentTimeMillis() - file.lastModified() > STALE_TEMP_MS) {
+                file.delete();
+            }
+        }
+        Collections.sort(entries, Comparator.comparingLong(File::lastModified));
+        synchronized (this) {
+            for (File file : entries) {
+                String name = file.getName();
+                put(name.substring(0, name.length() - ENTRY_SUFFIX.length()), file.length());
+            }
+            evict(null);
+        }
+    }
+
+    /**
+     * Opens the stored response for {@code url}, or returns null if there is
+     * none or it was stored for different values of the headers it varies on
+     *
+     * @param requestHeaders the headers of the request about to be made
+     */
+    Entry lookup(String url, Map<String, String> requestHeaders) {
+        String key = key(url);
+        File file = entryFile(key);
+        FileInputStream in;
+        try {
+            in = new FileInputStream(file);
+        } catch (IOException e) {
+            return null;
+        }
+        try {
+            DataInputStream data = new DataInputStream(in);
+            if (data.readInt() != ENTRY_MAGIC || data.readInt() != ENTRY_VERSION) {
+                throw new IOException("Not a cache entry");
+            }
+            int headerLength = data.readInt();
+            byte[] block = new byte[headerLength];
+            data.readFully(block);
+            Entry entry = readHeader(block, in, in.getChannel().size() - PREAMBLE_SIZE - headerLength);
+            if (!entry.url.equals(url) || !varyMatches(entry.vary, requestHeaders)) {
+                in.close();
+                return null;
+            }
+            touch(key, file);
+            return entry;
+        } catch (IOException | RuntimeException e) {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // Nothing to release
+            }
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Starts storing a response whose body is about to be read, or returns
+     * null when it may not or need not be stored
+     */
+    Pending store(String url, int status, String message, Map<String, List<String>> headers,
+                 Map<String, String> requestHeaders, long contentLength) {
+        long now = System.currentTimeMillis();
+        if (status != 200 || contentLength > maxEntryBytes
+                || hasDirective(requestHeaders.get("Cache-Control"), "no-store")) {
+            return null;
+        }
+        Map<String, List<String>> stored = storedHeaders(headers);
+        long freshUntil = freshUntil(stored, now);
+        boolean validators = stored.containsKey("ETag") || stored.containsKey("Last-Modified");
+        if (freshUntil < 0 || (freshUntil <= now && !validators)) {
+            return null;
+        }
+        Map<String, String> vary = varyValues(stored, requestHeaders);
+        if (vary == null) {
+            return null;
+        }
+
+        String key = key(url);
+        File temp = new File(directory, key + "-" + tempCounter.incrementAndGet() + TEMP_SUFFIX);
+        try {
+            directory.mkdirs();
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                writeHeader(out, url, status, message, stored, vary, now, freshUntil);
+            } catch (IOException e) {
+                out.close();
+                throw e;
+            }
+            return new Pending(key, temp, out);
+        } catch (IOException e) {
+            // Long URLs or a full disk only mean the response is not cached
+            temp.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Records a 304 for {@code entry}: the headers it carried replace the
+     * stored ones and freshness starts over. The stored body is copied into
+     * the updated entry.
+     *
+     * @return the merged headers
+     */
+    Map<String, List<String>> refresh(Entry entry, Map<String, List<String>> notModified,
+                                      Map<String, String> requestHeaders) {
+        synchronized (this) {
+            revalidated++;
+        }
+        Map<String, List<String>> merged = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        merged.putAll(entry.headers);
+        merged.putAll(storedHeaders(notModified));
+        long now = System.currentTimeMillis();
+        long freshUntil = freshUntil(merged, now);
+        Map<String, String> vary = varyValues(merged, requestHeaders);
+        if (freshUntil < 0 || vary == null) {
+            remove(key(entry.url));
+            return merged;
+        }
+
+        String key = key(entry.url);
+        File temp = new File(directory, key + "-" + tempCounter.incrementAndGet() + TEMP_SUFFIX);
+        try (FileChannel source = FileChannel.open(entryFile(key).toPath());
+             FileOutputStream out = new FileOutputStream(temp)) {
+            long offset = source.size() - entry.bodyLength;
+            writeHeader(out, entry.url, entry.status, entry.message, merged, vary, now, freshUntil);
+            FileChannel target = out.getChannel();
+            for (long copied = 0; copied < entry.bodyLength; ) {
+                copied += source.transferTo(offset + copied, entry.bodyLength - copied, target);
+            }
+        } catch (IOException e) {
+            // The old entry stays; it is just revalidated again next time
+            temp.delete();
+            return merged;
+        }
+        commit(key, temp);
+        return merged;
+    }
+
+    /**
+     * Drops the entry for {@code url}, e.g. after a request that changed it
+     */
+    void invalidate(String url) {
+        remove(key(url));
+    }
+
+    synchronized void hit() {
+        hits++;
+    }
+
+    synchronized void miss() {
+        misses++;
+    }
+
+    synchronized Stats stats() {
+        return new Stats(index.size(), totalBytes, maxBytes, hits, revalidated, misses);
+    }
+
+    /**
+     * Deletes every entry
+     *
+     * @return what was removed
+     */
+    synchronized Stats clear() {
+        Stats before = stats();
+        for (String key : index.keySet()) {
+            entryFile(key).delete();
+        }
+        index.clear();
+        totalBytes = 0;
+        return before;
+    }
+
+    /**
+     * A response body on its way into the cache
+     */
+    final class Pending {
+        private final String key;
+        private final File temp;
+        private final BufferedOutputStream out;
+        private long written = 0;
+        private boolean done = false;
+
+        private Pending(String key, File temp, FileOutputStream out) {
+            this.key = key;
+            this.temp = temp;
+            this.out = new BufferedOutputStream(out, 64 * 1024);
+        }
+
+        /**
+         * Passes {@code body} through, copying what is read into the entry.
+         * The entry is committed when the body is read to its end and
+         * discarded if it is closed early or fails.
+         */
+        InputStream tee(InputStream body) {
+            return new FilterInputStream(body) {
+                @Override
+                public int read() throws IOException {
+                    byte[] one = new byte[1];
+                    int read = read(one, 0, 1);
+                    return read < 0 ? -1 : one[0] & 0xff;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int read;
+                    try {
+                        read = in.read(buffer, offset, length);
+                    } catch (IOException e) {
+                        abort();
+                        throw e;
+                    }
+                    if (read < 0) {
+                        finish();
+                    } else {
+                        append(buffer, offset, read);
+                    }
+                    return read;
+                }
+
+                @Override
+                public long skip(long n) throws IOException {
+                    abort();
+                    return in.skip(n);
+                }
+
+                @Override
+                public boolean markSupported() {
+                    return false;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    abort();
+                    in.close();
+                }
+            };
+        }
+
+        private void append(byte[] buffer, int offset, int length) {
+            if (done) {
+                return;
+            }
+            written += length;
+            if (written > maxEntryBytes) {
+                abort();
+                return;
+            }
+            try {
+                out.write(buffer, offset, length);
+            } catch (IOException e) {
+                abort();
+            }
+        }
+
+        private void finish() {
+            if (done) {
+                return;
+            }
+            done = true;
+            try {
+                out.close();
+            } catch (IOException e) {
+                temp.delete();
+                return;
+            }
+            commit(key, temp);
+        }
+
+        private void abort() {
+            if (done) {
+                return;
+            }
+            done = true;
+            try {
+                out.close();
+            } catch (IOException e) {
+                // Deleted either way
+            }
+            temp.delete();
+        }
+    }
+
+    /**
+     * Deadline until which a response may be served without asking the
+     * server; -1 if it must not be stored at all
+     */
+    static long freshUntil(Map<String, List<String>> headers, long now) {
+        String cacheControl = joined(headers.get("Cache-Control"));
+        if (hasDirective(cacheControl, "no-store")) {
+            return -1;
+        }
+        if (hasDirective(cacheControl, "no-cache")) {
+            return now;
+        }
+        long maxAge = directiveSeconds(cacheControl, "max-age");
+        if (maxAge >= 0) {
+            return now + Math.max(0, maxAge - Math.max(0, seconds(first(headers.get("Age"))))) * 1000;
+        }
+        long date = parseDate(first(headers.get("Date")));
+        if (headers.containsKey("Expires")) {
+            // An unparseable Expires, such as "0", means already expired
+            long expires = parseDate(first(headers.get("Expires")));
+            return expires < 0 ? now : now + Math.max(0, expires - (date >= 0 ? date : now));
+        }
+        long lastModified = parseDate(first(headers.get("Last-Modified")));
+        if (lastModified >= 0) {
+            long documentAge = (date >= 0 ? date : now) - lastModified;
+            return now + Math.max(0, Math.min(documentAge / 10, MAX_HEURISTIC_FRESHNESS_MS));
+        }
+        return now;
+    }
+
+    private static Map<String, List<String>> storedHeaders(Map<String, List<String>> headers) {
+        Map<String, List<String>> stored = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey() != null && !UNSTORED_HEADERS.contains(header.getKey().toLowerCase(Locale.US))) {
+                stored.put(header.getKey(), header.getValue());
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Request header values the response varies on, or null for "Vary: *".
+     * Accept-Encoding is left out since bodies are stored decoded.
+     */
+    private static Map<String, String> varyValues(Map<String, List<String>> headers,
+                                                  Map<String, String> requestHeaders) {
+        Map<String, String> vary = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        List<String> values = headers.get("Vary");
+        if (values == null) {
+            return vary;
+        }
+        for (String value : values) {
+            for (String name : value.split(",")) {
+                String field = name.trim();
+                if (field.equals("*")) {
+                    return null;
+                }
+                if (!field.isEmpty() && !field.equalsIgnoreCase("Accept-Encoding")) {
+                    String requested = requestHeaders.get(field);
+                    vary.put(field, requested == null ? "" : requested);
+                }
+            }
+        }
+        return vary;
+    }
+
+    private static boolean varyMatches(Map<String, String> vary, Map<String, String> requestHeaders) {
+        for (Map.Entry<String, String> field : vary.entrySet()) {
+            String requested = requestHeaders.get(field.getKey());
+            if (!field.getValue().equals(requested == null ? "" : requested)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeHeader(FileOutputStream file, String url, int status, String message,
+                                    Map<String, List<String>> headers, Map<String, String> vary,
+                                    long storedAt, long freshUntil) throws IOException {
+        ByteArrayOutputStream block = new ByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(block);
+        out.writeUTF(url);
+        out.writeInt(status);
+        out.writeUTF(message == null ? "" : message);
+        out.writeLong(storedAt);
+        out.writeLong(freshUntil);
+        int count = 0;
+        for (List<String> values : headers.values()) {
+            count += values.size();
+        }
+        out.writeInt(count);
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            for (String value : header.getValue()) {
+                out.writeUTF(header.getKey());
+                out.writeUTF(value == null ? "" : value);
+            }
+        }
+        out.writeInt(vary.size());
+        for (Map.Entry<String, String> field : vary.entrySet()) {
+            out.writeUTF(field.getKey());
+            out.writeUTF(field.getValue());
+        }
+        out.flush();
+
+        DataOutputStream preamble = new DataOutputStream(file);
+        preamble.writeInt(ENTRY_MAGIC);
+        preamble.writeInt(ENTRY_VERSION);
+        preamble.writeInt(block.size());
+        block.writeTo(file);
+    }
+
+    private static Entry readHeader(byte[] block, FileInputStream body, long bodyLength) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(block));
+        String url = in.readUTF();
+        int status = in.readInt();
+        String message = in.readUTF();
+        long storedAt = in.readLong();
+        long freshUntil = in.readLong();
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = in.readInt(); i > 0; i--) {
+            String name = in.readUTF();
+            String value = in.readUTF();
+            List<String> values = headers.get(name);
+            if (values == null) {
+                values = new ArrayList<>(1);
+                headers.put(name, values);
+            }
+            values.add(value);
+        }
+        Map<String, String> vary = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = in.readInt(); i > 0; i--) {
+            vary.put(in.readUTF(), in.readUTF());
+        }
+        return new Entry(url, status, message, headers, vary, storedAt, freshUntil, bodyLength, body);
+    }
+
+    private void commit(String key, File temp) {
+        File file = entryFile(key);
+        synchronized (this) {
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                temp.delete();
+                return;
+            }
+            put(key, file.length());
+            evict(key);
+        }
+    }
+
+    private synchronized void touch(String key, File file) {
+        if (index.get(key) != null) {
+            file.setLastModified(System.currentTimeMillis());
+        }
+    }
+
+    private synchronized void remove(String key) {
+        Long size = index.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        entryFile(key).delete();
+    }
+
+    // Guarded by this
+    private void put(String key, long size) {
+        Long previous = index.put(key, size);
+        totalBytes += size - (previous == null ? 0 : previous);
+    }
+
+    // Guarded by this; never evicts {@code keep}, the entry just written
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            if (eldest.getKey().equals(keep)) {
+                continue;
+            }
+            it.remove();
+            totalBytes -= eldest.getValue();
+            entryFile(eldest.getKey()).delete();
+        }
+    }
+
+    private File entryFile(String key) {
+        return new File(directory, key + ENTRY_SUFFIX);
+    }
+
+    private static boolean hasDirective(String cacheControl, String directive) {
+        return directiveIndex(cacheControl, directive) >= 0;
+    }
+
+    /**
+     * Value of a "name=seconds" directive, -1 if absent or malformed
+     */
+    private static long directiveSeconds(String cacheControl, String directive) {
+        int at = directiveIndex(cacheControl, directive);
+        if (at < 0) {
+            return -1;
+        }
+        int start = at + directive.length();
+        if (start >= cacheControl.length() || cacheControl.charAt(start) != '=') {
+            return -1;
+        }
+        int end = start + 1;
+        while (end < cacheControl.length() && Character.isDigit(cacheControl.charAt(end))) {
+            end++;
+        }
+        return seconds(cacheControl.substring(start + 1, end));
+    }
+
+    private static long seconds(String value) {
+        try {
+            return value == null ? -1 : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int directiveIndex(String cacheControl, String directive) {
+        if (cacheControl == null) {
+            return -1;
+        }
+        String lower = cacheControl.toLowerCase(Locale.US);
+        for (int at = lower.indexOf(directive); at >= 0; at = lower.indexOf(directive, at + 1)) {
+            boolean startsToken = at == 0 || lower.charAt(at - 1) == ',' || lower.charAt(at - 1) == ' ';
+            int end = at + directive.length();
+            boolean endsName = end == lower.length() || lower.charAt(end) == '=' || lower.charAt(end) == ','
+                || lower.charAt(end) == ' ';
+            if (startsToken && endsName) {
+                return at;
+            }
+        }
+        return -1;
+    }
+
+    private static long parseDate(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private static String first(List<String> values) {
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    private static String joined(List<String> values) {
+        return values == null ? null : String.join(",", values);
+    }
+}
@@ -0,0 +1,251 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Makes HTTP requests over kept-alive connections, answering GETs from an
+ * {@link HttpCache} where it can.
+ *
+ * HttpURLConnection already pools idle connections per host, but it only
+ * reuses one when the previous response was read and closed rather than
+ * disconnected. Requests here always finish that way unless they fail or
+ * are cancelled. At most {@link #MAX_PER_HOST} run against one host at a
+ * time, so a burst of calls to the same server waits for its warm
+ * connections instead of paying a TLS handshake for each.
+ *
+ * A cached entry that is still fresh is served without touching the
+ * network. A stale one with an ETag or Last-Modified is revalidated with a
+ * conditional request, and a 304 serves the stored body. gzip bodies are
+ * decoded here and copied into the cache while the caller streams them.
+ */
+final class HttpClient {
+
+    enum CacheMode {
+        // Fresh entries are served as is, stale ones revalidated
+        DEFAULT,
+        // Entries are always revalidated
+        NO_CACHE,
+        // The network is always used, and the response stored
+        RELOAD,
+        // The cache is neither read nor written
+        NO_STORE,
+        // Any entry is served, however stale
+        FORCE_CACHE
+    }
+
+    static final String HIT = "hit";
+    static final String REVALIDATED = "revalidated";
+    static final String MISS = "miss";
+    static final String BYPASS = "bypass";
+
+    static final class Request {
+        final URL url;
+        String method = "GET";
+        // Case-insensitive, as the cache matches Vary against them
+        final Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        byte[] body;
+        CacheMode cache = CacheMode.DEFAULT;
+        int timeoutMs = DEFAULT_TIMEOUT_MS;
+
+        Request(URL url) {
+            this.url = url;
+        }
+    }
+
+    static final class Response {
+        final int status;
+        final String message;
+        // Final URL after redirects
+        final URL url;
+        final Map<String, List<String>> headers;
+        // HIT, REVALIDATED, MISS or BYPASS
+        final String cache;
+        // Length of the body as the reader sees it, -1 if unknown
+        final long contentLength;
+
+        Response(int status, String message, URL url, Map<String, List<String>> headers, String cache,
+                 long contentLength) {
+            this.status = status;
+            this.message = message;
+            this.url = url;
+            this.headers = headers;
+            this.cache = cache;
+            this.contentLength = contentLength;
+        }
+    }
+
+    /**
+     * Consumes a response body. Reading it to the end lets both the
+     * connection and the cache entry be reused.
+     */
+    interface BodyReader<T> {
+        T read(Response response, InputStream body) throws IOException, InterruptedException;
+    }
+
+    static final int MAX_PER_HOST = 5;
+    static final int DEFAULT_TIMEOUT_MS = 30000;
+
+    private final HttpCache cache;
+    private final Map<String, Semaphore> hostSlots = new ConcurrentHashMap<>();
+
+    HttpClient(HttpCache cache) {
+        this.cache = cache;
+    }
+
+    <T> T execute(Request request, ExecutionEngine.Job job, BodyReader<T> reader)
+            throws IOException, InterruptedException {
+        String url = request.url.toString();
+        boolean cached = "GET".equals(request.method) && request.cache != CacheMode.NO_STORE;
+        HttpCache.Entry entry = cached && request.cache != CacheMode.RELOAD
+            ? cache.lookup(url, request.headers) : null;
+        try {
+            if (entry != null && (request.cache == CacheMode.FORCE_CACHE
+                    || (request.cache == CacheMode.DEFAULT && entry.isFresh(System.currentTimeMillis())))) {
+                cache.hit();
+                return reader.read(new Response(entry.status, entry.message, request.url, entry.headers, HIT,
+                    entry.bodyLength), entry.body);
+            }
+
+            Semaphore slot = hostSlots.computeIfAbsent(
+                request.url.getProtocol() + "://" + request.url.getHost() + ":" + request.url.getPort(),
+                host -> new Semaphore(MAX_PER_HOST, true));
+            slot.acquire();
+            HttpURLConnection connection = null;
+            boolean reusable = false;
+            try {
+                connection = (HttpURLConnection) request.url.openConnection();
+                HttpURLConnection opened = connection;
+                job.onCancel(opened::disconnect);
+                job.throwIfCancelled();
+                boolean conditional = configure(connection, request, entry);
+                if (request.body != null) {
+                    connection.setDoOutput(true);
+                    connection.setFixedLengthStreamingMode(request.body.length);
+                    try (OutputStream out = connection.getOutputStream()) {
+                        out.write(request.body);
+                    }
+                }
+
+                int status = connection.getResponseCode();
+                Map<String, List<String>> headers = headersOf(connection);
+                if (status == HttpURLConnection.HTTP_NOT_MODIFIED && conditional) {
+                    drain(connection.getInputStream());
+                    reusable = true;
+                    Map<String, List<String>> merged = cache.refresh(entry, headers, request.headers);
+                    return reader.read(new Response(entry.status, entry.message, connection.getURL(), merged,
+                        REVALIDATED, entry.bodyLength), entry.body);
+                }
+                if (entry != null) {
+                    entry.close();
+                    entry = null;
+                }
+                if (!"GET".equals(request.method) && !"HEAD".equals(request.method) && status < 400) {
+                    // Whatever the server holds for this URL has probably changed
+                    cache.invalidate(url);
+                }
+
+                InputStream raw = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+                InputStream body = raw != null ? raw : new ByteArrayInputStream(new byte[0]);
+                long length = connection.getContentLengthLong();
+                if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+                    body = new GZIPInputStream(body, 64 * 1024);
+                    length = -1;
+                    headers.remove("Content-Encoding");
+                    headers.remove("Content-Length");
+                }
+                HttpCache.Pending pending = null;
+                if (cached) {
+                    cache.miss();
+                    pending = cache.store(url, status, connection.getResponseMessage(), headers, request.headers, length);
+                }
+                Response response = new Response(status, connection.getResponseMessage(), connection.getURL(),
+                    headers, cached ? MISS : BYPASS, length);
+                try (InputStream in = pending != null ? pending.tee(body) : body) {
+                    T result = reader.read(response, in);
+                    reusable = true;
+                    return result;
+                }
+            } catch (IOException e) {
+                // A read failing because the connection was dropped is a cancellation
+                job.throwIfCancelled();
+                throw e;
+            } finally {
+                if (connection != null && !reusable) {
+                    connection.disconnect();
+                }
+                slot.release();
+            }
+        } finally {
+            if (entry != null) {
+                entry.close();
+            }
+        }
+    }
+
+    /**
+     * Sets up the connection, adding validators from {@code entry} unless the
+     * caller sent conditional headers of its own
+     *
+     * @return whether the request was made conditional on the entry
+     */
+    private static boolean configure(HttpURLConnection connection, Request request, HttpCache.Entry entry)
+            throws IOException {
+        connection.setRequestMethod(request.method);
+        connection.setConnectTimeout(request.timeoutMs);
+        connection.setReadTimeout(request.timeoutMs);
+        connection.setUseCaches(false);
+        for (Map.Entry<String, String> header : request.headers.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        // Set explicitly, so the body is decoded here on every platform
+        if (!request.headers.containsKey("Accept-Encoding")) {
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+        }
+
+        if (entry == null || request.headers.containsKey("If-None-Match")
+                || request.headers.containsKey("If-Modified-Since")) {
+            return false;
+        }
+        String etag = entry.header("ETag");
+        String lastModified = entry.header("Last-Modified");
+        if (etag != null) {
+            connection.setRequestProperty("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            connection.setRequestProperty("If-Modified-Since", lastModified);
+        }
+        return etag != null || lastModified != null;
+    }
+
+    private static Map<String, List<String>> headersOf(HttpURLConnection connection) {
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            // The null key holds the status line
+            if (header.getKey() != null && !header.getKey().toLowerCase(Locale.US).startsWith("x-android-")) {
+                headers.put(header.getKey(), header.getValue());
+            }
+        }
+        return headers;
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        try (InputStream body = in) {
+            byte[] buffer = new byte[8192];
+            while (body.read(buffer) != -1) {
+                // Discarded; an empty 304 body frees the connection for reuse
+            }
+        }
+    }
+}
@@ -0,0 +1,605 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Persistent queue of package installs run through the root shell pool.
+ *
+ * Requests for the same package manager are drained together: everything
+ * queued when a run starts goes into one install invocation, so the manager
+ * resolves dependencies across the whole set in one transaction, and the
+ * repository index is refreshed at most once per TTL instead of once per
+ * package. If a merged run fails, each request is retried on its own so one
+ * bad name does not fail the others. Different managers drain in parallel;
+ * runs of the same manager never overlap since they share its lock.
+ *
+ * Queued requests and refresh times are saved after every change and picked
+ * up again by {@link #restore()}, so installs survive an app restart. A run
+ * cut short by the restart is simply run again, which package managers
+ * treat as a no-op for what is already installed.
+ */
+final class InstallQueue {
+
+    interface Listener {
+        /**
+         * A request, or one of its packages when {@code packageName} is not
+         * null, reached {@code stage}
+         */
+        void onProgress(Request request, String packageName, String stage);
+
+        /**
+         * A request finished; {@code result} is null when it never got to run
+         */
+        void onFinished(Request request, ProcessIo.Result result, String error);
+    }
+
+    static final String STAGE_QUEUED = "queued";
+    static final String STAGE_REFRESHING = "refreshing";
+    static final String STAGE_INSTALLING = "installing";
+    static final String STAGE_DOWNLOADING = "downloading";
+    static final String STAGE_UNPACKING = "unpacking";
+    static final String STAGE_CONFIGURING = "configuring";
+    static final String STAGE_INSTALLED = "installed";
+    static final String STAGE_FAILED = "failed";
+
+    /**
+     * How one package manager is driven and how its output maps to stages
+     */
+    static final class Manager {
+        final String name;
+        final String install;
+        // Null when the install command refreshes stale indexes by itself
+        final String refresh;
+        private final Pattern[] patterns;
+        private final String[] stages;
+
+        private Manager(String name, String install, String refresh, Pattern[] patterns, String[] stages) {
+            this.name = name;
+            this.install = install;
+            this.refresh = refresh;
+            this.patterns = patterns;
+            this.stages = stages;
+        }
+
+        /**
+         * Manager for an installPackage "source"; unknown sources get pkg
+         */
+        static Manager forSource(String source) {
+            switch (source) {
+                case "apt":
+                case "ubuntu":
+                case "debian":
+                case "apt-get":
+                    return APT;
+                case "pacman":
+                case "arch":
+                    return PACMAN;
+                case "yum":
+                case "rpm":
+                    return YUM;
+                default:
+                    return PKG;
+            }
+        }
+
+        static Manager named(String name) {
+            for (Manager manager : new Manager[] { APT, PACMAN, YUM, PKG }) {
+                if (manager.name.equals(name)) {
+                    return manager;
+                }
+            }
+            return null;
+        }
+
+        String installCommand(Iterable<String> packages) {
+            StringBuilder command = new StringBuilder(install);
+            for (String name : packages) {
+                command.append(' ').append(name);
+            }
+            return command.toString();
+        }
+
+        /**
+         * Stage of the package an output line is about, as {package, stage},
+         * or null when the line is not a progress line
+         */
+        String[] match(String line) {
+            for (int i = 0; i < patterns.length; i++) {
+                Matcher matcher = patterns[i].matcher(line);
+                if (matcher.find()) {
+                    return new String[] { matcher.group(1), stages[i] };
+                }
+            }
+            return null;
+        }
+    }
+
+    // "Get:3 http://deb.debian.org/debian bookworm/main arm64 nmap arm64 7.93 [1895 kB]",
+    // "Unpacking nmap (7.93) ...", "Setting up nmap:arm64 (7.93) ..."
+    private static final Pattern[] APT_PATTERNS = {
+        Pattern.compile("^Get:\\d+ \\S+ \\S+ \\S+ ([^\\s:]+)"),
+        Pattern.compile("^Unpacking ([^\\s:]+)"),
+        Pattern.compile("^Setting up ([^\\s:]+)")
+    };
+    private static final String[] APT_STAGES = { STAGE_DOWNLOADING, STAGE_UNPACKING, STAGE_CONFIGURING };
+
+    static final Manager APT = new Manager("apt-get", "apt-get install -y", "apt-get update",
+        APT_PATTERNS, APT_STAGES);
+    static final Manager PKG = new Manager("pkg", "pkg install -y", null, APT_PATTERNS, APT_STAGES);
+    static final Manager PACMAN = new Manager("pacman", "pacman -S --noconfirm --needed", "pacman -Sy --noconfirm",
+        new Pattern[] { Pattern.compile("^\\s*\\(\\s*\\d+/\\d+\\) installing (\\S+)") },
+        new String[] { STAGE_UNPACKING });
+    static final Manager YUM = new Manager("yum", "yum install -y", "yum makecache -y",
+        new Pattern[] { Pattern.compile("^\\s*Installing\\s*:\\s*(\\S+?)-\\d") },
+        new String[] { STAGE_UNPACKING });
+
+    static final class Request {
+        final String id;
+        final Manager manager;
+        final List<String> packages;
+        final long queuedAt;
+        // Oldest repository index this request accepts, 0 to always refresh
+        final long refreshMaxAgeMs;
+        private final Map<String, String> stages = new LinkedHashMap<>();
+        private volatile String stage = STAGE_QUEUED;
+
+        Request(String id, Manager manager, List<String> packages, long queuedAt, long refreshMaxAgeMs) {
+            this.id = id;
+            this.manager = manager;
+            this.packages = Collections.unmodifiableList(packages);
+            this.queuedAt = queuedAt;
+            this.refreshMaxAgeMs = refreshMaxAgeMs;
+            for (String name : packages) {
+                stages.put(name, STAGE_QUEUED);
+            }
+        }
+
+        String stage() {
+            return stage;
+        }
+
+        /**
+         * Last stage reached by each package, in request order
+         */
+        synchronized Map<String, String> packageStages() {
+            return new LinkedHashMap<>(stages);
+        }
+
+        private synchronized boolean advance(String name, String next) {
+            String previous = stages.get(name);
+            if (previous == null || previous.equals(next)) {
+                return false;
+            }
+            stages.put(name, next);
+            return true;
+        }
+    }
+
+    static final Pattern PACKAGE_NAME = Pattern.compile("^[a-zA-Z0-9_-]+$");
+    static final long DEFAULT_REFRESH_TTL_MS = 6 * 60 * 60 * 1000L;
+
+    private static final int STATE_MAGIC = 0x43564a51;
+    private static final int STATE_VERSION = 1;
+    private static final int MAX_QUEUED = 256;
+    private static final int MAX_RECENT = 32;
+
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "NativeShell-install");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File stateFile;
+    private final RootShellPool shells;
+    private final LongSupplier maxOutputBytes;
+    private final Listener listener;
+    private final AtomicLong counter = new AtomicLong();
+
+    // Guarded by this
+    private final List<Request> queued = new ArrayList<>();
+    private final Set<Request> running = new HashSet<>();
+    private final ArrayDeque<Request> recent = new ArrayDeque<>();
+    private final Set<String> draining = new HashSet<>();
+    private final Map<String, Long> refreshedAt = new HashMap<>();
+    private boolean shutdown = false;
+    // Nothing is saved before restore() ran, or the saved queue would be overwritten
+    private volatile boolean restored = false;
+
+    InstallQueue(File stateFile, RootShellPool shells, LongSupplier maxOutputBytes, Listener listener) {
+        this.stateFile = stateFile;
+        this.shells = shells;
+        this.maxOutputBytes = maxOutputBytes;
+        this.listener = listener;
+    }
+
+    /**
+     * Queues packages for installation and starts draining their manager.
+     * A name asked for by several requests in the same run is installed once.
+     *
+     * @throws IllegalArgumentException for an invalid package name
+     * @throws IllegalStateException when the queue is full or shut down
+     */
+    Request submit(Manager manager, List<String> packages, long refreshMaxAgeMs) {
+        Set<String> names = new LinkedHashSet<>();
+        for (String name : packages) {
+            if (name == null || !PACKAGE_NAME.matcher(name).matches()) {
+                throw new IllegalArgumentException("Invalid package name: " + name);
+            }
+            names.add(name);
+        }
+        if (names.isEmpty()) {
+            throw new IllegalArgumentException("No packages given");
+        }
+
+        Request request = new Request("install-" + Long.toString(System.currentTimeMillis(), 36) + "-"
+            + counter.incrementAndGet(), manager, new ArrayList<>(names), System.currentTimeMillis(), refreshMaxAgeMs);
+        synchronized (this) {
+            if (shutdown) {
+                throw new IllegalStateException("Install queue is shut down");
+            }
+            if (queued.size() >= MAX_QUEUED) {
+                throw new IllegalStateException("Too many queued installs (max " + MAX_QUEUED + ")");
+            }
+            queued.add(request);
+        }
+        save();
+        listener.onProgress(request, null, STAGE_QUEUED);
+        drain(manager);
+        return request;
+    }
+
+    /**
+     * Drops a request that has not started yet
+     *
+     * @return false when it is running, finished or unknown
+     */
+    boolean cancel(String id) {
+        Request cancelled = null;
+        synchronized (this) {
+            for (Iterator<Request> it = queued.iterator(); it.hasNext(); ) {
+                Request request = it.next();
+                if (request.id.equals(id)) {
+                    it.remove();
+                    cancelled = request;
+                    break;
+                }
+            }
+        }
+        if (cancelled == null) {
+            return false;
+        }
+        save();
+        finish(cancelled, null, "Cancelled");
+        return true;
+    }
+
+    /**
+     * Requests not finished yet, running ones first
+     */
+    synchronized List<Request> pending() {
+        List<Request> list = new ArrayList<>(running);
+        list.addAll(queued);
+        return list;
+    }
+
+    /**
+     * The last finished requests, newest first
+     */
+    synchronized List<Request> recent() {
+        return new ArrayList<>(recent);
+    }
+
+    /**
+     * Loads requests saved by an earlier run of the app and starts them.
+     *
+     * @return number of requests restored
+     */
+    int restore() throws IOException {
+        try {
+            return load();
+        } finally {
+            restored = true;
+            save();
+        }
+    }
+
+    private int load() throws IOException {
+        if (!stateFile.isFile()) {
+            return 0;
+        }
+        List<Request> restored = new ArrayList<>();
+        Map<String, Long> refreshes = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(stateFile)))) {
+            if (in.readInt() != STATE_MAGIC || in.readInt() != STATE_VERSION) {
+                return 0;
+            }
+            int refreshCount = in.readInt();
+            for (int i = 0; i < refreshCount; i++) {
+                refreshes.put(in.readUTF(), in.readLong());
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String id = in.readUTF();
+                Manager manager = Manager.named(in.readUTF());
+                long queuedAt = in.readLong();
+                long refreshMaxAgeMs = in.readLong();
+                int size = in.readInt();
+                List<String> packages = new ArrayList<>();
+                boolean valid = manager != null;
+                for (int p = 0; p < size; p++) {
+                    String name = in.readUTF();
+                    valid &= PACKAGE_NAME.matcher(name).matches();
+                    packages.add(name);
+                }
+                // The file is only ever written by us, but whatever is in it
+                // ends up in a root command line, so it is checked again
+                if (valid && !packages.isEmpty()) {
+                    restored.add(new Request(id, manager, packages, queuedAt, refreshMaxAgeMs));
+                }
+            }
+        }
+
+        Set<Manager> managers = new LinkedHashSet<>();
+        synchronized (this) {
+            for (Map.Entry<String, Long> entry : refreshes.entrySet()) {
+                Long known = refreshedAt.get(entry.getKey());
+                if (known == null || known < entry.getValue()) {
+                    refreshedAt.put(entry.getKey(), entry.getValue());
+                }
+            }
+            queued.addAll(0, restored);
+            for (Request request : restored) {
+                managers.add(request.manager);
+            }
+        }
+        for (Manager manager : managers) {
+            drain(manager);
+        }
+        return restored.size();
+    }
+
+    /**
+     * Stops starting new runs. Queued requests stay saved for the next start.
+     */
+    void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+        }
+        save();
+    }
+
+    private void drain(Manager manager) {
+        synchronized (this) {
+            if (shutdown || !draining.add(manager.name)) {
+                return;
+            }
+        }
+        WORKERS.execute(() -> {
+            while (true) {
+                List<Request> batch = new ArrayList<>();
+                synchronized (this) {
+                    if (!shutdown) {
+                        for (Iterator<Request> it = queued.iterator(); it.hasNext(); ) {
+                            Request request = it.next();
+                            if (request.manager == manager) {
+                                it.remove();
+                                batch.add(request);
+                            }
+                        }
+                    }
+                    if (batch.isEmpty()) {
+                        draining.remove(manager.name);
+                        return;
+                    }
+                    running.addAll(batch);
+                }
+                save();
+                runBatch(manager, batch);
+            }
+        });
+    }
+
+    private void runBatch(Manager manager, List<Request> batch) {
+        try {
+            String refreshError = refreshIfStale(manager, batch);
+            if (refreshError != null) {
+                for (Request request : batch) {
+                    finish(request, null, refreshError);
+                }
+                return;
+            }
+
+            ProcessIo.Result result = install(manager, batch);
+            if (result.exitCode == 0 || batch.size() == 1) {
+                for (Request request : batch) {
+                    finish(request, result, failure(manager, result));
+                }
+                return;
+            }
+            // One transaction failed for all; find out whose packages broke it
+            for (Request request : batch) {
+                ProcessIo.Result single = install(manager, Collections.singletonList(request));
+                finish(request, single, failure(manager, single));
+            }
+        } catch (IOException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            for (Request request : batch) {
+                if (isRunning(request)) {
+                    finish(request, null, "Package installation failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Refreshes the manager's index unless a refresh young enough for every
+     * request in the batch already happened
+     *
+     * @return an error message, or null when the index is fresh
+     */
+    private String refreshIfStale(Manager manager, List<Request> batch) throws IOException, InterruptedException {
+        if (manager.refresh == null) {
+            return null;
+        }
+        long maxAge = Long.MAX_VALUE;
+        for (Request request : batch) {
+            maxAge = Math.min(maxAge, request.refreshMaxAgeMs);
+        }
+        Long last;
+        synchronized (this) {
+            last = refreshedAt.get(manager.name);
+        }
+        if (last != null && System.currentTimeMillis() - last < maxAge) {
+            return null;
+        }
+
+        for (Request request : batch) {
+            request.stage = STAGE_REFRESHING;
+            listener.onProgress(request, null, STAGE_REFRESHING);
+        }
+        ProcessIo.Result result = shells.exec(manager.refresh, true, null, 0, maxOutputBytes.getAsLong());
+        if (result.exitCode != 0) {
+            return "Failed to update package repositories: " + result.output();
+        }
+        synchronized (this) {
+            refreshedAt.put(manager.name, System.currentTimeMillis());
+        }
+        save();
+        return null;
+    }
+
+    private ProcessIo.Result install(Manager manager, List<Request> requests) throws IOException, InterruptedException {
+        // Which requests asked for each package, to route progress lines
+        Map<String, List<Request>> owners = new LinkedHashMap<>();
+        for (Request request : requests) {
+            request.stage = STAGE_INSTALLING;
+            listener.onProgress(request, null, STAGE_INSTALLING);
+            for (String name : request.packages) {
+                List<Request> list = owners.get(name);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    owners.put(name, list);
+                }
+                list.add(request);
+            }
+        }
+
+        return shells.exec(manager.installCommand(owners.keySet()), true, null, 0, maxOutputBytes.getAsLong(), line -> {
+            String[] progress = manager.match(line);
+            List<Request> list = progress == null ? null : owners.get(progress[0]);
+            if (list == null) {
+                // Progress of a dependency, or not a progress line
+                return;
+            }
+            for (Request request : list) {
+                if (request.advance(progress[0], progress[1])) {
+                    listener.onProgress(request, progress[0], progress[1]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Error for a finished install, null if it worked. Output and errors are
+     * merged, so the details are in the result's output.
+     */
+    private static String failure(Manager manager, ProcessIo.Result result) {
+        return result.exitCode == 0 ? null : manager.name + " exited with code " + result.exitCode;
+    }
+
+    private synchronized boolean isRunning(Request request) {
+        return running.contains(request);
+    }
+
+    private void finish(Request request, ProcessIo.Result result, String error) {
+        String stage = error == null ? STAGE_INSTALLED : STAGE_FAILED;
+        request.stage = stage;
+        for (String name : request.packages) {
+            request.advance(name, stage);
+        }
+        synchronized (this) {
+            running.remove(request);
+            recent.addFirst(request);
+            while (recent.size() > MAX_RECENT) {
+                recent.removeLast();
+            }
+        }
+        save();
+        listener.onFinished(request, result, error);
+    }
+
+    /**
+     * Writes the queue and refresh times, replacing the previous file in one
+     * rename. Running requests are saved as queued.
+     */
+    private void save() {
+        if (!restored) {
+            return;
+        }
+        File temp = new File(stateFile.getPath() + ".tmp");
+        // Snapshot under the file lock so a newer state is never overwritten by an older one
+        synchronized (stateFile) {
+            List<Request> snapshot;
+            Map<String, Long> refreshes;
+            synchronized (this) {
+                snapshot = new ArrayList<>(running);
+                snapshot.addAll(queued);
+                refreshes = new HashMap<>(refreshedAt);
+            }
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                    out.writeInt(STATE_MAGIC);
+                    out.writeInt(STATE_VERSION);
+                    out.writeInt(refreshes.size());
+                    for (Map.Entry<String, Long> entry : refreshes.entrySet()) {
+                        out.writeUTF(entry.getKey());
+                        out.writeLong(entry.getValue());
+                    }
+                    out.writeInt(snapshot.size());
+                    for (Request request : snapshot) {
+                        out.writeUTF(request.id);
+                        out.writeUTF(request.manager.name);
+                        out.writeLong(request.queuedAt);
+                        out.writeLong(request.refreshMaxAgeMs);
+                        out.writeInt(request.packages.size());
+                        for (String name : request.packages) {
+                            out.writeUTF(name);
+                        }
+                    }
+                }
+                Files.move(temp.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                // The queue still runs; it just would not survive a restart
+                temp.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,470 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Fingerprints a directory tree and later reports what changed in it.
+ *
+ * A baseline records the path, size, mtime and SHA-256 of every regular
+ * file. Files are hashed in parallel, one fork-join task per directory as in
+ * {@link FileSearch}, and large ones through memory-mapped windows so their
+ * pages go straight into the digest. A rescan only rehashes files whose size
+ * or mtime differ from the baseline, plus those modified so close to the
+ * baseline that a same-size write within the timestamp granularity could
+ * have gone unnoticed. Added, removed and modified files reach the listener
+ * in batches while the walk runs.
+ *
+ * Unreadable files and directories are counted as errors, never as removed.
+ * Symlinks are not followed.
+ */
+final class IntegrityScanner {
+
+    interface Listener {
+        void onChanges(List<Change> changes);
+    }
+
+    // Names baselines may be saved under
+    static final Pattern NAME = Pattern.compile("^[A-Za-z0-9_][A-Za-z0-9._-]{0,63}$");
+
+    static final String ADDED = "added";
+    static final String REMOVED = "removed";
+    static final String MODIFIED = "modified";
+
+    static final class Change {
+        final String type;
+        final String path;
+        final long size;
+        final long modified;
+
+        Change(String type, String path, long size, long modified) {
+            this.type = type;
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    static final class Summary {
+        final long files;
+        // Files actually read this time, and their bytes
+        final long hashed;
+        final long bytesHashed;
+        final int added;
+        final int removed;
+        final int modified;
+        final int errors;
+
+        Summary(long files, long hashed, long bytesHashed, int added, int removed, int modified, int errors) {
+            this.files = files;
+            this.hashed = hashed;
+            this.bytesHashed = bytesHashed;
+            this.added = added;
+            this.removed = removed;
+            this.modified = modified;
+            this.errors = errors;
+        }
+    }
+
+    private static final int BASELINE_MAGIC = 0x43564a49;
+    private static final int BASELINE_VERSION = 1;
+    private static final int DIGEST_LENGTH = 32;
+    // Smaller files are read into a buffer; mapping them costs more than it saves
+    private static final long MAP_THRESHOLD = 256 * 1024;
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = (int) MAP_THRESHOLD;
+    // Files modified this close to when the baseline was taken are always rehashed
+    private static final long TIMESTAMP_SLACK_MS = 2000;
+    private static final int BATCH_SIZE = 64;
+    private static final long FLUSH_INTERVAL_MS = 100;
+
+    private static final ForkJoinPool WALKERS = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    private static final ThreadLocal<MessageDigest> DIGESTS = ThreadLocal.withInitial(Digests::sha256);
+    private static final ThreadLocal<ByteBuffer> BUFFERS =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(READ_BUFFER_SIZE));
+
+    /**
+     * One baseline entry; {@code seen} is set by the walk when the file is still there
+     */
+    private static final class Record {
+        final String path;
+        final long size;
+        final long modified;
+        final byte[] digest;
+        volatile boolean seen;
+
+        Record(String path, long size, long modified, byte[] digest) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.digest = digest;
+        }
+    }
+
+    private final ExecutionEngine.Job job;
+    private final Listener listener;
+
+    private Path root;
+    private Map<String, Record> previous = Collections.emptyMap();
+    private long previousCreated;
+    private boolean rehashAll;
+    // Unknown files are only news when there is a baseline to compare with
+    private boolean verifying;
+    private final Queue<Record> current = new ConcurrentLinkedQueue<>();
+    // Relative directories that could not be listed; what the baseline has under them is kept
+    private final Queue<String> unreadable = new ConcurrentLinkedQueue<>();
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong hashed = new AtomicLong();
+    private final AtomicLong bytesHashed = new AtomicLong();
+    private final AtomicInteger errors = new AtomicInteger();
+    private volatile boolean stopped = false;
+
+    // Guarded by this
+    private List<Change> batch = new ArrayList<>();
+    private int added = 0;
+    private int removed = 0;
+    private int modified = 0;
+    private long lastFlush = 0;
+
+    /**
+     * @param listener receives changes found by {@link #verify}, may be null
+     */
+    IntegrityScanner(ExecutionEngine.Job job, Listener listener) {
+        this.job = job;
+        this.listener = listener;
+    }
+
+    /**
+     * Hashes every file under {@code root} and writes the result as a new baseline
+     */
+    Summary hash(Path root, File baseline) throws IOException, InterruptedException {
+        this.rehashAll = true;
+        walk(root);
+        save(baseline);
+        return summary();
+    }
+
+    /**
+     * Compares {@code root} against {@code baseline}, reporting every
+     * difference to the listener
+     *
+     * @param update    replace the baseline with what was found
+     * @param rehashAll hash every file, not only those whose size or mtime changed
+     */
+    Summary verify(Path root, File baseline, boolean update, boolean rehashAll) throws IOException, InterruptedException {
+        this.rehashAll = rehashAll;
+        this.verifying = true;
+        load(baseline, root);
+        walk(root);
+
+        String[] skipped = unreadable.toArray(new String[0]);
+        for (Record record : previous.values()) {
+            if (!record.seen && !isUnder(record.path, skipped)) {
+                report(new Change(REMOVED, this.root.resolve(record.path).toString(), record.size, record.modified));
+            }
+        }
+        flush();
+        if (update) {
+            // What could not be read this time keeps its old fingerprint
+            for (Record record : previous.values()) {
+                if (!record.seen && isUnder(record.path, skipped)) {
+                    current.add(record);
+                }
+            }
+            save(baseline);
+        }
+        return summary();
+    }
+
+    private void walk(Path root) throws IOException, InterruptedException {
+        this.root = root.toAbsolutePath();
+        if (!Files.isDirectory(this.root)) {
+            throw new IOException("Not a directory: " + root);
+        }
+        Future<Void> walk = WALKERS.submit(new DirectoryTask(this.root));
+        try {
+            while (true) {
+                try {
+                    walk.get(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    flushIfDue();
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } finally {
+            stopped = true;
+            walk.cancel(true);
+        }
+        job.throwIfCancelled();
+    }
+
+    private final class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+
+        DirectoryTask(Path dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryTask> subtasks = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path entry : stream) {
+                    if (stopped || job.isCancelled()) {
+                        stopped = true;
+                        break;
+                    }
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        errors.incrementAndGet();
+                        continue;
+                    }
+                    if (attributes.isDirectory()) {
+                        DirectoryTask subtask = new DirectoryTask(entry);
+                        subtask.fork();
+                        subtasks.add(subtask);
+                    } else if (attributes.isRegularFile()) {
+                        visit(entry, attributes);
+                    }
+                }
+            } catch (IOException e) {
+                errors.incrementAndGet();
+                unreadable.add(root.relativize(dir).toString());
+            }
+            for (DirectoryTask subtask : subtasks) {
+                subtask.join();
+            }
+        }
+    }
+
+    private void visit(Path file, BasicFileAttributes attributes) {
+        files.incrementAndGet();
+        String path = root.relativize(file).toString();
+        long size = attributes.size();
+        long mtime = attributes.lastModifiedTime().toMillis();
+        Record before = previous.get(path);
+        if (before != null) {
+            before.seen = true;
+            boolean racy = before.modified >= previousCreated - TIMESTAMP_SLACK_MS;
+            if (!rehashAll && !racy && before.size == size && before.modified == mtime) {
+                current.add(before);
+                return;
+            }
+        }
+
+        byte[] digest;
+        try {
+            digest = digest(file);
+        } catch (IOException e) {
+            errors.incrementAndGet();
+            if (before != null) {
+                current.add(before);
+            }
+            return;
+        }
+        hashed.incrementAndGet();
+        bytesHashed.addAndGet(size);
+        current.add(new Record(path, size, mtime, digest));
+
+        if (before == null) {
+            if (verifying) {
+                report(new Change(ADDED, file.toString(), size, mtime));
+            }
+        } else if (!Arrays.equals(before.digest, digest)) {
+            report(new Change(MODIFIED, file.toString(), size, mtime));
+        }
+    }
+
+    /**
+     * SHA-256 of a file, mapping it in windows when it is large
+     */
+    static byte[] digest(Path file) throws IOException {
+        MessageDigest digest = DIGESTS.get();
+        digest.reset();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < MAP_THRESHOLD) {
+                ByteBuffer buffer = BUFFERS.get();
+                buffer.clear();
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
+            } else {
+                for (long position = 0; position < size; position += MAP_WINDOW) {
+                    MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAP_WINDOW, size - position));
+                    digest.update(window);
+                }
+            }
+        } catch (InternalError e) {
+            // A mapped file truncated under us faults on access
+            throw new IOException("File changed while hashing: " + file, e);
+        }
+        return digest.digest();
+    }
+
+    private void load(File baseline, Path root) throws IOException {
+        if (!baseline.isFile()) {
+            throw new IOException("No baseline for " + root);
+        }
+        try (DataInputStream in = open(baseline)) {
+            String taken = in.readUTF();
+            if (!taken.equals(root.toAbsolutePath().toString())) {
+                throw new IOException("Baseline was taken of " + taken + ", not " + root);
+            }
+            previousCreated = in.readLong();
+            int count = in.readInt();
+            Map<String, Record> records = new HashMap<>(count * 4 / 3 + 1);
+            String path = "";
+            for (int i = 0; i < count; i++) {
+                // Paths are sorted and stored as the part that differs from the one before
+                int shared = in.readUnsignedShort();
+                path = path.substring(0, shared) + in.readUTF();
+                long size = in.readLong();
+                long mtime = in.readLong();
+                byte[] digest = new byte[DIGEST_LENGTH];
+                in.readFully(digest);
+                records.put(path, new Record(path, size, mtime, digest));
+            }
+            previous = records;
+        }
+    }
+
+    private void save(File baseline) throws IOException {
+        List<Record> records = new ArrayList<>(current);
+        Collections.sort(records, (a, b) -> a.path.compareTo(b.path));
+        File parent = baseline.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+
+        File temp = new File(baseline.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024))) {
+            out.writeInt(BASELINE_MAGIC);
+            out.writeInt(BASELINE_VERSION);
+            out.writeUTF(root.toString());
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(records.size());
+            String last = "";
+            for (Record record : records) {
+                int shared = sharedPrefix(last, record.path);
+                out.writeShort(shared);
+                out.writeUTF(record.path.substring(shared));
+                out.writeLong(record.size);
+                out.writeLong(record.modified);
+                out.write(record.digest);
+                last = record.path;
+            }
+        }
+        Files.move(temp.toPath(), baseline.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static DataInputStream open(File baseline) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(baseline), 64 * 1024));
+        if (in.readInt() != BASELINE_MAGIC || in.readInt() != BASELINE_VERSION) {
+            in.close();
+            throw new IOException("Unrecognized baseline: " + baseline.getName());
+        }
+        return in;
+    }
+
+    private static int sharedPrefix(String a, String b) {
+        int limit = Math.min(Math.min(a.length(), b.length()), 0xffff);
+        int i = 0;
+        while (i < limit && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isUnder(String path, String[] dirs) {
+        for (String dir : dirs) {
+            if (dir.isEmpty() || path.startsWith(dir + File.separator)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void report(Change change) {
+        if (ADDED.equals(change.type)) {
+            added++;
+        } else if (REMOVED.equals(change.type)) {
+            removed++;
+        } else {
+            modified++;
+        }
+        if (listener == null) {
+            return;
+        }
+        batch.add(change);
+        if (batch.size() >= BATCH_SIZE) {
+            flush();
+        } else {
+            flushIfDue();
+        }
+    }
+
+    private synchronized void flushIfDue() {
+        if (System.currentTimeMillis() - lastFlush >= FLUSH_INTERVAL_MS) {
+            flush();
+        }
+    }
+
+    private synchronized void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        lastFlush = System.currentTimeMillis();
+        List<Change> ready = batch;
+        batch = new ArrayList<>();
+        listener.onChanges(ready);
+    }
+
+    private synchronized Summary summary() {
+        return new Summary(files.get(), hashed.get(), bytesHashed.get(), added, removed, modified, errors.get());
+    }
+}
@@ -0,0 +1,765 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed store of rootfs layers.
+ *
+ * A layer is an imported directory tree. Its regular files go into
+ * {@code objects/}, named by the SHA-256 of their content, and the tree
+ * itself is kept as a manifest in {@code manifests/} listing every entry
+ * with its mode, time and object. An instance is assembled from a layer by
+ * hard-linking each file to its object, so creating one only writes
+ * directory entries and identical files take disk space once, across
+ * instances and across layers.
+ *
+ * A hard link shares the inode, and with it the mode and time, so objects
+ * are keyed by content plus read/execute bits and stored without write
+ * permission: an in-place write by the app's own user fails instead of
+ * changing every instance at once. Package managers replace files by
+ * rename, which simply breaks the link; anything else calls {@link #detach}
+ * first, which gives the instance a private copy. Root ignores the missing
+ * write bit, and a chmod through any link changes them all, so trees that
+ * will be modified as root are materialized as copies instead. Filesystems
+ * without hard links get copies throughout. Since an object can still have
+ * been changed through a link, an import only reuses one whose content and
+ * mode still match its name.
+ *
+ * Objects are only deleted by {@link #collectGarbage} once no manifest
+ * names them. Instances keep their links, so removing a layer never touches
+ * a tree built from it.
+ */
+final class LayerStore {
+
+    interface Progress {
+        void onProgress(long files, long totalFiles, long bytes);
+    }
+
+    static final class LayerInfo {
+        final String name;
+        final long created;
+        final int files;
+        final int directories;
+        final int symlinks;
+        // Sum of file sizes, what a plain copy of the tree would take
+        final long bytes;
+
+        LayerInfo(String name, long created, int files, int directories, int symlinks, long bytes) {
+            this.name = name;
+            this.created = created;
+            this.files = files;
+            this.directories = directories;
+            this.symlinks = symlinks;
+            this.bytes = bytes;
+        }
+    }
+
+    static final class ImportResult {
+        final LayerInfo layer;
+        // Files whose content was not in the store yet, and their size
+        final int newObjects;
+        final long newBytes;
+
+        ImportResult(LayerInfo layer, int newObjects, long newBytes) {
+            this.layer = layer;
+            this.newObjects = newObjects;
+            this.newBytes = newBytes;
+        }
+    }
+
+    static final class MaterializeResult {
+        final int files;
+        final int linked;
+        // Files that had to be copied because the filesystem refused a hard link
+        final int copied;
+        final int directories;
+        final int symlinks;
+        final long bytes;
+
+        MaterializeResult(int files, int linked, int copied, int directories, int symlinks, long bytes) {
+            this.files = files;
+            this.linked = linked;
+            this.copied = copied;
+            this.directories = directories;
+            this.symlinks = symlinks;
+            this.bytes = bytes;
+        }
+    }
+
+    static final class Stats {
+        final int layers;
+        final int objects;
+        // Bytes the objects take, against the sum of the layers' logical sizes
+        final long storedBytes;
+        final long logicalBytes;
+
+        Stats(int layers, int objects, long storedBytes, long logicalBytes) {
+            this.layers = layers;
+            this.objects = objects;
+            this.storedBytes = storedBytes;
+            this.logicalBytes = logicalBytes;
+        }
+    }
+
+    // Layer and instance names; also keeps them usable as file names
+    static final Pattern NAME = Pattern.compile("^[A-Za-z0-9_][A-Za-z0-9._-]{0,63}$");
+
+    private static final int MANIFEST_MAGIC = 0x43564a4c;
+    private static final int MANIFEST_VERSION = 1;
+    private static final String MANIFEST_SUFFIX = ".layer";
+    private static final byte TYPE_DIRECTORY = 'd';
+    private static final byte TYPE_FILE = 'f';
+    private static final byte TYPE_SYMLINK = 'l';
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+
+    // Hashing is CPU bound, one thread per core
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(
+        Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+            Thread thread = new Thread(runnable, "NativeShell-layer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    /**
+     * One manifest record; {@code object} is set for files, {@code link} for symlinks
+     */
+    private static final class Entry {
+        final byte type;
+        final String path;
+        final int mode;
+        final long mtime;
+        final long size;
+        String object;
+        final String link;
+
+        Entry(byte type, String path, int mode, long mtime, long size, String object, String link) {
+            this.type = type;
+            this.path = path;
+            this.mode = mode;
+            this.mtime = mtime;
+            this.size = size;
+            this.object = object;
+            this.link = link;
+        }
+    }
+
+    private final File objects;
+    private final File manifests;
+    private final File temp;
+    // Imports and instance builds share it; garbage collection needs it alone
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    LayerStore(File root) {
+        this.objects = new File(root, "objects");
+        this.manifests = new File(root, "manifests");
+        this.temp = new File(root, "tmp");
+    }
+
+    /**
+     * Adds the tree under {@code source} as layer {@code name}, replacing a
+     * layer of that name.
+     *
+     * @param consume move the files into the store instead of copying them;
+     *                the source tree is left incomplete and should be deleted
+     */
+    ImportResult importTree(File source, String name, boolean consume, ExecutionEngine.Job job, Progress progress)
+            throws IOException, InterruptedException {
+        checkName(name);
+        Path root = source.toPath().toAbsolutePath();
+        if (!Files.isDirectory(root, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException("Not a directory: " + source);
+        }
+        createDirectories();
+
+        List<Entry> entries = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                if (!dir.equals(root)) {
+                    entries.add(new Entry(TYPE_DIRECTORY, relative(root, dir), mode(dir),
+                        attributes.lastModifiedTime().to(TimeUnit.SECONDS), 0, null, null));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                long mtime = attributes.lastModifiedTime().to(TimeUnit.SECONDS);
+                if (attributes.isSymbolicLink()) {
+                    entries.add(new Entry(TYPE_SYMLINK, relative(root, file), 0777, mtime, 0, null,
+                        Files.readSymbolicLink(file).toString()));
+                } else if (attributes.isRegularFile()) {
+                    entries.add(new Entry(TYPE_FILE, relative(root, file), mode(file), mtime, attributes.size(),
+                        null, null));
+                }
+                // Sockets, FIFOs and devices cannot be recreated by the app
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        long totalFiles = 0;
+        for (Entry entry : entries) {
+            if (entry.type == TYPE_FILE) {
+                totalFiles++;
+            }
+        }
+
+        lock.readLock().lock();
+        List<Future<Long>> ingests = new ArrayList<>();
+        try {
+            for (Entry entry : entries) {
+                if (entry.type == TYPE_FILE) {
+                    Path file = root.resolve(entry.path);
+                    ingests.add(WORKERS.submit(() -> ingest(file, entry, consume, job)));
+                }
+            }
+
+            int newObjects = 0;
+            long newBytes = 0;
+            long done = 0;
+            long bytes = 0;
+            long lastReport = 0;
+            int next = 0;
+            for (Entry entry : entries) {
+                if (entry.type != TYPE_FILE) {
+                    continue;
+                }
+                job.throwIfCancelled();
+                Long added;
+                try {
+                    added = ingests.get(next++).get();
+                } catch (ExecutionException e) {
+                    job.throwIfCancelled();
+                    throw asIOException(e);
+                }
+                if (added >= 0) {
+                    newObjects++;
+                    newBytes += added;
+                }
+                done++;
+                bytes += entry.size;
+                long now = System.currentTimeMillis();
+                if (progress != null && (now - lastReport >= PROGRESS_INTERVAL_MS || done == totalFiles)) {
+                    lastReport = now;
+                    progress.onProgress(done, totalFiles, bytes);
+                }
+            }
+
+            LayerInfo info = writeManifest(name, entries);
+            return new ImportResult(info, newObjects, newBytes);
+        } finally {
+            for (Future<Long> ingest : ingests) {
+                ingest.cancel(false);
+            }
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Builds a tree at {@code destination} from layer {@code name}. Existing
+     * entries at the same paths are replaced; others are left alone.
+     *
+     * @param link whether files may be hard links to the store; false gives
+     *             every file a private copy, for trees written to as root
+     */
+    MaterializeResult materialize(String name, File destination, boolean link, ExecutionEngine.Job job,
+                                  Progress progress) throws IOException, InterruptedException {
+        lock.readLock().lock();
+        try {
+            List<Entry> entries = readManifest(name);
+            Path root = destination.toPath().toAbsolutePath();
+            Files.createDirectories(root);
+
+            long totalFiles = 0;
+            for (Entry entry : entries) {
+                if (entry.type == TYPE_FILE) {
+                    totalFiles++;
+                }
+            }
+
+            int files = 0;
+            int linked = 0;
+            int copied = 0;
+            int symlinks = 0;
+            long bytes = 0;
+            long lastReport = 0;
+            boolean canLink = link;
+            List<Entry> directories = new ArrayList<>();
+            for (Entry entry : entries) {
+                job.throwIfCancelled();
+                Path target = root.resolve(entry.path);
+                if (entry.type == TYPE_DIRECTORY) {
+                    if (Files.isSymbolicLink(target) || Files.isRegularFile(target, LinkOption.NOFOLLOW_LINKS)) {
+                        Files.delete(target);
+                    }
+                    Files.createDirectories(target);
+                    directories.add(entry);
+                    continue;
+                }
+
+                // Manifests list parents first, so only a replaced entry is in the way
+                if (Files.exists(target, LinkOption.NOFOLLOW_LINKS) && !Files.isDirectory(target, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.delete(target);
+                }
+                if (entry.type == TYPE_SYMLINK) {
+                    Files.createSymbolicLink(target, target.getFileSystem().getPath(entry.link));
+                    symlinks++;
+                    continue;
+                }
+
+                Path object = objectPath(entry.object);
+                if (canLink) {
+                    try {
+                        Files.createLink(target, object);
+                        linked++;
+                    } catch (NoSuchFileException e) {
+                        throw new IOException("Layer " + name + " is missing object " + entry.object);
+                    } catch (IOException | UnsupportedOperationException e) {
+                        // Typically EXDEV or EPERM on storage without links; stop trying
+                        canLink = false;
+                    }
+                }
+                if (!canLink) {
+                    Files.copy(object, target);
+                    Files.setPosixFilePermissions(target, TarExtractor.permissions(entry.mode));
+                    Files.setLastModifiedTime(target, FileTime.from(entry.mtime, TimeUnit.SECONDS));
+                    copied++;
+                }
+                files++;
+                bytes += entry.size;
+                long now = System.currentTimeMillis();
+                if (progress != null && (now - lastReport >= PROGRESS_INTERVAL_MS || files == totalFiles)) {
+                    lastReport = now;
+                    progress.onProgress(files, totalFiles, bytes);
+                }
+            }
+
+            // Deepest first, and never lock the owner out
+            for (int i = directories.size() - 1; i >= 0; i--) {
+                Entry entry = directories.get(i);
+                Path dir = root.resolve(entry.path);
+                Files.setPosixFilePermissions(dir, TarExtractor.permissions(entry.mode | 0700));
+                Files.setLastModifiedTime(dir, FileTime.from(entry.mtime, TimeUnit.SECONDS));
+            }
+            return new MaterializeResult(files, linked, copied, directories.size(), symlinks, bytes);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces {@code file}, possibly a link into the store, with a private
+     * writable copy so it can be changed in place
+     */
+    static void detach(File file) throws IOException {
+        Path path = file.toPath();
+        if (!Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException("Not a regular file: " + file);
+        }
+        Path copy = path.resolveSibling("." + path.getFileName() + ".detach-" + UUID.randomUUID());
+        try {
+            Files.copy(path, copy, StandardCopyOption.COPY_ATTRIBUTES);
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(copy);
+            permissions.add(PosixFilePermission.OWNER_WRITE);
+            Files.setPosixFilePermissions(copy, permissions);
+            Files.move(copy, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(copy);
+        }
+    }
+
+    List<LayerInfo> layers() throws IOException {
+        List<LayerInfo> layers = new ArrayList<>();
+        File[] files = manifests.listFiles();
+        if (files == null) {
+            return layers;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            String fileName = file.getName();
+            if (fileName.endsWith(MANIFEST_SUFFIX)) {
+                layers.add(readInfo(file));
+            }
+        }
+        return layers;
+    }
+
+    boolean hasLayer(String name) {
+        return NAME.matcher(name).matches() && manifestFile(name).isFile();
+    }
+
+    /**
+     * Drops layer {@code name} and the objects only it used
+     *
+     * @return { objects removed, bytes freed }, or null when there was no such layer
+     */
+    long[] deleteLayer(String name) throws IOException {
+        checkName(name);
+        lock.writeLock().lock();
+        try {
+            File manifest = manifestFile(name);
+            if (!manifest.isFile()) {
+                return null;
+            }
+            Files.delete(manifest.toPath());
+            return collectGarbage();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes objects no manifest refers to, and leftovers of interrupted imports
+     *
+     * @return { objects removed, bytes freed }
+     */
+    long[] collectGarbage() throws IOException {
+        lock.writeLock().lock();
+        try {
+            Set<String> referenced = new HashSet<>();
+            File[] files = manifests.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (file.getName().endsWith(MANIFEST_SUFFIX)) {
+                        for (Entry entry : readEntries(file)) {
+                            if (entry.type == TYPE_FILE) {
+                                referenced.add(entry.object);
+                            }
+                        }
+                    }
+                }
+            }
+
+            long removed = 0;
+            long freed = 0;
+            File[] buckets = objects.listFiles();
+            if (buckets != null) {
+                for (File bucket : buckets) {
+                    File[] stored = bucket.listFiles();
+                    if (stored == null) {
+                        continue;
+                    }
+                    for (File object : stored) {
+                        if (!referenced.contains(object.getName())) {
+                            long size = object.length();
+                            if (object.delete()) {
+                                removed++;
+                                freed += size;
+                            }
+                        }
+                    }
+                }
+            }
+            if (temp.isDirectory()) {
+                try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(temp.toPath())) {
+                    for (Path leftover : leftovers) {
+                        Files.deleteIfExists(leftover);
+                    }
+                }
+            }
+            return new long[] { removed, freed };
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    Stats stats() throws IOException {
+        lock.readLock().lock();
+        try {
+            List<LayerInfo> layers = layers();
+            long logical = 0;
+            for (LayerInfo layer : layers) {
+                logical += layer.bytes;
+            }
+            int count = 0;
+            long stored = 0;
+            File[] buckets = objects.listFiles();
+            if (buckets != null) {
+                for (File bucket : buckets) {
+                    File[] files = bucket.listFiles();
+                    if (files != null) {
+                        for (File object : files) {
+                            count++;
+                            stored += object.length();
+                        }
+                    }
+                }
+            }
+            return new Stats(layers.size(), count, stored, logical);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Puts the content of {@code file} into the store and records its object
+     * name in {@code entry}
+     *
+     * @return size added to the store, or -1 when the object was already there
+     */
+    private long ingest(Path file, Entry entry, boolean consume, ExecutionEngine.Job job) throws IOException {
+        if (job.isCancelled()) {
+            throw new IOException("Cancelled");
+        }
+        String sha256 = Digests.hex(Digests.sha256(file.toFile()));
+        String object = objectName(sha256, entry.mode);
+        Path target = objectPath(object);
+        if (isIntact(target, sha256, entry.mode)) {
+            entry.object = object;
+            return -1;
+        }
+
+        Path staged = temp.toPath().resolve(UUID.randomUUID().toString());
+        try {
+            if (consume) {
+                Files.move(file, staged);
+            } else {
+                // Hash the bytes actually copied, in case the source changed since
+                object = objectName(copyHashing(file, staged), entry.mode);
+                target = objectPath(object);
+            }
+            Files.setPosixFilePermissions(staged, TarExtractor.permissions(entry.mode & 0555));
+            Files.setLastModifiedTime(staged, FileTime.from(entry.mtime, TimeUnit.SECONDS));
+            Files.createDirectories(target.getParent());
+            try {
+                // Another import may have stored the same content meanwhile;
+                // replacing it with identical bytes is harmless
+                Files.move(staged, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException | FileAlreadyExistsException e) {
+                Files.move(staged, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+        entry.object = object;
+        return entry.size;
+    }
+
+    /**
+     * Whether {@code object} exists and still has the content and mode its
+     * name promises. A damaged one is replaced by the import that finds it;
+     * instances linked to it keep the damaged inode.
+     */
+    private static boolean isIntact(Path object, String sha256, int mode) throws IOException {
+        if (!Files.isRegularFile(object, LinkOption.NOFOLLOW_LINKS)) {
+            return false;
+        }
+        if (mode(object) != (mode & 0555)) {
+            return false;
+        }
+        return Digests.hex(Digests.sha256(object.toFile())).equals(sha256);
+    }
+
+    private static String copyHashing(Path from, Path to) throws IOException {
+        MessageDigest digest = Digests.sha256();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try (FileChannel in = FileChannel.open(from, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(to, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            }
+        }
+        return Digests.hex(digest.digest());
+    }
+
+    private LayerInfo writeManifest(String name, List<Entry> entries) throws IOException {
+        long created = System.currentTimeMillis();
+        File manifest = manifestFile(name);
+        File pending = new File(manifest.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(pending), 64 * 1024))) {
+            out.writeInt(MANIFEST_MAGIC);
+            out.writeInt(MANIFEST_VERSION);
+            out.writeUTF(name);
+            out.writeLong(created);
+            writeCounts(out, entries);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeByte(entry.type);
+                out.writeUTF(entry.path);
+                out.writeShort(entry.mode);
+                out.writeLong(entry.mtime);
+                if (entry.type == TYPE_FILE) {
+                    out.writeLong(entry.size);
+                    out.writeUTF(entry.object);
+                } else if (entry.type == TYPE_SYMLINK) {
+                    out.writeUTF(entry.link);
+                }
+            }
+        }
+        Files.move(pending.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return readInfo(manifest);
+    }
+
+    /**
+     * Totals go in the header so listing layers does not read every entry
+     */
+    private static void writeCounts(DataOutputStream out, List<Entry> entries) throws IOException {
+        int files = 0;
+        int directories = 0;
+        int symlinks = 0;
+        long bytes = 0;
+        for (Entry entry : entries) {
+            if (entry.type == TYPE_FILE) {
+                files++;
+                bytes += entry.size;
+            } else if (entry.type == TYPE_DIRECTORY) {
+                directories++;
+            } else {
+                symlinks++;
+            }
+        }
+        out.writeInt(files);
+        out.writeInt(directories);
+        out.writeInt(symlinks);
+        out.writeLong(bytes);
+    }
+
+    private List<Entry> readManifest(String name) throws IOException {
+        checkName(name);
+        File manifest = manifestFile(name);
+        if (!manifest.isFile()) {
+            throw new IOException("No such layer: " + name);
+        }
+        return readEntries(manifest);
+    }
+
+    private static LayerInfo readInfo(File manifest) throws IOException {
+        try (DataInputStream in = openManifest(manifest)) {
+            return readHeader(in);
+        }
+    }
+
+    private static List<Entry> readEntries(File manifest) throws IOException {
+        try (DataInputStream in = openManifest(manifest)) {
+            readHeader(in);
+            int count = in.readInt();
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte type = in.readByte();
+                String path = in.readUTF();
+                int mode = in.readShort() & 07777;
+                long mtime = in.readLong();
+                if (type == TYPE_FILE) {
+                    long size = in.readLong();
+                    entries.add(new Entry(type, path, mode, mtime, size, in.readUTF(), null));
+                } else if (type == TYPE_SYMLINK) {
+                    entries.add(new Entry(type, path, mode, mtime, 0, null, in.readUTF()));
+                } else {
+                    entries.add(new Entry(type, path, mode, mtime, 0, null, null));
+                }
+            }
+            return entries;
+        }
+    }
+
+    private static DataInputStream openManifest(File manifest) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifest), 64 * 1024));
+        if (in.readInt() != MANIFEST_MAGIC || in.readInt() != MANIFEST_VERSION) {
+            in.close();
+            throw new IOException("Unrecognized layer manifest: " + manifest.getName());
+        }
+        return in;
+    }
+
+    private static LayerInfo readHeader(DataInputStream in) throws IOException {
+        String name = in.readUTF();
+        long created = in.readLong();
+        int files = in.readInt();
+        int directories = in.readInt();
+        int symlinks = in.readInt();
+        long bytes = in.readLong();
+        return new LayerInfo(name, created, files, directories, symlinks, bytes);
+    }
+
+    private void createDirectories() throws IOException {
+        Files.createDirectories(objects.toPath());
+        Files.createDirectories(manifests.toPath());
+        Files.createDirectories(temp.toPath());
+    }
+
+    private File manifestFile(String name) {
+        return new File(manifests, name + MANIFEST_SUFFIX);
+    }
+
+    /**
+     * Hard links share the inode's mode, so the read and execute bits are
+     * part of the object's identity
+     */
+    private static String objectName(String sha256, int mode) {
+        return sha256 + "-" + Integer.toOctalString(01000 | (mode & 0555)).substring(1);
+    }
+
+    private Path objectPath(String object) {
+        return objects.toPath().resolve(object.substring(0, 2)).resolve(object);
+    }
+
+    private static void checkName(String name) throws IOException {
+        if (name == null || !NAME.matcher(name).matches()) {
+            throw new IOException("Invalid layer name: " + name);
+        }
+    }
+
+    private static String relative(Path root, Path path) {
+        return root.relativize(path).toString();
+    }
+
+    private static int mode(Path path) throws IOException {
+        Set<PosixFilePermission> permissions = Files.readAttributes(path, PosixFileAttributes.class,
+            LinkOption.NOFOLLOW_LINKS).permissions();
+        int mode = 0;
+        for (PosixFilePermission permission : permissions) {
+            // The enum runs OWNER_READ .. OTHERS_EXECUTE, i.e. from bit 8 down to bit 0
+            mode |= 1 << (8 - permission.ordinal());
+        }
+        return mode;
+    }
+
+    private static IOException asIOException(ExecutionException e) {
+        Throwable cause = e.getCause();
+        return cause instanceof IOException ? (IOException) cause : new IOException(cause);
+    }
+}
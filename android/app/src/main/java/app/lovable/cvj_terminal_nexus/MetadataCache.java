@@ -0,0 +1,473 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Directory listings with their entries' attributes, kept in memory so warm
+ * listings and path completion never touch the disk.
+ *
+ * Each cached directory is watched (a FileObserver on Android) and dropped
+ * as soon as anything in it changes. The least recently used directories are
+ * evicted once the directory or entry budget is exceeded. The cache can be
+ * written to a compact snapshot and restored after a restart. A restored
+ * directory is dropped on first use if its own mtime changed; otherwise its
+ * names are kept, since adding or removing one would have changed that
+ * mtime, but every entry is stat'ed again, as rewriting a file does not
+ * touch its directory. It is watched again from then on.
+ */
+final class MetadataCache {
+
+    interface Watch {
+        void stop();
+    }
+
+    interface WatchFactory {
+        /**
+         * Starts watching {@code dir}, calling {@code onChange} on any change
+         * to its entries. May return null if the directory cannot be watched.
+         */
+        Watch watch(String dir, Runnable onChange);
+    }
+
+    static final class Stats {
+        final int directories;
+        final int entries;
+        final long hits;
+        final long misses;
+
+        Stats(int directories, int entries, long hits, long misses) {
+            this.directories = directories;
+            this.entries = entries;
+            this.hits = hits;
+            this.misses = misses;
+        }
+    }
+
+    private static final int SNAPSHOT_MAGIC = 0x43564a4d;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static final int FLAG_DIRECTORY = 1;
+    private static final int FLAG_FILE = 2;
+    private static final int FLAG_SYMLINK = 4;
+
+    private final int maxDirectories;
+    private final int maxEntries;
+    private final WatchFactory watchFactory;
+
+    // Access-ordered, guarded by this
+    private final LinkedHashMap<String, CachedDirectory> directories = new LinkedHashMap<>(64, 0.75f, true);
+    private int entryCount = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    MetadataCache(int maxDirectories, int maxEntries, WatchFactory watchFactory) {
+        this.maxDirectories = maxDirectories;
+        this.maxEntries = maxEntries;
+        this.watchFactory = watchFactory;
+    }
+
+    /**
+     * Entries of {@code dir} if the cache holds a current listing, else null
+     */
+    synchronized List<DirectoryLister.Entry> peek(Path dir) {
+        String key = dir.toString();
+        CachedDirectory cached = directories.get(key);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.stale || (cached.restored && !cached.revalidate(dir))) {
+            drop(key, cached);
+            return null;
+        }
+        hits++;
+        return cached.toEntries(dir);
+    }
+
+    /**
+     * Entries of {@code dir} with their attributes, read from disk and cached
+     * when the cache has no current listing
+     */
+    List<DirectoryLister.Entry> list(Path dir) throws IOException {
+        String key = dir.toString();
+        CachedDirectory cached;
+        synchronized (this) {
+            List<DirectoryLister.Entry> entries = peek(dir);
+            if (entries != null) {
+                return entries;
+            }
+            misses++;
+            // The watch goes up before the directory is read, so a change
+            // that races the read marks this listing stale instead of being
+            // lost
+            cached = new CachedDirectory();
+            final CachedDirectory watched = cached;
+            cached.watch = watchFactory.watch(key, () -> invalidate(key, watched));
+        }
+
+        cached.read(dir);
+        synchronized (this) {
+            if (!cached.stale && cached.watch != null) {
+                CachedDirectory previous = directories.put(key, cached);
+                if (previous != null && previous != cached) {
+                    entryCount -= previous.names.length;
+                    stopWatch(previous);
+                }
+                entryCount += cached.names.length;
+                evict();
+            } else {
+                stopWatch(cached);
+            }
+        }
+        return cached.toEntries(dir);
+    }
+
+    /**
+     * Drops the listing of {@code dir}, used after the plugin changes it
+     * itself so the next read cannot race the watch event
+     */
+    synchronized void invalidate(String dir) {
+        CachedDirectory cached = directories.get(dir);
+        if (cached != null) {
+            drop(dir, cached);
+        }
+    }
+
+    synchronized void clear() {
+        for (CachedDirectory cached : directories.values()) {
+            stopWatch(cached);
+        }
+        directories.clear();
+        entryCount = 0;
+    }
+
+    synchronized Stats stats() {
+        return new Stats(directories.size(), entryCount, hits, misses);
+    }
+
+    /**
+     * Writes every current listing to {@code file}, replacing it atomically
+     */
+    void save(File file) throws IOException {
+        // Least recently used first, so a restore rebuilds the same order
+        List<Map.Entry<String, CachedDirectory>> snapshot = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<String, CachedDirectory> entry : directories.entrySet()) {
+                if (!entry.getValue().stale) {
+                    snapshot.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+                }
+            }
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, CachedDirectory> entry : snapshot) {
+                CachedDirectory cached = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(cached.modified);
+                out.writeInt(cached.names.length);
+                for (int i = 0; i < cached.names.length; i++) {
+                    out.writeUTF(cached.names[i]);
+                    out.writeByte(cached.flags[i]);
+                    out.writeLong(cached.sizes[i]);
+                    out.writeLong(cached.times[i]);
+                }
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Loads a snapshot written by {@link #save}. Nothing is checked against
+     * the disk here; each directory is revalidated on its first use.
+     *
+     * @return number of directories restored
+     */
+    int restore(File file) throws IOException {
+        if (!file.isFile()) {
+            return 0;
+        }
+        List<String> keys = new ArrayList<>();
+        List<CachedDirectory> restored = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                return 0;
+            }
+            int count = in.readInt();
+            for (int d = 0; d < count; d++) {
+                String key = in.readUTF();
+                CachedDirectory cached = new CachedDirectory();
+                cached.restored = true;
+                cached.modified = in.readLong();
+                int size = in.readInt();
+                cached.allocate(size);
+                for (int i = 0; i < size; i++) {
+                    cached.names[i] = in.readUTF();
+                    cached.flags[i] = in.readByte();
+                    cached.sizes[i] = in.readLong();
+                    cached.times[i] = in.readLong();
+                }
+                keys.add(key);
+                restored.add(cached);
+            }
+        }
+
+        synchronized (this) {
+            for (int i = 0; i < keys.size(); i++) {
+                if (!directories.containsKey(keys.get(i))) {
+                    directories.put(keys.get(i), restored.get(i));
+                    entryCount += restored.get(i).names.length;
+                }
+            }
+            evict();
+        }
+        return restored.size();
+    }
+
+    /**
+     * Names in {@code dir} starting with {@code prefix}, directories marked
+     * with a trailing slash
+     */
+    List<String> complete(Path dir, String prefix, int limit) throws IOException {
+        List<String> matches = new ArrayList<>();
+        for (DirectoryLister.Entry entry : list(dir)) {
+            if (entry.name.startsWith(prefix)) {
+                matches.add(entry.attributes != null && entry.attributes.isDirectory() ? entry.name + "/" : entry.name);
+            }
+        }
+        Collections.sort(matches);
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    private void invalidate(String key, CachedDirectory cached) {
+        synchronized (this) {
+            cached.stale = true;
+            if (directories.get(key) == cached) {
+                drop(key, cached);
+            } else {
+                stopWatch(cached);
+            }
+        }
+    }
+
+    // Callers hold the lock
+    private void drop(String key, CachedDirectory cached) {
+        cached.stale = true;
+        if (directories.remove(key) != null) {
+            entryCount -= cached.names.length;
+        }
+        stopWatch(cached);
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, CachedDirectory>> it = directories.entrySet().iterator();
+        while ((directories.size() > maxDirectories || entryCount > maxEntries) && it.hasNext()) {
+            CachedDirectory eldest = it.next().getValue();
+            it.remove();
+            eldest.stale = true;
+            entryCount -= eldest.names.length;
+            stopWatch(eldest);
+        }
+    }
+
+    private static void stopWatch(CachedDirectory cached) {
+        if (cached.watch != null) {
+            cached.watch.stop();
+            cached.watch = null;
+        }
+    }
+
+    /**
+     * One directory's entries in parallel arrays, which keeps a restored
+     * snapshot cheap to hold
+     */
+    private final class CachedDirectory {
+        volatile boolean stale = false;
+        boolean restored = false;
+        Watch watch;
+        long modified;
+        String[] names = new String[0];
+        byte[] flags;
+        long[] sizes;
+        long[] times;
+
+        void allocate(int size) {
+            names = new String[size];
+            flags = new byte[size];
+            sizes = new long[size];
+            times = new long[size];
+        }
+
+        void read(Path dir) throws IOException {
+            modified = Files.getLastModifiedTime(dir).toMillis();
+            List<Path> paths = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path path : stream) {
+                    paths.add(path);
+                }
+            }
+            String[] readNames = new String[paths.size()];
+            byte[] readFlags = new byte[paths.size()];
+            long[] readSizes = new long[paths.size()];
+            long[] readTimes = new long[paths.size()];
+            for (int i = 0; i < paths.size(); i++) {
+                Path path = paths.get(i);
+                readNames[i] = path.getFileName().toString();
+                BasicFileAttributes attributes = readAttributes(path);
+                if (attributes != null) {
+                    readFlags[i] = flagsOf(attributes);
+                    readSizes[i] = attributes.size();
+                    readTimes[i] = attributes.lastModifiedTime().toMillis();
+                }
+            }
+            flags = readFlags;
+            sizes = readSizes;
+            times = readTimes;
+            names = readNames;
+        }
+
+        /**
+         * Checks a restored listing against the directory's mtime and, if it
+         * still holds, starts watching it and refreshes each entry's
+         * attributes. Called with the cache lock held.
+         */
+        boolean revalidate(Path dir) {
+            try {
+                if (Files.getLastModifiedTime(dir).toMillis() != modified) {
+                    return false;
+                }
+            } catch (IOException e) {
+                return false;
+            }
+            String key = dir.toString();
+            // Watched before the entries are stat'ed, as in list()
+            watch = watchFactory.watch(key, () -> invalidate(key, this));
+            if (watch == null) {
+                return false;
+            }
+            for (int i = 0; i < names.length; i++) {
+                BasicFileAttributes attributes = readAttributes(dir.resolve(names[i]));
+                if (attributes == null) {
+                    return false;
+                }
+                flags[i] = flagsOf(attributes);
+                sizes[i] = attributes.size();
+                times[i] = attributes.lastModifiedTime().toMillis();
+            }
+            restored = false;
+            return true;
+        }
+
+        List<DirectoryLister.Entry> toEntries(Path dir) {
+            List<DirectoryLister.Entry> entries = new ArrayList<>(names.length);
+            for (int i = 0; i < names.length; i++) {
+                entries.add(new DirectoryLister.Entry(dir.resolve(names[i]),
+                    new CachedAttributes(flags[i], sizes[i], times[i])));
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Follows symlinks like File did, falling back to the link itself when it
+     * dangles
+     */
+    private static BasicFileAttributes readAttributes(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            try {
+                return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException ignored) {
+                return null;
+            }
+        }
+    }
+
+    private static byte flagsOf(BasicFileAttributes attributes) {
+        return (byte) ((attributes.isDirectory() ? FLAG_DIRECTORY : 0)
+            | (attributes.isRegularFile() ? FLAG_FILE : 0)
+            | (attributes.isSymbolicLink() ? FLAG_SYMLINK : 0));
+    }
+
+    private static final class CachedAttributes implements BasicFileAttributes {
+        private final byte flags;
+        private final long size;
+        private final FileTime modified;
+
+        CachedAttributes(byte flags, long size, long modified) {
+            this.flags = flags;
+            this.size = size;
+            this.modified = FileTime.from(modified, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public FileTime lastModifiedTime() {
+            return modified;
+        }
+
+        @Override
+        public FileTime lastAccessTime() {
+            return modified;
+        }
+
+        @Override
+        public FileTime creationTime() {
+            return modified;
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return (flags & FLAG_FILE) != 0;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return (flags & FLAG_DIRECTORY) != 0;
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return (flags & FLAG_SYMLINK) != 0;
+        }
+
+        @Override
+        public boolean isOther() {
+            return (flags & (FLAG_FILE | FLAG_DIRECTORY | FLAG_SYMLINK)) == 0;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public Object fileKey() {
+            return null;
+        }
+    }
+}
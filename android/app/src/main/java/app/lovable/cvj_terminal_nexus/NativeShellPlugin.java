@@ -18,25 +18,48 @@ import com.getcapacitor.annotation.CapacitorPlugin;
 import com.getcapacitor.annotation.Permission;
 import com.getcapacitor.annotation.PermissionCallback;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
 import java.net.URL;
-import java.text.SimpleDateFormat;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 @CapacitorPlugin(
     name = "NativeShell",
@@ -53,36 +76,127 @@ import java.util.regex.Pattern;
 )
 public class NativeShellPlugin extends Plugin {
 
-    // Extended command allowlist for Termux-like functionality
-    private static final Set<String> ALLOWED_COMMANDS = new HashSet<>(Arrays.asList(
-        // Basic commands
-        "ls", "cat", "echo", "pwd", "whoami", "date", "uname",
-        "df", "du", "ps", "top", "free", "uptime", "which",
-        // File operations
-        "cp", "mv", "rm", "mkdir", "rmdir", "touch", "chmod", "chown",
-        "head", "tail", "wc", "sort", "uniq", "grep", "find", "xargs",
-        // Text processing
-        "awk", "sed", "cut", "tr", "tee",
-        // Network
-        "ping", "curl", "wget", "netstat", "ifconfig", "ip",
-        // System
-        "id", "env", "printenv", "hostname", "arch", "nproc",
-        // Package management
-        "pkg", "apt", "apt-get", "dpkg"
-    ));
+    // Optional asset replacing the built-in command allowlist, see CommandPolicy.parse
+    private static final String COMMAND_POLICY_ASSET = "command-policy.json";
 
     // Package manager allowlist
     private static final Set<String> ALLOWED_PACKAGE_MANAGERS = new HashSet<>(Arrays.asList(
         "pkg", "apt-get", "apt", "pacman", "yum", "dpkg"
     ));
 
-    // Dangerous character pattern for validation
-    private static final Pattern DANGEROUS_CHARS = Pattern.compile("[;&|`$<>(){}\\[\\]\\n\\r]");
+    // Streaming output defaults: chunk size in chars and unacknowledged chunks in flight
+    private static final int DEFAULT_STREAM_CHUNK_SIZE = 8192;
+    private static final int DEFAULT_STREAM_WINDOW = 8;
+
+    // Largest range readFile returns in one call
+    private static final int MAX_READ_CHUNK = 10 * 1024 * 1024;
+
+    // Chunked writes open at the same time, and how long one may sit without a chunk
+    private static final int MAX_OPEN_WRITES = 16;
+    private static final long WRITE_IDLE_TIMEOUT_MS = 10 * 60 * 1000;
+
+    // Interactive shell sessions open at the same time
+    private static final int MAX_SHELL_SESSIONS = 8;
+
+    // Steps accepted in one executeBatch call
+    private static final int MAX_BATCH_STEPS = 64;
+    // Variables a batch step may not set: they pick the binaries and
+    // libraries that run, or what a shell sources and how it splits words.
+    // LD_* as a whole is refused as well.
+    private static final Set<String> PROTECTED_ENV = new HashSet<>(Arrays.asList("PATH", "IFS", "ENV", "BASH_ENV"));
+    private static final Pattern ENV_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    // Long-lived su sessions shared by all root commands
+    private static final int ROOT_SHELL_SESSIONS = 2;
+
+    // Downloads, and extractions streamed from https, running at once; further
+    // ones wait in the download pool's queue in order
+    private static final int MAX_CONCURRENT_DOWNLOADS = 2;
+    private static final int DEFAULT_DOWNLOAD_SEGMENTS = 4;
+
+    // searchFiles / grepFiles limits
+    private static final int DEFAULT_SEARCH_RESULTS = 1000;
+    private static final int MAX_SEARCH_RESULTS = 100000;
+    private static final int MAX_GREP_CONTEXT = 10;
+
+    // Port scans: ports probed when none are given, and the accepted connect timeouts
+    private static final String DEFAULT_SCAN_PORTS = "1-1024";
+    private static final int MIN_SCAN_TIMEOUT_MS = 50;
+    private static final int MAX_SCAN_TIMEOUT_MS = 30000;
+
+    // HTTP response cache, under cache so the system may reclaim it
+    private static final String HTTP_CACHE_DIR = "http";
+    private static final long HTTP_CACHE_BYTES = 64L * 1024 * 1024;
+    private static final Set<String> HTTP_METHODS = new HashSet<>(Arrays.asList(
+        "GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS"
+    ));
+
+    // Metadata cache budget, and the snapshot it is restored from on start
+    private static final int MAX_CACHED_DIRECTORIES = 512;
+    private static final int MAX_CACHED_ENTRIES = 200000;
+    private static final String METADATA_SNAPSHOT = "metadata.snapshot";
+
+    // Saved install queue; in files, not cache, so pending installs are never evicted
+    private static final String INSTALL_QUEUE_STATE = "install-queue.state";
+    // Layer store and the instances assembled from it, both under files
+    private static final String LAYER_STORE_DIR = "layers";
+    private static final String INSTANCES_DIR = "vms";
+    // Integrity baselines, one file per scanned tree
+    private static final String INTEGRITY_DIR = "integrity";
+    private static final int MAX_COMPLETIONS = 200;
+    private static final String EXEC_OUTPUT_DIR = "exec-output";
+
+    // Defaults for the per-call "timeout", "maxOutputBytes" and "killGrace"
+    // of executeCommand and executeRootCommand; 0 disables a limit
+    private static final long DEFAULT_COMMAND_TIMEOUT_MS = 10 * 60 * 1000;
+    private static final long DEFAULT_MAX_OUTPUT_BYTES = 8 * 1024 * 1024;
+    private static final long DEFAULT_KILL_GRACE_MS = 2000;
+    // Exit code reported for a root command killed at its deadline, as timeout(1) does
+    private static final int TIMEOUT_EXIT_CODE = 124;
+    private static final long EXEC_OUTPUT_TTL_MS = 60 * 60 * 1000;
+
+    // Holds the formatter so java.time is first touched by a listing, not
+    // while the plugin class itself is being initialized
+    private static final class ModifiedFormat {
+        static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss", Locale.US);
+    }
+
+    private volatile long commandTimeoutMs = DEFAULT_COMMAND_TIMEOUT_MS;
+    private volatile long maxOutputBytes = DEFAULT_MAX_OUTPUT_BYTES;
+    private volatile long killGraceMs = DEFAULT_KILL_GRACE_MS;
 
-    private String currentWorkingDirectory;
-    private String homeDirectory;
+    private volatile String currentWorkingDirectory;
+    private volatile CommandPolicy commandPolicy = CommandPolicy.defaults();
+    private volatile String homeDirectory;
     private String storageRoot;
 
+    // Default pool sizes of the execution engine and the per-pool queue bound
+    private static final int DEFAULT_PROCESS_THREADS = 4;
+    private static final int DEFAULT_FILE_THREADS = 4;
+    // Copies, deletes, searches, hashing and extraction, kept off the quick file calls' threads
+    private static final int DEFAULT_BULK_THREADS = 2;
+    private static final int DEFAULT_NETWORK_THREADS = 3;
+    private static final int EXECUTION_QUEUE_CAPACITY = 64;
+
+    private final ExecutionEngine executionEngine = new ExecutionEngine(DEFAULT_PROCESS_THREADS,
+        DEFAULT_FILE_THREADS, DEFAULT_BULK_THREADS, DEFAULT_NETWORK_THREADS, MAX_CONCURRENT_DOWNLOADS,
+        EXECUTION_QUEUE_CAPACITY);
+    private final Map<String, OutputStreamer> activeStreams = new ConcurrentHashMap<>();
+    private final Map<String, ShellSession> shellSessions = new ConcurrentHashMap<>();
+    private final AtomicLong sessionCounter = new AtomicLong();
+    private final Map<String, AtomicFileWriter> openWrites = new ConcurrentHashMap<>();
+    private final AtomicLong writeCounter = new AtomicLong();
+    private final PerfStats perfStats = new PerfStats();
+    private final RootShellPool rootShells = new RootShellPool(ROOT_SHELL_SESSIONS, perfStats, "su");
+    private final DownloadManager downloadManager = new DownloadManager();
+    private final MetadataCache metadataCache = new MetadataCache(MAX_CACHED_DIRECTORIES, MAX_CACHED_ENTRIES,
+        new DirectoryWatcher());
+    private final DirectoryLister directoryLister = new DirectoryLister(metadataCache);
+    private InstallQueue installQueue;
+    private LayerStore layerStore;
+    private HttpCache httpCache;
+    private HttpClient httpClient;
+
     @Override
     public void load() {
         super.load();
@@ -90,9 +204,59 @@ public class NativeShellPlugin extends Plugin {
         homeDirectory = context.getFilesDir().getAbsolutePath() + "/home";
         storageRoot = Environment.getExternalStorageDirectory().getAbsolutePath();
         currentWorkingDirectory = homeDirectory;
+        commandPolicy = loadCommandPolicy(context);
         
         // Create initial directories
         setupInitialDirectories();
+        
+        executionEngine.submit(ExecutionEngine.Pool.FILE, "metadata-restore",
+            job -> metadataCache.restore(new File(context.getCacheDir(), METADATA_SNAPSHOT)), () -> { });
+        
+        installQueue = new InstallQueue(new File(context.getFilesDir(), INSTALL_QUEUE_STATE), rootShells,
+            () -> maxOutputBytes, installListener());
+        executionEngine.submit(ExecutionEngine.Pool.FILE, "install-restore", job -> installQueue.restore(), () -> { });
+        layerStore = new LayerStore(new File(context.getFilesDir(), LAYER_STORE_DIR));
+        httpCache = new HttpCache(new File(context.getCacheDir(), HTTP_CACHE_DIR), HTTP_CACHE_BYTES);
+        httpClient = new HttpClient(httpCache);
+        executionEngine.submit(ExecutionEngine.Pool.FILE, "http-cache-restore", job -> httpCache.restore(), () -> { });
+    }
+
+    @Override
+    protected void handleOnPause() {
+        super.handleOnPause();
+        try {
+            executionEngine.submit(ExecutionEngine.Pool.FILE, "metadata-snapshot", job -> saveMetadataSnapshot(), () -> { });
+        } catch (RejectedExecutionException e) {
+            // Busy; the snapshot is written again on destroy
+        }
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        for (OutputStreamer streamer : activeStreams.values()) {
+            streamer.close();
+        }
+        for (ShellSession session : shellSessions.values()) {
+            session.close();
+        }
+        for (AtomicFileWriter writer : openWrites.values()) {
+            writer.abort();
+        }
+        directoryLister.clear();
+        saveMetadataSnapshot();
+        metadataCache.clear();
+        executionEngine.shutdown();
+        installQueue.shutdown();
+        rootShells.shutdown();
+        super.handleOnDestroy();
+    }
+
+    private void saveMetadataSnapshot() {
+        try {
+            metadataCache.save(new File(getContext().getCacheDir(), METADATA_SNAPSHOT));
+        } catch (IOException e) {
+            // Only costs a cold cache on the next start
+        }
     }
 
     private void setupInitialDirectories() {
@@ -110,35 +274,168 @@ public class NativeShellPlugin extends Plugin {
     }
 
     /**
-     * Validates that a command is safe to execute
+     * Validates that a command is safe to execute in the given policy mode
+     */
+    private boolean isCommandAllowed(String mode, String command) {
+        return commandPolicy.allowsCommand(mode, command);
+    }
+
+    /**
+     * Whether a root command line contains quoting of its own. The root shell
+     * parses it again, so quoting there would change what the policy checked,
+     * and an unbalanced quote only fails once it reaches the shell.
+     */
+    private static boolean hasShellQuoting(String command) {
+        return command.indexOf('\'') >= 0 || command.indexOf('"') >= 0 || command.indexOf('\\') >= 0;
+    }
+
+    /**
+     * Validates arguments for dangerous characters and the command's argument rule
+     */
+    private boolean areArgumentsSafe(String mode, String command, List<String> args) {
+        return commandPolicy.allowsArguments(mode, command, args);
+    }
+
+    /**
+     * The policy from the app's assets, or the built-in one when the app
+     * does not ship one or it cannot be read
      */
-    private boolean isCommandAllowed(String command) {
-        if (command == null || command.isEmpty()) {
-            return false;
+    private static CommandPolicy loadCommandPolicy(Context context) {
+        try (InputStream in = context.getAssets().open(COMMAND_POLICY_ASSET)) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                buffer.write(chunk, 0, read);
+            }
+            return parseCommandPolicy(new String(buffer.toByteArray(), StandardCharsets.UTF_8));
+        } catch (IOException | JSONException | IllegalArgumentException e) {
+            // No asset, or a broken one: keep the built-in allowlist
+            return CommandPolicy.defaults();
         }
+    }
+
+    /**
+     * Reads a policy from JSON of the form
+     * <pre>
+     * {
+     *   "modes": { "user": ["ls", "cat"], "root": ["ls"] },
+     *   "rules": { "rm": { "maxArgs": 16, "denyArgs": ["--no-preserve-root"], "denyPrefixes": ["/system"] } },
+     *   "forbiddenChars": ";&amp;|`$&lt;&gt;(){}[]\n\r"
+     * }
+     * </pre>
+     * Modes left out fall back to the default command list, and a missing
+     * "forbiddenChars" keeps the default set.
+     *
+     * @throws JSONException when the text is not valid JSON of that shape
+     * @throws IllegalArgumentException for an invalid command name
+     */
+    private static CommandPolicy parseCommandPolicy(String json) throws JSONException {
+        JSONObject root = new JSONObject(json);
         
-        String baseCommand = command.split("\\s+")[0];
-        if (!ALLOWED_COMMANDS.contains(baseCommand)) {
-            return false;
+        Map<String, CommandPolicy.ArgumentRule> argumentRules = new HashMap<>();
+        JSONObject rules = root.optJSONObject("rules");
+        if (rules != null) {
+            for (Iterator<String> names = rules.keys(); names.hasNext(); ) {
+                String name = names.next();
+                JSONObject rule = rules.getJSONObject(name);
+                argumentRules.put(name, new CommandPolicy.ArgumentRule(rule.optInt("maxArgs", -1),
+                    jsonStrings(rule.optJSONArray("denyArgs")), jsonStrings(rule.optJSONArray("denyPrefixes"))));
+            }
         }
         
-        if (DANGEROUS_CHARS.matcher(command).find()) {
-            return false;
+        Map<String, List<String>> modes = new HashMap<>();
+        JSONObject modeLists = root.optJSONObject("modes");
+        if (modeLists != null) {
+            for (Iterator<String> names = modeLists.keys(); names.hasNext(); ) {
+                String mode = names.next();
+                modes.put(mode, Arrays.asList(jsonStrings(modeLists.getJSONArray(mode))));
+            }
         }
-        
-        return true;
+        return CommandPolicy.of(modes, argumentRules, root.has("forbiddenChars") ? root.getString("forbiddenChars") : null);
+    }
+
+    private static String[] jsonStrings(JSONArray array) throws JSONException {
+        if (array == null) {
+            return new String[0];
+        }
+        String[] values = new String[array.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = array.getString(i);
+        }
+        return values;
     }
 
     /**
-     * Validates arguments for dangerous characters
+     * Reads the optional "args" array of a call as strings
      */
-    private boolean areArgumentsSafe(List<String> args) {
-        for (String arg : args) {
-            if (arg != null && DANGEROUS_CHARS.matcher(arg).find()) {
-                return false;
-            }
+    private List<String> getArgs(PluginCall call) {
+        List<String> args = new ArrayList<>();
+        JSArray array = call.getArray("args", new JSArray());
+        for (int i = 0; i < array.length(); i++) {
+            args.add(array.optString(i));
+        }
+        return args;
+    }
+
+    /**
+     * Id under which a call's job and events are tracked, "callId" or the
+     * Capacitor callback id when the caller did not pick one
+     */
+    private String getCallId(PluginCall call) {
+        return call.getString("callId", call.getCallbackId());
+    }
+
+    /**
+     * Runs the body of a plugin method on one of the execution engine's pools,
+     * where it can be cancelled through cancel() by its call id
+     */
+    private void runAsync(ExecutionEngine.Pool pool, PluginCall call, ExecutionEngine.Task task) {
+        PerfStats.Metric queue = perfStats.metric("queue." + pool.name().toLowerCase(Locale.US));
+        String method = "method." + call.getMethodName();
+        try {
+            executionEngine.submit(pool, getCallId(call), job -> {
+                queue.record(job.submittedAt, true);
+                long started = System.nanoTime();
+                boolean ok = false;
+                try {
+                    task.run(job);
+                    ok = !job.isCancelled();
+                } catch (Exception e) {
+                    call.reject("Operation failed: " + e.getMessage());
+                } finally {
+                    perfStats.metric(method).record(started, ok);
+                }
+            }, () -> call.reject("Cancelled", "CANCELLED"));
+        } catch (RejectedExecutionException e) {
+            queue.fail();
+            call.reject("Too many pending operations, try again later");
+        }
+    }
+
+    /**
+     * Starts a process, timing the fork and exec
+     */
+    private Process startProcess(ProcessBuilder pb) throws IOException {
+        long started = System.nanoTime();
+        boolean ok = false;
+        try {
+            Process process = pb.start();
+            ok = true;
+            return process;
+        } finally {
+            perfStats.metric("process.spawn").record(started, ok);
         }
-        return true;
+    }
+
+    /**
+     * Times every event sent to the WebView, which includes serializing it
+     */
+    @Override
+    protected void notifyListeners(String eventName, JSObject data) {
+        long started = System.nanoTime();
+        super.notifyListeners(eventName, data);
+        perfStats.metric("bridge." + eventName).record(started, true);
     }
 
     /**
@@ -170,840 +467,2780 @@ public class NativeShellPlugin extends Plugin {
 
     @PluginMethod
     public void executeCommand(PluginCall call) {
-        String command = call.getString("command");
-        List<String> args = call.getArray("args", new ArrayList<>()).toList();
-        
-        if (command == null) {
-            call.reject("Command is required");
-            return;
-        }
+        runAsync(ExecutionEngine.Pool.PROCESS, call, job -> {
+            String command = call.getString("command");
+            List<String> args = getArgs(call);
+            
+            if (command == null) {
+                call.reject("Command is required");
+                return;
+            }
 
-        if (!isCommandAllowed(command)) {
-            JSObject result = new JSObject();
-            result.put("output", "");
-            result.put("error", "Command not allowed. Only safe commands are permitted.");
-            result.put("exitCode", 1);
-            call.resolve(result);
-            return;
-        }
+            if (!isCommandAllowed(CommandPolicy.MODE_USER, command)) {
+                JSObject result = new JSObject();
+                result.put("output", "");
+                result.put("error", "Command not allowed. Only safe commands are permitted.");
+                result.put("exitCode", 1);
+                call.resolve(result);
+                return;
+            }
 
-        if (!areArgumentsSafe(args)) {
-            JSObject result = new JSObject();
-            result.put("output", "");
-            result.put("error", "Invalid arguments. Arguments contain forbidden characters.");
-            result.put("exitCode", 1);
-            call.resolve(result);
-            return;
-        }
+            if (!areArgumentsSafe(CommandPolicy.MODE_USER, command, args)) {
+                JSObject result = new JSObject();
+                result.put("output", "");
+                result.put("error", "Invalid arguments. Arguments contain forbidden characters.");
+                result.put("exitCode", 1);
+                call.resolve(result);
+                return;
+            }
+
+            // base64 returns the raw bytes of stdout and stderr instead of
+            // decoding them as UTF-8 text
+            String encoding = call.getString("encoding", "utf8");
+            if (!"utf8".equals(encoding) && !"base64".equals(encoding)) {
+                call.reject("Unsupported encoding: " + encoding);
+                return;
+            }
+            boolean binary = "base64".equals(encoding);
+            PerfStats.Metric commandStats = perfStats.metric("command." + new File(command).getName());
+            long started = System.nanoTime();
+
+            try {
+                List<String> fullCommand = new ArrayList<>();
+                fullCommand.add(command);
+                fullCommand.addAll(args);
+                
+                ProcessBuilder pb = new ProcessBuilder(fullCommand);
+                pb.directory(new File(currentWorkingDirectory));
+                pb.environment().put("HOME", homeDirectory);
+                pb.environment().put("TERM", "xterm-256color");
+                pb.environment().put("LANG", "en_US.UTF-8");
+                
+                pb.redirectErrorStream(call.getBoolean("mergeStreams", false));
+                
+                // stdout goes straight from the child into the file and never
+                // passes through the bridge; the WebView fetches it by path
+                File outputFile = execOutputFile(call);
+                if (outputFile != null) {
+                    pb.redirectOutput(outputFile);
+                }
+                
+                long timeoutMs = Math.max(0, call.getLong("timeout", commandTimeoutMs));
+                long graceMs = Math.max(0, call.getLong("killGrace", killGraceMs));
+                
+                if (call.getBoolean("stream", false)) {
+                    int exitCode = streamCommand(call, pb, job, binary, outputFile, commandStats, timeoutMs, graceMs);
+                    commandStats.record(started, exitCode == 0);
+                    return;
+                }
+                
+                Process process = startProcess(pb);
+                ProcessKiller killer = ProcessKiller.watch(process, timeoutMs, graceMs);
+                job.onCancel(killer::kill);
+                long ioStarted = System.nanoTime();
+                ProcessIo.Result processResult;
+                try {
+                    processResult = ProcessIo.collect(process, Math.max(0, call.getLong("maxOutputBytes", maxOutputBytes)));
+                } finally {
+                    killer.cancel();
+                }
+                perfStats.metric("process.io").record(ioStarted, true);
+                commandStats.record(started, processResult.exitCode == 0 && !killer.timedOut());
+                commandStats.bytesOut(processResult.stdout.length + processResult.stderr.length);
+                if (killer.timedOut()) {
+                    commandStats.timeout();
+                }
+                
+                JSObject result = new JSObject();
+                result.put("output", binary
+                    ? Base64.getEncoder().encodeToString(processResult.stdout)
+                    : processResult.output());
+                result.put("error", binary
+                    ? Base64.getEncoder().encodeToString(processResult.stderr)
+                    : processResult.error() + timeoutNote(killer.timedOut(), timeoutMs));
+                result.put("exitCode", processResult.exitCode);
+                result.put("encoding", encoding);
+                putLimits(result, processResult, killer.timedOut());
+                putOutputFile(result, outputFile);
+                
+                call.resolve(result);
+            } catch (Exception e) {
+                commandStats.record(started, false);
+                JSObject result = new JSObject();
+                result.put("output", "");
+                result.put("error", "Execution failed: " + e.getMessage());
+                result.put("exitCode", 1);
+                call.resolve(result);
+            }
+        });
+    }
+
+    /**
+     * Runs a command and emits its output as "processOutput" events while it
+     * runs. The call resolves with the exit code once the process finishes;
+     * output and error are left empty since they were streamed.
+     *
+     * @return the exit code, 1 if the command could not be run
+     */
+    private int streamCommand(PluginCall call, ProcessBuilder pb, ExecutionEngine.Job job, boolean binary,
+                              File outputFile, PerfStats.Metric commandStats, long timeoutMs, long graceMs) {
+        String callId = getCallId(call);
+        int chunkSize = Math.max(256, Math.min(call.getInt("chunkSize", DEFAULT_STREAM_CHUNK_SIZE), 65536));
+        int window = Math.max(0, call.getInt("window", DEFAULT_STREAM_WINDOW));
+        String encoding = binary ? "base64" : "utf8";
+
+        OutputStreamer streamer = new OutputStreamer(chunkSize, window, binary, (stream, data, seq) -> {
+            JSObject chunk = new JSObject();
+            chunk.put("callId", callId);
+            chunk.put("stream", stream);
+            chunk.put("data", data);
+            chunk.put("encoding", encoding);
+            chunk.put("seq", seq);
+            notifyListeners("processOutput", chunk);
+        });
+        activeStreams.put(callId, streamer);
 
         try {
-            List<String> fullCommand = new ArrayList<>();
-            fullCommand.add(command);
-            fullCommand.addAll(args);
-            
-            ProcessBuilder pb = new ProcessBuilder(fullCommand);
-            pb.directory(new File(currentWorkingDirectory));
-            pb.environment().put("HOME", homeDirectory);
-            pb.environment().put("TERM", "xterm-256color");
-            pb.environment().put("LANG", "en_US.UTF-8");
-            
-            Process process = pb.start();
-            
-            String output = readStream(process.getInputStream());
-            String error = readStream(process.getErrorStream());
-            int exitCode = process.waitFor();
+            Process process = startProcess(pb);
+            ProcessKiller killer = ProcessKiller.watch(process, timeoutMs, graceMs);
+            job.onCancel(killer::kill);
+            job.onCancel(streamer::close);
+            long ioStarted = System.nanoTime();
+            int exitCode;
+            try {
+                exitCode = streamer.run(process);
+            } finally {
+                killer.cancel();
+            }
+            perfStats.metric("process.io").record(ioStarted, true);
+            if (killer.timedOut()) {
+                commandStats.timeout();
+            }
             
             JSObject result = new JSObject();
-            result.put("output", output);
-            result.put("error", error);
+            result.put("output", "");
+            result.put("error", binary ? "" : timeoutNote(killer.timedOut(), timeoutMs).trim());
             result.put("exitCode", exitCode);
-            
+            result.put("timedOut", killer.timedOut());
+            result.put("callId", callId);
+            result.put("streamed", true);
+            result.put("encoding", encoding);
+            putOutputFile(result, outputFile);
             call.resolve(result);
+            return exitCode;
         } catch (Exception e) {
             JSObject result = new JSObject();
             result.put("output", "");
             result.put("error", "Execution failed: " + e.getMessage());
             result.put("exitCode", 1);
+            result.put("callId", callId);
             call.resolve(result);
+            return 1;
+        } finally {
+            activeStreams.remove(callId);
+            // Raw bytes, as the buffered paths count them, not chars or base64
+            commandStats.bytesOut(streamer.bytesRead());
         }
     }
 
-    @PluginMethod
-    public void executeRootCommand(PluginCall call) {
-        String command = call.getString("command");
-        List<String> args = call.getArray("args", new ArrayList<>()).toList();
+    private static String timeoutNote(boolean timedOut, long timeoutMs) {
+        return timedOut ? "\n[timed out after " + timeoutMs + "ms]" : "";
+    }
+
+    private static void putLimits(JSObject result, ProcessIo.Result processResult, boolean timedOut) {
+        result.put("timedOut", timedOut);
+        result.put("truncated", processResult.truncated());
+        if (processResult.truncated()) {
+            result.put("omittedBytes", processResult.stdoutOmitted + processResult.stderrOmitted);
+        }
+    }
+
+    /**
+     * Where "outputFile" sends stdout: the given path, or with true a new
+     * temp file in the cache directory. Null when stdout is returned as usual.
+     */
+    private File execOutputFile(PluginCall call) throws IOException {
+        Object option = call.getData().opt("outputFile");
+        if (option instanceof String) {
+            String path = (String) option;
+            if (path.contains("..")) {
+                throw new IOException("Invalid output path: path traversal not allowed");
+            }
+            File file = new File(resolvePath(path));
+            File parent = file.getParentFile();
+            if (parent != null && !parent.exists()) {
+                parent.mkdirs();
+            }
+            return file;
+        }
+        if (!Boolean.TRUE.equals(option)) {
+            return null;
+        }
         
-        if (command == null) {
-            call.reject("Command is required");
-            return;
+        File dir = new File(getContext().getCacheDir(), EXEC_OUTPUT_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        // Temp outputs the WebView never collected are dropped after a while
+        File[] stale = dir.listFiles();
+        if (stale != null) {
+            long cutoff = System.currentTimeMillis() - EXEC_OUTPUT_TTL_MS;
+            for (File old : stale) {
+                if (old.lastModified() < cutoff) {
+                    old.delete();
+                }
+            }
         }
+        return File.createTempFile("exec-", ".out", dir);
+    }
 
-        if (!isCommandAllowed(command)) {
-            JSObject result = new JSObject();
-            result.put("output", "");
-            result.put("error", "Root command not allowed. Only safe commands are permitted.");
-            result.put("exitCode", 1);
-            call.resolve(result);
-            return;
+    private void putOutputFile(JSObject result, File outputFile) {
+        if (outputFile != null) {
+            result.put("outputFile", outputFile.getAbsolutePath());
+            result.put("outputSize", outputFile.length());
         }
+    }
 
-        if (!areArgumentsSafe(args)) {
-            JSObject result = new JSObject();
-            result.put("output", "");
-            result.put("error", "Invalid arguments. Arguments contain forbidden characters.");
-            result.put("exitCode", 1);
-            call.resolve(result);
-            return;
+    /**
+     * Why a batch step's extra environment is refused, or null when it is
+     * acceptable. Names must be plain identifiers outside
+     * {@link #PROTECTED_ENV} and LD_*; values follow the argument rules.
+     */
+    private String envProblem(JSONObject env) {
+        if (env == null) {
+            return null;
+        }
+        Iterator<String> keys = env.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (!ENV_NAME.matcher(key).matches() || key.startsWith("LD_") || PROTECTED_ENV.contains(key)) {
+                return "Environment variable not allowed: " + key;
+            }
+            if (!commandPolicy.isSafe(env.optString(key, ""))) {
+                return "Invalid environment. " + key + " contains forbidden characters.";
+            }
         }
+        return null;
+    }
 
-        try {
-            List<String> commandList = new ArrayList<>();
-            commandList.add("su");
-            commandList.add("-c");
-            
-            StringBuilder innerCommand = new StringBuilder(command);
-            for (String arg : args) {
-                String escapedArg = arg.replace("'", "'\\''");
-                innerCommand.append(" '").append(escapedArg).append("'");
+    /**
+     * Runs an ordered list of steps, each {command, args, cwd, env, pipe}, and
+     * resolves once with a result per step. A step with "pipe" reads the
+     * previous step's stdout on its stdin. Every step is checked against the
+     * same rules as executeCommand before any of them runs. With
+     * "stopOnError" (the default) the steps after a failure are skipped.
+     */
+    @PluginMethod
+    public void executeBatch(PluginCall call) {
+        runAsync(ExecutionEngine.Pool.PROCESS, call, job -> {
+            JSArray stepsArray = call.getArray("steps");
+            if (stepsArray == null || stepsArray.length() == 0) {
+                call.reject("Steps are required");
+                return;
+            }
+            if (stepsArray.length() > MAX_BATCH_STEPS) {
+                call.reject("Too many steps (max " + MAX_BATCH_STEPS + ")");
+                return;
             }
-            commandList.add(innerCommand.toString());
             
-            ProcessBuilder pb = new ProcessBuilder(commandList);
-            Process process = pb.start();
+            List<CommandBatch.Step> steps = new ArrayList<>();
+            for (int i = 0; i < stepsArray.length(); i++) {
+                JSONObject step = stepsArray.optJSONObject(i);
+                String problem = null;
+                String command = step == null ? null : step.optString("command", null);
+                List<String> args = new ArrayList<>();
+                if (command == null) {
+                    problem = "Command is required";
+                } else if (!isCommandAllowed(CommandPolicy.MODE_USER, command)) {
+                    problem = "Command not allowed. Only safe commands are permitted.";
+                } else {
+                    JSONArray stepArgs = step.optJSONArray("args");
+                    for (int j = 0; stepArgs != null && j < stepArgs.length(); j++) {
+                        args.add(stepArgs.optString(j));
+                    }
+                    if (!areArgumentsSafe(CommandPolicy.MODE_USER, command, args)) {
+                        problem = "Invalid arguments. Arguments contain forbidden characters.";
+                    } else {
+                        problem = envProblem(step.optJSONObject("env"));
+                    }
+                }
+                
+                File cwd = null;
+                if (problem == null) {
+                    cwd = new File(resolvePath(step.optString("cwd", currentWorkingDirectory)));
+                    if (!cwd.isDirectory()) {
+                        problem = "Directory not found: " + cwd.getAbsolutePath();
+                    }
+                }
+                
+                // Nothing runs unless every step is valid
+                if (problem != null) {
+                    JSObject result = new JSObject();
+                    result.put("output", "");
+                    result.put("error", "Step " + (i + 1) + ": " + problem);
+                    result.put("exitCode", 1);
+                    result.put("results", new JSArray());
+                    result.put("completed", 0);
+                    call.resolve(result);
+                    return;
+                }
+                
+                List<String> fullCommand = new ArrayList<>();
+                fullCommand.add(command);
+                fullCommand.addAll(args);
+                ProcessBuilder pb = new ProcessBuilder(fullCommand);
+                pb.directory(cwd);
+                pb.environment().put("HOME", homeDirectory);
+                pb.environment().put("TERM", "xterm-256color");
+                pb.environment().put("LANG", "en_US.UTF-8");
+                JSONObject extraEnv = step.optJSONObject("env");
+                if (extraEnv != null) {
+                    Iterator<String> keys = extraEnv.keys();
+                    while (keys.hasNext()) {
+                        String key = keys.next();
+                        pb.environment().put(key, extraEnv.optString(key, ""));
+                    }
+                }
+                pb.redirectErrorStream(step.optBoolean("mergeStreams", false));
+                steps.add(new CommandBatch.Step(command, pb, i > 0 && step.optBoolean("pipe", false)));
+            }
             
-            String output = readStream(process.getInputStream());
-            String error = readStream(process.getErrorStream());
-            int exitCode = process.waitFor();
+            long timeoutMs = Math.max(0, call.getLong("timeout", commandTimeoutMs));
+            CommandBatch batch = new CommandBatch(steps, call.getBoolean("stopOnError", true), timeoutMs,
+                Math.max(0, call.getLong("killGrace", killGraceMs)),
+                Math.max(0, call.getLong("maxOutputBytes", maxOutputBytes)));
+            List<CommandBatch.StepResult> stepResults = batch.run(job);
+            
+            JSArray results = new JSArray();
+            int exitCode = 0;
+            int completed = 0;
+            for (int i = 0; i < stepResults.size(); i++) {
+                CommandBatch.StepResult stepResult = stepResults.get(i);
+                // Like a shell, only the last command of a pipeline sets its status
+                boolean endsPipeline = i == steps.size() - 1 || !steps.get(i + 1).pipe;
+                PerfStats.Metric commandStats = perfStats.metric("command." + new File(stepResult.command).getName());
+                JSObject result = new JSObject();
+                result.put("command", stepResult.command);
+                result.put("durationMs", stepResult.durationMs);
+                if (stepResult.result == null) {
+                    result.put("output", "");
+                    result.put("error", stepResult.failure);
+                    result.put("exitCode", 1);
+                    result.put("skipped", true);
+                    if (exitCode == 0 && endsPipeline) {
+                        exitCode = 1;
+                    }
+                } else {
+                    ProcessIo.Result processResult = stepResult.result;
+                    commandStats.latency.record(stepResult.durationMs * 1000);
+                    commandStats.bytesOut(processResult.stdout.length + processResult.stderr.length);
+                    if (!stepResult.succeeded()) {
+                        commandStats.fail();
+                    }
+                    if (stepResult.timedOut) {
+                        commandStats.timeout();
+                    }
+                    result.put("output", processResult.output());
+                    result.put("error", processResult.error() + timeoutNote(stepResult.timedOut, timeoutMs));
+                    result.put("exitCode", processResult.exitCode);
+                    result.put("skipped", false);
+                    putLimits(result, processResult, stepResult.timedOut);
+                    completed++;
+                    // The batch reports the first failure, like set -e would
+                    if (exitCode == 0 && endsPipeline && !stepResult.succeeded()) {
+                        exitCode = stepResult.timedOut ? TIMEOUT_EXIT_CODE : processResult.exitCode;
+                    }
+                }
+                results.put(result);
+            }
             
             JSObject result = new JSObject();
-            result.put("output", output);
-            result.put("error", error);
+            result.put("results", results);
             result.put("exitCode", exitCode);
-            
-            call.resolve(result);
-        } catch (Exception e) {
-            JSObject result = new JSObject();
-            result.put("output", "");
-            result.put("error", "Root execution failed: " + e.getMessage());
-            result.put("exitCode", 1);
+            result.put("completed", completed);
             call.resolve(result);
+        });
+    }
+
+    /**
+     * Acknowledges streamed chunks up to "seq" so the command can keep producing output
+     */
+    @PluginMethod
+    public void ackOutput(PluginCall call) {
+        String callId = call.getString("callId");
+        Long seq = call.getLong("seq");
+        
+        if (callId == null || seq == null) {
+            call.reject("callId and seq are required");
+            return;
+        }
+        
+        OutputStreamer streamer = activeStreams.get(callId);
+        if (streamer != null) {
+            streamer.ack(seq);
         }
+        call.resolve();
     }
 
+    /**
+     * Cancels a queued or running call by the "callId" it was started with
+     */
     @PluginMethod
-    public void getStorageInfo(PluginCall call) {
-        try {
-            JSObject result = new JSObject();
-            
-            // Internal storage
-            File internal = Environment.getDataDirectory();
-            StatFs internalStats = new StatFs(internal.getPath());
-            long internalTotal = internalStats.getTotalBytes();
-            long internalFree = internalStats.getAvailableBytes();
-            
-            JSObject internalStorage = new JSObject();
-            internalStorage.put("path", internal.getAbsolutePath());
-            internalStorage.put("total", internalTotal);
-            internalStorage.put("free", internalFree);
-            internalStorage.put("used", internalTotal - internalFree);
-            result.put("internal", internalStorage);
-            
-            // External storage
-            File external = Environment.getExternalStorageDirectory();
-            if (external.exists() && external.canRead()) {
-                StatFs externalStats = new StatFs(external.getPath());
-                long externalTotal = externalStats.getTotalBytes();
-                long externalFree = externalStats.getAvailableBytes();
-                
-                JSObject externalStorage = new JSObject();
-                externalStorage.put("path", external.getAbsolutePath());
-                externalStorage.put("total", externalTotal);
-                externalStorage.put("free", externalFree);
-                externalStorage.put("used", externalTotal - externalFree);
-                result.put("external", externalStorage);
-            }
-            
-            // App-specific directories
-            JSObject appDirs = new JSObject();
-            appDirs.put("files", getContext().getFilesDir().getAbsolutePath());
-            appDirs.put("cache", getContext().getCacheDir().getAbsolutePath());
-            appDirs.put("home", homeDirectory);
-            appDirs.put("cwd", currentWorkingDirectory);
-            result.put("app", appDirs);
-            
-            result.put("sdcard", storageRoot);
-            
-            call.resolve(result);
-        } catch (Exception e) {
-            call.reject("Failed to get storage info: " + e.getMessage());
+    public void cancel(PluginCall call) {
+        String callId = call.getString("callId");
+        
+        if (callId == null) {
+            call.reject("callId is required");
+            return;
         }
+        
+        JSObject result = new JSObject();
+        result.put("callId", callId);
+        result.put("cancelled", executionEngine.cancel(callId));
+        call.resolve(result);
     }
 
+    /**
+     * Sets the thread count of the process, file, bulk, network and download pools and the
+     * default command limits, and reports their current state
+     */
     @PluginMethod
-    public void listDirectory(PluginCall call) {
-        String path = call.getString("path", currentWorkingDirectory);
-        String resolvedPath = resolvePath(path);
+    public void configureExecution(PluginCall call) {
+        Integer processThreads = call.getInt("processThreads");
+        Integer fileThreads = call.getInt("fileThreads");
+        Integer bulkThreads = call.getInt("bulkThreads");
+        Integer networkThreads = call.getInt("networkThreads");
+        Integer downloadThreads = call.getInt("downloadThreads");
         
-        try {
-            File dir = new File(resolvedPath);
-            if (!dir.exists()) {
+        if (processThreads != null) {
+            executionEngine.setThreads(ExecutionEngine.Pool.PROCESS, processThreads);
+        }
+        if (fileThreads != null) {
+            executionEngine.setThreads(ExecutionEngine.Pool.FILE, fileThreads);
+        }
+        if (bulkThreads != null) {
+            executionEngine.setThreads(ExecutionEngine.Pool.BULK, bulkThreads);
+        }
+        if (networkThreads != null) {
+            executionEngine.setThreads(ExecutionEngine.Pool.NETWORK, networkThreads);
+        }
+        if (downloadThreads != null) {
+            executionEngine.setThreads(ExecutionEngine.Pool.DOWNLOAD, downloadThreads);
+        }
+        commandTimeoutMs = Math.max(0, call.getLong("commandTimeout", commandTimeoutMs));
+        maxOutputBytes = Math.max(0, call.getLong("maxOutputBytes", maxOutputBytes));
+        killGraceMs = Math.max(0, call.getLong("killGrace", killGraceMs));
+        
+        JSObject result = new JSObject();
+        for (ExecutionEngine.Pool pool : ExecutionEngine.Pool.values()) {
+            JSObject poolInfo = new JSObject();
+            poolInfo.put("threads", executionEngine.getThreads(pool));
+            poolInfo.put("active", executionEngine.getActive(pool));
+            poolInfo.put("queued", executionEngine.getQueued(pool));
+            result.put(pool.name().toLowerCase(Locale.US), poolInfo);
+        }
+        JSObject limits = new JSObject();
+        limits.put("commandTimeout", commandTimeoutMs);
+        limits.put("maxOutputBytes", maxOutputBytes);
+        limits.put("killGrace", killGraceMs);
+        result.put("limits", limits);
+        call.resolve(result);
+    }
+
+    /**
+     * Latency percentiles, counters and byte totals per method, command and
+     * internal stage since the last reset, plus the state of the pools
+     */
+    @PluginMethod
+    public void getPerformanceStats(PluginCall call) {
+        JSArray metrics = new JSArray();
+        for (PerfStats.Metric metric : perfStats.snapshot()) {
+            JSObject entry = new JSObject();
+            entry.put("name", metric.name);
+            entry.put("count", metric.latency.count());
+            entry.put("failures", metric.failures());
+            entry.put("timeouts", metric.timeouts());
+            entry.put("bytesIn", metric.bytesIn());
+            entry.put("bytesOut", metric.bytesOut());
+            entry.put("meanUs", metric.latency.mean());
+            entry.put("p50Us", metric.latency.percentile(0.50));
+            entry.put("p90Us", metric.latency.percentile(0.90));
+            entry.put("p99Us", metric.latency.percentile(0.99));
+            entry.put("maxUs", metric.latency.max());
+            metrics.put(entry);
+        }
+        
+        JSObject pools = new JSObject();
+        for (ExecutionEngine.Pool pool : ExecutionEngine.Pool.values()) {
+            JSObject poolInfo = new JSObject();
+            poolInfo.put("threads", executionEngine.getThreads(pool));
+            poolInfo.put("active", executionEngine.getActive(pool));
+            poolInfo.put("queued", executionEngine.getQueued(pool));
+            pools.put(pool.name().toLowerCase(Locale.US), poolInfo);
+        }
+        
+        MetadataCache.Stats cacheStats = metadataCache.stats();
+        JSObject cache = new JSObject();
+        cache.put("directories", cacheStats.directories);
+        cache.put("entries", cacheStats.entries);
+        cache.put("hits", cacheStats.hits);
+        cache.put("misses", cacheStats.misses);
+        
+        JSObject result = new JSObject();
+        result.put("httpCache", httpCacheStats(httpCache.stats()));
+        result.put("since", perfStats.since());
+        result.put("elapsedMs", System.currentTimeMillis() - perfStats.since());
+        result.put("metrics", metrics);
+        result.put("pools", pools);
+        result.put("metadataCache", cache);
+        call.resolve(result);
+    }
+
+    private static JSObject httpCacheStats(HttpCache.Stats stats) {
+        JSObject result = new JSObject();
+        result.put("entries", stats.entries);
+        result.put("bytes", stats.bytes);
+        result.put("maxBytes", stats.maxBytes);
+        result.put("hits", stats.hits);
+        result.put("revalidated", stats.revalidated);
+        result.put("misses", stats.misses);
+        return result;
+    }
+
+    @PluginMethod
+    public void resetPerformanceStats(PluginCall call) {
+        perfStats.reset();
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void executeRootCommand(PluginCall call) {
+        runAsync(ExecutionEngine.Pool.PROCESS, call, job -> {
+            String command = call.getString("command");
+            List<String> args = getArgs(call);
+            
+            if (command == null) {
+                call.reject("Command is required");
+                return;
+            }
+
+            if (!isCommandAllowed(CommandPolicy.MODE_ROOT, command)) {
+                JSObject result = new JSObject();
+                result.put("output", "");
+                result.put("error", "Root command not allowed. Only safe commands are permitted.");
+                result.put("exitCode", 1);
+                call.resolve(result);
+                return;
+            }
+
+            if (!areArgumentsSafe(CommandPolicy.MODE_ROOT, command, args)) {
                 JSObject result = new JSObject();
-                result.put("error", "Directory not found: " + resolvedPath);
-                result.put("files", new JSArray());
+                result.put("output", "");
+                result.put("error", "Invalid arguments. Arguments contain forbidden characters.");
+                result.put("exitCode", 1);
                 call.resolve(result);
                 return;
             }
-            
-            if (!dir.isDirectory()) {
+
+            if (hasShellQuoting(command)) {
                 JSObject result = new JSObject();
-                result.put("error", "Not a directory: " + resolvedPath);
-                result.put("files", new JSArray());
+                result.put("output", "");
+                result.put("error", "Invalid command. Quotes and backslashes belong in args, which are quoted for you.");
+                result.put("exitCode", 1);
                 call.resolve(result);
                 return;
             }
-            
-            File[] files = dir.listFiles();
-            JSArray fileList = new JSArray();
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
-            
-            if (files != null) {
-                for (File file : files) {
-                    JSObject fileInfo = new JSObject();
-                    fileInfo.put("name", file.getName());
-                    fileInfo.put("path", file.getAbsolutePath());
-                    fileInfo.put("isDirectory", file.isDirectory());
-                    fileInfo.put("isFile", file.isFile());
-                    fileInfo.put("size", file.length());
-                    fileInfo.put("modified", sdf.format(new Date(file.lastModified())));
-                    fileInfo.put("readable", file.canRead());
-                    fileInfo.put("writable", file.canWrite());
-                    fileInfo.put("executable", file.canExecute());
-                    fileList.put(fileInfo);
+
+            PerfStats.Metric commandStats = perfStats.metric("root." + new File(command).getName());
+            long timeoutMs = Math.max(0, call.getLong("timeout", commandTimeoutMs));
+            long started = System.nanoTime();
+            try {
+                StringBuilder innerCommand = new StringBuilder(command);
+                for (String arg : args) {
+                    String escapedArg = arg.replace("'", "'\\''");
+                    innerCommand.append(" '").append(escapedArg).append("'");
                 }
+                
+                ProcessIo.Result processResult = rootShells.exec(innerCommand.toString(), call.getBoolean("mergeStreams", false), job,
+                    timeoutMs, Math.max(0, call.getLong("maxOutputBytes", maxOutputBytes)));
+                commandStats.record(started, processResult.exitCode == 0);
+                commandStats.bytesOut(processResult.stdout.length + processResult.stderr.length);
+                
+                JSObject result = new JSObject();
+                result.put("output", processResult.output());
+                result.put("error", processResult.error());
+                result.put("exitCode", processResult.exitCode);
+                putLimits(result, processResult, false);
+                
+                call.resolve(result);
+            } catch (InterruptedIOException e) {
+                // The session was closed at the deadline, which takes the output with it
+                commandStats.record(started, false);
+                commandStats.timeout();
+                JSObject result = new JSObject();
+                result.put("output", "");
+                result.put("error", timeoutNote(true, timeoutMs).trim());
+                result.put("exitCode", TIMEOUT_EXIT_CODE);
+                result.put("timedOut", true);
+                result.put("truncated", false);
+                call.resolve(result);
+            } catch (Exception e) {
+                commandStats.record(started, false);
+                JSObject result = new JSObject();
+                result.put("output", "");
+                result.put("error", "Root execution failed: " + e.getMessage());
+                result.put("exitCode", 1);
+                call.resolve(result);
             }
-            
-            JSObject result = new JSObject();
-            result.put("path", resolvedPath);
-            result.put("files", fileList);
-            result.put("count", fileList.length());
-            call.resolve(result);
-        } catch (Exception e) {
-            call.reject("Failed to list directory: " + e.getMessage());
-        }
+        });
     }
 
+    /**
+     * Opens an interactive shell session. Output arrives as "sessionOutput"
+     * events (acknowledged through ackOutput with the session id) and a
+     * "sessionExit" event fires when the shell ends.
+     */
     @PluginMethod
-    public void readFile(PluginCall call) {
-        String path = call.getString("path");
-        if (path == null) {
-            call.reject("Path is required");
+    public void openSession(PluginCall call) {
+        if (shellSessions.size() >= MAX_SHELL_SESSIONS) {
+            call.reject("Too many open sessions (max " + MAX_SHELL_SESSIONS + ")");
             return;
         }
         
-        String resolvedPath = resolvePath(path);
+        String sessionId = call.getString("sessionId", "session-" + sessionCounter.incrementAndGet());
+        if (shellSessions.containsKey(sessionId)) {
+            call.reject("Session already open: " + sessionId);
+            return;
+        }
+        
+        boolean root = call.getBoolean("root", false);
+        int cols = Math.max(1, call.getInt("cols", 80));
+        int rows = Math.max(1, call.getInt("rows", 24));
+        int window = Math.max(0, call.getInt("window", DEFAULT_STREAM_WINDOW));
+        String encoding = call.getString("encoding", "utf8");
+        if (!"utf8".equals(encoding) && !"base64".equals(encoding)) {
+            call.reject("Unsupported encoding: " + encoding);
+            return;
+        }
         
         try {
-            File file = new File(resolvedPath);
-            if (!file.exists()) {
-                call.reject("File not found: " + resolvedPath);
+            File cwd = new File(resolvePath(call.getString("cwd", currentWorkingDirectory)));
+            if (!cwd.isDirectory()) {
+                call.reject("Directory not found: " + cwd.getAbsolutePath());
                 return;
             }
             
-            if (!file.canRead()) {
-                call.reject("Cannot read file: " + resolvedPath);
-                return;
+            Map<String, String> env = new HashMap<>();
+            env.put("HOME", homeDirectory);
+            env.put("TERM", "xterm-256color");
+            env.put("LANG", "en_US.UTF-8");
+            JSObject extraEnv = call.getObject("env", new JSObject());
+            Iterator<String> keys = extraEnv.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                env.put(key, extraEnv.getString(key, ""));
             }
             
-            // Limit file size to 10MB
-            if (file.length() > 10 * 1024 * 1024) {
-                call.reject("File too large (max 10MB)");
-                return;
+            List<String> shell = root ? Arrays.asList("su") : Arrays.asList("/system/bin/sh", "-i");
+            
+            boolean binary = "base64".equals(encoding);
+            OutputStreamer streamer = new OutputStreamer(DEFAULT_STREAM_CHUNK_SIZE, window, binary, (stream, data, seq) -> {
+                JSObject chunk = new JSObject();
+                chunk.put("sessionId", sessionId);
+                chunk.put("stream", stream);
+                chunk.put("data", data);
+                chunk.put("encoding", encoding);
+                chunk.put("seq", seq);
+                notifyListeners("sessionOutput", chunk);
+            });
+            
+            ShellSession session = ShellSession.open(sessionId, shell, cwd, env, cols, rows, streamer, (ended, exitCode) -> {
+                shellSessions.remove(ended.id, ended);
+                activeStreams.remove(ended.id, streamer);
+                JSObject exit = new JSObject();
+                exit.put("sessionId", ended.id);
+                exit.put("exitCode", exitCode);
+                notifyListeners("sessionExit", exit);
+            });
+            shellSessions.put(sessionId, session);
+            activeStreams.put(sessionId, streamer);
+            if (session.hasExited()) {
+                // Ended before it was registered, e.g. su denied: the exit
+                // listener found nothing to remove
+                shellSessions.remove(sessionId, session);
+                activeStreams.remove(sessionId, streamer);
             }
             
-            FileInputStream fis = new FileInputStream(file);
-            byte[] data = new byte[(int) file.length()];
-            fis.read(data);
-            fis.close();
-            
             JSObject result = new JSObject();
-            result.put("content", new String(data, "UTF-8"));
-            result.put("path", resolvedPath);
-            result.put("size", file.length());
+            result.put("sessionId", sessionId);
+            result.put("cols", cols);
+            result.put("rows", rows);
+            result.put("pty", false);
             call.resolve(result);
         } catch (Exception e) {
-            call.reject("Failed to read file: " + e.getMessage());
+            call.reject("Failed to open session: " + e.getMessage());
         }
     }
 
+    /**
+     * Writes input to a session's stdin, as text or as base64 for raw bytes
+     */
     @PluginMethod
-    public void writeFile(PluginCall call) {
-        String path = call.getString("path");
-        String content = call.getString("content", "");
-        Boolean append = call.getBoolean("append", false);
-        
-        if (path == null) {
-            call.reject("Path is required");
-            return;
-        }
-        
-        // Validate path doesn't contain traversal
-        if (path.contains("..")) {
-            call.reject("Invalid path: path traversal not allowed");
+    public void write(PluginCall call) {
+        ShellSession session = getSession(call);
+        if (session == null) {
             return;
         }
         
-        String resolvedPath = resolvePath(path);
+        String data = call.getString("data", "");
+        String encoding = call.getString("encoding", "utf8");
         
         try {
-            File file = new File(resolvedPath);
-            File parent = file.getParentFile();
-            
-            if (parent != null && !parent.exists()) {
-                parent.mkdirs();
-            }
-            
-            FileOutputStream fos = new FileOutputStream(file, append);
-            fos.write(content.getBytes("UTF-8"));
-            fos.close();
+            byte[] bytes = "base64".equals(encoding)
+                ? Base64.getDecoder().decode(data)
+                : data.getBytes(StandardCharsets.UTF_8);
+            session.write(bytes);
             
             JSObject result = new JSObject();
-            result.put("success", true);
-            result.put("path", resolvedPath);
-            result.put("size", file.length());
+            result.put("sessionId", session.id);
+            result.put("written", bytes.length);
             call.resolve(result);
         } catch (Exception e) {
-            call.reject("Failed to write file: " + e.getMessage());
+            call.reject("Failed to write to session: " + e.getMessage());
         }
     }
 
     @PluginMethod
-    public void deleteFile(PluginCall call) {
-        String path = call.getString("path");
-        Boolean recursive = call.getBoolean("recursive", false);
-        
-        if (path == null) {
-            call.reject("Path is required");
-            return;
-        }
-        
-        if (path.contains("..")) {
-            call.reject("Invalid path: path traversal not allowed");
+    public void resize(PluginCall call) {
+        ShellSession session = getSession(call);
+        if (session == null) {
             return;
         }
         
-        String resolvedPath = resolvePath(path);
+        session.resize(Math.max(1, call.getInt("cols", session.getCols())), Math.max(1, call.getInt("rows", session.getRows())));
         
-        try {
-            File file = new File(resolvedPath);
-            if (!file.exists()) {
-                call.reject("File not found: " + resolvedPath);
-                return;
-            }
-            
-            boolean success;
-            if (file.isDirectory() && recursive) {
-                success = deleteRecursive(file);
-            } else {
-                success = file.delete();
-            }
-            
-            JSObject result = new JSObject();
-            result.put("success", success);
-            result.put("path", resolvedPath);
-            call.resolve(result);
-        } catch (Exception e) {
-            call.reject("Failed to delete: " + e.getMessage());
-        }
-    }
-
-    private boolean deleteRecursive(File fileOrDirectory) {
-        if (fileOrDirectory.isDirectory()) {
-            File[] children = fileOrDirectory.listFiles();
-            if (children != null) {
-                for (File child : children) {
-                    deleteRecursive(child);
-                }
-            }
-        }
-        return fileOrDirectory.delete();
+        JSObject result = new JSObject();
+        result.put("sessionId", session.id);
+        result.put("cols", session.getCols());
+        result.put("rows", session.getRows());
+        call.resolve(result);
     }
 
     @PluginMethod
-    public void createDirectory(PluginCall call) {
-        String path = call.getString("path");
-        Boolean recursive = call.getBoolean("recursive", true);
-        
-        if (path == null) {
-            call.reject("Path is required");
-            return;
-        }
-        
-        if (path.contains("..")) {
-            call.reject("Invalid path: path traversal not allowed");
+    public void close(PluginCall call) {
+        ShellSession session = getSession(call);
+        if (session == null) {
             return;
         }
         
-        String resolvedPath = resolvePath(path);
+        session.close();
         
-        try {
-            File dir = new File(resolvedPath);
-            boolean success = recursive ? dir.mkdirs() : dir.mkdir();
-            
-            JSObject result = new JSObject();
-            result.put("success", success || dir.exists());
-            result.put("path", resolvedPath);
-            call.resolve(result);
-        } catch (Exception e) {
-            call.reject("Failed to create directory: " + e.getMessage());
-        }
+        JSObject result = new JSObject();
+        result.put("sessionId", session.id);
+        result.put("closed", true);
+        call.resolve(result);
     }
 
-    @PluginMethod
-    public void copyFile(PluginCall call) {
-        String source = call.getString("source");
-        String destination = call.getString("destination");
-        
-        if (source == null || destination == null) {
-            call.reject("Source and destination are required");
-            return;
+    /**
+     * Looks up the session named by the call's "sessionId", rejecting the call if there is none
+     */
+    private ShellSession getSession(PluginCall call) {
+        String sessionId = call.getString("sessionId");
+        if (sessionId == null) {
+            call.reject("sessionId is required");
+            return null;
         }
         
-        if (source.contains("..") || destination.contains("..")) {
-            call.reject("Invalid path: path traversal not allowed");
-            return;
+        ShellSession session = shellSessions.get(sessionId);
+        if (session == null) {
+            call.reject("Session not found: " + sessionId);
         }
-        
-        String resolvedSource = resolvePath(source);
-        String resolvedDest = resolvePath(destination);
-        
+        return session;
+    }
+
+    @PluginMethod
+    public void getStorageInfo(PluginCall call) {
         try {
-            File srcFile = new File(resolvedSource);
-            File destFile = new File(resolvedDest);
-            
-            if (!srcFile.exists()) {
-                call.reject("Source file not found: " + resolvedSource);
-                return;
-            }
+            JSObject result = new JSObject();
             
-            // Create parent directories if needed
-            File parent = destFile.getParentFile();
-            if (parent != null && !parent.exists()) {
-                parent.mkdirs();
-            }
+            // Internal storage
+            File internal = Environment.getDataDirectory();
+            StatFs internalStats = new StatFs(internal.getPath());
+            long internalTotal = internalStats.getTotalBytes();
+            long internalFree = internalStats.getAvailableBytes();
             
-            InputStream in = new FileInputStream(srcFile);
-            OutputStream out = new FileOutputStream(destFile);
+            JSObject internalStorage = new JSObject();
+            internalStorage.put("path", internal.getAbsolutePath());
+            internalStorage.put("total", internalTotal);
+            internalStorage.put("free", internalFree);
+            internalStorage.put("used", internalTotal - internalFree);
+            result.put("internal", internalStorage);
             
-            byte[] buffer = new byte[1024];
-            int length;
-            while ((length = in.read(buffer)) > 0) {
-                out.write(buffer, 0, length);
+            // External storage
+            File external = Environment.getExternalStorageDirectory();
+            if (external.exists() && external.canRead()) {
+                StatFs externalStats = new StatFs(external.getPath());
+                long externalTotal = externalStats.getTotalBytes();
+                long externalFree = externalStats.getAvailableBytes();
+                
+                JSObject externalStorage = new JSObject();
+                externalStorage.put("path", external.getAbsolutePath());
+                externalStorage.put("total", externalTotal);
+                externalStorage.put("free", externalFree);
+                externalStorage.put("used", externalTotal - externalFree);
+                result.put("external", externalStorage);
             }
             
-            in.close();
-            out.close();
+            // App-specific directories
+            JSObject appDirs = new JSObject();
+            appDirs.put("files", getContext().getFilesDir().getAbsolutePath());
+            appDirs.put("cache", getContext().getCacheDir().getAbsolutePath());
+            appDirs.put("home", homeDirectory);
+            appDirs.put("cwd", currentWorkingDirectory);
+            result.put("app", appDirs);
+            
+            result.put("sdcard", storageRoot);
             
-            JSObject result = new JSObject();
-            result.put("success", true);
-            result.put("source", resolvedSource);
-            result.put("destination", resolvedDest);
             call.resolve(result);
         } catch (Exception e) {
-            call.reject("Failed to copy file: " + e.getMessage());
+            call.reject("Failed to get storage info: " + e.getMessage());
         }
     }
 
     @PluginMethod
-    public void moveFile(PluginCall call) {
-        String source = call.getString("source");
-        String destination = call.getString("destination");
-        
-        if (source == null || destination == null) {
-            call.reject("Source and destination are required");
-            return;
-        }
-        
-        if (source.contains("..") || destination.contains("..")) {
-            call.reject("Invalid path: path traversal not allowed");
-            return;
-        }
-        
-        String resolvedSource = resolvePath(source);
-        String resolvedDest = resolvePath(destination);
-        
-        try {
-            File srcFile = new File(resolvedSource);
-            File destFile = new File(resolvedDest);
-            
-            if (!srcFile.exists()) {
-                call.reject("Source file not found: " + resolvedSource);
-                return;
-            }
-            
-            // Create parent directories if needed
-            File parent = destFile.getParentFile();
-            if (parent != null && !parent.exists()) {
-                parent.mkdirs();
+    public void listDirectory(PluginCall call) {
+        runAsync(ExecutionEngine.Pool.FILE, call, job -> {
+            String cursor = call.getString("cursor");
+            String path = call.getString("path", currentWorkingDirectory);
+            String resolvedPath = resolvePath(path);
+            
+            try {
+                DirectoryLister.Page page;
+                if (cursor != null) {
+                    page = directoryLister.next(cursor);
+                    if (page == null) {
+                        call.reject("Unknown or expired cursor: " + cursor);
+                        return;
+                    }
+                } else {
+                    File dir = new File(resolvedPath);
+                    if (!dir.exists()) {
+                        JSObject result = new JSObject();
+                        result.put("error", "Directory not found: " + resolvedPath);
+                        result.put("files", new JSArray());
+                        call.resolve(result);
+                        return;
+                    }
+                    
+                    if (!dir.isDirectory()) {
+                        JSObject result = new JSObject();
+                        result.put("error", "Not a directory: " + resolvedPath);
+                        result.put("files", new JSArray());
+                        call.resolve(result);
+                        return;
+                    }
+                    
+                    if (call.getBoolean("refresh", false)) {
+                        metadataCache.invalidate(dir.toPath().toString());
+                    }
+                    
+                    DirectoryLister.Sort sort;
+                    try {
+                        sort = DirectoryLister.Sort.valueOf(call.getString("sort", "name").toUpperCase(Locale.US));
+                    } catch (IllegalArgumentException e) {
+                        call.reject("Unknown sort: " + call.getString("sort"));
+                        return;
+                    }
+                    
+                    Set<DirectoryLister.Field> fields = DirectoryLister.allFields();
+                    JSArray requested = call.getArray("fields");
+                    if (requested != null) {
+                        fields = EnumSet.noneOf(DirectoryLister.Field.class);
+                        for (int i = 0; i < requested.length(); i++) {
+                            DirectoryLister.Field field = DirectoryLister.Field.fromKey(requested.optString(i));
+                            if (field == null) {
+                                call.reject("Unknown field: " + requested.optString(i));
+                                return;
+                            }
+                            fields.add(field);
+                        }
+                    }
+                    
+                    page = directoryLister.open(dir.toPath(), sort, call.getBoolean("reverse", false), fields,
+                        Math.max(0, call.getInt("pageSize", 0)), job);
+                }
+                
+                JSArray fileList = new JSArray();
+                ZoneId zone = ZoneId.systemDefault();
+                for (DirectoryLister.Entry entry : page.entries) {
+                    fileList.put(fileInfo(entry, page.fields, zone));
+                }
+                
+                JSObject result = new JSObject();
+                result.put("path", page.path);
+                result.put("files", fileList);
+                result.put("count", fileList.length());
+                result.put("total", page.total);
+                if (page.cursor != null) {
+                    result.put("cursor", page.cursor);
+                }
+                call.resolve(result);
+            } catch (Exception e) {
+                call.reject("Failed to list directory: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Builds the entry object with only the requested fields. Permission
+     * fields are access checks and cost a syscall each.
+     */
+    private JSObject fileInfo(DirectoryLister.Entry entry, Set<DirectoryLister.Field> fields, ZoneId zone) {
+        JSObject fileInfo = new JSObject();
+        BasicFileAttributes attributes = entry.attributes;
+        for (DirectoryLister.Field field : fields) {
+            switch (field) {
+                case NAME:
+                    fileInfo.put(field.key, entry.name);
+                    break;
+                case PATH:
+                    fileInfo.put(field.key, entry.path.toString());
+                    break;
+                case IS_DIRECTORY:
+                    fileInfo.put(field.key, attributes != null && attributes.isDirectory());
+                    break;
+                case IS_FILE:
+                    fileInfo.put(field.key, attributes != null && attributes.isRegularFile());
+                    break;
+                case SIZE:
+                    fileInfo.put(field.key, attributes == null ? 0 : attributes.size());
+                    break;
+                case MODIFIED:
+                    Instant modified = attributes == null ? Instant.EPOCH : attributes.lastModifiedTime().toInstant();
+                    fileInfo.put(field.key, ModifiedFormat.FORMAT.format(LocalDateTime.ofInstant(modified, zone)));
+                    break;
+                case READABLE:
+                    fileInfo.put(field.key, Files.isReadable(entry.path));
+                    break;
+                case WRITABLE:
+                    fileInfo.put(field.key, Files.isWritable(entry.path));
+                    break;
+                case EXECUTABLE:
+                    fileInfo.put(field.key, Files.isExecutable(entry.path));
+                    break;
+            }
+        }
+        return fileInfo;
+    }
+
+    @PluginMethod
+    public void completePath(PluginCall call) {
+        runAsync(ExecutionEngine.Pool.FILE, call, job -> {
+            String partial = call.getString("path", "");
+            int slash = partial.lastIndexOf('/');
+            String dirPart = slash >= 0 ? partial.substring(0, slash + 1) : "";
+            String prefix = partial.substring(slash + 1);
+            
+            try {
+                File dir = new File(resolvePath(dirPart.isEmpty() ? null : dirPart));
+                JSArray matches = new JSArray();
+                if (dir.isDirectory()) {
+                    for (String name : metadataCache.complete(dir.getAbsoluteFile().toPath(), prefix, MAX_COMPLETIONS)) {
+                        // Hidden entries only when asked for, as shells do
+                        if (!name.startsWith(".") || prefix.startsWith(".")) {
+                            matches.put(dirPart + name);
+                        }
+                    }
+                }
+                
+                JSObject result = new JSObject();
+                result.put("path", partial);
+                result.put("matches", matches);
+                call.resolve(result);
+            } catch (Exception e) {
+                call.reject("Failed to complete path: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void searchFiles(PluginCall call) {
+        runAsync(ExecutionEngine.Pool.BULK, call, job -> {
+            FileSearch.Criteria criteria = new FileSearch.Criteria();
+            String type = call.getString("type");
+            if ("f".equals(type) || "file".equals(type)) {
+                criteria.directories = false;
+            } else if ("d".equals(type) || "directory".equals(type)) {
+                criteria.directories = true;
+            }
+            criteria.minSize = call.getLong("minSize", -1L);
+            criteria.maxSize = call.getLong("maxSize", -1L);
+            criteria.modifiedAfter = call.getLong("modifiedAfter", -1L);
+            criteria.modifiedBefore = call.getLong("modifiedBefore", -1L);
+            runSearch(call, job, criteria);
+        });
+    }
+
+    @PluginMethod
+    public void grepFiles(PluginCall call) {
+        runAsync(ExecutionEngine.Pool.BULK, call, job -> {
+            String pattern = call.getString("pattern");
+            if (pattern == null || pattern.isEmpty()) {
+                call.reject("Pattern is required");
+                return;
+            }
+            
+            FileSearch.Criteria criteria = new FileSearch.Criteria();
+            int flags = call.getBoolean("ignoreCase", false) ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+            if (call.getBoolean("fixedStrings", false)) {
+                flags |= Pattern.LITERAL;
+            }
+            try {
+                criteria.pattern = Pattern.compile(pattern, flags);
+            } catch (PatternSyntaxException e) {
+                call.reject("Invalid pattern: " + e.getDescription());
+                return;
+            }
+            criteria.context = Math.max(0, Math.min(call.getInt("context", 0), MAX_GREP_CONTEXT));
+            runSearch(call, job, criteria);
+        });
+    }
+
+    /**
+     * Shared part of searchFiles and grepFiles: common options, hit events
+     * and the final summary
+     */
+    private void runSearch(PluginCall call, ExecutionEngine.Job job, FileSearch.Criteria criteria) throws Exception {
+        String root = resolvePath(call.getString("path", currentWorkingDirectory));
+        if (!new File(root).exists()) {
+            call.reject("Path not found: " + root);
+            return;
+        }
+        
+        String name = call.getString(criteria.pattern != null ? "include" : "name");
+        if (name != null) {
+            try {
+                criteria.name = FileSystems.getDefault().getPathMatcher("glob:" + name);
+            } catch (IllegalArgumentException e) {
+                call.reject("Invalid glob: " + e.getMessage());
+                return;
+            }
+        }
+        criteria.maxDepth = call.getInt("maxDepth", Integer.MAX_VALUE);
+        criteria.includeHidden = call.getBoolean("includeHidden", true);
+        int maxResults = Math.max(1, Math.min(call.getInt("maxResults", DEFAULT_SEARCH_RESULTS), MAX_SEARCH_RESULTS));
+        
+        String callId = getCallId(call);
+        FileSearch search = new FileSearch(criteria, maxResults, job, hits -> {
+            JSArray results = new JSArray();
+            for (FileSearch.Hit hit : hits) {
+                JSObject entry = new JSObject();
+                entry.put("path", hit.path);
+                entry.put("isDirectory", hit.directory);
+                entry.put("size", hit.size);
+                entry.put("modified", hit.modified);
+                if (hit.text != null) {
+                    entry.put("line", hit.line);
+                    entry.put("text", hit.text);
+                    if (criteria.context > 0) {
+                        entry.put("before", new JSArray(hit.before));
+                        entry.put("after", new JSArray(hit.after));
+                    }
+                }
+                results.put(entry);
+            }
+            JSObject event = new JSObject();
+            event.put("callId", callId);
+            event.put("results", results);
+            notifyListeners("searchResults", event);
+        });
+        
+        long started = System.currentTimeMillis();
+        FileSearch.Summary summary = search.run(new File(root).toPath());
+        
+        JSObject result = new JSObject();
+        result.put("callId", callId);
+        result.put("path", root);
+        result.put("count", summary.hits);
+        result.put("filesScanned", summary.filesScanned);
+        result.put("errors", summary.errors);
+        result.put("truncated", summary.truncated);
+        result.put("elapsedMs", System.currentTimeMillis() - started);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void readFile(PluginCall call) {
+        runAsync(ExecutionEngine.Pool.FILE, call, job -> {
+            String path = call.getString("path");
+            if (path == null) {
+                call.reject("Path is required");
+                return;
+            }
+            
+            String resolvedPath = resolvePath(path);
+            
+            try {
+                File file = new File(resolvedPath);
+                if (!file.exists()) {
+                    call.reject("File not found: " + resolvedPath);
+                    return;
+                }
+                
+                if (!file.canRead()) {
+                    call.reject("Cannot read file: " + resolvedPath);
+                    return;
+                }
+                
+                if (file.isDirectory()) {
+                    call.reject("Is a directory: " + resolvedPath);
+                    return;
+                }
+                
+                String encoding = call.getString("encoding", "utf8");
+                if (!"utf8".equals(encoding) && !"base64".equals(encoding)) {
+                    call.reject("Unsupported encoding: " + encoding);
+                    return;
+                }
+                
+                // Without a range the first MAX_READ_CHUNK bytes are returned;
+                // larger files are paged with offset/length via nextOffset
+                long offset = call.getLong("offset", 0L);
+                int length = Math.max(0, Math.min(call.getInt("length", MAX_READ_CHUNK), MAX_READ_CHUNK));
+                
+                FileRangeReader.Range range = FileRangeReader.read(file, offset, length, "utf8".equals(encoding));
+                perfStats.metric("method.readFile").bytesOut(range.data.length);
+                
+                JSObject result = new JSObject();
+                result.put("content", "base64".equals(encoding)
+                    ? Base64.getEncoder().encodeToString(range.data)
+                    : new String(range.data, StandardCharsets.UTF_8));
+                result.put("encoding", encoding);
+                result.put("path", resolvedPath);
+                result.put("size", range.size);
+                result.put("offset", range.offset);
+                result.put("length", range.data.length);
+                result.put("nextOffset", range.nextOffset());
+                result.put("eof", range.eof());
+                call.resolve(result);
+            } catch (Exception e) {
+                call.reject("Failed to read file: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void writeFile(PluginCall call) {
+        runAsync(ExecutionEngine.Pool.FILE, call, job -> {
+            String path = call.getString("path");
+            String content = call.getString("content", "");
+            String encoding = call.getString("encoding", "utf8");
+            Boolean append = call.getBoolean("append", false);
+            
+            if (path == null) {
+                call.reject("Path is required");
+                return;
+            }
+            
+            if (!"utf8".equals(encoding) && !"base64".equals(encoding)) {
+                call.reject("Unsupported encoding: " + encoding);
+                return;
+            }
+            
+            // Validate path doesn't contain traversal
+            if (path.contains("..")) {
+                call.reject("Invalid path: path traversal not allowed");
+                return;
+            }
+            
+            String resolvedPath = resolvePath(path);
+            
+            try {
+                File file = new File(resolvedPath);
+                File parent = file.getParentFile();
+                
+                if (parent != null && !parent.exists()) {
+                    parent.mkdirs();
+                }
+                
+                byte[] bytes = "base64".equals(encoding)
+                    ? Base64.getDecoder().decode(content)
+                    : content.getBytes(StandardCharsets.UTF_8);
+                
+                perfStats.metric("method.writeFile").bytesIn(bytes.length);
+                if (append) {
+                    FileOutputStream fos = new FileOutputStream(file, true);
+                    fos.write(bytes);
+                    fos.close();
+                } else {
+                    // Replace through a temp file so a crash never leaves a truncated file
+                    AtomicFileWriter writer = AtomicFileWriter.open(String.valueOf(writeCounter.incrementAndGet()), file, false);
+                    try {
+                        writer.write(bytes, -1);
+                        writer.commit();
+                    } catch (IOException e) {
+                        writer.abort();
+                        throw e;
+                    }
+                }
+                invalidateListing(file);
+                
+                JSObject result = new JSObject();
+                result.put("success", true);
+                result.put("path", resolvedPath);
+                result.put("size", file.length());
+                call.resolve(result);
+            } catch (Exception e) {
+                call.reject("Failed to write file: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Starts a chunked write. Chunks go to a temp file next to "path" that
+     * replaces it atomically on commit; abort discards it.
+     */
+    @PluginMethod
+    public void openWrite(PluginCall call) {
+        runAsync(ExecutionEngine.Pool.FILE, call, job -> {
+            String path = call.getString("path");
+            boolean append = call.getBoolean("append", false);
+            
+            if (path == null) {
+                call.reject("Path is required");
+                return;
+            }
+            
+            if (path.contains("..")) {
+                call.reject("Invalid path: path traversal not allowed");
+                return;
+            }
+            
+            abandonIdleWrites();
+            if (openWrites.size() >= MAX_OPEN_WRITES) {
+                call.reject("Too many open writes (max " + MAX_OPEN_WRITES + ")");
+                return;
+            }
+            
+            String resolvedPath = resolvePath(path);
+            
+            try {
+                String writeId = "write-" + writeCounter.incrementAndGet();
+                AtomicFileWriter writer = AtomicFileWriter.open(writeId, new File(resolvedPath), append);
+                openWrites.put(writeId, writer);
+                
+                JSObject result = new JSObject();
+                result.put("writeId", writeId);
+                result.put("path", resolvedPath);
+                call.resolve(result);
+            } catch (Exception e) {
+                call.reject("Failed to open write: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Writes one chunk of an open write, utf8 text or base64 bytes. Chunks
+     * are appended in call order unless an explicit "offset" is given.
+     */
+    @PluginMethod
+    public void writeChunk(PluginCall call) {
+        runAsync(ExecutionEngine.Pool.FILE, call, job -> {
+            AtomicFileWriter writer = getWriter(call);
+            if (writer == null) {
+                return;
+            }
+            
+            String data = call.getString("data", "");
+            String encoding = call.getString("encoding", "utf8");
+            
+            try {
+                byte[] bytes = "base64".equals(encoding)
+                    ? Base64.getDecoder().decode(data)
+                    : data.getBytes(StandardCharsets.UTF_8);
+                long total = writer.write(bytes, call.getLong("offset", -1L));
+                perfStats.metric("method.writeChunk").bytesIn(bytes.length);
+                
+                JSObject result = new JSObject();
+                result.put("writeId", writer.id);
+                result.put("written", bytes.length);
+                result.put("size", total);
+                call.resolve(result);
+            } catch (Exception e) {
+                call.reject("Failed to write chunk: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void commit(PluginCall call) {
+        runAsync(ExecutionEngine.Pool.FILE, call, job -> {
+            AtomicFileWriter writer = getWriter(call);
+            if (writer == null) {
+                return;
+            }
+            openWrites.remove(writer.id);
+            
+            try {
+                long size = writer.commit();
+                invalidateListing(writer.target);
+                
+                JSObject result = new JSObject();
+                result.put("success", true);
+                result.put("path", writer.target.getAbsolutePath());
+                result.put("size", size);
+                call.resolve(result);
+            } catch (Exception e) {
+                writer.abort();
+                call.reject("Failed to commit write: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void abort(PluginCall call) {
+        AtomicFileWriter writer = getWriter(call);
+        if (writer == null) {
+            return;
+        }
+        openWrites.remove(writer.id);
+        writer.abort();
+        
+        JSObject result = new JSObject();
+        result.put("success", true);
+        result.put("path", writer.target.getAbsolutePath());
+        call.resolve(result);
+    }
+
+    /**
+     * Looks up the write named by the call's "writeId", rejecting the call if there is none
+     */
+    private AtomicFileWriter getWriter(PluginCall call) {
+        String writeId = call.getString("writeId");
+        if (writeId == null) {
+            call.reject("writeId is required");
+            return null;
+        }
+        
+        AtomicFileWriter writer = openWrites.get(writeId);
+        if (writer == null) {
+            call.reject("Write not found: " + writeId);
+        }
+        return writer;
+    }
+
+    /**
+     * Aborts writes the caller stopped feeding, e.g. after a WebView reload
+     */
+    private void abandonIdleWrites() {
+        for (AtomicFileWriter writer : openWrites.values()) {
+            if (writer.idleMillis() > WRITE_IDLE_TIMEOUT_MS && openWrites.remove(writer.id, writer)) {
+                writer.abort();
+            }
+        }
+    }
+
+    @PluginMethod
+    public void deleteFile(PluginCall call) {
+        ExecutionEngine.Pool pool = call.getBoolean("recursive", false)
+            ? ExecutionEngine.Pool.BULK : ExecutionEngine.Pool.FILE;
+        runAsync(pool, call, job -> {
+            String path = call.getString("path");
+            Boolean recursive = call.getBoolean("recursive", false);
+            
+            if (path == null) {
+                call.reject("Path is required");
+                return;
+            }
+            
+            if (path.contains("..")) {
+                call.reject("Invalid path: path traversal not allowed");
+                return;
+            }
+            
+            String resolvedPath = resolvePath(path);
+            
+            try {
+                File file = new File(resolvedPath);
+                if (!file.exists()) {
+                    call.reject("File not found: " + resolvedPath);
+                    return;
+                }
+                
+                JSObject result = new JSObject();
+                boolean success;
+                if (file.isDirectory() && recursive) {
+                    TreeOps.Totals totals;
+                    try {
+                        totals = new TreeOps(job, treeProgress(call, "delete")).delete(file.toPath());
+                    } finally {
+                        invalidateListing(file);
+                    }
+                    success = totals.errors == 0;
+                    result.put("files", totals.files);
+                    result.put("directories", totals.directories);
+                    result.put("bytes", totals.bytes);
+                    result.put("errors", totals.errors);
+                    if (totals.firstError != null) {
+                        result.put("error", totals.firstError);
+                    }
+                } else {
+                    success = file.delete();
+                    invalidateListing(file);
+                }
+                
+                result.put("success", success);
+                result.put("path", resolvedPath);
+                call.resolve(result);
+            } catch (Exception e) {
+                call.reject("Failed to delete: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void diskUsage(PluginCall call) {
+        runAsync(ExecutionEngine.Pool.BULK, call, job -> {
+            String resolvedPath = resolvePath(call.getString("path", currentWorkingDirectory));
+            
+            try {
+                File file = new File(resolvedPath);
+                if (!file.exists()) {
+                    call.reject("File not found: " + resolvedPath);
+                    return;
+                }
+                
+                TreeOps.Totals totals = new TreeOps(job, treeProgress(call, "du"))
+                    .usage(file.toPath(), call.getBoolean("perChild", false));
+                
+                JSObject result = new JSObject();
+                result.put("path", resolvedPath);
+                result.put("bytes", totals.bytes);
+                result.put("files", totals.files);
+                result.put("directories", totals.directories);
+                result.put("errors", totals.errors);
+                if (totals.firstError != null) {
+                    result.put("error", totals.firstError);
+                }
+                if (totals.children != null) {
+                    JSArray children = new JSArray();
+                    for (TreeOps.Usage usage : totals.children) {
+                        JSObject child = new JSObject();
+                        child.put("name", usage.name);
+                        child.put("bytes", usage.bytes);
+                        child.put("files", usage.files);
+                        child.put("directories", usage.directories);
+                        children.put(child);
+                    }
+                    result.put("children", children);
+                }
+                call.resolve(result);
+            } catch (Exception e) {
+                call.reject("Failed to compute disk usage: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void createDirectory(PluginCall call) {
+        runAsync(ExecutionEngine.Pool.FILE, call, job -> {
+            String path = call.getString("path");
+            Boolean recursive = call.getBoolean("recursive", true);
+            
+            if (path == null) {
+                call.reject("Path is required");
+                return;
+            }
+            
+            if (path.contains("..")) {
+                call.reject("Invalid path: path traversal not allowed");
+                return;
+            }
+            
+            String resolvedPath = resolvePath(path);
+            
+            try {
+                File dir = new File(resolvedPath);
+                boolean success = recursive ? dir.mkdirs() : dir.mkdir();
+                invalidateListing(dir);
+                
+                JSObject result = new JSObject();
+                result.put("success", success || dir.exists());
+                result.put("path", resolvedPath);
+                call.resolve(result);
+            } catch (Exception e) {
+                call.reject("Failed to create directory: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void copyFile(PluginCall call) {
+        runAsync(ExecutionEngine.Pool.BULK, call, job -> {
+            String source = call.getString("source");
+            String destination = call.getString("destination");
+            
+            if (source == null || destination == null) {
+                call.reject("Source and destination are required");
+                return;
+            }
+            
+            if (source.contains("..") || destination.contains("..")) {
+                call.reject("Invalid path: path traversal not allowed");
+                return;
+            }
+            
+            String resolvedSource = resolvePath(source);
+            String resolvedDest = resolvePath(destination);
+            
+            try {
+                File srcFile = new File(resolvedSource);
+                File destFile = new File(resolvedDest);
+                
+                if (!srcFile.exists()) {
+                    call.reject("Source file not found: " + resolvedSource);
+                    return;
+                }
+                
+                if (srcFile.isDirectory() && !call.getBoolean("recursive", false)) {
+                    call.reject("Source is a directory (use recursive): " + resolvedSource);
+                    return;
+                }
+                
+                destFile = transferTarget(srcFile, destFile);
+                if (isInside(destFile, srcFile)) {
+                    call.reject("Cannot copy a directory into itself: " + resolvedSource);
+                    return;
+                }
+                
+                FileTransfer transfer = new FileTransfer(job, transferProgress(call, "copy"));
+                transfer.copy(srcFile, destFile);
+                invalidateListing(destFile);
+                
+                JSObject result = new JSObject();
+                result.put("success", true);
+                result.put("source", resolvedSource);
+                result.put("destination", destFile.getAbsolutePath());
+                result.put("bytes", transfer.getBytes());
+                result.put("files", transfer.getFiles());
+                result.put("skipped", transfer.getSkipped());
+                call.resolve(result);
+            } catch (Exception e) {
+                call.reject("Failed to copy file: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void moveFile(PluginCall call) {
+        runAsync(ExecutionEngine.Pool.BULK, call, job -> {
+            String source = call.getString("source");
+            String destination = call.getString("destination");
+            
+            if (source == null || destination == null) {
+                call.reject("Source and destination are required");
+                return;
+            }
+            
+            if (source.contains("..") || destination.contains("..")) {
+                call.reject("Invalid path: path traversal not allowed");
+                return;
+            }
+            
+            String resolvedSource = resolvePath(source);
+            String resolvedDest = resolvePath(destination);
+            
+            try {
+                File srcFile = new File(resolvedSource);
+                File destFile = new File(resolvedDest);
+                
+                if (!srcFile.exists()) {
+                    call.reject("Source file not found: " + resolvedSource);
+                    return;
+                }
+                
+                destFile = transferTarget(srcFile, destFile);
+                if (isInside(destFile, srcFile)) {
+                    call.reject("Cannot move a directory into itself: " + resolvedSource);
+                    return;
+                }
+                
+                // Falls back to copy and delete across filesystems, e.g. app storage to sdcard
+                FileTransfer transfer = new FileTransfer(job, transferProgress(call, "move"));
+                boolean renamed = transfer.move(srcFile, destFile);
+                invalidateListing(srcFile);
+                invalidateListing(destFile);
+                
+                JSObject result = new JSObject();
+                result.put("success", true);
+                result.put("source", resolvedSource);
+                result.put("destination", destFile.getAbsolutePath());
+                result.put("renamed", renamed);
+                result.put("skipped", transfer.getSkipped());
+                call.resolve(result);
+            } catch (Exception e) {
+                call.reject("Failed to move file: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Destination of a copy or move: like cp and mv, an existing directory
+     * receives the source under its own name
+     */
+    private File transferTarget(File source, File destination) {
+        if (destination.isDirectory()) {
+            return new File(destination, source.getName());
+        }
+        return destination;
+    }
+
+    private boolean isInside(File file, File directory) throws IOException {
+        String dir = directory.getCanonicalPath() + "/";
+        return (file.getCanonicalPath() + "/").startsWith(dir);
+    }
+
+    /**
+     * Drops the cached listings a change to {@code file} affects: its parent
+     * and, for a directory, its own
+     */
+    private void invalidateListing(File file) {
+        Path path = file.getAbsoluteFile().toPath();
+        metadataCache.invalidate(path.toString());
+        if (path.getParent() != null) {
+            metadataCache.invalidate(path.getParent().toString());
+        }
+    }
+
+    private TreeOps.Progress treeProgress(PluginCall call, String operation) {
+        String callId = getCallId(call);
+        return (files, directories, bytes) -> {
+            JSObject event = new JSObject();
+            event.put("callId", callId);
+            event.put("operation", operation);
+            event.put("files", files);
+            event.put("directories", directories);
+            event.put("bytes", bytes);
+            notifyListeners("treeProgress", event);
+        };
+    }
+
+    /**
+     * Emits "transferProgress" events for a copy or move tagged with the call id
+     */
+    private FileTransfer.Progress transferProgress(PluginCall call, String operation) {
+        String callId = getCallId(call);
+        return (bytes, totalBytes, files, totalFiles) -> {
+            JSObject event = new JSObject();
+            event.put("callId", callId);
+            event.put("operation", operation);
+            event.put("bytes", bytes);
+            event.put("totalBytes", totalBytes);
+            event.put("files", files);
+            event.put("totalFiles", totalFiles);
+            notifyListeners("transferProgress", event);
+        };
+    }
+
+    /**
+     * Why {@code source} cannot be extracted from, or null when it can
+     */
+    private static String archiveSourceError(String source) {
+        if (source.startsWith("http://")) {
+            return "Only HTTPS URLs are allowed for security";
+        }
+        if (!source.startsWith("https://") && source.contains("..")) {
+            return "Invalid path: path traversal not allowed";
+        }
+        return null;
+    }
+
+    /**
+     * Unpacks the archive at {@code source}, an https URL streamed straight
+     * into the extractor or a path, into {@code destination}
+     */
+    private TarExtractor.Result extractInto(String source, File destination, int stripComponents,
+                                            ExecutionEngine.Job job, TarExtractor.Progress progress)
+            throws IOException, InterruptedException {
+        TarExtractor extractor = new TarExtractor(destination, stripComponents, job, progress);
+        TarExtractor.Result result;
+        if (source.startsWith("https://")) {
+            result = downloadManager.stream(new URL(source), job, extractor::extract);
+            perfStats.metric("method.extractArchive").bytesIn(result.sourceBytes);
+        } else {
+            File archive = new File(resolvePath(source));
+            try (InputStream in = new FileInputStream(archive)) {
+                result = extractor.extract(in, archive.length());
+            }
+        }
+        invalidateListing(destination);
+        return result;
+    }
+
+    private TarExtractor.Progress extractProgress(PluginCall call, String source) {
+        String callId = getCallId(call);
+        return (sourceBytes, totalSourceBytes, bytesWritten, entries) -> {
+            JSObject event = new JSObject();
+            event.put("callId", callId);
+            event.put("source", source);
+            event.put("sourceBytes", sourceBytes);
+            event.put("totalSourceBytes", totalSourceBytes);
+            event.put("bytesWritten", bytesWritten);
+            event.put("entries", entries);
+            notifyListeners("extractProgress", event);
+        };
+    }
+
+    private static JSObject extractResult(TarExtractor.Result extracted) {
+        JSObject result = new JSObject();
+        result.put("compression", extracted.compression);
+        result.put("entries", extracted.entries);
+        result.put("files", extracted.files);
+        result.put("directories", extracted.directories);
+        result.put("links", extracted.links);
+        result.put("skipped", extracted.skipped);
+        result.put("bytesWritten", extracted.bytesWritten);
+        result.put("sourceBytes", extracted.sourceBytes);
+        return result;
+    }
+
+    private LayerStore.Progress layerProgress(PluginCall call, String layer, String operation) {
+        String callId = getCallId(call);
+        return (files, totalFiles, bytes) -> {
+            JSObject event = new JSObject();
+            event.put("callId", callId);
+            event.put("layer", layer);
+            event.put("operation", operation);
+            event.put("files", files);
+            event.put("totalFiles", totalFiles);
+            event.put("bytes", bytes);
+            notifyListeners("layerProgress", event);
+        };
+    }
+
+    /**
+     * Where the baseline for {@code root} lives: under the given name, or
+     * one derived from the path so each tree has its own by default
+     */
+    private File baselineFile(String name, String root) {
+        if (name == null) {
+            name = Digests.hex(Digests.sha256().digest(root.getBytes(StandardCharsets.UTF_8))).substring(0, 16);
+        }
+        return new File(new File(getContext().getFilesDir(), INTEGRITY_DIR), name + ".baseline");
+    }
+
+    private static JSObject integritySummary(IntegrityScanner.Summary summary) {
+        JSObject result = new JSObject();
+        result.put("files", summary.files);
+        result.put("hashed", summary.hashed);
+        result.put("bytesHashed", summary.bytesHashed);
+        result.put("added", summary.added);
+        result.put("removed", summary.removed);
+        result.put("modified", summary.modified);
+        result.put("errors", summary.errors);
+        return result;
+    }
+
+    private static JSObject layerInfo(LayerStore.LayerInfo layer) {
+        JSObject info = new JSObject();
+        info.put("name", layer.name);
+        info.put("created", layer.created);
+        info.put("files", layer.files);
+        info.put("directories", layer.directories);
+        info.put("symlinks", layer.symlinks);
+        info.put("bytes", layer.bytes);
+        return info;
+    }
+
+    @PluginMethod
+    public void changeDirectory(PluginCall call) {
+        String path = call.getString("path");
+        
+        if (path == null) {
+            call.reject("Path is required");
+            return;
+        }
+        
+        String resolvedPath = resolvePath(path);
+        
+        try {
+            File dir = new File(resolvedPath);
+            if (!dir.exists()) {
+                call.reject("Directory not found: " + resolvedPath);
+                return;
+            }
+            
+            if (!dir.isDirectory()) {
+                call.reject("Not a directory: " + resolvedPath);
+                return;
             }
             
-            boolean success = srcFile.renameTo(destFile);
+            currentWorkingDirectory = dir.getCanonicalPath();
             
             JSObject result = new JSObject();
-            result.put("success", success);
-            result.put("source", resolvedSource);
-            result.put("destination", resolvedDest);
+            result.put("path", currentWorkingDirectory);
+            call.resolve(result);
+        } catch (Exception e) {
+            call.reject("Failed to change directory: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void getCurrentDirectory(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("path", currentWorkingDirectory);
+        result.put("home", homeDirectory);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void getSystemInfo(PluginCall call) {
+        try {
+            JSObject result = new JSObject();
+            
+            // Device info
+            result.put("manufacturer", Build.MANUFACTURER);
+            result.put("model", Build.MODEL);
+            result.put("device", Build.DEVICE);
+            result.put("brand", Build.BRAND);
+            result.put("hardware", Build.HARDWARE);
+            
+            // Android version
+            result.put("androidVersion", Build.VERSION.RELEASE);
+            result.put("sdkVersion", Build.VERSION.SDK_INT);
+            
+            // CPU info
+            result.put("supportedAbis", Arrays.toString(Build.SUPPORTED_ABIS));
+            
+            // Memory info
+            Runtime runtime = Runtime.getRuntime();
+            result.put("maxMemory", runtime.maxMemory());
+            result.put("totalMemory", runtime.totalMemory());
+            result.put("freeMemory", runtime.freeMemory());
+            
+            // Paths
+            result.put("homeDirectory", homeDirectory);
+            result.put("currentDirectory", currentWorkingDirectory);
+            result.put("externalStorage", storageRoot);
+            
             call.resolve(result);
         } catch (Exception e) {
-            call.reject("Failed to move file: " + e.getMessage());
+            call.reject("Failed to get system info: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void requestStoragePermission(PluginCall call) {
+        if (hasStoragePermission()) {
+            JSObject result = new JSObject();
+            result.put("granted", true);
+            call.resolve(result);
+        } else {
+            requestPermissionForAlias("storage", call, "storagePermissionCallback");
+        }
+    }
+
+    @PermissionCallback
+    private void storagePermissionCallback(PluginCall call) {
+        JSObject result = new JSObject();
+        result.put("granted", hasStoragePermission());
+        call.resolve(result);
+    }
+
+    private boolean hasStoragePermission() {
+        return ContextCompat.checkSelfPermission(
+            getContext(),
+            Manifest.permission.READ_EXTERNAL_STORAGE
+        ) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    @PluginMethod
+    public void installPackage(PluginCall call) {
+        runAsync(ExecutionEngine.Pool.PROCESS, call, job -> {
+            String packageName = call.getString("packageName");
+            String source = call.getString("source", "auto");
+            
+            if (packageName == null) {
+                call.reject("Package name is required");
+                return;
+            }
+
+            if (!InstallQueue.PACKAGE_NAME.matcher(packageName).matches()) {
+                JSObject result = new JSObject();
+                result.put("output", "");
+                result.put("error", "Invalid package name. Only alphanumeric characters, dashes, and underscores are allowed.");
+                result.put("exitCode", 1);
+                call.resolve(result);
+                return;
+            }
+
+            try {
+                InstallQueue.Manager packageManager = InstallQueue.Manager.forSource(source);
+
+                if (!ALLOWED_PACKAGE_MANAGERS.contains(packageManager.name)) {
+                    JSObject result = new JSObject();
+                    result.put("output", "");
+                    result.put("error", "Package manager not allowed");
+                    result.put("exitCode", 1);
+                    call.resolve(result);
+                    return;
+                }
+                
+                String installCommand = packageManager.installCommand(Collections.singletonList(packageName));
+                ProcessIo.Result processResult = rootShells.exec(installCommand, call.getBoolean("mergeStreams", false), job,
+                    0, maxOutputBytes);
+                
+                JSObject result = new JSObject();
+                result.put("output", processResult.output());
+                result.put("error", processResult.error());
+                result.put("exitCode", processResult.exitCode);
+                
+                call.resolve(result);
+            } catch (Exception e) {
+                JSObject result = new JSObject();
+                result.put("output", "");
+                result.put("error", "Package installation failed: " + e.getMessage());
+                result.put("exitCode", 1);
+                call.resolve(result);
+            }
+        });
+    }
+
+    /**
+     * Queues packages for installation. Resolves right away with the request
+     * id; progress and the outcome arrive as "installProgress" events, and
+     * queued installs carry on after an app restart. "refresh" forces a
+     * repository refresh, otherwise one younger than "refreshTtl" is reused.
+     */
+    @PluginMethod
+    public void queueInstall(PluginCall call) {
+        String source = call.getString("source", "auto");
+        InstallQueue.Manager manager = InstallQueue.Manager.forSource(source);
+        if (!ALLOWED_PACKAGE_MANAGERS.contains(manager.name)) {
+            call.reject("Package manager not allowed");
+            return;
+        }
+        
+        JSArray array = call.getArray("packages", new JSArray());
+        List<String> packages = new ArrayList<>();
+        for (int i = 0; i < array.length(); i++) {
+            packages.add(array.optString(i));
+        }
+        long refreshMaxAgeMs = call.getBoolean("refresh", false)
+            ? 0 : Math.max(0, call.getLong("refreshTtl", InstallQueue.DEFAULT_REFRESH_TTL_MS));
+        
+        try {
+            InstallQueue.Request request = installQueue.submit(manager, packages, refreshMaxAgeMs);
+            JSObject result = installRequestInfo(request);
+            result.put("position", installQueue.pending().indexOf(request));
+            call.resolve(result);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            call.reject(e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void getInstallQueue(PluginCall call) {
+        JSArray pending = new JSArray();
+        for (InstallQueue.Request request : installQueue.pending()) {
+            pending.put(installRequestInfo(request));
+        }
+        JSArray recent = new JSArray();
+        for (InstallQueue.Request request : installQueue.recent()) {
+            recent.put(installRequestInfo(request));
+        }
+        JSObject result = new JSObject();
+        result.put("pending", pending);
+        result.put("recent", recent);
+        call.resolve(result);
+    }
+
+    /**
+     * Removes a queued install; one that already started runs to the end
+     * since stopping a package manager midway can leave it locked
+     */
+    @PluginMethod
+    public void cancelInstall(PluginCall call) {
+        String requestId = call.getString("requestId");
+        if (requestId == null) {
+            call.reject("Request id is required");
+            return;
+        }
+        JSObject result = new JSObject();
+        result.put("requestId", requestId);
+        result.put("cancelled", installQueue.cancel(requestId));
+        call.resolve(result);
+    }
+
+    private JSObject installRequestInfo(InstallQueue.Request request) {
+        JSObject packages = new JSObject();
+        for (Map.Entry<String, String> entry : request.packageStages().entrySet()) {
+            packages.put(entry.getKey(), entry.getValue());
+        }
+        JSObject info = new JSObject();
+        info.put("requestId", request.id);
+        info.put("manager", request.manager.name);
+        info.put("stage", request.stage());
+        info.put("packages", packages);
+        info.put("queuedAt", request.queuedAt);
+        return info;
+    }
+
+    private InstallQueue.Listener installListener() {
+        return new InstallQueue.Listener() {
+            @Override
+            public void onProgress(InstallQueue.Request request, String packageName, String stage) {
+                JSObject event = new JSObject();
+                event.put("requestId", request.id);
+                if (packageName != null) {
+                    event.put("package", packageName);
+                }
+                event.put("stage", stage);
+                notifyListeners("installProgress", event);
+            }
+
+            @Override
+            public void onFinished(InstallQueue.Request request, ProcessIo.Result result, String error) {
+                JSObject event = installRequestInfo(request);
+                event.put("output", result == null ? "" : result.output());
+                event.put("error", error == null ? "" : error);
+                event.put("exitCode", result == null ? 1 : result.exitCode);
+                event.put("done", true);
+                notifyListeners("installProgress", event);
+            }
+        };
+    }
+
+    @PluginMethod
+    public void checkRootAccess(PluginCall call) {
+        runAsync(ExecutionEngine.Pool.PROCESS, call, job -> {
+            try {
+                ProcessIo.Result processResult = rootShells.exec("id -u", true, job);
+                
+                JSObject result = new JSObject();
+                result.put("hasRoot", processResult.exitCode == 0 && "0".equals(processResult.output().trim()));
+                call.resolve(result);
+            } catch (Exception e) {
+                JSObject result = new JSObject();
+                result.put("hasRoot", false);
+                call.resolve(result);
+            }
+        });
+    }
+
+    @PluginMethod
+    public void setupLinuxEnvironment(PluginCall call) {
+        // An optional rootfs tarball (an https URL or a local path) is unpacked into the environment first
+        String rootfs = call.getString("rootfs");
+        ExecutionEngine.Pool pool = rootfs != null && rootfs.startsWith("https://")
+            ? ExecutionEngine.Pool.DOWNLOAD : ExecutionEngine.Pool.BULK;
+        runAsync(pool, call, job -> {
+            try {
+                String appDir = getContext().getFilesDir().getAbsolutePath();
+                String linuxDir = appDir + "/linux";
+                
+                TarExtractor.Result unpacked = null;
+                if (rootfs != null) {
+                    String invalid = archiveSourceError(rootfs);
+                    if (invalid != null) {
+                        JSObject result = new JSObject();
+                        result.put("output", "");
+                        result.put("error", invalid);
+                        result.put("exitCode", 1);
+                        call.resolve(result);
+                        return;
+                    }
+                    unpacked = extractInto(rootfs, new File(linuxDir), Math.max(0, call.getInt("stripComponents", 0)), job,
+                        extractProgress(call, rootfs));
+                }
+                
+                // Create comprehensive Linux directory structure
+                String[] dirs = {
+                    linuxDir + "/bin",
+                    linuxDir + "/etc",
+                    linuxDir + "/home/cvj",
+                    linuxDir + "/tmp",
+                    linuxDir + "/var/log",
+                    linuxDir + "/var/tmp",
+                    linuxDir + "/usr/bin",
+                    linuxDir + "/usr/lib",
+                    linuxDir + "/usr/share",
+                    linuxDir + "/opt",
+                    linuxDir + "/root"
+                };
+                
+                for (String dir : dirs) {
+                    new File(dir).mkdirs();
+                }
+                
+                // Create basic config files, keeping the ones a rootfs brought
+                File passwd = new File(linuxDir + "/etc/passwd");
+                if (unpacked == null || !passwd.exists()) {
+                    String passwdContent = "root:x:0:0:root:/root:/bin/sh\ncvj:x:1000:1000:CVJ:/home/cvj:/bin/sh\n";
+                    FileOutputStream fos = new FileOutputStream(passwd);
+                    fos.write(passwdContent.getBytes());
+                    fos.close();
+                }
+                
+                File profile = new File(linuxDir + "/etc/profile");
+                if (unpacked == null || !profile.exists()) {
+                    String profileContent = "export PATH=" + linuxDir + "/bin:" + linuxDir + "/usr/bin:$PATH\n" +
+                        "export HOME=" + linuxDir + "/home/cvj\n" +
+                        "export TERM=xterm-256color\n" +
+                        "export LANG=en_US.UTF-8\n" +
+                        "export PS1='cvj@terminalos:\\w$ '\n";
+                    FileOutputStream fos = new FileOutputStream(profile);
+                    fos.write(profileContent.getBytes());
+                    fos.close();
+                }
+                invalidateListing(new File(linuxDir));
+                
+                // Update home directory
+                homeDirectory = linuxDir + "/home/cvj";
+                currentWorkingDirectory = homeDirectory;
+                
+                JSObject result = new JSObject();
+                result.put("output", "Linux environment setup completed at: " + linuxDir);
+                result.put("linuxRoot", linuxDir);
+                result.put("home", homeDirectory);
+                if (unpacked != null) {
+                    result.put("rootfs", extractResult(unpacked));
+                }
+                result.put("error", "");
+                result.put("exitCode", 0);
+                
+                call.resolve(result);
+            } catch (Exception e) {
+                JSObject result = new JSObject();
+                result.put("output", "");
+                result.put("error", "Environment setup failed: " + e.getMessage());
+                result.put("exitCode", 1);
+                call.resolve(result);
+            }
+        });
+    }
+
+    @PluginMethod
+    public void downloadFile(PluginCall call) {
+        runAsync(ExecutionEngine.Pool.DOWNLOAD, call, job -> {
+            String url = call.getString("url");
+            String destination = call.getString("destination");
+            
+            if (url == null || destination == null) {
+                call.reject("URL and destination are required");
+                return;
+            }
+
+            if (!url.startsWith("https://")) {
+                JSObject result = new JSObject();
+                result.put("output", "");
+                result.put("error", "Only HTTPS URLs are allowed for security");
+                result.put("exitCode", 1);
+                call.resolve(result);
+                return;
+            }
+
+            if (destination.contains("..")) {
+                JSObject result = new JSObject();
+                result.put("output", "");
+                result.put("error", "Invalid destination path");
+                result.put("exitCode", 1);
+                call.resolve(result);
+                return;
+            }
+
+            String resolvedDest = resolvePath(destination);
+            String sha256 = call.getString("sha256");
+            int segments = Math.max(1, Math.min(call.getInt("segments", DEFAULT_DOWNLOAD_SEGMENTS),
+                DownloadManager.MAX_SEGMENTS));
+
+            try {
+                File destFile = new File(resolvedDest);
+                if (!call.getBoolean("resume", true)) {
+                    DownloadManager.discardPartial(destFile);
+                }
+                
+                String callId = getCallId(call);
+                DownloadManager.Result download = downloadManager.download(new URL(url), destFile, segments, sha256, job,
+                    (bytes, totalBytes, parts) -> {
+                        JSObject event = new JSObject();
+                        event.put("callId", callId);
+                        event.put("url", url);
+                        event.put("bytes", bytes);
+                        event.put("totalBytes", totalBytes);
+                        event.put("segments", parts);
+                        notifyListeners("downloadProgress", event);
+                    });
+                invalidateListing(destFile);
+                perfStats.metric("method.downloadFile").bytesIn(download.size - download.resumedFrom);
+                
+                JSObject result = new JSObject();
+                result.put("output", "Downloaded: " + url + " to " + resolvedDest + " (" + download.size + " bytes)");
+                result.put("path", resolvedDest);
+                result.put("size", download.size);
+                result.put("resumedFrom", download.resumedFrom);
+                result.put("segments", download.segments);
+                if (download.sha256 != null) {
+                    result.put("sha256", download.sha256);
+                }
+                result.put("error", "");
+                result.put("exitCode", 0);
+                
+                call.resolve(result);
+            } catch (Exception e) {
+                PerfStats.Metric downloadStats = perfStats.metric("method.downloadFile");
+                downloadStats.fail();
+                if (e instanceof SocketTimeoutException) {
+                    downloadStats.timeout();
+                }
+                JSObject result = new JSObject();
+                result.put("output", "");
+                result.put("error", "Download failed: " + e.getMessage());
+                result.put("exitCode", 1);
+                call.resolve(result);
+            }
+        });
+    }
+
+    @PluginMethod
+    public void extractArchive(PluginCall call) {
+        String source = call.getString("source");
+        String destination = call.getString("destination");
+        if (source == null || destination == null) {
+            call.reject("Source and destination are required");
+            return;
         }
+        ExecutionEngine.Pool pool = source.startsWith("https://")
+            ? ExecutionEngine.Pool.DOWNLOAD : ExecutionEngine.Pool.BULK;
+        runAsync(pool, call, job -> {
+            String invalid = archiveSourceError(source);
+            if (invalid == null && destination.contains("..")) {
+                invalid = "Invalid destination path";
+            }
+            if (invalid != null) {
+                JSObject result = new JSObject();
+                result.put("output", "");
+                result.put("error", invalid);
+                result.put("exitCode", 1);
+                call.resolve(result);
+                return;
+            }
+        
+            String resolvedDest = resolvePath(destination);
+            try {
+                TarExtractor.Result extracted = extractInto(source, new File(resolvedDest),
+                    Math.max(0, call.getInt("stripComponents", 0)), job, extractProgress(call, source));
+        
+                JSObject result = extractResult(extracted);
+                result.put("output", "Extracted " + extracted.entries + " entries from " + source + " to "
+                    + resolvedDest + " (" + extracted.bytesWritten + " bytes)");
+                result.put("path", resolvedDest);
+                result.put("error", "");
+                result.put("exitCode", 0);
+                call.resolve(result);
+            } catch (IOException e) {
+                perfStats.metric("method.extractArchive").fail();
+                JSObject result = new JSObject();
+                result.put("output", "");
+                result.put("error", "Extraction failed: " + e.getMessage());
+                result.put("exitCode", 1);
+                call.resolve(result);
+            }
+        });
     }
 
     @PluginMethod
-    public void changeDirectory(PluginCall call) {
-        String path = call.getString("path");
-        
-        if (path == null) {
-            call.reject("Path is required");
+    public void importLayer(PluginCall call) {
+        String name = call.getString("name");
+        String source = call.getString("source");
+        if (name == null || source == null) {
+            call.reject("Name and source are required");
             return;
         }
+        if (!LayerStore.NAME.matcher(name).matches()) {
+            call.reject("Invalid layer name: " + name);
+            return;
+        }
+        String invalid = archiveSourceError(source);
+        if (invalid != null) {
+            call.reject(invalid);
+            return;
+        }
+        ExecutionEngine.Pool pool = source.startsWith("https://")
+            ? ExecutionEngine.Pool.DOWNLOAD : ExecutionEngine.Pool.BULK;
+        runAsync(pool, call, job -> {
+            File sourceFile = source.startsWith("https://") ? null : new File(resolvePath(source));
+            try {
+                LayerStore.ImportResult imported;
+                TarExtractor.Result extracted = null;
+                if (sourceFile != null && sourceFile.isDirectory()) {
+                    imported = layerStore.importTree(sourceFile, name, false, job, layerProgress(call, name, "import"));
+                } else {
+                    // Unpack next to the store so the files can be moved in rather than copied
+                    File staging = new File(new File(getContext().getFilesDir(), LAYER_STORE_DIR),
+                        "staging-" + name + "-" + System.currentTimeMillis());
+                    try {
+                        extracted = extractInto(source, staging, Math.max(0, call.getInt("stripComponents", 0)), job,
+                            extractProgress(call, source));
+                        imported = layerStore.importTree(staging, name, true, job, layerProgress(call, name, "import"));
+                    } finally {
+                        if (staging.exists()) {
+                            new TreeOps(job, null).delete(staging.toPath());
+                        }
+                    }
+                }
         
-        String resolvedPath = resolvePath(path);
-        
-        try {
-            File dir = new File(resolvedPath);
-            if (!dir.exists()) {
-                call.reject("Directory not found: " + resolvedPath);
-                return;
-            }
-            
-            if (!dir.isDirectory()) {
-                call.reject("Not a directory: " + resolvedPath);
-                return;
+                JSObject result = layerInfo(imported.layer);
+                result.put("newObjects", imported.newObjects);
+                result.put("newBytes", imported.newBytes);
+                if (extracted != null) {
+                    result.put("archive", extractResult(extracted));
+                }
+                result.put("output", "Imported layer " + name + ": " + imported.layer.files + " files, "
+                    + imported.newBytes + " new bytes stored");
+                result.put("error", "");
+                result.put("exitCode", 0);
+                call.resolve(result);
+            } catch (IOException e) {
+                JSObject result = new JSObject();
+                result.put("output", "");
+                result.put("error", "Layer import failed: " + e.getMessage());
+                result.put("exitCode", 1);
+                call.resolve(result);
             }
-            
-            currentWorkingDirectory = dir.getCanonicalPath();
-            
-            JSObject result = new JSObject();
-            result.put("path", currentWorkingDirectory);
-            call.resolve(result);
-        } catch (Exception e) {
-            call.reject("Failed to change directory: " + e.getMessage());
-        }
-    }
-
-    @PluginMethod
-    public void getCurrentDirectory(PluginCall call) {
-        JSObject result = new JSObject();
-        result.put("path", currentWorkingDirectory);
-        result.put("home", homeDirectory);
-        call.resolve(result);
+        });
     }
 
+    /**
+     * Builds an instance tree from a layer. Files are hard links into the
+     * layer store, read-only so the app cannot change them for every
+     * instance at once. Root is not stopped by that, so pass "root" for a
+     * tree that will be modified as root, and every file is copied instead.
+     */
     @PluginMethod
-    public void getSystemInfo(PluginCall call) {
-        try {
-            JSObject result = new JSObject();
-            
-            // Device info
-            result.put("manufacturer", Build.MANUFACTURER);
-            result.put("model", Build.MODEL);
-            result.put("device", Build.DEVICE);
-            result.put("brand", Build.BRAND);
-            result.put("hardware", Build.HARDWARE);
-            
-            // Android version
-            result.put("androidVersion", Build.VERSION.RELEASE);
-            result.put("sdkVersion", Build.VERSION.SDK_INT);
-            
-            // CPU info
-            result.put("supportedAbis", Arrays.toString(Build.SUPPORTED_ABIS));
-            
-            // Memory info
-            Runtime runtime = Runtime.getRuntime();
-            result.put("maxMemory", runtime.maxMemory());
-            result.put("totalMemory", runtime.totalMemory());
-            result.put("freeMemory", runtime.freeMemory());
-            
-            // Paths
-            result.put("homeDirectory", homeDirectory);
-            result.put("currentDirectory", currentWorkingDirectory);
-            result.put("externalStorage", storageRoot);
-            
-            call.resolve(result);
-        } catch (Exception e) {
-            call.reject("Failed to get system info: " + e.getMessage());
+    public void createLayerInstance(PluginCall call) {
+        String layer = call.getString("layer");
+        String instanceId = call.getString("instanceId");
+        boolean asRoot = call.getBoolean("root", false);
+        if (layer == null || instanceId == null) {
+            call.reject("Layer and instanceId are required");
+            return;
         }
-    }
-
-    @PluginMethod
-    public void requestStoragePermission(PluginCall call) {
-        if (hasStoragePermission()) {
-            JSObject result = new JSObject();
-            result.put("granted", true);
-            call.resolve(result);
-        } else {
-            requestPermissionForAlias("storage", call, "storagePermissionCallback");
+        if (!LayerStore.NAME.matcher(instanceId).matches()) {
+            call.reject("Invalid instance id: " + instanceId);
+            return;
         }
+        runAsync(ExecutionEngine.Pool.BULK, call, job -> {
+            File root = new File(new File(getContext().getFilesDir(), INSTANCES_DIR), instanceId);
+            try {
+                if (!layerStore.hasLayer(layer)) {
+                    call.reject("No such layer: " + layer);
+                    return;
+                }
+                LayerStore.MaterializeResult built = layerStore.materialize(layer, root, !asRoot, job,
+                    layerProgress(call, layer, "materialize"));
+                invalidateListing(root);
+        
+                JSObject result = new JSObject();
+                result.put("rootPath", root.getAbsolutePath());
+                result.put("files", built.files);
+                result.put("linked", built.linked);
+                result.put("copied", built.copied);
+                result.put("directories", built.directories);
+                result.put("symlinks", built.symlinks);
+                result.put("bytes", built.bytes);
+                result.put("output", "Created " + root.getAbsolutePath() + " from layer " + layer + " ("
+                    + built.linked + " files shared)");
+                result.put("error", "");
+                result.put("exitCode", 0);
+                call.resolve(result);
+            } catch (IOException e) {
+                JSObject result = new JSObject();
+                result.put("output", "");
+                result.put("error", "Instance creation failed: " + e.getMessage());
+                result.put("exitCode", 1);
+                call.resolve(result);
+            }
+        });
     }
 
-    @PermissionCallback
-    private void storagePermissionCallback(PluginCall call) {
-        JSObject result = new JSObject();
-        result.put("granted", hasStoragePermission());
-        call.resolve(result);
-    }
-
-    private boolean hasStoragePermission() {
-        return ContextCompat.checkSelfPermission(
-            getContext(),
-            Manifest.permission.READ_EXTERNAL_STORAGE
-        ) == PackageManager.PERMISSION_GRANTED;
+    @PluginMethod
+    public void listLayers(PluginCall call) {
+        runAsync(ExecutionEngine.Pool.FILE, call, job -> {
+            try {
+                JSArray layers = new JSArray();
+                for (LayerStore.LayerInfo layer : layerStore.layers()) {
+                    layers.put(layerInfo(layer));
+                }
+                LayerStore.Stats stats = layerStore.stats();
+                JSObject result = new JSObject();
+                result.put("layers", layers);
+                result.put("objects", stats.objects);
+                result.put("storedBytes", stats.storedBytes);
+                result.put("logicalBytes", stats.logicalBytes);
+                call.resolve(result);
+            } catch (IOException e) {
+                call.reject("Failed to list layers: " + e.getMessage());
+            }
+        });
     }
 
     @PluginMethod
-    public void installPackage(PluginCall call) {
-        String packageName = call.getString("packageName");
-        String source = call.getString("source", "auto");
-        
-        if (packageName == null) {
-            call.reject("Package name is required");
+    public void deleteLayer(PluginCall call) {
+        String name = call.getString("name");
+        if (name == null || !LayerStore.NAME.matcher(name).matches()) {
+            call.reject("Invalid layer name: " + name);
             return;
         }
+        runAsync(ExecutionEngine.Pool.BULK, call, job -> {
+            try {
+                long[] collected = layerStore.deleteLayer(name);
+                JSObject result = new JSObject();
+                result.put("name", name);
+                result.put("deleted", collected != null);
+                result.put("removedObjects", collected != null ? collected[0] : 0);
+                result.put("freedBytes", collected != null ? collected[1] : 0);
+                call.resolve(result);
+            } catch (IOException e) {
+                call.reject("Failed to delete layer: " + e.getMessage());
+            }
+        });
+    }
 
-        if (!packageName.matches("^[a-zA-Z0-9_-]+$")) {
-            JSObject result = new JSObject();
-            result.put("output", "");
-            result.put("error", "Invalid package name. Only alphanumeric characters, dashes, and underscores are allowed.");
-            result.put("exitCode", 1);
-            call.resolve(result);
+    @PluginMethod
+    public void detachLayerFile(PluginCall call) {
+        String path = call.getString("path");
+        if (path == null || path.contains("..")) {
+            call.reject("Invalid path: path traversal not allowed");
             return;
         }
-
-        try {
-            String packageManager;
-            String installCmd;
-            
-            switch (source) {
-                case "apt":
-                case "ubuntu":
-                case "debian":
-                    packageManager = "apt-get";
-                    installCmd = "install -y";
-                    break;
-                case "pacman":
-                case "arch":
-                    packageManager = "pacman";
-                    installCmd = "-S --noconfirm";
-                    break;
-                case "yum":
-                case "rpm":
-                    packageManager = "yum";
-                    installCmd = "install -y";
-                    break;
-                default:
-                    packageManager = "pkg";
-                    installCmd = "install -y";
-                    break;
-            }
-
-            if (!ALLOWED_PACKAGE_MANAGERS.contains(packageManager)) {
+        runAsync(ExecutionEngine.Pool.BULK, call, job -> {
+            File file = new File(resolvePath(path));
+            try {
+                LayerStore.detach(file);
                 JSObject result = new JSObject();
-                result.put("output", "");
-                result.put("error", "Package manager not allowed");
-                result.put("exitCode", 1);
+                result.put("path", file.getAbsolutePath());
+                result.put("detached", true);
                 call.resolve(result);
+            } catch (IOException e) {
+                call.reject("Failed to detach file: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void hashTree(PluginCall call) {
+        runAsync(ExecutionEngine.Pool.BULK, call, job -> {
+            String baseline = call.getString("baseline");
+            if (baseline != null && !IntegrityScanner.NAME.matcher(baseline).matches()) {
+                call.reject("Invalid baseline name: " + baseline);
                 return;
             }
-            
-            List<String> commandList = new ArrayList<>();
-            commandList.add("su");
-            commandList.add("-c");
-            commandList.add(packageManager + " " + installCmd + " " + packageName);
-            
-            ProcessBuilder pb = new ProcessBuilder(commandList);
-            Process process = pb.start();
-            
-            String output = readStream(process.getInputStream());
-            String error = readStream(process.getErrorStream());
-            int exitCode = process.waitFor();
-            
-            JSObject result = new JSObject();
-            result.put("output", output);
-            result.put("error", error);
-            result.put("exitCode", exitCode);
-            
-            call.resolve(result);
-        } catch (Exception e) {
-            JSObject result = new JSObject();
-            result.put("output", "");
-            result.put("error", "Package installation failed: " + e.getMessage());
-            result.put("exitCode", 1);
+            File root = new File(resolvePath(call.getString("path", currentWorkingDirectory))).getAbsoluteFile();
+            if (!root.isDirectory()) {
+                call.reject("Not a directory: " + root);
+                return;
+            }
+            File baselineFile = baselineFile(baseline, root.getPath());
+        
+            long started = System.currentTimeMillis();
+            IntegrityScanner.Summary summary = new IntegrityScanner(job, null).hash(root.toPath(), baselineFile);
+        
+            JSObject result = integritySummary(summary);
+            result.put("path", root.getPath());
+            result.put("baseline", baselineFile.getName());
+            result.put("baselineBytes", baselineFile.length());
+            result.put("elapsedMs", System.currentTimeMillis() - started);
             call.resolve(result);
-        }
+        });
     }
 
     @PluginMethod
-    public void checkRootAccess(PluginCall call) {
-        try {
-            ProcessBuilder pb = new ProcessBuilder("su", "-c", "echo test");
-            Process process = pb.start();
-            int exitCode = process.waitFor();
-            
-            JSObject result = new JSObject();
-            result.put("hasRoot", exitCode == 0);
-            call.resolve(result);
-        } catch (Exception e) {
-            JSObject result = new JSObject();
-            result.put("hasRoot", false);
+    public void verifyTree(PluginCall call) {
+        runAsync(ExecutionEngine.Pool.BULK, call, job -> {
+            String baseline = call.getString("baseline");
+            if (baseline != null && !IntegrityScanner.NAME.matcher(baseline).matches()) {
+                call.reject("Invalid baseline name: " + baseline);
+                return;
+            }
+            File root = new File(resolvePath(call.getString("path", currentWorkingDirectory))).getAbsoluteFile();
+            File baselineFile = baselineFile(baseline, root.getPath());
+            if (!baselineFile.isFile()) {
+                call.reject("No baseline for " + root + "; run hashTree first");
+                return;
+            }
+        
+            String callId = getCallId(call);
+            IntegrityScanner scanner = new IntegrityScanner(job, changes -> {
+                JSArray entries = new JSArray();
+                for (IntegrityScanner.Change change : changes) {
+                    JSObject entry = new JSObject();
+                    entry.put("type", change.type);
+                    entry.put("path", change.path);
+                    entry.put("size", change.size);
+                    entry.put("modified", change.modified);
+                    entries.put(entry);
+                }
+                JSObject event = new JSObject();
+                event.put("callId", callId);
+                event.put("changes", entries);
+                notifyListeners("integrityChanges", event);
+            });
+        
+            long started = System.currentTimeMillis();
+            IntegrityScanner.Summary summary = scanner.verify(root.toPath(), baselineFile,
+                call.getBoolean("update", false), call.getBoolean("rehashAll", false));
+        
+            JSObject result = integritySummary(summary);
+            result.put("callId", callId);
+            result.put("path", root.getPath());
+            result.put("baseline", baselineFile.getName());
+            result.put("elapsedMs", System.currentTimeMillis() - started);
             call.resolve(result);
-        }
+        });
     }
 
     @PluginMethod
-    public void setupLinuxEnvironment(PluginCall call) {
+    public void scanPorts(PluginCall call) {
+        JSArray array = call.getArray("targets", new JSArray());
+        List<String> specs = new ArrayList<>();
+        for (int i = 0; i < array.length(); i++) {
+            specs.add(array.optString(i));
+        }
+        int[] ports;
         try {
-            String appDir = getContext().getFilesDir().getAbsolutePath();
-            String linuxDir = appDir + "/linux";
-            
-            // Create comprehensive Linux directory structure
-            String[] dirs = {
-                linuxDir + "/bin",
-                linuxDir + "/etc",
-                linuxDir + "/home/cvj",
-                linuxDir + "/tmp",
-                linuxDir + "/var/log",
-                linuxDir + "/var/tmp",
-                linuxDir + "/usr/bin",
-                linuxDir + "/usr/lib",
-                linuxDir + "/usr/share",
-                linuxDir + "/opt",
-                linuxDir + "/root"
-            };
-            
-            for (String dir : dirs) {
-                new File(dir).mkdirs();
-            }
-            
-            // Create basic config files
-            String passwdContent = "root:x:0:0:root:/root:/bin/sh\ncvj:x:1000:1000:CVJ:/home/cvj:/bin/sh\n";
-            FileOutputStream fos = new FileOutputStream(linuxDir + "/etc/passwd");
-            fos.write(passwdContent.getBytes());
-            fos.close();
-            
-            String profileContent = "export PATH=" + linuxDir + "/bin:" + linuxDir + "/usr/bin:$PATH\n" +
-                "export HOME=" + linuxDir + "/home/cvj\n" +
-                "export TERM=xterm-256color\n" +
-                "export LANG=en_US.UTF-8\n" +
-                "export PS1='cvj@terminalos:\\w$ '\n";
-            fos = new FileOutputStream(linuxDir + "/etc/profile");
-            fos.write(profileContent.getBytes());
-            fos.close();
-            
-            // Update home directory
-            homeDirectory = linuxDir + "/home/cvj";
-            currentWorkingDirectory = homeDirectory;
-            
-            JSObject result = new JSObject();
-            result.put("output", "Linux environment setup completed at: " + linuxDir);
-            result.put("linuxRoot", linuxDir);
-            result.put("home", homeDirectory);
-            result.put("error", "");
-            result.put("exitCode", 0);
-            
-            call.resolve(result);
-        } catch (Exception e) {
+            ports = PortScanner.parsePorts(call.getString("ports", DEFAULT_SCAN_PORTS));
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
+            return;
+        }
+        PortScanner.Limits limits = new PortScanner.Limits();
+        limits.timeoutMs = Math.max(MIN_SCAN_TIMEOUT_MS, Math.min(call.getInt("timeout", limits.timeoutMs), MAX_SCAN_TIMEOUT_MS));
+        limits.rate = Math.max(0, Math.min(call.getInt("rate", limits.rate), PortScanner.MAX_RATE));
+        limits.maxInFlight = Math.max(1, Math.min(call.getInt("maxInFlight", limits.maxInFlight), PortScanner.MAX_IN_FLIGHT));
+        limits.perHost = Math.max(1, Math.min(call.getInt("perHost", limits.perHost), limits.maxInFlight));
+        limits.reportAll = call.getBoolean("reportAll", false);
+        
+        runAsync(ExecutionEngine.Pool.NETWORK, call, job -> {
+            List<InetAddress> targets;
+            try {
+                targets = PortScanner.resolveTargets(specs);
+            } catch (IllegalArgumentException | UnknownHostException e) {
+                call.reject(e instanceof UnknownHostException ? "Unknown host: " + e.getMessage() : e.getMessage());
+                return;
+            }
+        
+            String callId = getCallId(call);
+            PortScanner scanner = new PortScanner(limits, job, results -> {
+                JSArray entries = new JSArray();
+                for (PortScanner.Result hit : results) {
+                    JSObject entry = new JSObject();
+                    entry.put("host", hit.host);
+                    entry.put("port", hit.port);
+                    entry.put("state", hit.state);
+                    entry.put("rttMs", hit.rttNanos / 1000 / 1000.0);
+                    entries.put(entry);
+                }
+                JSObject event = new JSObject();
+                event.put("callId", callId);
+                event.put("results", entries);
+                notifyListeners("portScanResults", event);
+            });
+        
+            long started = System.currentTimeMillis();
+            PortScanner.Summary summary;
+            try {
+                summary = scanner.scan(targets, ports);
+            } catch (IllegalArgumentException e) {
+                call.reject(e.getMessage());
+                return;
+            }
+        
             JSObject result = new JSObject();
-            result.put("output", "");
-            result.put("error", "Environment setup failed: " + e.getMessage());
-            result.put("exitCode", 1);
+            result.put("callId", callId);
+            result.put("hosts", summary.hosts);
+            result.put("ports", ports.length);
+            result.put("probes", summary.probes);
+            result.put("open", summary.open);
+            result.put("closed", summary.closed);
+            result.put("filtered", summary.filtered);
+            result.put("skipped", summary.skipped);
+            result.put("hostsUp", new JSArray(summary.hostsUp));
+            result.put("peakInFlight", summary.peakInFlight);
+            result.put("elapsedMs", System.currentTimeMillis() - started);
             call.resolve(result);
-        }
+        });
     }
 
+    /**
+     * fetch-style request over pooled connections, answered from the HTTP
+     * cache when possible. The body is returned as text or base64, written to
+     * "destination", or with "stream" emitted as "httpBody" chunks that are
+     * acknowledged through ackOutput like process output.
+     */
     @PluginMethod
-    public void downloadFile(PluginCall call) {
+    public void httpRequest(PluginCall call) {
         String url = call.getString("url");
-        String destination = call.getString("destination");
-        
-        if (url == null || destination == null) {
-            call.reject("URL and destination are required");
+        if (url == null || !url.startsWith("https://")) {
+            call.reject("Only HTTPS URLs are allowed for security");
             return;
         }
-
-        if (!url.startsWith("https://")) {
-            JSObject result = new JSObject();
-            result.put("output", "");
-            result.put("error", "Only HTTPS URLs are allowed for security");
-            result.put("exitCode", 1);
-            call.resolve(result);
+        String method = call.getString("method", "GET").toUpperCase(Locale.US);
+        if (!HTTP_METHODS.contains(method)) {
+            call.reject("Unsupported method: " + method);
             return;
         }
-
-        if (destination.contains("..")) {
-            JSObject result = new JSObject();
-            result.put("output", "");
-            result.put("error", "Invalid destination path");
-            result.put("exitCode", 1);
-            call.resolve(result);
+        String destination = call.getString("destination");
+        if (destination != null && destination.contains("..")) {
+            call.reject("Invalid destination path");
+            return;
+        }
+        
+        HttpClient.Request request;
+        try {
+            request = new HttpClient.Request(new URL(url));
+            request.method = method;
+            request.cache = HttpClient.CacheMode.valueOf(
+                call.getString("cache", "default").toUpperCase(Locale.US).replace('-', '_'));
+        } catch (IOException | IllegalArgumentException e) {
+            call.reject("Invalid request: " + e.getMessage());
             return;
         }
+        request.timeoutMs = Math.max(1000, Math.min(call.getInt("timeout", HttpClient.DEFAULT_TIMEOUT_MS), 300000));
+        JSObject headers = call.getObject("headers", new JSObject());
+        for (Iterator<String> names = headers.keys(); names.hasNext(); ) {
+            String name = names.next();
+            request.headers.put(name, headers.optString(name));
+        }
+        String body = call.getString("body");
+        if (body != null) {
+            request.body = "base64".equals(call.getString("bodyEncoding"))
+                ? Base64.getDecoder().decode(body) : body.getBytes(StandardCharsets.UTF_8);
+        }
+        boolean binary = "base64".equals(call.getString("encoding"));
+        boolean stream = call.getBoolean("stream", false);
+        long maxBytes = Math.max(0, call.getLong("maxBytes", maxOutputBytes));
+        
+        runAsync(ExecutionEngine.Pool.NETWORK, call, job -> {
+            String callId = getCallId(call);
+            long started = System.currentTimeMillis();
+            JSObject result;
+            try {
+                result = httpClient.execute(request, job, (response, in) -> {
+                    JSObject fields = new JSObject();
+                    long size;
+                    if (destination != null) {
+                        File target = new File(resolvePath(destination));
+                        size = saveBody(in, target, callId, job);
+                        invalidateListing(target);
+                        fields.put("path", target.getAbsolutePath());
+                    } else if (stream) {
+                        size = streamBody(in, call, callId, binary, job);
+                        fields.put("streamed", true);
+                    } else {
+                        byte[] data = readBody(in, maxBytes);
+                        size = data.length;
+                        fields.put("body", binary
+                            ? Base64.getEncoder().encodeToString(data) : new String(data, StandardCharsets.UTF_8));
+                    }
+                    fields.put("status", response.status);
+                    fields.put("statusText", response.message == null ? "" : response.message);
+                    fields.put("url", response.url.toString());
+                    JSObject responseHeaders = new JSObject();
+                    for (Map.Entry<String, List<String>> header : response.headers.entrySet()) {
+                        responseHeaders.put(header.getKey(), String.join(", ", header.getValue()));
+                    }
+                    fields.put("headers", responseHeaders);
+                    fields.put("cache", response.cache);
+                    fields.put("size", size);
+                    return fields;
+                });
+            } catch (IOException e) {
+                PerfStats.Metric requestStats = perfStats.metric("method.httpRequest");
+                requestStats.fail();
+                if (e instanceof SocketTimeoutException) {
+                    requestStats.timeout();
+                }
+                call.reject("Request failed: " + e.getMessage());
+                return;
+            }
+            perfStats.metric("method.httpRequest").bytesIn(result.optLong("size", 0));
+            result.put("callId", callId);
+            result.put("encoding", binary ? "base64" : "utf8");
+            result.put("elapsedMs", System.currentTimeMillis() - started);
+            call.resolve(result);
+        });
+    }
 
-        String resolvedDest = resolvePath(destination);
+    @PluginMethod
+    public void clearHttpCache(PluginCall call) {
+        runAsync(ExecutionEngine.Pool.BULK, call, job -> call.resolve(httpCacheStats(httpCache.clear())));
+    }
 
-        try {
-            URL downloadUrl = new URL(url);
-            HttpURLConnection connection = (HttpURLConnection) downloadUrl.openConnection();
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(30000);
-            connection.setReadTimeout(30000);
-            
-            // Create parent directories
-            File destFile = new File(resolvedDest);
-            File parent = destFile.getParentFile();
-            if (parent != null && !parent.exists()) {
-                parent.mkdirs();
+    private static byte[] readBody(InputStream in, long maxBytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[DEFAULT_STREAM_CHUNK_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (maxBytes > 0 && out.size() + read > maxBytes) {
+                throw new IOException("Response body exceeds " + maxBytes + " bytes; use destination or stream");
             }
-            
-            InputStream inputStream = connection.getInputStream();
-            FileOutputStream outputStream = new FileOutputStream(destFile);
-            
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-            long totalBytes = 0;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
-                totalBytes += bytesRead;
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes a response body to {@code target}, which only changes once the
+     * whole body is there
+     */
+    private static long saveBody(InputStream in, File target, String callId, ExecutionEngine.Job job)
+            throws IOException, InterruptedException {
+        AtomicFileWriter writer = AtomicFileWriter.open(callId, target, false);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                job.throwIfCancelled();
+                writer.write(read == buffer.length ? buffer : Arrays.copyOf(buffer, read), -1);
             }
-            
-            outputStream.close();
-            inputStream.close();
-            connection.disconnect();
-            
-            JSObject result = new JSObject();
-            result.put("output", "Downloaded: " + url + " to " + resolvedDest + " (" + totalBytes + " bytes)");
-            result.put("path", resolvedDest);
-            result.put("size", totalBytes);
-            result.put("error", "");
-            result.put("exitCode", 0);
-            
-            call.resolve(result);
-        } catch (Exception e) {
-            JSObject result = new JSObject();
-            result.put("output", "");
-            result.put("error", "Download failed: " + e.getMessage());
-            result.put("exitCode", 1);
-            call.resolve(result);
+            return writer.commit();
+        } catch (IOException | InterruptedException e) {
+            writer.abort();
+            throw e;
         }
     }
 
-    private String readStream(InputStream stream) throws IOException {
-        StringBuilder output = new StringBuilder();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
-        String line;
-        while ((line = reader.readLine()) != null) {
-            output.append(line).append("\n");
+    private long streamBody(InputStream in, PluginCall call, String callId, boolean binary, ExecutionEngine.Job job)
+            throws IOException, InterruptedException {
+        int chunkSize = Math.max(256, Math.min(call.getInt("chunkSize", DEFAULT_STREAM_CHUNK_SIZE), 65536));
+        int window = Math.max(0, call.getInt("window", DEFAULT_STREAM_WINDOW));
+        String encoding = binary ? "base64" : "utf8";
+        long[] size = new long[1];
+        OutputStreamer streamer = new OutputStreamer(chunkSize, window, binary, (stream, data, seq) -> {
+            JSObject chunk = new JSObject();
+            chunk.put("callId", callId);
+            chunk.put("data", data);
+            chunk.put("encoding", encoding);
+            chunk.put("seq", seq);
+            notifyListeners("httpBody", chunk);
+        });
+        activeStreams.put(callId, streamer);
+        job.onCancel(streamer::close);
+        try {
+            streamer.stream("body", new FilterInputStream(in) {
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int read = super.read(buffer, offset, length);
+                    if (read > 0) {
+                        size[0] += read;
+                    }
+                    return read;
+                }
+            });
+            return size[0];
+        } finally {
+            activeStreams.remove(callId);
         }
-        reader.close();
-        return output.toString();
     }
 }
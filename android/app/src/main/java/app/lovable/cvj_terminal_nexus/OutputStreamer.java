@@ -0,0 +1,158 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams a running process's stdout and stderr as bounded chunks.
+ *
+ * Both streams are pumped concurrently through {@link ProcessIo}. Once
+ * {@code window} chunks are waiting for an acknowledgement the pumps stop
+ * reading, which leaves the child blocked on a full pipe instead of piling its
+ * output up in memory.
+ *
+ * In binary mode chunks are the raw bytes read from the pipe, base64 encoded,
+ * so output that is not UTF-8 text reaches the listener unchanged.
+ */
+class OutputStreamer {
+
+    interface Listener {
+        void onChunk(String stream, String data, long seq);
+    }
+
+    private final int chunkSize;
+    private final int window;
+    private final Listener listener;
+    private final boolean binary;
+    private final Object lock = new Object();
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    private long nextSeq = 0;
+    private long ackedSeq = -1;
+    private boolean closed = false;
+
+    OutputStreamer(int chunkSize, int window, Listener listener) {
+        this(chunkSize, window, false, listener);
+    }
+
+    OutputStreamer(int chunkSize, int window, boolean binary, Listener listener) {
+        this.chunkSize = chunkSize;
+        this.window = window;
+        this.binary = binary;
+        this.listener = listener;
+    }
+
+    /**
+     * Pumps both streams until the process closes them and returns its exit code
+     */
+    int run(Process process) throws IOException, InterruptedException {
+        return run(process, true);
+    }
+
+    /**
+     * Like {@link #run(Process)}, optionally leaving stdin open for interactive use
+     */
+    int run(Process process, boolean closeStdin) throws IOException, InterruptedException {
+        return ProcessIo.drain(process, this::pump, closeStdin);
+    }
+
+    /**
+     * Emits {@code in} as chunks tagged {@code stream} until it ends, with
+     * the same window as process output
+     */
+    void stream(String stream, InputStream in) throws IOException, InterruptedException {
+        pump(stream, in);
+    }
+
+    /**
+     * Bytes read from the streams so far, before any decoding or base64
+     */
+    long bytesRead() {
+        return bytesRead.get();
+    }
+
+    /**
+     * Acknowledges every chunk up to and including {@code seq}
+     */
+    void ack(long seq) {
+        synchronized (lock) {
+            if (seq > ackedSeq) {
+                ackedSeq = seq;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Stops applying backpressure, e.g. when the receiving WebView goes away
+     */
+    void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+    }
+
+    private void pump(String stream, InputStream source) throws IOException, InterruptedException {
+        InputStream in = new FilterInputStream(source) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    bytesRead.incrementAndGet();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read > 0) {
+                    bytesRead.addAndGet(read);
+                }
+                return read;
+            }
+        };
+        if (binary) {
+            try (InputStream raw = in) {
+                byte[] buffer = new byte[chunkSize];
+                int read;
+                while ((read = raw.read(buffer)) != -1) {
+                    if (read > 0) {
+                        emit(stream, Base64.getEncoder().encodeToString(read == buffer.length
+                            ? buffer : Arrays.copyOf(buffer, read)));
+                    }
+                }
+            }
+            return;
+        }
+        // InputStreamReader keeps partial UTF-8 sequences between reads, so a
+        // multi-byte character is never split across two chunks
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            char[] buffer = new char[chunkSize];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                if (read > 0) {
+                    emit(stream, new String(buffer, 0, read));
+                }
+            }
+        }
+    }
+
+    private void emit(String stream, String data) throws InterruptedException {
+        synchronized (lock) {
+            while (!closed && window > 0 && nextSeq - ackedSeq > window) {
+                lock.wait();
+            }
+            // Delivered under the lock so sequence numbers reach JS in order
+            listener.onChunk(stream, data, nextSeq++);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Named counters and latency histograms for the plugin's hot paths.
+ *
+ * Metrics are created on first use and recorded without locks, so
+ * instrumentation can stay on in release builds. Names are dotted by area:
+ * "method.readFile", "command.ls", "process.spawn", "queue.process" and so on.
+ */
+final class PerfStats {
+
+    static final class Metric {
+        final String name;
+        final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder bytesIn = new LongAdder();
+        private final LongAdder bytesOut = new LongAdder();
+
+        Metric(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Records one operation that started at {@code startNanos}
+         */
+        void record(long startNanos, boolean ok) {
+            latency.record((System.nanoTime() - startNanos) / 1000);
+            if (!ok) {
+                failures.increment();
+            }
+        }
+
+        /**
+         * Counts a failure that never got far enough to be timed
+         */
+        void fail() {
+            failures.increment();
+        }
+
+        void timeout() {
+            timeouts.increment();
+        }
+
+        void bytesIn(long bytes) {
+            bytesIn.add(bytes);
+        }
+
+        void bytesOut(long bytes) {
+            bytesOut.add(bytes);
+        }
+
+        long failures() {
+            return failures.sum();
+        }
+
+        long timeouts() {
+            return timeouts.sum();
+        }
+
+        long bytesIn() {
+            return bytesIn.sum();
+        }
+
+        long bytesOut() {
+            return bytesOut.sum();
+        }
+    }
+
+    // Command names come from the WebView, so the number of distinct
+    // metrics is capped; anything past it is folded into one bucket
+    private static final int MAX_METRICS = 512;
+
+    private final Map<String, Metric> metrics = new ConcurrentHashMap<>();
+    private volatile long since = System.currentTimeMillis();
+
+    Metric metric(String name) {
+        Metric metric = metrics.get(name);
+        if (metric != null) {
+            return metric;
+        }
+        if (metrics.size() >= MAX_METRICS) {
+            name = "other";
+        }
+        metric = new Metric(name);
+        Metric existing = metrics.putIfAbsent(name, metric);
+        return existing != null ? existing : metric;
+    }
+
+    /**
+     * Every metric recorded since the last reset, sorted by name
+     */
+    List<Metric> snapshot() {
+        List<Metric> list = new ArrayList<>(metrics.values());
+        Collections.sort(list, (a, b) -> a.name.compareTo(b.name));
+        return list;
+    }
+
+    /**
+     * Wall clock time in millis of the last reset
+     */
+    long since() {
+        return since;
+    }
+
+    /**
+     * Drops every metric. Operations still in flight record into fresh ones.
+     */
+    void reset() {
+        metrics.clear();
+        since = System.currentTimeMillis();
+    }
+}
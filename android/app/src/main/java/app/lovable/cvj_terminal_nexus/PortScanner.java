@@ -0,0 +1,509 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * TCP connect scanner for hosts on the device's own networks.
+ *
+ * Every probe is a non-blocking connect registered on one selector, so a
+ * single thread keeps thousands of them in flight. Launches are paced by a
+ * token bucket and capped per host; timeouts expire from a queue ordered by
+ * launch time, which keeps them in deadline order without a heap. A refused
+ * connect means the port is closed but the host is up; a host that turns
+ * out to be unreachable has its remaining ports dropped. Results reach the
+ * listener in batches while the scan runs.
+ *
+ * Only loopback, private and link-local addresses can be scanned.
+ */
+final class PortScanner {
+
+    interface Listener {
+        void onResults(List<Result> results);
+    }
+
+    static final String OPEN = "open";
+    static final String CLOSED = "closed";
+    static final String FILTERED = "filtered";
+    static final String UNREACHABLE = "unreachable";
+
+    static final class Limits {
+        int timeoutMs = 1500;
+        // Connects started per second; 0 for no limit
+        int rate = 1000;
+        int maxInFlight = 512;
+        int perHost = 64;
+        // Report closed, filtered and unreachable probes too, not only open ports
+        boolean reportAll;
+    }
+
+    static final class Result {
+        final String host;
+        final int port;
+        final String state;
+        final long rttNanos;
+
+        Result(String host, int port, String state, long rttNanos) {
+            this.host = host;
+            this.port = port;
+            this.state = state;
+            this.rttNanos = rttNanos;
+        }
+    }
+
+    static final class Summary {
+        final int hosts;
+        final long probes;
+        final long open;
+        final long closed;
+        final long filtered;
+        // Probes never sent because their host was unreachable
+        final long skipped;
+        final List<String> hostsUp;
+        final int peakInFlight;
+
+        Summary(int hosts, long probes, long open, long closed, long filtered, long skipped,
+                List<String> hostsUp, int peakInFlight) {
+            this.hosts = hosts;
+            this.probes = probes;
+            this.open = open;
+            this.closed = closed;
+            this.filtered = filtered;
+            this.skipped = skipped;
+            this.hostsUp = hostsUp;
+            this.peakInFlight = peakInFlight;
+        }
+    }
+
+    static final int MAX_HOSTS = 4096;
+    static final long MAX_PROBES = 1L << 22;
+    static final int MAX_IN_FLIGHT = 4096;
+    static final int MAX_RATE = 50000;
+
+    private static final int BATCH_SIZE = 64;
+    private static final long FLUSH_INTERVAL_MS = 100;
+    // Launches a stalled bucket may catch up on at once
+    private static final long BURST_NANOS = 10_000_000L;
+    private static final Pattern IPV4 = Pattern.compile("^(\\d{1,3})\\.(\\d{1,3})\\.(\\d{1,3})\\.(\\d{1,3})$");
+
+    private static final class Host {
+        final InetAddress address;
+        final String name;
+        int next = 0;
+        int inFlight = 0;
+        boolean queued = false;
+        boolean up = false;
+        boolean unreachable = false;
+
+        Host(InetAddress address) {
+            this.address = address;
+            this.name = address.getHostAddress();
+        }
+    }
+
+    private static final class Probe {
+        final Host host;
+        final int port;
+        final SocketChannel channel;
+        final long started;
+        final long deadline;
+        boolean done = false;
+
+        Probe(Host host, int port, SocketChannel channel, long started, long deadline) {
+            this.host = host;
+            this.port = port;
+            this.channel = channel;
+            this.started = started;
+            this.deadline = deadline;
+        }
+    }
+
+    private final Limits limits;
+    private final ExecutionEngine.Job job;
+    private final Listener listener;
+
+    private int[] ports;
+    // Hosts with ports left to probe and room under the per-host cap, round-robin
+    private final ArrayDeque<Host> ready = new ArrayDeque<>();
+    // In-flight probes in launch order, hence also in deadline order
+    private final ArrayDeque<Probe> pending = new ArrayDeque<>();
+    private int maxInFlight;
+    private int inFlight = 0;
+    private int peakInFlight = 0;
+    private long probes = 0;
+    private long open = 0;
+    private long closed = 0;
+    private long filtered = 0;
+    private long skipped = 0;
+
+    private List<Result> batch = new ArrayList<>();
+    private long lastFlush = 0;
+
+    PortScanner(Limits limits, ExecutionEngine.Job job, Listener listener) {
+        this.limits = limits;
+        this.job = job;
+        this.listener = listener;
+    }
+
+    /**
+     * Resolves host names, IPv4 CIDR blocks ("10.0.0.0/24") and last-octet
+     * ranges ("192.168.1.10-20") to distinct addresses
+     *
+     * @throws IllegalArgumentException for malformed specs, too many hosts or
+     *         any address outside the device's local networks
+     */
+    static List<InetAddress> resolveTargets(List<String> specs) throws UnknownHostException {
+        Set<InetAddress> addresses = new LinkedHashSet<>();
+        for (String raw : specs) {
+            String spec = raw.trim();
+            int slash = spec.indexOf('/');
+            int dash = spec.lastIndexOf('-');
+            if (slash >= 0) {
+                int base = ipv4(spec.substring(0, slash));
+                int bits = parseInt(spec.substring(slash + 1), 0, 32, spec);
+                if (bits < 32 - 12) {
+                    throw new IllegalArgumentException("Range too large: " + spec);
+                }
+                int mask = -1 << (32 - bits);
+                int first = base & mask;
+                int last = first | ~mask;
+                // Leave out the network and broadcast addresses of real subnets
+                if (bits < 31) {
+                    first++;
+                    last--;
+                }
+                for (long value = first & 0xffffffffL; value <= (last & 0xffffffffL); value++) {
+                    add(addresses, toAddress((int) value), spec);
+                }
+            } else if (dash > 0 && IPV4.matcher(spec.substring(0, dash)).matches()) {
+                int base = ipv4(spec.substring(0, dash));
+                int end = parseInt(spec.substring(dash + 1), base & 0xff, 255, spec);
+                for (int octet = base & 0xff; octet <= end; octet++) {
+                    add(addresses, toAddress((base & ~0xff) | octet), spec);
+                }
+            } else if (!spec.isEmpty()) {
+                add(addresses, InetAddress.getByName(spec), spec);
+            }
+        }
+        if (addresses.isEmpty()) {
+            throw new IllegalArgumentException("No targets");
+        }
+        return new ArrayList<>(addresses);
+    }
+
+    /**
+     * Parses "22,80,8000-8100" into sorted distinct ports
+     */
+    static int[] parsePorts(String spec) {
+        BitSet set = new BitSet(65536);
+        for (String part : spec.split(",")) {
+            String range = part.trim();
+            if (range.isEmpty()) {
+                continue;
+            }
+            int dash = range.indexOf('-');
+            if (dash < 0) {
+                set.set(parseInt(range, 1, 65535, spec));
+            } else {
+                int from = parseInt(range.substring(0, dash), 1, 65535, spec);
+                set.set(from, parseInt(range.substring(dash + 1), from, 65535, spec) + 1);
+            }
+        }
+        if (set.isEmpty()) {
+            throw new IllegalArgumentException("No ports");
+        }
+        int[] ports = new int[set.cardinality()];
+        for (int i = 0, port = set.nextSetBit(0); port >= 0; port = set.nextSetBit(port + 1)) {
+            ports[i++] = port;
+        }
+        return ports;
+    }
+
+    /**
+     * Loopback, RFC 1918, link-local and IPv6 unique local addresses
+     */
+    static boolean isLocalNetwork(InetAddress address) {
+        if (address.isLoopbackAddress() || address.isSiteLocalAddress() || address.isLinkLocalAddress()) {
+            return true;
+        }
+        return address instanceof Inet6Address && (address.getAddress()[0] & 0xfe) == 0xfc;
+    }
+
+    /**
+     * Probes every port of every host until done or cancelled
+     */
+    Summary scan(List<InetAddress> targets, int[] ports) throws IOException, InterruptedException {
+        if ((long) targets.size() * ports.length > MAX_PROBES) {
+            throw new IllegalArgumentException("Too many probes: " + targets.size() + " hosts x " + ports.length + " ports");
+        }
+        this.ports = ports;
+        this.maxInFlight = Math.max(1, Math.min(limits.maxInFlight, MAX_IN_FLIGHT));
+        List<Host> hosts = new ArrayList<>(targets.size());
+        for (InetAddress address : targets) {
+            Host host = new Host(address);
+            hosts.add(host);
+            host.queued = true;
+            ready.add(host);
+        }
+
+        long interval = limits.rate > 0 ? 1_000_000_000L / Math.min(limits.rate, MAX_RATE) : 0;
+        long timeout = limits.timeoutMs * 1_000_000L;
+        Selector selector = Selector.open();
+        job.onCancel(selector::wakeup);
+        try {
+            long nextLaunch = System.nanoTime();
+            while (!job.isCancelled() && (inFlight > 0 || !ready.isEmpty())) {
+                long now = System.nanoTime();
+                while (inFlight < maxInFlight && !ready.isEmpty() && now - nextLaunch >= 0) {
+                    Host host = ready.poll();
+                    host.queued = false;
+                    if (host.next >= ports.length) {
+                        continue;
+                    }
+                    if (!launch(selector, host, now, timeout)) {
+                        break;
+                    }
+                    if (interval > 0) {
+                        nextLaunch = Math.max(nextLaunch, now - BURST_NANOS) + interval;
+                    }
+                }
+
+                long wait = FLUSH_INTERVAL_MS * 1_000_000L;
+                Probe oldest = oldestPending();
+                if (oldest != null) {
+                    wait = Math.min(wait, oldest.deadline - now);
+                }
+                if (inFlight < maxInFlight && !ready.isEmpty()) {
+                    wait = Math.min(wait, nextLaunch - now);
+                }
+                if (wait > 0) {
+                    selector.select(Math.max(1, (wait + 999_999) / 1_000_000));
+                } else {
+                    selector.selectNow();
+                }
+
+                now = System.nanoTime();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    Probe probe = (Probe) key.attachment();
+                    try {
+                        if (probe.channel.finishConnect()) {
+                            complete(probe, OPEN, now);
+                        }
+                    } catch (IOException e) {
+                        complete(probe, classify(e), now);
+                    }
+                }
+                selector.selectedKeys().clear();
+
+                while ((oldest = oldestPending()) != null && oldest.deadline - now <= 0) {
+                    complete(oldest, FILTERED, now);
+                }
+                flushIfDue();
+            }
+        } finally {
+            for (Probe probe : pending) {
+                close(probe.channel);
+            }
+            pending.clear();
+            selector.close();
+            flush();
+        }
+        job.throwIfCancelled();
+
+        List<String> hostsUp = new ArrayList<>();
+        for (Host host : hosts) {
+            if (host.up) {
+                hostsUp.add(host.name);
+            }
+        }
+        return new Summary(hosts.size(), probes, open, closed, filtered, skipped, hostsUp, peakInFlight);
+    }
+
+    /**
+     * Starts a connect to the host's next port
+     *
+     * @return false if no socket could be opened; the in-flight cap is then
+     *         lowered to what the process could take
+     */
+    private boolean launch(Selector selector, Host host, long now, long timeout) throws IOException {
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open();
+        } catch (IOException e) {
+            if (inFlight == 0) {
+                throw e;
+            }
+            maxInFlight = inFlight;
+            requeue(host);
+            return false;
+        }
+        int port = ports[host.next++];
+        Probe probe = new Probe(host, port, channel, now, now + timeout);
+        probes++;
+        host.inFlight++;
+        inFlight++;
+        peakInFlight = Math.max(peakInFlight, inFlight);
+        pending.add(probe);
+        try {
+            channel.configureBlocking(false);
+            // Reset on close, so thousands of probes leave no TIME_WAIT sockets behind
+            channel.socket().setSoLinger(true, 0);
+            if (channel.connect(new InetSocketAddress(host.address, port))) {
+                complete(probe, OPEN, now);
+            } else {
+                channel.register(selector, SelectionKey.OP_CONNECT, probe);
+            }
+        } catch (IOException e) {
+            complete(probe, classify(e), now);
+        }
+        requeue(host);
+        return true;
+    }
+
+    private void complete(Probe probe, String state, long now) {
+        if (probe.done) {
+            return;
+        }
+        probe.done = true;
+        close(probe.channel);
+        inFlight--;
+        Host host = probe.host;
+        host.inFlight--;
+
+        if (OPEN.equals(state)) {
+            open++;
+            host.up = true;
+        } else if (CLOSED.equals(state)) {
+            closed++;
+            host.up = true;
+        } else if (UNREACHABLE.equals(state)) {
+            filtered++;
+            if (!host.unreachable) {
+                host.unreachable = true;
+                skipped += ports.length - host.next;
+                host.next = ports.length;
+            }
+        } else {
+            filtered++;
+        }
+        if (listener != null && (limits.reportAll || OPEN.equals(state))) {
+            batch.add(new Result(host.name, probe.port, state, now - probe.started));
+            if (batch.size() >= BATCH_SIZE) {
+                flush();
+            }
+        }
+        requeue(host);
+    }
+
+    private void requeue(Host host) {
+        if (!host.queued && host.next < ports.length && host.inFlight < limits.perHost) {
+            host.queued = true;
+            ready.add(host);
+        }
+    }
+
+    private Probe oldestPending() {
+        Probe probe;
+        while ((probe = pending.peek()) != null && probe.done) {
+            pending.poll();
+        }
+        return probe;
+    }
+
+    /**
+     * Maps a failed connect to a port state. Android reports errno values in
+     * the message of a plain ConnectException rather than as subclasses.
+     */
+    private static String classify(IOException e) {
+        String message = String.valueOf(e.getMessage());
+        if (e instanceof NoRouteToHostException || message.contains("EHOSTUNREACH")
+                || message.contains("ENETUNREACH") || message.contains("unreachable")) {
+            return UNREACHABLE;
+        }
+        if (message.contains("ECONNREFUSED") || message.contains("refused")) {
+            return CLOSED;
+        }
+        return e instanceof ConnectException && !message.contains("ETIMEDOUT") ? CLOSED : FILTERED;
+    }
+
+    private static void close(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Already gone
+        }
+    }
+
+    private void flushIfDue() {
+        if (System.currentTimeMillis() - lastFlush >= FLUSH_INTERVAL_MS) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        lastFlush = System.currentTimeMillis();
+        List<Result> results = batch;
+        batch = new ArrayList<>();
+        listener.onResults(results);
+    }
+
+    private static void add(Set<InetAddress> addresses, InetAddress address, String spec) {
+        if (!isLocalNetwork(address)) {
+            throw new IllegalArgumentException("Not a local network address: " + address.getHostAddress()
+                + (spec.equals(address.getHostAddress()) ? "" : " (" + spec + ")"));
+        }
+        addresses.add(address);
+        if (addresses.size() > MAX_HOSTS) {
+            throw new IllegalArgumentException("Too many hosts, at most " + MAX_HOSTS);
+        }
+    }
+
+    private static int ipv4(String text) {
+        Matcher matcher = IPV4.matcher(text.trim());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not an IPv4 address: " + text);
+        }
+        int value = 0;
+        for (int i = 1; i <= 4; i++) {
+            value = (value << 8) | parseInt(matcher.group(i), 0, 255, text);
+        }
+        return value;
+    }
+
+    private static InetAddress toAddress(int value) throws UnknownHostException {
+        return Inet4Address.getByAddress(new byte[] {
+            (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value });
+    }
+
+    private static int parseInt(String text, int min, int max, String spec) {
+        try {
+            int value = Integer.parseInt(text.trim());
+            if (value >= min && value <= max) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid value '" + text + "' in " + spec);
+    }
+}
@@ -0,0 +1,184 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Process I/O engine shared by every exec path of the plugin.
+ *
+ * stdout and stderr are always drained at the same time, stderr on a pump
+ * thread and stdout on the calling thread, so a child that fills one pipe
+ * while we are blocked on the other can never deadlock.
+ */
+final class ProcessIo {
+
+    static final String STDOUT = "stdout";
+    static final String STDERR = "stderr";
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private static final ExecutorService PUMPS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "NativeShell-pump");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Reads one of the process streams until EOF
+     */
+    interface StreamConsumer {
+        void consume(String stream, InputStream in) throws IOException, InterruptedException;
+    }
+
+    static final class Result {
+        final byte[] stdout;
+        final byte[] stderr;
+        final int exitCode;
+        // Bytes dropped from the middle of each stream by an output cap, and
+        // where the kept tail starts in the array
+        final long stdoutOmitted;
+        final long stderrOmitted;
+        final int stdoutHead;
+        final int stderrHead;
+
+        Result(byte[] stdout, byte[] stderr, int exitCode) {
+            this(stdout, stdout.length, 0, stderr, stderr.length, 0, exitCode);
+        }
+
+        Result(byte[] stdout, int stdoutHead, long stdoutOmitted,
+               byte[] stderr, int stderrHead, long stderrOmitted, int exitCode) {
+            this.stdout = stdout;
+            this.stderr = stderr;
+            this.exitCode = exitCode;
+            this.stdoutOmitted = stdoutOmitted;
+            this.stderrOmitted = stderrOmitted;
+            this.stdoutHead = stdoutHead;
+            this.stderrHead = stderrHead;
+        }
+
+        boolean truncated() {
+            return stdoutOmitted > 0 || stderrOmitted > 0;
+        }
+
+        /**
+         * stdout as text, with a marker line where output was dropped
+         */
+        String output() {
+            return text(stdout, stdoutHead, stdoutOmitted);
+        }
+
+        String error() {
+            return text(stderr, stderrHead, stderrOmitted);
+        }
+
+        private static String text(byte[] data, int head, long omitted) {
+            if (omitted == 0) {
+                return new String(data, StandardCharsets.UTF_8);
+            }
+            return new String(data, 0, head, StandardCharsets.UTF_8)
+                + "\n[... " + omitted + " bytes omitted ...]\n"
+                + new String(data, head, data.length - head, StandardCharsets.UTF_8);
+        }
+    }
+
+    private ProcessIo() {
+    }
+
+    /**
+     * Starts the process and collects its output in memory. With
+     * {@code mergeStreams} stderr is redirected into stdout by the OS, which
+     * keeps the exact write order of the two streams.
+     */
+    static Result run(ProcessBuilder pb, boolean mergeStreams) throws IOException, InterruptedException {
+        pb.redirectErrorStream(mergeStreams);
+        return collect(pb.start());
+    }
+
+    /**
+     * Collects both streams of an already started process in memory
+     */
+    static Result collect(Process process) throws IOException, InterruptedException {
+        return collect(process, 0);
+    }
+
+    /**
+     * Like {@link #collect(Process)}, keeping at most {@code maxBytes} of
+     * each stream: its head and its tail, with the middle dropped. The
+     * streams are still read to the end so the child never blocks on a full
+     * pipe.
+     */
+    static Result collect(Process process, long maxBytes) throws IOException, InterruptedException {
+        final CappedOutput out = new CappedOutput(maxBytes);
+        final CappedOutput err = new CappedOutput(maxBytes);
+        int exitCode = drain(process, (stream, in) -> copy(in, STDOUT.equals(stream) ? out : err));
+        return new Result(out.toByteArray(), out.headLength(), out.omitted(),
+            err.toByteArray(), err.headLength(), err.omitted(), exitCode);
+    }
+
+    /**
+     * Hands both streams to {@code consumer} concurrently, closes stdin and
+     * waits for the process to exit
+     */
+    static int drain(Process process, StreamConsumer consumer) throws IOException, InterruptedException {
+        return drain(process, consumer, true);
+    }
+
+    /**
+     * Like {@link #drain(Process, StreamConsumer)}, leaving stdin open when the
+     * caller keeps writing to the process
+     */
+    static int drain(Process process, StreamConsumer consumer, boolean closeStdin)
+            throws IOException, InterruptedException {
+        if (closeStdin) {
+            process.getOutputStream().close();
+        }
+
+        Future<?> stderrPump = PUMPS.submit(() -> {
+            try (InputStream err = process.getErrorStream()) {
+                consumer.consume(STDERR, err);
+            }
+            return null;
+        });
+
+        try (InputStream out = process.getInputStream()) {
+            consumer.consume(STDOUT, out);
+        } catch (IOException | InterruptedException e) {
+            process.destroy();
+            stderrPump.cancel(true);
+            throw e;
+        }
+
+        try {
+            stderrPump.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("stderr pump failed", cause);
+        }
+        return process.waitFor();
+    }
+
+    /**
+     * Runs a blocking stream read on the pump pool
+     */
+    static <T> Future<T> pump(Callable<T> task) {
+        return PUMPS.submit(task);
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Enforces a wall-clock deadline on a process and its descendants.
+ *
+ * When the deadline passes (or {@link #kill()} is called) the whole process
+ * tree, found through /proc, gets SIGTERM; whatever is still alive after the
+ * grace period gets SIGKILL. Children are signalled too because a background
+ * child holding the output pipe open would otherwise keep the read blocked
+ * after its parent is gone.
+ */
+final class ProcessKiller {
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "NativeShell-killer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Pattern PID_PATTERN = Pattern.compile("pid=(\\d+)");
+
+    private final Process process;
+    private final long graceMs;
+    private final AtomicBoolean killed = new AtomicBoolean(false);
+    private volatile boolean timedOut = false;
+    private volatile ScheduledFuture<?> deadline;
+
+    private ProcessKiller(Process process, long graceMs) {
+        this.process = process;
+        this.graceMs = graceMs;
+    }
+
+    /**
+     * Starts watching {@code process}
+     *
+     * @param timeoutMs wall-clock limit, or 0 for none
+     */
+    static ProcessKiller watch(Process process, long timeoutMs, long graceMs) {
+        ProcessKiller killer = new ProcessKiller(process, graceMs);
+        if (timeoutMs > 0) {
+            killer.deadline = TIMER.schedule(() -> {
+                killer.timedOut = true;
+                killer.kill();
+            }, timeoutMs, TimeUnit.MILLISECONDS);
+        }
+        return killer;
+    }
+
+    /**
+     * Runs {@code action} once after {@code delayMs}, on the killer thread
+     */
+    static ScheduledFuture<?> schedule(Runnable action, long delayMs) {
+        return TIMER.schedule(action, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    boolean timedOut() {
+        return timedOut;
+    }
+
+    /**
+     * Stops the deadline once the process has finished on its own
+     */
+    void cancel() {
+        ScheduledFuture<?> pending = deadline;
+        if (pending != null) {
+            pending.cancel(false);
+        }
+    }
+
+    /**
+     * Sends SIGTERM to the process tree now and SIGKILL after the grace
+     * period. Returns immediately; only the first call has an effect.
+     */
+    void kill() {
+        if (!killed.compareAndSet(false, true)) {
+            return;
+        }
+        cancel();
+        int pid = pidOf(process);
+        if (pid <= 0) {
+            process.destroy();
+            TIMER.schedule(() -> {
+                if (process.isAlive()) {
+                    process.destroyForcibly();
+                }
+            }, graceMs, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        // Snapshot the tree first: once the parent dies its children are
+        // reparented and can no longer be found from its pid
+        Set<Integer> tree = new LinkedHashSet<>(descendants(pid));
+        tree.add(pid);
+        signal("TERM", tree);
+        TIMER.schedule(() -> {
+            Set<Integer> remaining = new LinkedHashSet<>(tree);
+            remaining.addAll(descendants(pid));
+            remaining.removeIf(p -> !new File("/proc/" + p).exists());
+            if (!remaining.isEmpty()) {
+                signal("KILL", remaining);
+            }
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }, graceMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static void signal(String signal, Set<Integer> pids) {
+        List<String> command = new ArrayList<>();
+        command.add("kill");
+        command.add("-" + signal);
+        for (int pid : pids) {
+            command.add(String.valueOf(pid));
+        }
+        try {
+            Process kill = new ProcessBuilder(command).redirectErrorStream(true).start();
+            ProcessIo.collect(kill);
+        } catch (IOException e) {
+            // Nothing else to try; destroyForcibly still covers the parent
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * All live descendants of {@code pid}, read from the parent pid field of
+     * /proc/[pid]/stat
+     */
+    static List<Integer> descendants(int pid) {
+        Map<Integer, List<Integer>> children = new HashMap<>();
+        File[] entries = new File("/proc").listFiles();
+        if (entries != null) {
+            for (File entry : entries) {
+                String name = entry.getName();
+                if (name.isEmpty() || !Character.isDigit(name.charAt(0))) {
+                    continue;
+                }
+                int parent = parentOf(entry);
+                if (parent > 0) {
+                    List<Integer> list = children.get(parent);
+                    if (list == null) {
+                        list = new ArrayList<>();
+                        children.put(parent, list);
+                    }
+                    list.add(Integer.parseInt(name));
+                }
+            }
+        }
+
+        List<Integer> found = new ArrayList<>();
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(pid);
+        while (!queue.isEmpty()) {
+            List<Integer> direct = children.get(queue.poll());
+            if (direct != null) {
+                found.addAll(direct);
+                queue.addAll(direct);
+            }
+        }
+        return found;
+    }
+
+    private static int parentOf(File procEntry) {
+        try {
+            String stat = new String(Files.readAllBytes(new File(procEntry, "stat").toPath()), StandardCharsets.UTF_8);
+            // The command name may contain spaces and parentheses, so fields
+            // are counted from the last closing parenthesis
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            return Integer.parseInt(fields[1]);
+        } catch (IOException | RuntimeException e) {
+            // Process exited while we were scanning
+            return -1;
+        }
+    }
+
+    /**
+     * Pid of a child process: Process.pid() where the runtime has it, else
+     * the pid field of the platform implementation, else the
+     * "Process[pid=...]" form of toString() that Android's implementation uses
+     */
+    static int pidOf(Process process) {
+        try {
+            Method pid = Process.class.getMethod("pid");
+            return ((Number) pid.invoke(process)).intValue();
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Not available before Java 9, which includes Android
+        }
+        try {
+            Field pid = process.getClass().getDeclaredField("pid");
+            pid.setAccessible(true);
+            return pid.getInt(process);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Hidden or renamed on this runtime
+        }
+        Matcher matcher = PID_PATTERN.matcher(process.toString());
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+}
@@ -0,0 +1,332 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * A long-lived root shell that runs commands framed over its stdin.
+ *
+ * Every command runs in a subshell and is followed by a marker line on both
+ * stdout and stderr. The stdout marker carries the exit code, so a command
+ * costs one pipe write instead of a fork plus su negotiation. The command
+ * text reaches the subshell single-quoted and is run with eval, so a stray
+ * quote or backslash in it is a syntax error of that command rather than a
+ * frame the shell keeps waiting to see the end of. The subshell first
+ * prints an acknowledgement line on stdout, which tells the caller the
+ * frame was parsed and the command started.
+ */
+final class RootShell {
+
+    /**
+     * Receives the output of a running command line by line, on a pump thread
+     */
+    interface LineListener {
+        void onLine(String line);
+    }
+
+    // Longest line passed to a LineListener; the rest of a longer one is dropped
+    private static final int MAX_LINE_LENGTH = 4096;
+
+    private final Process process;
+    private final OutputStream stdin;
+    private final InputStream stdout;
+    private final InputStream stderr;
+    private final byte[] marker;
+    private final String markerText;
+    private final byte[] ack;
+
+    private volatile boolean broken = false;
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    private RootShell(Process process) {
+        this.process = process;
+        this.stdin = process.getOutputStream();
+        this.stdout = process.getInputStream();
+        this.stderr = process.getErrorStream();
+        this.markerText = "__CVJ_" + UUID.randomUUID().toString().replace("-", "") + "__";
+        this.marker = ("\n" + markerText).getBytes(StandardCharsets.UTF_8);
+        this.ack = (markerText + "+\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Starts a shell with {@code command} (normally "su") and checks that it
+     * accepts commands. Fails if su is missing or root was denied.
+     */
+    static RootShell start(String... command) throws IOException, InterruptedException {
+        RootShell shell = new RootShell(new ProcessBuilder(command).start());
+        try {
+            ProcessIo.Result handshake = shell.exec("true", false);
+            if (handshake.exitCode != 0) {
+                throw new IOException("Root shell handshake failed");
+            }
+        } catch (IOException | InterruptedException e) {
+            shell.close();
+            throw e;
+        }
+        return shell;
+    }
+
+    /**
+     * Runs one command line and waits for both of its marker lines
+     */
+    ProcessIo.Result exec(String command, boolean mergeStreams) throws IOException, InterruptedException {
+        return exec(command, mergeStreams, 0);
+    }
+
+    /**
+     * Like {@link #exec(String, boolean)}, keeping at most {@code maxBytes}
+     * of each stream's head and tail
+     */
+    ProcessIo.Result exec(String command, boolean mergeStreams, long maxBytes) throws IOException, InterruptedException {
+        return exec(command, mergeStreams, maxBytes, null);
+    }
+
+    /**
+     * Like {@link #exec(String, boolean, long)}, also passing each stdout line
+     * to {@code lines} as it arrives; may be null
+     */
+    ProcessIo.Result exec(String command, boolean mergeStreams, long maxBytes, LineListener lines)
+            throws IOException, InterruptedException {
+        return exec(command, mergeStreams, maxBytes, lines, null);
+    }
+
+    /**
+     * Like {@link #exec(String, boolean, long, LineListener)}, running
+     * {@code started} on a pump thread once the shell acknowledged the frame;
+     * may be null
+     */
+    ProcessIo.Result exec(String command, boolean mergeStreams, long maxBytes, LineListener lines, Runnable started)
+            throws IOException, InterruptedException {
+        String frame = "( printf '%s\\n' '" + markerText + "+'; eval '" + command.replace("'", "'\\''") + "'\n) </dev/null"
+            + (mergeStreams ? " 2>&1" : "") + "\n"
+            + "__cvj_rc=$?; printf '\\n%s %d\\n' '" + markerText + "' $__cvj_rc; "
+            + "printf '\\n%s\\n' '" + markerText + "' >&2\n";
+
+        try {
+            stdin.write(frame.getBytes(StandardCharsets.UTF_8));
+            stdin.flush();
+
+            // Both frames are read on pump threads so the caller can still be
+            // interrupted while a background child keeps the pipes open
+            Future<FrameBuffer> outFrame = ProcessIo.pump(() -> {
+                readAck();
+                if (started != null) {
+                    started.run();
+                }
+                return readFrame(stdout, maxBytes, lines);
+            });
+            Future<FrameBuffer> errFrame = ProcessIo.pump(() -> readFrame(stderr, maxBytes, null));
+            FrameBuffer out = outFrame.get();
+            FrameBuffer err = errFrame.get();
+
+            lastUsed = System.currentTimeMillis();
+            byte[] outPayload = out.payload();
+            byte[] errPayload = err.payload();
+            return new ProcessIo.Result(outPayload, out.headLength(), out.omitted,
+                errPayload, err.headLength(), err.omitted, out.exitCode());
+        } catch (ExecutionException e) {
+            broken = true;
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } catch (IOException | InterruptedException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    boolean isAlive() {
+        if (broken) {
+            return false;
+        }
+        try {
+            process.exitValue();
+            return false;
+        } catch (IllegalThreadStateException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Round-trips a no-op command to make sure the shell still answers
+     */
+    boolean ping() {
+        try {
+            return exec("true", false).exitCode == 0;
+        } catch (IOException | InterruptedException e) {
+            return false;
+        }
+    }
+
+    long idleMillis() {
+        return System.currentTimeMillis() - lastUsed;
+    }
+
+    void close() {
+        broken = true;
+        try {
+            stdin.write("exit\n".getBytes(StandardCharsets.UTF_8));
+            stdin.flush();
+        } catch (IOException ignored) {
+            // Shell already gone
+        }
+        process.destroy();
+    }
+
+    /**
+     * Consumes the acknowledgement line that opens every stdout frame
+     */
+    private void readAck() throws IOException {
+        for (byte expected : ack) {
+            int read = stdout.read();
+            if (read == -1) {
+                throw new IOException("Root shell exited");
+            }
+            if ((byte) read != expected) {
+                throw new IOException("Root shell output out of sync");
+            }
+        }
+    }
+
+    private FrameBuffer readFrame(InputStream in, long maxBytes, LineListener lines) throws IOException {
+        FrameBuffer frame = new FrameBuffer(maxBytes);
+        LineSplitter splitter = lines == null ? null : new LineSplitter(lines);
+        byte[] buffer = new byte[8192];
+        while (!frame.complete()) {
+            int read = in.read(buffer);
+            if (read == -1) {
+                throw new IOException("Root shell exited");
+            }
+            frame.write(buffer, 0, read);
+            if (splitter != null) {
+                splitter.write(buffer, 0, read);
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * Cuts a stream into lines at \n or \r, the latter because progress
+     * output redraws its line with it. The marker line is not passed on.
+     */
+    private final class LineSplitter {
+        private final LineListener listener;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        LineSplitter(LineListener listener) {
+            this.listener = listener;
+        }
+
+        void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                byte c = b[i];
+                if (c == '\n' || c == '\r') {
+                    if (line.size() > 0) {
+                        String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+                        line.reset();
+                        if (!text.startsWith(markerText)) {
+                            listener.onLine(text);
+                        }
+                    }
+                } else if (line.size() < MAX_LINE_LENGTH) {
+                    line.write(c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Output of one stream up to and including its marker line. With a cap,
+     * the middle of a long frame is dropped while it is read, keeping the
+     * head and enough of the end to still find the marker.
+     */
+    private final class FrameBuffer extends ByteArrayOutputStream {
+        // Extra tail kept while reading so the marker line is never cut, and
+        // slack so the buffer is not compacted on every read
+        private static final int MARKER_SLACK = 4096;
+        private static final int COMPACT_SLACK = 64 * 1024;
+
+        private final int headLimit;
+        private final int tailLimit;
+        private int markerAt = -1;
+        long omitted = 0;
+
+        FrameBuffer(long maxBytes) {
+            if (maxBytes <= 0 || maxBytes > Integer.MAX_VALUE / 2) {
+                headLimit = Integer.MAX_VALUE;
+                tailLimit = 0;
+            } else {
+                headLimit = (int) (maxBytes / 2);
+                tailLimit = (int) maxBytes - headLimit;
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            super.write(b, off, len);
+            int keep = tailLimit + MARKER_SLACK;
+            if (tailLimit > 0 && count > headLimit + keep + COMPACT_SLACK) {
+                int drop = count - headLimit - keep;
+                System.arraycopy(buf, count - keep, buf, headLimit, keep);
+                count -= drop;
+                omitted += drop;
+            }
+        }
+
+        boolean complete() {
+            // Nothing is written after the marker line until the next command,
+            // so the frame is complete once a newline ends the buffer right
+            // after a marker
+            if (markerAt >= 0) {
+                return true;
+            }
+            if (count == 0 || buf[count - 1] != '\n') {
+                return false;
+            }
+            int lineStart = count - 1;
+            while (lineStart > 0 && buf[lineStart - 1] != '\n') {
+                lineStart--;
+            }
+            int candidate = lineStart - 1;
+            if (candidate >= 0 && count - candidate > marker.length
+                    && Arrays.equals(Arrays.copyOfRange(buf, candidate, candidate + marker.length), marker)) {
+                markerAt = candidate;
+                return true;
+            }
+            return false;
+        }
+
+        byte[] payload() {
+            if (tailLimit == 0 || markerAt <= headLimit + tailLimit) {
+                return Arrays.copyOf(buf, markerAt);
+            }
+            // Trim what the slack kept beyond the cap
+            int drop = markerAt - headLimit - tailLimit;
+            omitted += drop;
+            byte[] data = new byte[headLimit + tailLimit];
+            System.arraycopy(buf, 0, data, 0, headLimit);
+            System.arraycopy(buf, headLimit + drop, data, headLimit, tailLimit);
+            return data;
+        }
+
+        int headLength() {
+            return omitted > 0 ? headLimit : markerAt;
+        }
+
+        int exitCode() {
+            String line = new String(buf, markerAt + marker.length, count - markerAt - marker.length,
+                StandardCharsets.UTF_8).trim();
+            try {
+                return Integer.parseInt(line);
+            } catch (NumberFormatException e) {
+                return 1;
+            }
+        }
+    }
+}
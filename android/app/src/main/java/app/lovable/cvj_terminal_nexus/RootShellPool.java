@@ -0,0 +1,163 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pool of long-lived {@link RootShell} sessions.
+ *
+ * Sessions are started lazily, up to {@code maxSessions} at a time. A session
+ * is checked before reuse: dead ones are dropped, and ones that sat idle for
+ * a while must answer a ping first. A session that fails mid-command is
+ * discarded and the next caller gets a fresh one. Time spent waiting for a
+ * session and negotiating su is recorded in {@link PerfStats}.
+ *
+ * Whatever the caller's timeout, a session that has not acknowledged a
+ * command within {@link #FRAME_TIMEOUT_MS} is closed, so a shell that stopped
+ * reading its input cannot hold a pooled session forever.
+ */
+final class RootShellPool {
+
+    private static final long PING_AFTER_IDLE_MS = 30_000;
+    // How long a session may take to start a command it was sent
+    static final long FRAME_TIMEOUT_MS = 10_000;
+
+    private final String[] shellCommand;
+    private final PerfStats stats;
+    private final Semaphore permits;
+    private final ConcurrentLinkedQueue<RootShell> idle = new ConcurrentLinkedQueue<>();
+    private volatile boolean shutdown = false;
+
+    RootShellPool(int maxSessions, PerfStats stats, String... shellCommand) {
+        this.permits = new Semaphore(maxSessions, true);
+        this.stats = stats;
+        this.shellCommand = shellCommand;
+    }
+
+    /**
+     * Runs a command on an idle session. Cancelling {@code job} closes the
+     * session, which aborts the command; may be null.
+     */
+    ProcessIo.Result exec(String command, boolean mergeStreams, ExecutionEngine.Job job)
+            throws IOException, InterruptedException {
+        return exec(command, mergeStreams, job, 0, 0);
+    }
+
+    /**
+     * Like {@link #exec(String, boolean, ExecutionEngine.Job)} with a
+     * wall-clock limit and an output cap. A command still running at the
+     * deadline has its session closed, like a cancel.
+     *
+     * @param timeoutMs limit from the moment a session is available, or 0
+     * @param maxOutputBytes head and tail bytes kept per stream, or 0
+     * @throws InterruptedIOException when the command timed out
+     */
+    ProcessIo.Result exec(String command, boolean mergeStreams, ExecutionEngine.Job job,
+                          long timeoutMs, long maxOutputBytes) throws IOException, InterruptedException {
+        return exec(command, mergeStreams, job, timeoutMs, maxOutputBytes, null);
+    }
+
+    /**
+     * Like {@link #exec(String, boolean, ExecutionEngine.Job, long, long)},
+     * passing stdout to {@code lines} line by line while the command runs
+     */
+    ProcessIo.Result exec(String command, boolean mergeStreams, ExecutionEngine.Job job, long timeoutMs,
+                          long maxOutputBytes, RootShell.LineListener lines) throws IOException, InterruptedException {
+        long started = System.nanoTime();
+        permits.acquire();
+        try {
+            RootShell shell = borrow();
+            stats.metric("root.acquire").record(started, true);
+            // Only close the session while it is still running this job's command
+            AtomicBoolean running = new AtomicBoolean(true);
+            if (job != null) {
+                job.onCancel(() -> {
+                    if (running.get()) {
+                        shell.close();
+                    }
+                });
+            }
+            AtomicBoolean timedOut = new AtomicBoolean(false);
+            ScheduledFuture<?> deadline = timeoutMs <= 0 ? null : ProcessKiller.schedule(() -> {
+                if (running.get()) {
+                    timedOut.set(true);
+                    shell.close();
+                }
+            }, timeoutMs);
+            AtomicBoolean acknowledged = new AtomicBoolean(false);
+            AtomicBoolean stalled = new AtomicBoolean(false);
+            ScheduledFuture<?> framing = ProcessKiller.schedule(() -> {
+                if (running.get() && !acknowledged.get()) {
+                    stalled.set(true);
+                    shell.close();
+                }
+            }, FRAME_TIMEOUT_MS);
+            try {
+                ProcessIo.Result result = shell.exec(command, mergeStreams, maxOutputBytes, lines,
+                    () -> acknowledged.set(true));
+                running.set(false);
+                release(shell);
+                return result;
+            } catch (IOException | InterruptedException e) {
+                running.set(false);
+                shell.close();
+                if (timedOut.get()) {
+                    throw new InterruptedIOException("Timed out after " + timeoutMs + "ms");
+                }
+                if (stalled.get()) {
+                    throw new IOException("Root shell did not start the command within " + FRAME_TIMEOUT_MS + "ms");
+                }
+                throw e;
+            } finally {
+                framing.cancel(false);
+                if (deadline != null) {
+                    deadline.cancel(false);
+                }
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    void shutdown() {
+        shutdown = true;
+        RootShell shell;
+        while ((shell = idle.poll()) != null) {
+            shell.close();
+        }
+    }
+
+    private RootShell borrow() throws IOException, InterruptedException {
+        if (shutdown) {
+            throw new IOException("Root shell pool is shut down");
+        }
+        RootShell shell;
+        while ((shell = idle.poll()) != null) {
+            if (shell.isAlive() && (shell.idleMillis() < PING_AFTER_IDLE_MS || shell.ping())) {
+                return shell;
+            }
+            shell.close();
+        }
+        long started = System.nanoTime();
+        boolean ok = false;
+        try {
+            shell = RootShell.start(shellCommand);
+            ok = true;
+            return shell;
+        } finally {
+            stats.metric("root.negotiate").record(started, ok);
+        }
+    }
+
+    private void release(RootShell shell) {
+        if (shutdown || !shell.isAlive()) {
+            shell.close();
+        } else {
+            idle.offer(shell);
+        }
+    }
+}
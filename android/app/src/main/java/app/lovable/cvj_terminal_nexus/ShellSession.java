@@ -0,0 +1,118 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An interactive shell that stays alive between commands, so cd, exported
+ * variables, functions and running REPLs keep their state.
+ *
+ * Android offers no Java API to allocate a pseudo-terminal (that needs
+ * forkpty through JNI), so the shell is started in interactive mode and talks
+ * over pipes. Line-oriented tools work as they would in a terminal; programs
+ * that insist on a tty see COLUMNS and LINES instead.
+ */
+final class ShellSession {
+
+    interface ExitListener {
+        void onExit(ShellSession session, int exitCode);
+    }
+
+    final String id;
+    private final Process process;
+    private final OutputStream stdin;
+    private final OutputStreamer streamer;
+    private volatile int cols;
+    private volatile int rows;
+    private volatile boolean exited = false;
+
+    private ShellSession(String id, Process process, OutputStreamer streamer, int cols, int rows) {
+        this.id = id;
+        this.process = process;
+        this.stdin = process.getOutputStream();
+        this.streamer = streamer;
+        this.cols = cols;
+        this.rows = rows;
+    }
+
+    /**
+     * Starts the shell and a thread pumping its output into {@code streamer}
+     * until the shell exits
+     */
+    static ShellSession open(String id, List<String> shell, File cwd, Map<String, String> env,
+                             int cols, int rows, OutputStreamer streamer, ExitListener exitListener)
+            throws IOException {
+        ProcessBuilder pb = new ProcessBuilder(shell);
+        pb.directory(cwd);
+        pb.environment().putAll(env);
+        pb.environment().put("COLUMNS", String.valueOf(cols));
+        pb.environment().put("LINES", String.valueOf(rows));
+
+        final ShellSession session = new ShellSession(id, pb.start(), streamer, cols, rows);
+        Thread pump = new Thread(() -> {
+            int exitCode;
+            try {
+                exitCode = session.streamer.run(session.process, false);
+            } catch (IOException | InterruptedException e) {
+                session.process.destroy();
+                exitCode = -1;
+            }
+            // Set before the listener runs, so a caller that registers the
+            // session after it already ran still sees that it is over
+            session.exited = true;
+            exitListener.onExit(session, exitCode);
+        }, "NativeShell-session-" + id);
+        pump.setDaemon(true);
+        pump.start();
+        return session;
+    }
+
+    /**
+     * True once the shell has exited and its output was drained
+     */
+    boolean hasExited() {
+        return exited;
+    }
+
+    synchronized void write(byte[] data) throws IOException {
+        stdin.write(data);
+        stdin.flush();
+    }
+
+    /**
+     * Records the new terminal size. Without a pty there is no window size to
+     * set or SIGWINCH to deliver, so the shell keeps the COLUMNS and LINES it
+     * was started with.
+     */
+    void resize(int cols, int rows) {
+        this.cols = cols;
+        this.rows = rows;
+    }
+
+    int getCols() {
+        return cols;
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    void ack(long seq) {
+        streamer.ack(seq);
+    }
+
+    void close() {
+        streamer.close();
+        try {
+            write("exit\n".getBytes(StandardCharsets.UTF_8));
+            stdin.close();
+        } catch (IOException ignored) {
+            // Shell already gone
+        }
+        process.destroy();
+    }
+}
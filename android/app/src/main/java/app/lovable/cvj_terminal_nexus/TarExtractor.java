@@ -0,0 +1,819 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Extracts tar, tar.gz and tar.xz archives from a stream.
+ *
+ * The archive is read once, front to back, so it can come straight off a
+ * network connection. Compression is detected from the first bytes; gzip is
+ * inflated in process, xz through the system's xzcat since the platform has
+ * no decoder for it. Small files are read into memory and written on a
+ * worker pool while parsing goes on, larger ones are written directly from
+ * the stream. Modes, symlinks, hard links and modification times are kept;
+ * directory modes are applied last so a read-only directory can still be
+ * filled. Device nodes and FIFOs cannot be created by an app and are skipped.
+ *
+ * No entry may end up outside the destination: ".." components are refused,
+ * and a path that runs through a symlink is only followed if the link
+ * resolves inside the destination.
+ */
+final class TarExtractor {
+
+    interface Progress {
+        void onProgress(long sourceBytes, long totalSourceBytes, long bytesWritten, int entries);
+    }
+
+    static final class Result {
+        final String compression;
+        final int entries;
+        final int files;
+        final int directories;
+        final int links;
+        final int skipped;
+        final long bytesWritten;
+        final long sourceBytes;
+
+        Result(String compression, int entries, int files, int directories, int links, int skipped,
+               long bytesWritten, long sourceBytes) {
+            this.compression = compression;
+            this.entries = entries;
+            this.files = files;
+            this.directories = directories;
+            this.links = links;
+            this.skipped = skipped;
+            this.bytesWritten = bytesWritten;
+            this.sourceBytes = sourceBytes;
+        }
+    }
+
+    private static final int BLOCK = 512;
+    private static final int BUFFER_SIZE = 256 * 1024;
+    // Files up to this size are buffered and written on the worker pool
+    private static final int SMALL_FILE = 1024 * 1024;
+    // Buffered file data waiting for a writer, in bytes
+    private static final int MAX_IN_FLIGHT = 32 * 1024 * 1024;
+    private static final int WRITERS = 4;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+    private static final byte[] XZ_MAGIC = { (byte) 0xfd, '7', 'z', 'X', 'Z', 0 };
+
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(WRITERS, runnable -> {
+        Thread thread = new Thread(runnable, "NativeShell-extract");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path destination;
+    private final int stripComponents;
+    private final ExecutionEngine.Job job;
+    private final Progress progress;
+
+    private Path realDestination;
+    // Directories known to be inside the destination, only touched by the parsing thread
+    private final Set<Path> verified = new HashSet<>();
+    private final Map<Path, Future<?>> pending = new HashMap<>();
+    private final List<Path> directories = new ArrayList<>();
+    private final Map<Path, int[]> directoryModes = new HashMap<>();
+    private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private CountingInputStream counter;
+    private long totalSourceBytes;
+    private long lastReport = 0;
+    private int entries = 0;
+    private int files = 0;
+    private int links = 0;
+    private int skipped = 0;
+
+    /**
+     * @param stripComponents leading path components dropped from every entry, like tar's option
+     */
+    TarExtractor(File destination, int stripComponents, ExecutionEngine.Job job, Progress progress) {
+        this.destination = destination.toPath().toAbsolutePath().normalize();
+        this.stripComponents = stripComponents;
+        this.job = job;
+        this.progress = progress;
+    }
+
+    /**
+     * Extracts everything in {@code source}. The stream is read to its end
+     * but not closed.
+     *
+     * @param totalSourceBytes length of the source for progress, or -1
+     */
+    Result extract(InputStream source, long totalSourceBytes) throws IOException, InterruptedException {
+        this.totalSourceBytes = totalSourceBytes;
+        Files.createDirectories(destination);
+        realDestination = destination.toRealPath();
+        verified.add(destination);
+
+        counter = new CountingInputStream(source);
+        BufferedInputStream buffered = new BufferedInputStream(counter, BUFFER_SIZE);
+        byte[] magic = new byte[XZ_MAGIC.length];
+        buffered.mark(magic.length);
+        int seen = readUpTo(buffered, magic, 0, magic.length);
+        buffered.reset();
+
+        String compression;
+        XzDecoder xz = null;
+        InputStream tar;
+        if (seen >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b) {
+            compression = "gzip";
+            tar = new GZIPInputStream(buffered, BUFFER_SIZE);
+        } else if (seen == XZ_MAGIC.length && java.util.Arrays.equals(magic, XZ_MAGIC)) {
+            compression = "xz";
+            xz = new XzDecoder(buffered);
+            tar = xz.output();
+        } else {
+            compression = "none";
+            tar = buffered;
+        }
+
+        try {
+            readEntries(tar);
+            // Past the end blocks there is only padding, but reading it lets
+            // gzip check its trailer and xz exit
+            byte[] rest = new byte[BUFFER_SIZE];
+            while (tar.read(rest) != -1) {
+                job.throwIfCancelled();
+            }
+            awaitWrites();
+            if (xz != null) {
+                xz.finish();
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            awaitWritesQuietly();
+            IOException cause = xz != null ? xz.abort() : null;
+            // Cancelling interrupts the thread, which fails file writes on the way
+            job.throwIfCancelled();
+            if (cause != null && e instanceof IOException) {
+                // A failed download shows up as a truncated xz stream; report the cause
+                throw cause;
+            }
+            throw e;
+        }
+
+        applyDirectoryModes();
+        report(true);
+        return new Result(compression, entries, files, directories.size(), links, skipped,
+            bytesWritten.get(), counter.count);
+    }
+
+    private void readEntries(InputStream in) throws IOException, InterruptedException {
+        byte[] header = new byte[BLOCK];
+        String longName = null;
+        String longLink = null;
+        Map<String, String> pax = new HashMap<>();
+        int zeroBlocks = 0;
+
+        while (true) {
+            job.throwIfCancelled();
+            if (readUpTo(in, header, 0, BLOCK) < BLOCK) {
+                if (entries == 0 && zeroBlocks == 0) {
+                    throw new IOException("Not a tar archive");
+                }
+                // Some writers leave out the end blocks
+                return;
+            }
+            if (isZero(header)) {
+                if (++zeroBlocks == 2) {
+                    return;
+                }
+                continue;
+            }
+            zeroBlocks = 0;
+            if (!checksumMatches(header)) {
+                throw new IOException(entries == 0 ? "Not a tar archive" : "Corrupt tar header after " + entries + " entries");
+            }
+
+            char type = (char) header[156];
+            long size = parseNumber(header, 124, 12);
+            if (pax.containsKey("size")) {
+                size = Long.parseLong(pax.get("size"));
+            }
+
+            // Headers that describe the next entry
+            if (type == 'L' || type == 'K' || type == 'x' || type == 'g') {
+                if (size > SMALL_FILE) {
+                    throw new IOException("Oversized tar metadata entry");
+                }
+                byte[] data = readData(in, (int) size);
+                if (type == 'L') {
+                    longName = cString(data, 0, data.length);
+                } else if (type == 'K') {
+                    longLink = cString(data, 0, data.length);
+                } else if (type == 'x') {
+                    parsePax(data, pax);
+                }
+                // Global headers ('g') only carry defaults nothing here uses
+                continue;
+            }
+
+            String name = longName != null ? longName : pax.containsKey("path") ? pax.get("path") : headerName(header);
+            String linkName = longLink != null ? longLink : pax.containsKey("linkpath") ? pax.get("linkpath")
+                : cString(header, 157, 100);
+            int mode = (int) parseNumber(header, 100, 8) & 07777;
+            long mtime = pax.containsKey("mtime") ? (long) Double.parseDouble(pax.get("mtime"))
+                : parseNumber(header, 136, 12);
+            longName = null;
+            longLink = null;
+            pax.clear();
+            entries++;
+
+            Path target = resolve(name);
+            if (target == null) {
+                // Nothing left after stripping components
+                skip(in, size);
+                continue;
+            }
+
+            switch (type) {
+                case '0':
+                case '\0':
+                case '7':
+                    writeFile(in, target, size, mode, mtime);
+                    break;
+                case '5':
+                    makeDirectory(target, mode, mtime);
+                    skip(in, size);
+                    break;
+                case '2':
+                    makeSymlink(target, linkName, mtime);
+                    skip(in, size);
+                    break;
+                case '1':
+                    makeHardLink(target, linkName);
+                    skip(in, size);
+                    break;
+                default:
+                    // Devices, FIFOs and unknown types
+                    skipped++;
+                    skip(in, size);
+                    break;
+            }
+            report(false);
+        }
+    }
+
+    private void writeFile(InputStream in, Path target, long size, int mode, long mtime)
+            throws IOException, InterruptedException {
+        prepareTarget(target);
+        files++;
+        if (size <= SMALL_FILE) {
+            byte[] data = readData(in, (int) size);
+            inFlight.acquire(Math.max(1, data.length));
+            pending.put(target, WORKERS.submit(() -> {
+                try {
+                    try (FileChannel channel = openForWrite(target)) {
+                        ByteBuffer buffer = ByteBuffer.wrap(data);
+                        while (buffer.hasRemaining()) {
+                            channel.write(buffer);
+                        }
+                    }
+                    finishFile(target, mode, mtime);
+                    bytesWritten.addAndGet(data.length);
+                    return null;
+                } finally {
+                    inFlight.release(Math.max(1, data.length));
+                }
+            }));
+            return;
+        }
+
+        try (FileChannel channel = openForWrite(target)) {
+            byte[] chunk = new byte[BUFFER_SIZE];
+            long remaining = size;
+            while (remaining > 0) {
+                job.throwIfCancelled();
+                int read = in.read(chunk, 0, (int) Math.min(chunk.length, remaining));
+                if (read == -1) {
+                    throw new EOFException("Archive ends inside " + target.getFileName());
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, read);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                remaining -= read;
+                bytesWritten.addAndGet(read);
+                report(false);
+            }
+        }
+        skipPadding(in, size);
+        finishFile(target, mode, mtime);
+    }
+
+    private void makeDirectory(Path target, int mode, long mtime) throws IOException, InterruptedException {
+        if (Files.isSymbolicLink(target)) {
+            release(target);
+            Files.delete(target);
+        } else {
+            awaitWrite(target);
+        }
+        verifyDirectory(target);
+        if (!directoryModes.containsKey(target)) {
+            directories.add(target);
+        }
+        directoryModes.put(target, new int[] { mode, (int) Math.min(Integer.MAX_VALUE, mtime) });
+    }
+
+    private void makeSymlink(Path target, String linkName, long mtime) throws IOException, InterruptedException {
+        prepareTarget(target);
+        // The link itself may point anywhere; only writes through it are checked
+        Files.createSymbolicLink(target, Paths.get(linkName));
+        try {
+            Files.getFileAttributeView(target, BasicFileAttributeView.class, LinkOption.NOFOLLOW_LINKS)
+                .setTimes(FileTime.from(mtime, TimeUnit.SECONDS), null, null);
+        } catch (IOException | UnsupportedOperationException e) {
+            // Not every filesystem keeps a link's own time
+        }
+        links++;
+    }
+
+    private void makeHardLink(Path target, String linkName) throws IOException, InterruptedException {
+        Path existing = resolve(linkName);
+        if (existing == null) {
+            throw new IOException("Hard link outside the archive: " + linkName);
+        }
+        awaitWrite(existing);
+        Path existingParent = existing.getParent();
+        if (existingParent == null || !existingParent.toRealPath().startsWith(realDestination)
+                || Files.isSymbolicLink(existing)) {
+            throw new IOException("Refusing hard link to " + linkName);
+        }
+        prepareTarget(target);
+        try {
+            Files.createLink(target, existing);
+        } catch (IOException | UnsupportedOperationException e) {
+            // Some app storage refuses link(); a copy has the same content
+            Files.copy(existing, target, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+        links++;
+    }
+
+    /**
+     * Makes sure the parent of {@code target} exists inside the destination
+     * and clears whatever is at {@code target}
+     */
+    private void prepareTarget(Path target) throws IOException, InterruptedException {
+        Path parent = target.getParent();
+        if (parent != null) {
+            verifyDirectory(parent);
+        }
+        release(target);
+        try {
+            // Never follows a symlink, so an existing link is replaced, not written through
+            Files.deleteIfExists(target);
+        } catch (DirectoryNotEmptyException e) {
+            throw new IOException("Archive entry replaces a non-empty directory: " + destination.relativize(target));
+        }
+    }
+
+    /**
+     * Gets {@code target} ready to be deleted. When it is a directory, or a
+     * symlink to one, writes queued below it are finished first: a worker
+     * resolves the parent path only when it opens the file, and would
+     * otherwise follow a symlink put in the directory's place meanwhile.
+     */
+    private void release(Path target) throws IOException, InterruptedException {
+        // Every queued write has its parent verified, so anything else has none below it
+        if (!verified.contains(target)) {
+            awaitWrite(target);
+            return;
+        }
+        awaitWrites();
+        verified.removeIf(path -> path.startsWith(target));
+    }
+
+    /**
+     * Creates {@code dir} and its parents, checking each existing component
+     * that is a symlink resolves inside the destination
+     */
+    private void verifyDirectory(Path dir) throws IOException {
+        if (verified.contains(dir)) {
+            return;
+        }
+        Path parent = dir.getParent();
+        if (parent != null && !dir.equals(destination)) {
+            verifyDirectory(parent);
+        }
+        if (Files.isSymbolicLink(dir)) {
+            Path real = dir.toRealPath();
+            if (!real.startsWith(realDestination) || !Files.isDirectory(real)) {
+                throw new IOException("Archive entry goes through a symlink leaving the destination: "
+                    + destination.relativize(dir));
+            }
+        } else if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+            try {
+                Files.createDirectory(dir);
+            } catch (FileAlreadyExistsException e) {
+                throw new IOException("Not a directory: " + destination.relativize(dir));
+            }
+        }
+        verified.add(dir);
+    }
+
+    /**
+     * Destination path of an archive name, null when stripping leaves nothing
+     *
+     * @throws IOException for names that would leave the destination
+     */
+    private Path resolve(String name) throws IOException {
+        List<String> parts = new ArrayList<>();
+        for (String part : name.split("/")) {
+            if (part.isEmpty() || part.equals(".")) {
+                continue;
+            }
+            if (part.equals("..")) {
+                throw new IOException("Refusing archive entry outside the destination: " + name);
+            }
+            parts.add(part);
+        }
+        if (parts.size() <= stripComponents) {
+            return null;
+        }
+        Path path = destination;
+        for (String part : parts.subList(stripComponents, parts.size())) {
+            path = path.resolve(part);
+        }
+        return path;
+    }
+
+    private static FileChannel openForWrite(Path target) throws IOException {
+        return FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING, LinkOption.NOFOLLOW_LINKS);
+    }
+
+    private static void finishFile(Path target, int mode, long mtime) throws IOException {
+        Files.setPosixFilePermissions(target, permissions(mode));
+        Files.setLastModifiedTime(target, FileTime.from(mtime, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Directory modes and times, deepest first so setting a child's does not
+     * touch its parent's time again and a read-only parent comes last
+     */
+    private void applyDirectoryModes() throws IOException {
+        for (int i = directories.size() - 1; i >= 0; i--) {
+            Path dir = directories.get(i);
+            int[] attributes = directoryModes.get(dir);
+            if (Files.isSymbolicLink(dir) || !Files.isDirectory(dir)) {
+                continue;
+            }
+            // Keep the owner able to get back in, or the tree could not be deleted later
+            Files.setPosixFilePermissions(dir, permissions(attributes[0] | 0700));
+            Files.setLastModifiedTime(dir, FileTime.from(attributes[1], TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * The rwx bits of a mode; setuid, setgid and sticky cannot be set by an app
+     */
+    static Set<PosixFilePermission> permissions(int mode) {
+        Set<PosixFilePermission> set = EnumSet.noneOf(PosixFilePermission.class);
+        PosixFilePermission[] bits = {
+            PosixFilePermission.OTHERS_EXECUTE, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_READ,
+            PosixFilePermission.GROUP_EXECUTE, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_READ,
+            PosixFilePermission.OWNER_EXECUTE, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_READ
+        };
+        for (int i = 0; i < bits.length; i++) {
+            if ((mode & (1 << i)) != 0) {
+                set.add(bits[i]);
+            }
+        }
+        return set;
+    }
+
+    private void awaitWrite(Path target) throws IOException, InterruptedException {
+        Future<?> write = pending.remove(target);
+        if (write != null) {
+            try {
+                write.get();
+            } catch (ExecutionException e) {
+                throw asIOException(e);
+            }
+        }
+    }
+
+    private void awaitWrites() throws IOException, InterruptedException {
+        for (Path target : new ArrayList<>(pending.keySet())) {
+            awaitWrite(target);
+        }
+    }
+
+    private void awaitWritesQuietly() {
+        for (Future<?> write : pending.values()) {
+            try {
+                write.get();
+            } catch (ExecutionException | InterruptedException e) {
+                // Already failing with the first error
+            }
+        }
+        pending.clear();
+    }
+
+    private void report(boolean force) {
+        long now = System.currentTimeMillis();
+        if (progress != null && (force || now - lastReport >= PROGRESS_INTERVAL_MS)) {
+            lastReport = now;
+            progress.onProgress(counter.count, totalSourceBytes, bytesWritten.get(), entries);
+        }
+    }
+
+    private static byte[] readData(InputStream in, int size) throws IOException {
+        byte[] data = new byte[size];
+        if (readUpTo(in, data, 0, size) < size) {
+            throw new EOFException("Archive ends inside an entry");
+        }
+        skipPadding(in, size);
+        return data;
+    }
+
+    private static void skip(InputStream in, long size) throws IOException {
+        long remaining = size + padding(size);
+        byte[] scratch = new byte[(int) Math.min(BUFFER_SIZE, Math.max(BLOCK, remaining))];
+        while (remaining > 0) {
+            int read = in.read(scratch, 0, (int) Math.min(scratch.length, remaining));
+            if (read == -1) {
+                throw new EOFException("Archive ends inside an entry");
+            }
+            remaining -= read;
+        }
+    }
+
+    private static void skipPadding(InputStream in, long size) throws IOException {
+        int padding = padding(size);
+        if (padding > 0 && readUpTo(in, new byte[padding], 0, padding) < padding) {
+            throw new EOFException("Archive ends inside an entry");
+        }
+    }
+
+    private static int padding(long size) {
+        return (int) ((BLOCK - size % BLOCK) % BLOCK);
+    }
+
+    private static int readUpTo(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = in.read(buffer, offset + total, length - total);
+            if (read == -1) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private static boolean isZero(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The header checksum counts the checksum field itself as spaces
+     */
+    private static boolean checksumMatches(byte[] header) {
+        long expected;
+        try {
+            expected = parseNumber(header, 148, 8);
+        } catch (IOException e) {
+            return false;
+        }
+        long sum = 0;
+        for (int i = 0; i < BLOCK; i++) {
+            sum += (i >= 148 && i < 156) ? ' ' : (header[i] & 0xff);
+        }
+        return sum == expected;
+    }
+
+    /**
+     * Name with the POSIX ustar prefix prepended; GNU tar uses that area for
+     * other fields, so it only counts with the POSIX magic
+     */
+    private static String headerName(byte[] header) {
+        String name = cString(header, 0, 100);
+        boolean posix = header[257] == 'u' && header[258] == 's' && header[259] == 't' && header[260] == 'a'
+            && header[261] == 'r' && header[262] == 0;
+        if (posix) {
+            String prefix = cString(header, 345, 155);
+            if (!prefix.isEmpty()) {
+                return prefix + "/" + name;
+            }
+        }
+        return name;
+    }
+
+    /**
+     * An octal field, or a base-256 one when its top bit is set as GNU tar
+     * writes sizes over 8GB
+     */
+    private static long parseNumber(byte[] header, int offset, int length) throws IOException {
+        if ((header[offset] & 0x80) != 0) {
+            long value = header[offset] & 0x7f;
+            for (int i = offset + 1; i < offset + length; i++) {
+                value = (value << 8) | (header[i] & 0xff);
+            }
+            return value;
+        }
+        long value = 0;
+        boolean digits = false;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = header[i];
+            if (b == 0 || (b == ' ' && digits)) {
+                break;
+            }
+            if (b == ' ') {
+                continue;
+            }
+            if (b < '0' || b > '7') {
+                throw new IOException("Bad number in tar header");
+            }
+            value = (value << 3) + (b - '0');
+            digits = true;
+        }
+        return value;
+    }
+
+    private static String cString(byte[] data, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && data[end] != 0) {
+            end++;
+        }
+        return new String(data, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Records of the form "<length> <key>=<value>\n"
+     */
+    private static void parsePax(byte[] data, Map<String, String> into) throws IOException {
+        int position = 0;
+        while (position < data.length) {
+            int space = position;
+            while (space < data.length && data[space] != ' ') {
+                space++;
+            }
+            int length;
+            try {
+                length = Integer.parseInt(new String(data, position, space - position, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                throw new IOException("Bad pax header");
+            }
+            if (length <= 0 || position + length > data.length) {
+                throw new IOException("Bad pax header");
+            }
+            String record = new String(data, space + 1, position + length - space - 2, StandardCharsets.UTF_8);
+            int equals = record.indexOf('=');
+            if (equals > 0) {
+                into.put(record.substring(0, equals), record.substring(equals + 1));
+            }
+            position += length;
+        }
+    }
+
+    private static IOException asIOException(ExecutionException e) {
+        Throwable cause = e.getCause();
+        return cause instanceof IOException ? (IOException) cause : new IOException(cause);
+    }
+
+    /**
+     * Counts the bytes read from the source, for progress
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        volatile long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Decompresses xz through an xzcat process: the compressed stream is fed
+     * to its stdin on a pump thread while the tar parser reads its stdout
+     */
+    private static final class XzDecoder {
+        private final Process process;
+        private final Future<Void> feeder;
+        private final CappedOutput errors = new CappedOutput(4096);
+        private final Future<?> errorPump;
+
+        XzDecoder(InputStream compressed) throws IOException {
+            Process started;
+            try {
+                started = new ProcessBuilder("xzcat").start();
+            } catch (IOException e) {
+                // Some builds only ship xz itself
+                started = new ProcessBuilder("xz", "-dc").start();
+            }
+            process = started;
+            feeder = ProcessIo.pump(() -> {
+                try (OutputStream out = process.getOutputStream()) {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int read;
+                    while ((read = compressed.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                }
+                return null;
+            });
+            errorPump = ProcessIo.pump(() -> {
+                try (InputStream in = process.getErrorStream()) {
+                    byte[] buffer = new byte[4096];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        errors.write(buffer, 0, read);
+                    }
+                }
+                return null;
+            });
+        }
+
+        InputStream output() {
+            return process.getInputStream();
+        }
+
+        void finish() throws IOException, InterruptedException {
+            try {
+                feeder.get();
+                errorPump.get();
+            } catch (ExecutionException e) {
+                throw asIOException(e);
+            }
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new IOException("xz decompression failed: "
+                    + new String(errors.toByteArray(), StandardCharsets.UTF_8).trim());
+            }
+        }
+
+        /**
+         * Stops the decoder; returns the error reading the source hit, if any
+         */
+        IOException abort() {
+            process.destroy();
+            try {
+                feeder.get(1, TimeUnit.SECONDS);
+                return null;
+            } catch (ExecutionException e) {
+                return asIOException(e);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+    }
+}
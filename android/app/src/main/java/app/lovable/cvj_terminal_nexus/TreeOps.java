@@ -0,0 +1,307 @@
+package app.lovable.cvj_terminal_nexus;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recursive delete and disk usage over a directory tree.
+ *
+ * Each directory is a fork-join task, so wide trees like an unpacked rootfs
+ * are processed on every core. Symlinks are never followed: a link is
+ * counted or removed as itself, so nothing outside the tree is touched.
+ * Failures on single entries are counted and the walk goes on, as rm -rf and
+ * du do.
+ */
+final class TreeOps {
+
+    interface Progress {
+        void onProgress(long files, long directories, long bytes);
+    }
+
+    static final class Usage {
+        final String name;
+        final long files;
+        final long directories;
+        final long bytes;
+
+        Usage(String name, long files, long directories, long bytes) {
+            this.name = name;
+            this.files = files;
+            this.directories = directories;
+            this.bytes = bytes;
+        }
+    }
+
+    static final class Totals {
+        final long files;
+        final long directories;
+        final long bytes;
+        final int errors;
+        // Message of the first failure, null if there was none
+        final String firstError;
+        // Per-entry usage directly under the root, du only
+        final List<Usage> children;
+
+        Totals(long files, long directories, long bytes, int errors, String firstError, List<Usage> children) {
+            this.files = files;
+            this.directories = directories;
+            this.bytes = bytes;
+            this.errors = errors;
+            this.firstError = firstError;
+            this.children = children;
+        }
+    }
+
+    private static final long PROGRESS_INTERVAL_MS = 250;
+    private static final int CANCEL_CHECK_INTERVAL = 256;
+
+    private static final ForkJoinPool WORKERS = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private final ExecutionEngine.Job job;
+    private final Progress progress;
+    private final LongAdder files = new LongAdder();
+    private final LongAdder directories = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final AtomicLong lastReport = new AtomicLong(System.currentTimeMillis());
+    private volatile String firstError;
+    private volatile boolean reported = false;
+    private volatile boolean stopped = false;
+
+    TreeOps(ExecutionEngine.Job job, Progress progress) {
+        this.job = job;
+        this.progress = progress;
+    }
+
+    /**
+     * Deletes {@code root} and everything under it. A symlink root is
+     * removed as a link.
+     */
+    Totals delete(Path root) throws IOException, InterruptedException {
+        BasicFileAttributes attributes = Files.readAttributes(root, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (attributes.isDirectory()) {
+            run(new DeleteTask(root));
+        } else {
+            deleteEntry(root, attributes);
+        }
+        return totals(null);
+    }
+
+    /**
+     * Apparent size of {@code root}, with a breakdown per direct child when
+     * {@code perChild} is set
+     */
+    Totals usage(Path root, boolean perChild) throws IOException, InterruptedException {
+        BasicFileAttributes attributes = Files.readAttributes(root, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (!attributes.isDirectory()) {
+            count(attributes);
+            return totals(null);
+        }
+
+        List<Usage> children = perChild ? new ArrayList<>() : null;
+        run(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                directories.increment();
+                List<String> names = new ArrayList<>();
+                // A finished sum for files, a forked task for directories
+                List<Object> results = new ArrayList<>();
+                forEachEntry(root, (entry, entryAttributes) -> {
+                    names.add(entry.getFileName().toString());
+                    results.add(entryAttributes.isDirectory()
+                        ? new UsageTask(entry).fork()
+                        : count(entryAttributes));
+                });
+                for (int i = 0; i < results.size(); i++) {
+                    Object result = results.get(i);
+                    long[] sum = result instanceof UsageTask ? ((UsageTask) result).join() : (long[]) result;
+                    if (children != null) {
+                        children.add(new Usage(names.get(i), sum[0], sum[1], sum[2]));
+                    }
+                }
+            }
+        });
+        return totals(children);
+    }
+
+    private final class DeleteTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+
+        DeleteTask(Path dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        protected void compute() {
+            List<DeleteTask> subtasks = new ArrayList<>();
+            forEachEntry(dir, (entry, attributes) -> {
+                if (attributes.isDirectory()) {
+                    DeleteTask subtask = new DeleteTask(entry);
+                    subtask.fork();
+                    subtasks.add(subtask);
+                } else {
+                    deleteEntry(entry, attributes);
+                }
+            });
+            for (DeleteTask subtask : subtasks) {
+                subtask.join();
+            }
+            if (!stopped) {
+                try {
+                    Files.delete(dir);
+                    directories.increment();
+                    report();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sums a subtree as {files, directories, bytes}
+     */
+    private final class UsageTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+
+        UsageTask(Path dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        protected long[] compute() {
+            long[] sum = { 0, 1, 0 };
+            directories.increment();
+            List<UsageTask> subtasks = new ArrayList<>();
+            forEachEntry(dir, (entry, attributes) -> {
+                if (attributes.isDirectory()) {
+                    UsageTask subtask = new UsageTask(entry);
+                    subtask.fork();
+                    subtasks.add(subtask);
+                } else {
+                    long[] one = count(attributes);
+                    sum[0] += one[0];
+                    sum[2] += one[2];
+                }
+            });
+            for (UsageTask subtask : subtasks) {
+                long[] sub = subtask.join();
+                sum[0] += sub[0];
+                sum[1] += sub[1];
+                sum[2] += sub[2];
+            }
+            return sum;
+        }
+    }
+
+    private interface EntryVisitor {
+        void visit(Path entry, BasicFileAttributes attributes);
+    }
+
+    /**
+     * Lists {@code dir} without following links, stopping early once the
+     * job is cancelled
+     */
+    private void forEachEntry(Path dir, EntryVisitor visitor) {
+        int seen = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path entry : stream) {
+                if (stopped || (++seen % CANCEL_CHECK_INTERVAL == 0 && job.isCancelled())) {
+                    stopped = true;
+                    return;
+                }
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    fail(e);
+                    continue;
+                }
+                visitor.visit(entry, attributes);
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+        if (job.isCancelled()) {
+            stopped = true;
+        }
+    }
+
+    private void deleteEntry(Path path, BasicFileAttributes attributes) {
+        try {
+            Files.delete(path);
+            files.increment();
+            if (attributes.isRegularFile()) {
+                bytes.add(attributes.size());
+            }
+            report();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private long[] count(BasicFileAttributes attributes) {
+        long size = attributes.isRegularFile() ? attributes.size() : 0;
+        files.increment();
+        bytes.add(size);
+        report();
+        return new long[] { 1, 0, size };
+    }
+
+    private void run(ForkJoinTask<?> task) throws IOException, InterruptedException {
+        try {
+            WORKERS.submit(task).get();
+        } catch (InterruptedException e) {
+            stopped = true;
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+        job.throwIfCancelled();
+        if (reported) {
+            progress.onProgress(files.sum(), directories.sum(), bytes.sum());
+        }
+    }
+
+    private void fail(IOException e) {
+        if (errors.getAndIncrement() == 0) {
+            firstError = e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+    }
+
+    /**
+     * Reports at most every PROGRESS_INTERVAL_MS, from whichever worker
+     * gets there first
+     */
+    private void report() {
+        long now = System.currentTimeMillis();
+        long last = lastReport.get();
+        if (now - last >= PROGRESS_INTERVAL_MS && lastReport.compareAndSet(last, now)) {
+            reported = true;
+            progress.onProgress(files.sum(), directories.sum(), bytes.sum());
+        }
+    }
+
+    private Totals totals(List<Usage> children) {
+        return new Totals(files.sum(), directories.sum(), bytes.sum(), errors.get(), firstError, children);
+    }
+}
@@ -0,0 +1,227 @@
+package app.lovable.cvj_terminal_nexus;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DownloadManagerTest {
+
+    // Under the minimum segment size, so every download is one segment
+    private static final int CONTENT_SIZE = 256 * 1024;
+    private static final int HALF = CONTENT_SIZE / 2;
+
+    private Path root;
+    private Server server;
+    private byte[] content;
+    private File destination;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("download-manager");
+        content = new byte[CONTENT_SIZE];
+        new Random(42).nextBytes(content);
+        server = new Server(content);
+        destination = root.resolve("file.bin").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.stop();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Half of the file is on disk with a matching sidecar: only the other
+     * half is requested
+     */
+    @Test
+    public void resumesFromPartAndMeta() throws Exception {
+        writePartial("\"v1\"");
+
+        DownloadManager.Result result = download(null);
+
+        assertEquals(HALF, result.resumedFrom);
+        assertTrue("expected a ranged request for the rest", server.ranges.contains("bytes=" + HALF + "-" + (CONTENT_SIZE - 1)));
+        assertArrayEquals(content, Files.readAllBytes(destination.toPath()));
+        assertFalse(DownloadManager.partFile(destination).exists());
+        assertFalse(DownloadManager.metaFile(destination).exists());
+    }
+
+    /**
+     * The sidecar was written against another version of the file, so the
+     * partial data is thrown away
+     */
+    @Test
+    public void restartsWhenValidatorChanged() throws Exception {
+        writePartial("\"v0\"");
+
+        DownloadManager.Result result = download(null);
+
+        assertEquals(0, result.resumedFrom);
+        assertArrayEquals(content, Files.readAllBytes(destination.toPath()));
+    }
+
+    /**
+     * The file changes between the probe and the segment request: If-Range
+     * no longer matches and the server answers 200 with the whole new body
+     */
+    @Test
+    public void failsWhenFileChangesMidDownload() throws Exception {
+        server.etagAfterProbe = "\"v2\"";
+        try {
+            download(null);
+            fail("Download should notice the changed file");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Remote file changed"));
+        }
+        assertFalse(destination.exists());
+    }
+
+    @Test
+    public void checksumMismatchDeletesPartial() throws Exception {
+        try {
+            download("0000000000000000000000000000000000000000000000000000000000000000");
+            fail("Download should reject the checksum");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Checksum mismatch"));
+        }
+        assertFalse(destination.exists());
+        assertFalse(DownloadManager.partFile(destination).exists());
+        assertFalse(DownloadManager.metaFile(destination).exists());
+    }
+
+    /**
+     * A server that ignores Range is read in one piece from the start, over
+     * any partial data left from before
+     */
+    @Test
+    public void downloadsWholeWithoutRangeSupport() throws Exception {
+        server.acceptRanges = false;
+        writePartial("\"v1\"");
+
+        DownloadManager.Result result = download(Digests.hex(Digests.sha256().digest(content)));
+
+        assertEquals(0, result.resumedFrom);
+        assertEquals(1, result.segments);
+        assertArrayEquals(content, Files.readAllBytes(destination.toPath()));
+        assertFalse(DownloadManager.metaFile(destination).exists());
+    }
+
+    private DownloadManager.Result download(String sha256) throws IOException, InterruptedException {
+        return new DownloadManager().download(server.url(), destination, DownloadManager.MAX_SEGMENTS, sha256,
+            new ExecutionEngine.Job("test", () -> { }), (bytes, total, segments) -> { });
+    }
+
+    /**
+     * Leaves the first half of the content in the part file, sized to the
+     * full length, and a sidecar saying so under {@code validator}
+     */
+    private void writePartial(String validator) throws IOException {
+        try (RandomAccessFile part = new RandomAccessFile(DownloadManager.partFile(destination), "rw")) {
+            part.setLength(CONTENT_SIZE);
+            part.write(content, 0, HALF);
+        }
+        Properties state = new Properties();
+        state.setProperty("url", server.url().toString());
+        state.setProperty("validator", validator);
+        state.setProperty("length", String.valueOf(CONTENT_SIZE));
+        state.setProperty("segments", "1");
+        state.setProperty("segment.0", "0," + CONTENT_SIZE + "," + HALF);
+        try (FileOutputStream out = new FileOutputStream(DownloadManager.metaFile(destination))) {
+            state.store(out, null);
+        }
+    }
+
+    /**
+     * Serves one body with an ETag, honouring Range and If-Range unless told
+     * not to, and records the Range header of every request
+     */
+    private static final class Server {
+        private final HttpServer http;
+        private final byte[] body;
+        final List<String> ranges = new CopyOnWriteArrayList<>();
+        volatile boolean acceptRanges = true;
+        volatile String etag = "\"v1\"";
+        // When set, the ETag changes to this once the probe was answered
+        volatile String etagAfterProbe;
+
+        Server(byte[] body) throws IOException {
+            this.body = body;
+            http = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            http.createContext("/", this::handle);
+            http.start();
+        }
+
+        URL url() throws IOException {
+            return new URL("http://127.0.0.1:" + http.getAddress().getPort() + "/file.bin");
+        }
+
+        void stop() {
+            http.stop(0);
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            ranges.add(range == null ? "" : range);
+            exchange.getResponseHeaders().set("ETag", etag);
+
+            int from = 0;
+            int to = body.length - 1;
+            boolean partial = acceptRanges && range != null && (ifRange == null || ifRange.equals(etag));
+            if (partial) {
+                String[] bounds = range.substring("bytes=".length()).split("-");
+                from = Integer.parseInt(bounds[0]);
+                to = Integer.parseInt(bounds[1]);
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + body.length);
+            }
+            if ("bytes=0-0".equals(range) && etagAfterProbe != null) {
+                etag = etagAfterProbe;
+            }
+
+            int length = to - from + 1;
+            exchange.sendResponseHeaders(partial ? 206 : 200, length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body, from, length);
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package app.lovable.cvj_terminal_nexus;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PortScannerTest {
+
+    private static final int OPEN_PORTS = 24;
+    private static final int CLOSED_PORTS = 4;
+
+    private final List<ServerSocket> listening = new ArrayList<>();
+    private int[] openPorts;
+    private int[] closedPorts;
+
+    @Before
+    public void setUp() throws IOException {
+        InetAddress loopback = InetAddress.getByName("127.0.0.1");
+        openPorts = new int[OPEN_PORTS];
+        for (int i = 0; i < OPEN_PORTS; i++) {
+            ServerSocket socket = new ServerSocket(0, 64, loopback);
+            listening.add(socket);
+            openPorts[i] = socket.getLocalPort();
+        }
+        // Ports that were just free, and nothing listens on now
+        closedPorts = new int[CLOSED_PORTS];
+        for (int i = 0; i < CLOSED_PORTS; i++) {
+            try (ServerSocket socket = new ServerSocket(0, 1, loopback)) {
+                closedPorts[i] = socket.getLocalPort();
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (ServerSocket socket : listening) {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void classifiesOpenAndClosedPorts() throws Exception {
+        PortScanner.Limits limits = new PortScanner.Limits();
+        limits.reportAll = true;
+        Map<Integer, String> states = new HashMap<>();
+        PortScanner.Summary summary = new PortScanner(limits, job(), results -> {
+            for (PortScanner.Result result : results) {
+                states.put(result.port, result.state);
+            }
+        }).scan(PortScanner.resolveTargets(Collections.singletonList("127.0.0.1")), ports(openPorts, closedPorts));
+
+        assertEquals(OPEN_PORTS + CLOSED_PORTS, summary.probes);
+        assertEquals(OPEN_PORTS, summary.open);
+        assertEquals(CLOSED_PORTS, summary.closed);
+        assertEquals(Collections.singletonList("127.0.0.1"), summary.hostsUp);
+        for (int port : openPorts) {
+            assertEquals(PortScanner.OPEN, states.get(port));
+        }
+        for (int port : closedPorts) {
+            assertEquals(PortScanner.CLOSED, states.get(port));
+        }
+    }
+
+    @Test
+    public void staysUnderInFlightCap() throws Exception {
+        PortScanner.Limits limits = new PortScanner.Limits();
+        limits.rate = 0;
+        limits.maxInFlight = 3;
+        PortScanner.Summary summary = new PortScanner(limits, job(), null)
+            .scan(PortScanner.resolveTargets(Collections.singletonList("127.0.0.1")), ports(openPorts));
+
+        assertEquals(OPEN_PORTS, summary.open);
+        assertTrue("peak " + summary.peakInFlight, summary.peakInFlight <= 3);
+    }
+
+    /**
+     * The in-flight cap is left far above the per-host one, so only the
+     * latter holds the scan back
+     */
+    @Test
+    public void staysUnderPerHostCap() throws Exception {
+        PortScanner.Limits limits = new PortScanner.Limits();
+        limits.rate = 0;
+        limits.perHost = 2;
+        PortScanner.Summary summary = new PortScanner(limits, job(), null)
+            .scan(PortScanner.resolveTargets(Collections.singletonList("127.0.0.1")), ports(openPorts, closedPorts));
+
+        assertEquals(OPEN_PORTS + CLOSED_PORTS, summary.probes);
+        assertEquals(OPEN_PORTS, summary.open);
+        assertTrue("peak " + summary.peakInFlight, summary.peakInFlight <= 2);
+    }
+
+    @Test
+    public void parsesPortLists() {
+        assertArrayEquals(new int[] {22, 80, 8000, 8001, 8002}, PortScanner.parsePorts("80, 22,8000-8002,80"));
+        for (String invalid : new String[] {"", "0", "65536", "10-5", "http", "1-"}) {
+            try {
+                PortScanner.parsePorts(invalid);
+                fail("Accepted ports '" + invalid + "'");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void resolvesRangesAndBlocks() throws Exception {
+        assertEquals(addresses("10.0.0.1", "10.0.0.2"), PortScanner.resolveTargets(Collections.singletonList("10.0.0.0/30")));
+        assertEquals(addresses("192.168.1.10", "192.168.1.11", "192.168.1.12", "127.0.0.1"),
+            PortScanner.resolveTargets(Arrays.asList("192.168.1.10-12", "127.0.0.1", "192.168.1.11")));
+    }
+
+    @Test
+    public void rejectsNonLocalAndOversizedTargets() throws Exception {
+        for (String invalid : new String[] {"8.8.8.8", "1.2.3.0/30", "192.168.1.250-255,8.8.4.4", "10.0.0.0/8", "300.1.1.1/24"}) {
+            try {
+                PortScanner.resolveTargets(Arrays.asList(invalid.split(",")));
+                fail("Accepted target '" + invalid + "'");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    private static ExecutionEngine.Job job() {
+        return new ExecutionEngine.Job("test", () -> { });
+    }
+
+    private static int[] ports(int[]... groups) {
+        StringBuilder spec = new StringBuilder();
+        for (int[] group : groups) {
+            for (int port : group) {
+                spec.append(port).append(',');
+            }
+        }
+        return PortScanner.parsePorts(spec.toString());
+    }
+
+    private static List<InetAddress> addresses(String... literals) throws IOException {
+        List<InetAddress> addresses = new ArrayList<>();
+        for (String literal : literals) {
+            addresses.add(InetAddress.getByName(literal));
+        }
+        return addresses;
+    }
+}
@@ -0,0 +1,172 @@
+package app.lovable.cvj_terminal_nexus;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TarExtractorTest {
+
+    // Each case is repeated, as the writes it races against run on a pool
+    private static final int ROUNDS = 50;
+
+    private Path root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("tar-extractor");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * "a/evil" is queued for a worker, then "a" turns into a link out of the
+     * destination before the worker has opened the file
+     */
+    @Test
+    public void directoryReplacedBySymlinkWhileWritePending() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            Path outside = Files.createDirectories(root.resolve("outside" + round));
+            byte[] archive = new Tar()
+                .file("a/evil", "escaped")
+                .symlink("a", outside.toString())
+                .build();
+
+            extractExpectingFailure(root.resolve("dest" + round), archive);
+            assertFalse("write escaped in round " + round, Files.exists(outside.resolve("evil")));
+        }
+    }
+
+    /**
+     * A link inside the destination is trusted for later entries; once it is
+     * pointed elsewhere, nothing may still go through it
+     */
+    @Test
+    public void symlinkRetargetedOutsideWhileWritePending() throws Exception {
+        for (int round = 0; round < ROUNDS; round++) {
+            Path outside = Files.createDirectories(root.resolve("outside" + round));
+            byte[] archive = new Tar()
+                .directory("sub")
+                .symlink("a", "sub")
+                .file("a/x", "inside")
+                .symlink("a", outside.toString())
+                .file("a/y", "escaped")
+                .build();
+
+            Path dest = root.resolve("dest" + round);
+            extractExpectingFailure(dest, archive);
+            assertTrue(Files.exists(dest.resolve("sub/x")));
+            assertFalse("write escaped in round " + round, Files.exists(outside.resolve("x")));
+            assertFalse("write escaped in round " + round, Files.exists(outside.resolve("y")));
+        }
+    }
+
+    private static void extractExpectingFailure(Path dest, byte[] archive) throws InterruptedException {
+        TarExtractor extractor = new TarExtractor(dest.toFile(), 0, new ExecutionEngine.Job("test", () -> { }), null);
+        try {
+            extractor.extract(new ByteArrayInputStream(archive), archive.length);
+            fail("Extraction should refuse the archive");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Writes ustar archives with the entry types the tests need
+     */
+    private static final class Tar {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Tar file(String name, String content) {
+            byte[] data = content.getBytes(StandardCharsets.UTF_8);
+            header(name, '0', data.length, "", 0644);
+            out.write(data, 0, data.length);
+            pad(data.length);
+            return this;
+        }
+
+        Tar directory(String name) {
+            header(name + "/", '5', 0, "", 0755);
+            return this;
+        }
+
+        Tar symlink(String name, String target) {
+            header(name, '2', 0, target, 0777);
+            return this;
+        }
+
+        byte[] build() {
+            out.write(new byte[1024], 0, 1024);
+            return out.toByteArray();
+        }
+
+        private void header(String name, char type, long size, String link, int mode) {
+            byte[] header = new byte[512];
+            put(header, 0, name);
+            put(header, 100, octal(mode, 7));
+            put(header, 108, octal(0, 7));
+            put(header, 116, octal(0, 7));
+            put(header, 124, octal(size, 11));
+            put(header, 136, octal(System.currentTimeMillis() / 1000, 11));
+            header[156] = (byte) type;
+            put(header, 157, link);
+            put(header, 257, "ustar");
+            put(header, 263, "00");
+            for (int i = 148; i < 156; i++) {
+                header[i] = ' ';
+            }
+            int sum = 0;
+            for (byte b : header) {
+                sum += b & 0xff;
+            }
+            put(header, 148, octal(sum, 6));
+            out.write(header, 0, header.length);
+        }
+
+        private void pad(long size) {
+            int padding = (int) ((512 - size % 512) % 512);
+            out.write(new byte[padding], 0, padding);
+        }
+
+        private static String octal(long value, int digits) {
+            StringBuilder text = new StringBuilder(Long.toOctalString(value));
+            while (text.length() < digits) {
+                text.insert(0, '0');
+            }
+            return text.toString();
+        }
+
+        private static void put(byte[] header, int offset, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            System.arraycopy(bytes, 0, header, offset, bytes.length);
+        }
+    }
+}
@@ -147,13 +147,17 @@ const TerminalWindow = ({ onClose }: TerminalWindowProps) => {
       case 'cp': return await unixCommands.cp(args);
       case 'mv': return await unixCommands.mv(args);
       case 'grep': return await unixCommands.grep(args);
+      case 'find': return await unixCommands.find(args);
+      case 'integrity': return await unixCommands.integrity(args);
       case 'wget': return await unixCommands.wget(args);
+      case 'curl': return await unixCommands.curl(args);
       case 'touch': return await unixCommands.touch(args);
       case 'uname': return await unixCommands.uname(args);
       case 'whoami': return await unixCommands.whoami();
       case 'id': return await unixCommands.id();
       case 'ps': return await unixCommands.ps(args);
       case 'df': return await unixCommands.df(args);
+      case 'du': return await unixCommands.du(args);
       case 'free': return await unixCommands.free(args);
       case 'env': return await unixCommands.env();
       case 'apt': return await unixCommands.apt(args);
@@ -163,6 +167,7 @@ const TerminalWindow = ({ onClose }: TerminalWindowProps) => {
       case 'date': return { output: new Date().toString(), error: '', exitCode: 0 };
       case 'uptime': return { output: `up ${Math.floor(Date.now() / 1000 / 60)} minutes`, error: '', exitCode: 0 };
       case 'nmap': 
+        if (Capacitor.isNativePlatform()) return await unixCommands.nmap(args);
         const nmapResult = await securityTools.runScan('nmap', '', args);
         return { output: nmapResult, error: '', exitCode: 0 };
       case 'ping': return await unixCommands.ping(args);
@@ -240,6 +245,9 @@ const TerminalWindow = ({ onClose }: TerminalWindowProps) => {
           addLine("│  touch <file>         - Create/update file", 'output');
           addLine("│  grep <pattern>       - Search in files", 'output');
           addLine("│  wget <url>           - Download files", 'output');
+          addLine("│  curl [-I|-o f] <url> - HTTPS request, cached on device", 'output');
+          addLine("│  integrity init|check - Fingerprint a tree / report changes", 'output');
+          addLine("│  nmap <hosts> [-p ..] - Scan ports of local network hosts", 'output');
           addLine("│  man <command>        - Show manual pages", 'output');
           addLine("│  vm <command>         - Virtual machine management", 'output');
           addLine("│  history              - Show command history", 'output');
@@ -344,8 +352,12 @@ const TerminalWindow = ({ onClose }: TerminalWindowProps) => {
           break;
         }
         try {
-          addLine(`🔧 Installing ${args[0]}...`, 'output');
-          const result = await NativePackageManager.installRealPackage(args[0]);
+          addLine(`🔧 Installing ${args.join(', ')}...`, 'output');
+          const result = await NativePackageManager.installRealPackages(args, (event) => {
+            if (event.package) {
+              addLine(`  ${event.package}: ${event.stage}`, 'output');
+            }
+          });
           addLine(result, result.includes('✅') ? 'output' : 'error');
         } catch (error) {
           addLine(`❌ Installation failed: ${error}`, 'error');
@@ -417,7 +429,7 @@ const TerminalWindow = ({ onClose }: TerminalWindowProps) => {
           if (args.length === 0) {
             addLine("CVJ Setup - Usage:", 'output');
             addLine("  cvj-setup storage      - Grant storage accessibility permissions", 'output');
-            addLine("  cvj-setup linux        - Setup Linux environment", 'output');
+            addLine("  cvj-setup linux [rootfs] - Setup Linux environment, optionally unpacking a rootfs tarball", 'output');
             addLine("  cvj-setup info         - Show system information", 'output');
             break;
           }
@@ -452,9 +464,21 @@ const TerminalWindow = ({ onClose }: TerminalWindowProps) => {
             case 'linux':
               try {
                 addLine("🔧 Setting up Linux environment...", 'output');
-                const linuxResult = await AndroidShell.setupLinuxEnvironment();
+                const rootfs = args[1];
+                let lastPercent = -1;
+                const linuxResult = await AndroidShell.setupLinuxEnvironment(rootfs ? { rootfs } : {}, (progress) => {
+                  if (progress.totalSourceBytes <= 0) return;
+                  const percent = Math.floor((progress.sourceBytes * 100) / progress.totalSourceBytes / 10) * 10;
+                  if (percent > lastPercent) {
+                    lastPercent = percent;
+                    addLine(`📦 Unpacking rootfs: ${percent}% (${progress.entries} entries)`, 'output');
+                  }
+                });
                 if (linuxResult.exitCode === 0) {
                   addLine("✅ Linux environment created successfully!", 'output');
+                  if (linuxResult.rootfs) {
+                    addLine(`📦 Rootfs: ${linuxResult.rootfs.entries} entries, ${linuxResult.rootfs.bytesWritten} bytes (${linuxResult.rootfs.compression})`, 'output');
+                  }
                   if (linuxResult.linuxRoot) {
                     addLine(`📁 Linux root: ${linuxResult.linuxRoot}`, 'output');
                   }
@@ -1123,8 +1147,29 @@ const TerminalWindow = ({ onClose }: TerminalWindowProps) => {
     await executeCommand(input);
   }, [currentInput, executeCommand]);
 
+  const completeInput = useCallback(async () => {
+    const start = currentInput.lastIndexOf(' ') + 1;
+    const word = currentInput.slice(start);
+    const matches = await AndroidShell.completePath(word);
+    if (matches.length === 0) return;
+
+    // Extend to the longest prefix all matches share
+    let common = matches[0];
+    for (const match of matches) {
+      while (!match.startsWith(common)) common = common.slice(0, -1);
+    }
+    if (common.length > word.length) {
+      setCurrentInput(currentInput.slice(0, start) + common);
+    } else if (matches.length > 1) {
+      addLine(matches.map(match => match.slice(match.lastIndexOf('/', match.length - 2) + 1)).join('  '));
+    }
+  }, [currentInput, addLine]);
+
   const handleKeyDown = useCallback((e: React.KeyboardEvent) => {
-    if (e.key === 'ArrowUp') {
+    if (e.key === 'Tab') {
+      e.preventDefault();
+      completeInput();
+    } else if (e.key === 'ArrowUp') {
       e.preventDefault();
       if (historyIndex < commandHistory.length - 1) {
         const newIndex = historyIndex + 1;
@@ -1142,7 +1187,7 @@ const TerminalWindow = ({ onClose }: TerminalWindowProps) => {
         setCurrentInput("");
       }
     }
-  }, [historyIndex, commandHistory]);
+  }, [historyIndex, commandHistory, completeInput]);
 
   useEffect(() => {
     if (terminalRef.current) {
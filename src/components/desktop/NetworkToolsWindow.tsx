@@ -6,6 +6,8 @@ import { Tabs, TabsContent, TabsList, TabsTrigger } from "@/components/ui/tabs";
 import { Card, CardContent, CardDescription, CardHeader, CardTitle } from "@/components/ui/card";
 import { Badge } from "@/components/ui/badge";
 import { useToast } from "@/components/ui/use-toast";
+import { Capacitor } from "@capacitor/core";
+import { networkManager } from "@/lib/networkManager";
 
 interface NetworkToolsWindowProps {
   onClose?: () => void;
@@ -85,6 +87,37 @@ const NetworkToolsWindow = ({ onClose }: NetworkToolsWindowProps) => {
 
     const command = scanCommands[tool as keyof typeof scanCommands] || `${tool} ${target}`;
     
+    // Real connect scans of local network hosts on the device
+    if (Capacitor.isNativePlatform() && (tool === "nmap" || tool === "masscan")) {
+      setScanResults(`Running native connect scan of ${target}\n`);
+      try {
+        const summary = await networkManager.scanPorts(
+          target.split(/[\s,]+/).filter(Boolean),
+          tool === "masscan" ? { ports: "1-1000", rate: 1000 } : {},
+          (results) => setScanResults(prev => prev + results
+            .map(result => `${result.host}  ${result.port}/tcp  ${result.state}  ${result.rttMs.toFixed(1)}ms\n`)
+            .join(""))
+        );
+        if (summary) {
+          setScanResults(prev => prev + `\n${summary.hostsUp.length} of ${summary.hosts} host(s) up, ` +
+            `${summary.open} open port(s), ${summary.probes} probes in ${(summary.elapsedMs / 1000).toFixed(2)}s`);
+        }
+        toast({
+          title: "Scan Complete",
+          description: `${tool} scan finished successfully`,
+        });
+      } catch (error) {
+        setScanResults(prev => prev + `\nError: ${error instanceof Error ? error.message : error}`);
+        toast({
+          title: "Scan Failed",
+          description: "An error occurred during the scan",
+          variant: "destructive",
+        });
+      }
+      setIsScanning(false);
+      return;
+    }
+    
     try {
       // Simulate scan progress
       setScanResults(`Running: ${command}\n\nStarting scan...`);
@@ -1,4 +1,4 @@
-import { AndroidShell } from './nativeShell';
+import { AndroidShell, InstallProgress } from './nativeShell';
 import { Capacitor } from '@capacitor/core';
 
 export interface PackageInfo {
@@ -12,8 +12,16 @@ export interface PackageInfo {
 
 export class NativePackageManager {
   static async installRealPackage(packageName: string): Promise<string> {
+    return NativePackageManager.installRealPackages([packageName]);
+  }
+
+  /**
+   * Installs several tools in one package-manager run, reporting each
+   * package's progress through onProgress
+   */
+  static async installRealPackages(packageNames: string[], onProgress?: (event: InstallProgress) => void): Promise<string> {
     if (!Capacitor.isNativePlatform()) {
-      return `[WEB SIMULATION] Would install real package: ${packageName}\nBuild Android app to install real tools like Wireshark, nmap, etc.`;
+      return `[WEB SIMULATION] Would install real package: ${packageNames.join(' ')}\nBuild Android app to install real tools like Wireshark, nmap, etc.`;
     }
 
     // Map common tools to their actual package names
@@ -40,26 +48,27 @@ export class NativePackageManager {
       'volatility': { name: 'volatility', manager: 'apt', description: 'Memory forensics framework' }
     };
 
-    const packageInfo = packageMappings[packageName.toLowerCase()] || { 
+    const packages = packageNames.map((packageName) => packageMappings[packageName.toLowerCase()] || { 
       name: packageName, 
       manager: 'apt', 
       description: 'User requested package' 
-    };
+    });
+    const names = packages.map((packageInfo) => packageInfo.name).join(', ');
 
     try {
-      // First, update package repositories
-      const updateResult = await AndroidShell.executeRootCommand('apt-get', ['update']);
-      if (updateResult.exitCode !== 0) {
-        return `Failed to update package repositories: ${updateResult.error}`;
-      }
-
-      // Install the package
-      const installResult = await AndroidShell.installPackage(packageInfo.name, packageInfo.manager);
+      // The native queue refreshes the repositories only when its index is
+      // stale and installs everything in a single run
+      const installResult = await AndroidShell.installPackages(
+        packages.map((packageInfo) => packageInfo.name),
+        { source: 'apt' },
+        onProgress
+      );
       
       if (installResult.exitCode === 0) {
-        return `✅ Successfully installed ${packageInfo.name}\n${packageInfo.description}\n\n${installResult.output}`;
+        const descriptions = packages.map((packageInfo) => `${packageInfo.name}: ${packageInfo.description}`).join('\n');
+        return `✅ Successfully installed ${names}\n${descriptions}\n\n${installResult.output}`;
       } else {
-        return `❌ Failed to install ${packageInfo.name}: ${installResult.error}\n\nTrying alternative installation methods...`;
+        return `❌ Failed to install ${names}: ${installResult.error}\n${installResult.output}\n\nTrying alternative installation methods...`;
       }
     } catch (error) {
       return `❌ Installation error: ${error}`;
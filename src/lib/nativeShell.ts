@@ -1,9 +1,337 @@
-import { Capacitor } from '@capacitor/core';
+import { Capacitor, PluginListenerHandle } from '@capacitor/core';
 
 export interface ShellResult {
   output: string;
   error: string;
   exitCode: number;
+  /** base64 when output and error carry the raw bytes */
+  encoding?: 'utf8' | 'base64';
+  /** Set when stdout was written to a file instead of returned */
+  outputFile?: string;
+  outputSize?: number;
+  /** The command was killed at its deadline */
+  timedOut?: boolean;
+  /** Output went over maxOutputBytes; its head and tail were kept */
+  truncated?: boolean;
+  omittedBytes?: number;
+}
+
+export interface ExecLimits {
+  /** Wall-clock limit in ms, 0 for none; defaults to configureExecution's commandTimeout */
+  timeout?: number;
+  /** Bytes kept per stream (head and tail), 0 for no cap */
+  maxOutputBytes?: number;
+  /** ms between SIGTERM and SIGKILL once the deadline passes */
+  killGrace?: number;
+}
+
+export interface BatchStep {
+  command: string;
+  args?: string[];
+  /** Working directory, relative to the current one; defaults to it */
+  cwd?: string;
+  /** Extra variables; PATH, IFS, ENV, BASH_ENV and LD_* are refused, values follow the argument rules */
+  env?: Record<string, string>;
+  /** Read the previous step's stdout on stdin, like `prev | command` */
+  pipe?: boolean;
+  mergeStreams?: boolean;
+}
+
+export interface BatchStepResult extends ShellResult {
+  command: string;
+  durationMs: number;
+  /** Not run: skipped after a failure, or could not be started */
+  skipped: boolean;
+}
+
+export interface BatchOptions extends ExecLimits, CallOptions {
+  /** Skip the remaining steps once one fails; true by default */
+  stopOnError?: boolean;
+}
+
+export interface BatchResult {
+  results: BatchStepResult[];
+  /** 0 when every step succeeded, else the first failing step's exit code */
+  exitCode: number;
+  /** Steps that ran, whatever their exit code */
+  completed: number;
+  /** Set when the batch was rejected before anything ran */
+  error?: string;
+}
+
+export type InstallStage =
+  | 'queued' | 'refreshing' | 'installing' | 'downloading'
+  | 'unpacking' | 'configuring' | 'installed' | 'failed';
+
+export interface InstallRequestInfo {
+  requestId: string;
+  manager: string;
+  stage: InstallStage;
+  /** Last stage reached by each requested package */
+  packages: Record<string, InstallStage>;
+  queuedAt: number;
+}
+
+export interface InstallProgress {
+  requestId: string;
+  /** Set when the event is about one package rather than the whole request */
+  package?: string;
+  stage: InstallStage;
+}
+
+/** Last installProgress event of a request */
+export interface InstallDone extends InstallRequestInfo, ShellResult {
+  done: true;
+}
+
+export interface InstallOptions {
+  source?: string;
+  /** Refresh the repository index even if it is recent */
+  refresh?: boolean;
+  /** Reuse an index refreshed less than this many ms ago; 6 hours by default */
+  refreshTtl?: number;
+}
+
+export interface OutputChunk {
+  callId: string;
+  stream: 'stdout' | 'stderr';
+  data: string;
+  encoding?: 'utf8' | 'base64';
+  seq: number;
+}
+
+export interface CallOptions {
+  /** Id used to cancel the call and to tag its events */
+  callId?: string;
+}
+
+export interface PoolInfo {
+  threads: number;
+  active: number;
+  queued: number;
+}
+
+export interface StreamOptions extends CallOptions {
+  chunkSize?: number;
+  window?: number;
+}
+
+export interface SessionOutput {
+  sessionId: string;
+  stream: 'stdout' | 'stderr';
+  data: string;
+  encoding?: 'utf8' | 'base64';
+  seq: number;
+}
+
+export interface ExecOptions extends StreamOptions, ExecLimits {
+  stream?: boolean;
+  mergeStreams?: boolean;
+  /** base64 returns or streams the raw bytes instead of UTF-8 text */
+  encoding?: 'utf8' | 'base64';
+  /** Writes stdout to this path, or to a temp file with true */
+  outputFile?: string | boolean;
+}
+
+export interface BinaryResult {
+  stdout: Uint8Array;
+  stderr: Uint8Array;
+  exitCode: number;
+}
+
+export interface SessionInfo {
+  sessionId: string;
+  cols: number;
+  rows: number;
+  /** false while sessions are pipe-backed; programs see COLUMNS/LINES instead of a tty */
+  pty: boolean;
+}
+
+export interface TransferProgress {
+  callId: string;
+  operation: 'copy' | 'move';
+  bytes: number;
+  totalBytes: number;
+  files: number;
+  totalFiles: number;
+}
+
+export interface DownloadProgress {
+  callId: string;
+  url: string;
+  bytes: number;
+  /** -1 when the server does not report a length */
+  totalBytes: number;
+  segments: number;
+}
+
+export interface DownloadOptions extends CallOptions {
+  /** Hex SHA-256 the file must match; the partial data is discarded if it does not */
+  sha256?: string;
+  /** Parallel connections for large files on servers that accept Range requests */
+  segments?: number;
+  /** Continue from an earlier interrupted download (default true) */
+  resume?: boolean;
+}
+
+export interface DownloadResult extends ShellResult {
+  path?: string;
+  size?: number;
+  resumedFrom?: number;
+  segments?: number;
+  sha256?: string;
+}
+
+export interface ExtractProgress {
+  callId: string;
+  source: string;
+  /** Compressed bytes consumed so far */
+  sourceBytes: number;
+  /** -1 when the length is not known up front */
+  totalSourceBytes: number;
+  bytesWritten: number;
+  entries: number;
+}
+
+export interface ExtractOptions extends CallOptions {
+  /** Leading path components dropped from every entry, like tar --strip-components */
+  stripComponents?: number;
+}
+
+export interface ExtractSummary {
+  compression: 'none' | 'gzip' | 'xz';
+  entries: number;
+  files: number;
+  directories: number;
+  /** Symlinks and hard links */
+  links: number;
+  /** Device nodes and FIFOs, which an app cannot create */
+  skipped: number;
+  bytesWritten: number;
+  sourceBytes: number;
+}
+
+export interface ExtractResult extends ShellResult, Partial<ExtractSummary> {
+  path?: string;
+}
+
+export interface LinuxSetupOptions extends ExtractOptions {
+  /** tar, tar.gz or tar.xz rootfs to unpack into the environment: an https URL streamed as it downloads, or a path */
+  rootfs?: string;
+}
+
+export interface LinuxSetupResult extends ShellResult {
+  linuxRoot?: string;
+  home?: string;
+  rootfs?: ExtractSummary;
+}
+
+export interface LayerProgress {
+  callId: string;
+  layer: string;
+  operation: 'import' | 'materialize';
+  files: number;
+  totalFiles: number;
+  bytes: number;
+}
+
+export interface LayerInfo {
+  name: string;
+  created: number;
+  files: number;
+  directories: number;
+  symlinks: number;
+  /** Size of the tree as a plain copy */
+  bytes: number;
+}
+
+export interface LayerImportResult extends ShellResult, Partial<LayerInfo> {
+  /** Files whose content was not in the store before, and their size */
+  newObjects?: number;
+  newBytes?: number;
+  archive?: ExtractSummary;
+}
+
+export interface LayerInstanceResult extends ShellResult {
+  rootPath?: string;
+  files?: number;
+  /** Files hard-linked to the store; the rest were copied */
+  linked?: number;
+  copied?: number;
+  directories?: number;
+  symlinks?: number;
+  bytes?: number;
+}
+
+export interface LayerStoreInfo {
+  layers: LayerInfo[];
+  objects: number;
+  /** Disk taken by stored objects, against the layers' combined plain size */
+  storedBytes: number;
+  logicalBytes: number;
+}
+
+export interface TreeProgress {
+  callId: string;
+  operation: 'delete' | 'du';
+  files: number;
+  directories: number;
+  bytes: number;
+}
+
+export interface PerformanceMetric {
+  /** Dotted name, e.g. method.readFile, command.ls, process.spawn, queue.file, root.negotiate, bridge.processOutput */
+  name: string;
+  count: number;
+  failures: number;
+  timeouts: number;
+  bytesIn: number;
+  bytesOut: number;
+  meanUs: number;
+  p50Us: number;
+  p90Us: number;
+  p99Us: number;
+  maxUs: number;
+}
+
+export interface PerformanceStats {
+  /** Epoch millis of the last reset */
+  since: number;
+  elapsedMs: number;
+  metrics: PerformanceMetric[];
+  pools: { process: PoolInfo; file: PoolInfo; bulk: PoolInfo; network: PoolInfo; download: PoolInfo };
+  metadataCache: { directories: number; entries: number; hits: number; misses: number };
+  httpCache: HttpCacheStats;
+}
+
+export interface DiskUsage {
+  path: string;
+  /** Apparent size; symlinks are counted as links, never followed */
+  bytes: number;
+  files: number;
+  directories: number;
+  errors: number;
+  error?: string;
+  children?: Array<{ name: string; bytes: number; files: number; directories: number }>;
+}
+
+export interface ReadFileOptions {
+  /** Byte offset to start at; negative counts back from the end of the file */
+  offset?: number;
+  /** Bytes to read, at most 10MB per call */
+  length?: number;
+  encoding?: 'utf8' | 'base64';
+}
+
+export interface ReadFileResult {
+  content: string;
+  path: string;
+  size: number;
+  encoding?: 'utf8' | 'base64';
+  offset?: number;
+  length?: number;
+  nextOffset?: number;
+  eof?: boolean;
 }
 
 export interface FileInfo {
@@ -18,6 +346,202 @@ export interface FileInfo {
   executable: boolean;
 }
 
+export interface SearchHit {
+  path: string;
+  isDirectory: boolean;
+  size: number;
+  /** Milliseconds since the epoch */
+  modified: number;
+  /** grepFiles only */
+  line?: number;
+  text?: string;
+  before?: string[];
+  after?: string[];
+}
+
+export interface SearchOptions extends CallOptions {
+  maxDepth?: number;
+  maxResults?: number;
+  includeHidden?: boolean;
+}
+
+export interface SearchFilesOptions extends SearchOptions {
+  /** Glob on the file name, e.g. "*.log" */
+  name?: string;
+  type?: 'f' | 'd';
+  minSize?: number;
+  maxSize?: number;
+  modifiedAfter?: number;
+  modifiedBefore?: number;
+}
+
+export interface GrepFilesOptions extends SearchOptions {
+  /** Glob on the names of files to search */
+  include?: string;
+  ignoreCase?: boolean;
+  fixedStrings?: boolean;
+  /** Lines of context before and after each match, at most 10 */
+  context?: number;
+}
+
+export interface SearchSummary {
+  callId: string;
+  path: string;
+  count: number;
+  filesScanned: number;
+  errors: number;
+  truncated: boolean;
+  elapsedMs: number;
+}
+
+export interface IntegrityChange {
+  type: 'added' | 'removed' | 'modified';
+  path: string;
+  size: number;
+  modified: number;
+}
+
+export interface IntegrityOptions extends CallOptions {
+  /** Baseline name; defaults to one derived from the path */
+  baseline?: string;
+}
+
+export interface VerifyTreeOptions extends IntegrityOptions {
+  /** Save what was found as the new baseline */
+  update?: boolean;
+  /** Hash every file instead of only those whose size or mtime changed */
+  rehashAll?: boolean;
+}
+
+export interface IntegritySummary {
+  path: string;
+  baseline: string;
+  files: number;
+  /** Files read this time; a clean rescan reads none */
+  hashed: number;
+  bytesHashed: number;
+  added: number;
+  removed: number;
+  modified: number;
+  errors: number;
+  elapsedMs: number;
+}
+
+export type PortState = 'open' | 'closed' | 'filtered' | 'unreachable';
+
+export interface PortScanResult {
+  host: string;
+  port: number;
+  state: PortState;
+  rttMs: number;
+}
+
+export interface PortScanOptions extends CallOptions {
+  /** Ports such as "22,80,8000-8100"; 1-1024 by default */
+  ports?: string;
+  /** Connect timeout of each probe in ms */
+  timeout?: number;
+  /** Connects started per second; 0 for no limit */
+  rate?: number;
+  /** Probes in flight at once, overall and against a single host */
+  maxInFlight?: number;
+  perHost?: number;
+  /** Stream closed, filtered and unreachable probes too, not only open ports */
+  reportAll?: boolean;
+}
+
+export interface PortScanSummary {
+  callId: string;
+  hosts: number;
+  ports: number;
+  probes: number;
+  open: number;
+  closed: number;
+  filtered: number;
+  /** Probes never sent because their host was unreachable */
+  skipped: number;
+  /** Hosts that accepted or refused at least one connect */
+  hostsUp: string[];
+  peakInFlight: number;
+  elapsedMs: number;
+}
+
+export interface HttpCacheStats {
+  entries: number;
+  bytes: number;
+  maxBytes: number;
+  hits: number;
+  /** Stale entries confirmed by a 304 */
+  revalidated: number;
+  misses: number;
+}
+
+export interface HttpRequestOptions extends CallOptions {
+  method?: 'GET' | 'HEAD' | 'POST' | 'PUT' | 'DELETE' | 'OPTIONS';
+  headers?: Record<string, string>;
+  body?: string;
+  bodyEncoding?: 'utf8' | 'base64';
+  /** Same meaning as fetch's cache option; only GETs are cached */
+  cache?: 'default' | 'no-cache' | 'reload' | 'no-store' | 'force-cache';
+  /** Connect and read timeout in ms */
+  timeout?: number;
+  /** Encoding of the returned or streamed body */
+  encoding?: 'utf8' | 'base64';
+  /** Largest body returned inline; bigger ones need destination or stream */
+  maxBytes?: number;
+  /** Write the body to this file instead of returning it */
+  destination?: string;
+  chunkSize?: number;
+  window?: number;
+}
+
+export interface HttpBodyChunk {
+  callId: string;
+  data: string;
+  encoding: 'utf8' | 'base64';
+  seq: number;
+}
+
+export interface HttpResponse {
+  callId: string;
+  status: number;
+  statusText: string;
+  /** Final URL after redirects */
+  url: string;
+  /** Repeated headers are joined with ", " */
+  headers: Record<string, string>;
+  cache: 'hit' | 'revalidated' | 'miss' | 'bypass';
+  size: number;
+  encoding: 'utf8' | 'base64';
+  elapsedMs: number;
+  body?: string;
+  path?: string;
+  streamed?: boolean;
+}
+
+export interface ListDirectoryOptions {
+  /** Entries per page; omitted or 0 returns the whole directory */
+  pageSize?: number;
+  /** Continue a paged listing; the other options are taken from the first call */
+  cursor?: string;
+  sort?: 'name' | 'size' | 'modified' | 'none';
+  reverse?: boolean;
+  /** Only these fields are filled in; ['name'] lists without any stat calls */
+  fields?: Array<keyof FileInfo>;
+  /** Bypass the metadata cache and re-read the directory */
+  refresh?: boolean;
+}
+
+export interface ListDirectoryResult {
+  path: string;
+  files: FileInfo[];
+  count: number;
+  total?: number;
+  /** Present while more pages remain */
+  cursor?: string;
+  error?: string;
+}
+
 export interface StorageInfo {
   internal: {
     path: string;
@@ -58,22 +582,71 @@ export interface SystemInfo {
 }
 
 export interface NativeShellPlugin {
-  executeCommand(options: { command: string; args?: string[] }): Promise<ShellResult>;
-  executeRootCommand(options: { command: string; args?: string[] }): Promise<ShellResult>;
-  installPackage(options: { packageName: string; source?: string }): Promise<ShellResult>;
+  executeCommand(options: { command: string; args?: string[] } & ExecOptions): Promise<ShellResult & { callId?: string; streamed?: boolean }>;
+  executeBatch(options: { steps: BatchStep[] } & BatchOptions): Promise<BatchResult>;
+  ackOutput(options: { callId: string; seq: number }): Promise<void>;
+  cancel(options: { callId: string }): Promise<{ callId: string; cancelled: boolean }>;
+  configureExecution(options: { processThreads?: number; fileThreads?: number; bulkThreads?: number; networkThreads?: number; downloadThreads?: number; commandTimeout?: number; maxOutputBytes?: number; killGrace?: number }): Promise<{ process: PoolInfo; file: PoolInfo; bulk: PoolInfo; network: PoolInfo; download: PoolInfo; limits: { commandTimeout: number; maxOutputBytes: number; killGrace: number } }>;
+  getPerformanceStats(): Promise<PerformanceStats>;
+  resetPerformanceStats(): Promise<void>;
+  addListener(eventName: 'processOutput', listener: (chunk: OutputChunk) => void): Promise<PluginListenerHandle>;
+  addListener(eventName: 'sessionOutput', listener: (chunk: SessionOutput) => void): Promise<PluginListenerHandle>;
+  addListener(eventName: 'transferProgress', listener: (event: TransferProgress) => void): Promise<PluginListenerHandle>;
+  addListener(eventName: 'integrityChanges', listener: (event: { callId: string; changes: IntegrityChange[] }) => void): Promise<PluginListenerHandle>;
+  addListener(eventName: 'portScanResults', listener: (event: { callId: string; results: PortScanResult[] }) => void): Promise<PluginListenerHandle>;
+  addListener(eventName: 'httpBody', listener: (chunk: HttpBodyChunk) => void): Promise<PluginListenerHandle>;
+  addListener(eventName: 'searchResults', listener: (event: { callId: string; results: SearchHit[] }) => void): Promise<PluginListenerHandle>;
+  addListener(eventName: 'treeProgress', listener: (event: TreeProgress) => void): Promise<PluginListenerHandle>;
+  addListener(eventName: 'downloadProgress', listener: (event: DownloadProgress) => void): Promise<PluginListenerHandle>;
+  addListener(eventName: 'extractProgress', listener: (event: ExtractProgress) => void): Promise<PluginListenerHandle>;
+  addListener(eventName: 'layerProgress', listener: (event: LayerProgress) => void): Promise<PluginListenerHandle>;
+  addListener(eventName: 'installProgress', listener: (event: InstallProgress | InstallDone) => void): Promise<PluginListenerHandle>;
+  addListener(eventName: 'sessionExit', listener: (event: { sessionId: string; exitCode: number }) => void): Promise<PluginListenerHandle>;
+
+  // Interactive sessions
+  openSession(options: { sessionId?: string; root?: boolean; cwd?: string; env?: Record<string, string>; cols?: number; rows?: number; window?: number; encoding?: 'utf8' | 'base64' }): Promise<SessionInfo>;
+  write(options: { sessionId: string; data: string; encoding?: 'utf8' | 'base64' }): Promise<{ sessionId: string; written: number }>;
+  resize(options: { sessionId: string; cols: number; rows: number }): Promise<{ sessionId: string; cols: number; rows: number }>;
+  close(options: { sessionId: string }): Promise<{ sessionId: string; closed: boolean }>;
+  executeRootCommand(options: { command: string; args?: string[]; mergeStreams?: boolean } & ExecLimits & CallOptions): Promise<ShellResult>;
+  installPackage(options: { packageName: string; source?: string; mergeStreams?: boolean }): Promise<ShellResult>;
+  queueInstall(options: { packages: string[] } & InstallOptions): Promise<InstallRequestInfo & { position: number }>;
+  getInstallQueue(): Promise<{ pending: InstallRequestInfo[]; recent: InstallRequestInfo[] }>;
+  cancelInstall(options: { requestId: string }): Promise<{ requestId: string; cancelled: boolean }>;
   checkRootAccess(): Promise<{ hasRoot: boolean }>;
-  setupLinuxEnvironment(): Promise<ShellResult & { linuxRoot?: string; home?: string }>;
-  downloadFile(options: { url: string; destination: string }): Promise<ShellResult & { path?: string; size?: number }>;
+  setupLinuxEnvironment(options?: LinuxSetupOptions): Promise<LinuxSetupResult>;
+  downloadFile(options: { url: string; destination: string } & DownloadOptions): Promise<DownloadResult>;
+  extractArchive(options: { source: string; destination: string } & ExtractOptions): Promise<ExtractResult>;
+  scanPorts(options: { targets: string[] } & PortScanOptions): Promise<PortScanSummary>;
+  httpRequest(options: { url: string; stream?: boolean } & HttpRequestOptions): Promise<HttpResponse>;
+  clearHttpCache(): Promise<HttpCacheStats>;
+
+  // Content-addressed rootfs layers
+  importLayer(options: { name: string; source: string } & ExtractOptions): Promise<LayerImportResult>;
+  createLayerInstance(options: { layer: string; instanceId: string; root?: boolean } & CallOptions): Promise<LayerInstanceResult>;
+  listLayers(): Promise<LayerStoreInfo>;
+  deleteLayer(options: { name: string }): Promise<{ name: string; deleted: boolean; removedObjects: number; freedBytes: number }>;
+  detachLayerFile(options: { path: string }): Promise<{ path: string; detached: boolean }>;
   
   // Storage & File System
   getStorageInfo(): Promise<StorageInfo>;
-  listDirectory(options: { path?: string }): Promise<{ path: string; files: FileInfo[]; count: number; error?: string }>;
-  readFile(options: { path: string }): Promise<{ content: string; path: string; size: number }>;
-  writeFile(options: { path: string; content: string; append?: boolean }): Promise<{ success: boolean; path: string; size: number }>;
-  deleteFile(options: { path: string; recursive?: boolean }): Promise<{ success: boolean; path: string }>;
+  listDirectory(options: { path?: string } & ListDirectoryOptions & CallOptions): Promise<ListDirectoryResult>;
+  readFile(options: { path: string } & ReadFileOptions): Promise<ReadFileResult>;
+  completePath(options: { path: string }): Promise<{ path: string; matches: string[] }>;
+  searchFiles(options: { path?: string } & SearchFilesOptions): Promise<SearchSummary>;
+  grepFiles(options: { path?: string; pattern: string } & GrepFilesOptions): Promise<SearchSummary>;
+  hashTree(options: { path?: string } & IntegrityOptions): Promise<IntegritySummary & { baselineBytes: number }>;
+  verifyTree(options: { path?: string } & VerifyTreeOptions): Promise<IntegritySummary & { callId: string }>;
+  writeFile(options: { path: string; content: string; append?: boolean; encoding?: 'utf8' | 'base64' }): Promise<{ success: boolean; path: string; size: number }>;
+  openWrite(options: { path: string; append?: boolean }): Promise<{ writeId: string; path: string }>;
+  writeChunk(options: { writeId: string; data: string; encoding?: 'utf8' | 'base64'; offset?: number }): Promise<{ writeId: string; written: number; size: number }>;
+  commit(options: { writeId: string }): Promise<{ success: boolean; path: string; size: number }>;
+  abort(options: { writeId: string }): Promise<{ success: boolean; path: string }>;
+  deleteFile(options: { path: string; recursive?: boolean } & CallOptions): Promise<{ success: boolean; path: string; files?: number; directories?: number; bytes?: number; errors?: number; error?: string }>;
+  diskUsage(options: { path?: string; perChild?: boolean } & CallOptions): Promise<DiskUsage>;
   createDirectory(options: { path: string; recursive?: boolean }): Promise<{ success: boolean; path: string }>;
-  copyFile(options: { source: string; destination: string }): Promise<{ success: boolean; source: string; destination: string }>;
-  moveFile(options: { source: string; destination: string }): Promise<{ success: boolean; source: string; destination: string }>;
+  copyFile(options: { source: string; destination: string; recursive?: boolean } & CallOptions): Promise<{ success: boolean; source: string; destination: string; bytes?: number; files?: number; skipped?: number }>;
+  moveFile(options: { source: string; destination: string } & CallOptions): Promise<{ success: boolean; source: string; destination: string; renamed?: boolean; skipped?: number }>;
   changeDirectory(options: { path: string }): Promise<{ path: string }>;
   getCurrentDirectory(): Promise<{ path: string; home: string }>;
   getSystemInfo(): Promise<SystemInfo>;
@@ -83,11 +656,52 @@ export interface NativeShellPlugin {
 // Native Android implementation
 const NativeShell = Capacitor.registerPlugin<NativeShellPlugin>('NativeShell');
 
+const newCallId = (prefix: string): string =>
+  `${prefix}-${Date.now().toString(36)}-${Math.random().toString(36).slice(2, 8)}`;
+
+/** Runs an extracting call, forwarding its extractProgress events while it lasts */
+async function withExtractProgress<T>(
+  options: CallOptions,
+  onProgress: ((event: ExtractProgress) => void) | undefined,
+  run: (callId: string) => Promise<T>
+): Promise<T> {
+  const callId = options.callId ?? newCallId('extract');
+  if (!onProgress) {
+    return await run(callId);
+  }
+  const handle = await NativeShell.addListener('extractProgress', (event) => {
+    if (event.callId === callId) onProgress(event);
+  });
+  try {
+    return await run(callId);
+  } finally {
+    await handle.remove();
+  }
+}
+
+export const decodeBase64 = (data: string): Uint8Array => {
+  const binary = atob(data);
+  const bytes = new Uint8Array(binary.length);
+  for (let i = 0; i < binary.length; i++) {
+    bytes[i] = binary.charCodeAt(i);
+  }
+  return bytes;
+};
+
+export const encodeBase64 = (bytes: Uint8Array): string => {
+  let binary = '';
+  // Chunked so large buffers don't overflow the argument limit
+  for (let i = 0; i < bytes.length; i += 0x8000) {
+    binary += String.fromCharCode(...bytes.subarray(i, i + 0x8000));
+  }
+  return btoa(binary);
+};
+
 export class AndroidShell {
-  static async executeCommand(command: string, args: string[] = []): Promise<ShellResult> {
+  static async executeCommand(command: string, args: string[] = [], limits: ExecLimits = {}): Promise<ShellResult> {
     if (Capacitor.isNativePlatform()) {
       try {
-        return await NativeShell.executeCommand({ command, args });
+        return await NativeShell.executeCommand({ ...limits, command, args });
       } catch (error) {
         return {
           output: '',
@@ -104,10 +718,91 @@ export class AndroidShell {
     }
   }
 
-  static async executeRootCommand(command: string, args: string[] = []): Promise<ShellResult> {
+  static async executeCommandStreaming(
+    command: string,
+    args: string[] = [],
+    onOutput: (chunk: OutputChunk) => void,
+    options: StreamOptions = {}
+  ): Promise<ShellResult> {
     if (Capacitor.isNativePlatform()) {
+      const callId = options.callId ?? newCallId('exec');
+      const handle = await NativeShell.addListener('processOutput', (chunk) => {
+        if (chunk.callId !== callId) return;
+        onOutput(chunk);
+        NativeShell.ackOutput({ callId, seq: chunk.seq }).catch(() => undefined);
+      });
       try {
-        return await NativeShell.executeRootCommand({ command, args });
+        return await NativeShell.executeCommand({ ...options, command, args, stream: true, callId });
+      } catch (error) {
+        return {
+          output: '',
+          error: `Native execution failed: ${error}`,
+          exitCode: 1
+        };
+      } finally {
+        await handle.remove();
+      }
+    } else {
+      const result = await AndroidShell.executeCommand(command, args);
+      onOutput({ callId: options.callId ?? 'web', stream: 'stdout', data: result.output, seq: 0 });
+      return { ...result, output: '' };
+    }
+  }
+
+  /**
+   * Runs a command and returns its output as raw bytes. stdout is written to
+   * a temp file by the child and fetched by the WebView, so it never passes
+   * through the bridge as text.
+   */
+  static async executeBinary(command: string, args: string[] = []): Promise<BinaryResult> {
+    if (!Capacitor.isNativePlatform()) {
+      const result = await AndroidShell.executeCommand(command, args);
+      return { stdout: new TextEncoder().encode(result.output), stderr: new Uint8Array(), exitCode: result.exitCode };
+    }
+    let outputFile: string | undefined;
+    try {
+      const result = await NativeShell.executeCommand({ command, args, encoding: 'base64', outputFile: true });
+      outputFile = result.outputFile;
+      const stdout = outputFile ? await AndroidShell.readFileBytes(outputFile) : decodeBase64(result.output);
+      return { stdout: stdout ?? new Uint8Array(), stderr: decodeBase64(result.error), exitCode: result.exitCode };
+    } catch (error) {
+      return { stdout: new Uint8Array(), stderr: new TextEncoder().encode(`Native execution failed: ${error}`), exitCode: 1 };
+    } finally {
+      if (outputFile) {
+        await NativeShell.deleteFile({ path: outputFile }).catch(() => undefined);
+      }
+    }
+  }
+
+  /**
+   * Runs several commands in one bridge call. Steps run in order, piped
+   * steps run concurrently with the one before them; every step is checked
+   * before any of them starts.
+   */
+  static async executeBatch(steps: BatchStep[], options: BatchOptions = {}): Promise<BatchResult> {
+    if (Capacitor.isNativePlatform()) {
+      try {
+        return await NativeShell.executeBatch({ ...options, steps });
+      } catch (error) {
+        return { results: [], exitCode: 1, completed: 0, error: `Native execution failed: ${error}` };
+      }
+    } else {
+      const results = steps.map((step) => ({
+        command: step.command,
+        output: `[WEB SIMULATION] Would execute: ${step.pipe ? '| ' : ''}${step.command} ${(step.args ?? []).join(' ')}`,
+        error: '',
+        exitCode: 0,
+        durationMs: 0,
+        skipped: false
+      }));
+      return { results, exitCode: 0, completed: results.length };
+    }
+  }
+
+  static async executeRootCommand(command: string, args: string[] = [], limits: ExecLimits = {}): Promise<ShellResult> {
+    if (Capacitor.isNativePlatform()) {
+      try {
+        return await NativeShell.executeRootCommand({ ...limits, command, args });
       } catch (error) {
         return {
           output: '',
@@ -144,6 +839,74 @@ export class AndroidShell {
     }
   }
 
+  /**
+   * Installs packages through the native install queue and resolves once
+   * they are done. The queue merges them with other pending installs into one
+   * package-manager run and refreshes the index at most once per TTL.
+   */
+  static async installPackages(
+    packages: string[],
+    options: InstallOptions = {},
+    onProgress?: (event: InstallProgress) => void
+  ): Promise<ShellResult> {
+    if (!Capacitor.isNativePlatform()) {
+      return {
+        output: `[WEB SIMULATION] Would install packages: ${packages.join(' ')}\nReal package installation requires Android app.`,
+        error: '',
+        exitCode: 0
+      };
+    }
+    let requestId: string | undefined;
+    // Events can arrive before queueInstall resolves, so they are held until the id is known
+    const early: (InstallProgress | InstallDone)[] = [];
+    let settle: (event: InstallDone) => void = () => undefined;
+    const finished = new Promise<InstallDone>((resolve) => { settle = resolve; });
+    const handle = (event: InstallProgress | InstallDone) => {
+      if ('done' in event) {
+        settle(event);
+      } else {
+        onProgress?.(event);
+      }
+    };
+    const listener = await NativeShell.addListener('installProgress', (event) => {
+      if (requestId === undefined) {
+        early.push(event);
+      } else if (event.requestId === requestId) {
+        handle(event);
+      }
+    });
+    try {
+      const request = await NativeShell.queueInstall({ ...options, packages });
+      requestId = request.requestId;
+      early.filter((event) => event.requestId === requestId).forEach(handle);
+      const done = await finished;
+      return { output: done.output, error: done.error, exitCode: done.exitCode };
+    } catch (error) {
+      return { output: '', error: `Package installation failed: ${error}`, exitCode: 1 };
+    } finally {
+      await listener.remove();
+    }
+  }
+
+  static async getInstallQueue(): Promise<{ pending: InstallRequestInfo[]; recent: InstallRequestInfo[] }> {
+    if (!Capacitor.isNativePlatform()) {
+      return { pending: [], recent: [] };
+    }
+    return await NativeShell.getInstallQueue();
+  }
+
+  static async cancelInstall(requestId: string): Promise<boolean> {
+    if (!Capacitor.isNativePlatform()) {
+      return false;
+    }
+    try {
+      const result = await NativeShell.cancelInstall({ requestId });
+      return result.cancelled;
+    } catch (error) {
+      return false;
+    }
+  }
+
   static async checkRootAccess(): Promise<boolean> {
     if (Capacitor.isNativePlatform()) {
       try {
@@ -156,10 +919,17 @@ export class AndroidShell {
     return false;
   }
 
-  static async setupLinuxEnvironment(): Promise<ShellResult & { linuxRoot?: string; home?: string }> {
+  static async setupLinuxEnvironment(
+    options: LinuxSetupOptions = {},
+    onProgress?: (event: ExtractProgress) => void
+  ): Promise<LinuxSetupResult> {
     if (Capacitor.isNativePlatform()) {
       try {
-        return await NativeShell.setupLinuxEnvironment();
+        if (options.rootfs === undefined) {
+          return await NativeShell.setupLinuxEnvironment(options);
+        }
+        return await withExtractProgress(options, onProgress,
+          (callId) => NativeShell.setupLinuxEnvironment({ ...options, callId }));
       } catch (error) {
         return {
           output: '',
@@ -178,10 +948,10 @@ export class AndroidShell {
     }
   }
 
-  static async downloadFile(url: string, destination: string): Promise<ShellResult & { path?: string; size?: number }> {
+  static async downloadFile(url: string, destination: string, options: DownloadOptions = {}): Promise<DownloadResult> {
     if (Capacitor.isNativePlatform()) {
       try {
-        return await NativeShell.downloadFile({ url, destination });
+        return await NativeShell.downloadFile({ url, destination, ...options });
       } catch (error) {
         return {
           output: '',
@@ -198,6 +968,200 @@ export class AndroidShell {
     }
   }
 
+  /**
+   * TCP connect scan of hosts on the device's local networks: loopback,
+   * private and link-local addresses, CIDR blocks up to /20 or ranges such as
+   * "192.168.1.10-20". Results are streamed as they arrive.
+   */
+  static async scanPorts(
+    targets: string[],
+    options: PortScanOptions,
+    onResults: (results: PortScanResult[]) => void
+  ): Promise<PortScanSummary | null> {
+    if (!Capacitor.isNativePlatform()) {
+      console.log(`[WEB SIMULATION] Would scan: ${targets.join(' ')}`);
+      return null;
+    }
+    const callId = options.callId ?? newCallId('scan');
+    const handle = await NativeShell.addListener('portScanResults', (event) => {
+      if (event.callId === callId) onResults(event.results);
+    });
+    try {
+      return await NativeShell.scanPorts({ ...options, targets, callId });
+    } finally {
+      await handle.remove();
+    }
+  }
+
+  /**
+   * HTTPS request over pooled connections, answered from the on-device
+   * cache when it can be. With `onChunk` the body is streamed instead of
+   * returned, each chunk acknowledged as it is handled.
+   */
+  static async httpRequest(
+    url: string,
+    options: HttpRequestOptions = {},
+    onChunk?: (chunk: HttpBodyChunk) => void
+  ): Promise<HttpResponse> {
+    if (!Capacitor.isNativePlatform()) {
+      const response = await fetch(url, {
+        method: options.method,
+        headers: options.headers,
+        body: options.body,
+        cache: options.cache
+      });
+      const body = await response.text();
+      onChunk?.({ callId: options.callId ?? 'web', data: body, encoding: 'utf8', seq: 0 });
+      return {
+        callId: options.callId ?? 'web',
+        status: response.status,
+        statusText: response.statusText,
+        url: response.url,
+        headers: Object.fromEntries(response.headers.entries()),
+        cache: 'bypass',
+        size: body.length,
+        encoding: 'utf8',
+        elapsedMs: 0,
+        ...(onChunk ? { streamed: true } : { body })
+      };
+    }
+    const callId = options.callId ?? newCallId('http');
+    if (!onChunk) {
+      return await NativeShell.httpRequest({ ...options, url, callId });
+    }
+    const handle = await NativeShell.addListener('httpBody', (chunk) => {
+      if (chunk.callId !== callId) return;
+      onChunk(chunk);
+      NativeShell.ackOutput({ callId, seq: chunk.seq }).catch(() => undefined);
+    });
+    try {
+      return await NativeShell.httpRequest({ ...options, url, callId, stream: true });
+    } finally {
+      await handle.remove();
+    }
+  }
+
+  static async clearHttpCache(): Promise<HttpCacheStats | null> {
+    if (!Capacitor.isNativePlatform()) {
+      return null;
+    }
+    return await NativeShell.clearHttpCache();
+  }
+
+  /**
+   * Unpacks a tar, tar.gz or tar.xz archive into `destination`. An https
+   * `source` is extracted while it downloads, without a temporary file.
+   */
+  static async extractArchive(
+    source: string,
+    destination: string,
+    options: ExtractOptions = {},
+    onProgress?: (event: ExtractProgress) => void
+  ): Promise<ExtractResult> {
+    if (!Capacitor.isNativePlatform()) {
+      return {
+        output: `[WEB SIMULATION] Would extract: ${source} to ${destination}`,
+        error: '',
+        exitCode: 0
+      };
+    }
+    try {
+      return await withExtractProgress(options, onProgress,
+        (callId) => NativeShell.extractArchive({ ...options, source, destination, callId }));
+    } catch (error) {
+      return {
+        output: '',
+        error: `Extraction failed: ${error}`,
+        exitCode: 1
+      };
+    }
+  }
+
+  /**
+   * Stores a rootfs as a shared layer. `source` is a directory, an archive
+   * path or an https URL to a tar, tar.gz or tar.xz.
+   */
+  static async importLayer(
+    name: string,
+    source: string,
+    options: ExtractOptions = {},
+    onProgress?: (event: ExtractProgress | LayerProgress) => void
+  ): Promise<LayerImportResult> {
+    if (!Capacitor.isNativePlatform()) {
+      return { output: `[WEB SIMULATION] Would import layer ${name} from ${source}`, error: '', exitCode: 0 };
+    }
+    const callId = options.callId ?? newCallId('layer');
+    const handles = onProgress ? await Promise.all([
+      NativeShell.addListener('extractProgress', (event) => {
+        if (event.callId === callId) onProgress(event);
+      }),
+      NativeShell.addListener('layerProgress', (event) => {
+        if (event.callId === callId) onProgress(event);
+      })
+    ]) : [];
+    try {
+      return await NativeShell.importLayer({ ...options, name, source, callId });
+    } catch (error) {
+      return { output: '', error: `Layer import failed: ${error}`, exitCode: 1 };
+    } finally {
+      await Promise.all(handles.map((handle) => handle.remove()));
+    }
+  }
+
+  /**
+   * Builds an instance tree from a layer by hard-linking its files. Pass
+   * `root` for a tree that will be modified as root: root can write through
+   * the read-only links into every other instance, so it gets copies.
+   */
+  static async createLayerInstance(
+    layer: string,
+    instanceId: string,
+    options: { root?: boolean } = {},
+    onProgress?: (event: LayerProgress) => void
+  ): Promise<LayerInstanceResult> {
+    if (!Capacitor.isNativePlatform()) {
+      return { output: `[WEB SIMULATION] Would create ${instanceId} from layer ${layer}`, error: '', exitCode: 0 };
+    }
+    const callId = newCallId('layer');
+    const handle = onProgress ? await NativeShell.addListener('layerProgress', (event) => {
+      if (event.callId === callId) onProgress(event);
+    }) : undefined;
+    try {
+      return await NativeShell.createLayerInstance({ layer, instanceId, root: options.root, callId });
+    } catch (error) {
+      return { output: '', error: `Instance creation failed: ${error}`, exitCode: 1 };
+    } finally {
+      await handle?.remove();
+    }
+  }
+
+  static async listLayers(): Promise<LayerStoreInfo> {
+    if (!Capacitor.isNativePlatform()) {
+      return { layers: [], objects: 0, storedBytes: 0, logicalBytes: 0 };
+    }
+    return await NativeShell.listLayers();
+  }
+
+  static async deleteLayer(name: string): Promise<{ name: string; deleted: boolean; removedObjects: number; freedBytes: number }> {
+    if (!Capacitor.isNativePlatform()) {
+      return { name, deleted: false, removedObjects: 0, freedBytes: 0 };
+    }
+    return await NativeShell.deleteLayer({ name });
+  }
+
+  /** Gives an instance a private, writable copy of a file it shares with the layer store */
+  static async detachLayerFile(path: string): Promise<boolean> {
+    if (!Capacitor.isNativePlatform()) {
+      return false;
+    }
+    try {
+      const result = await NativeShell.detachLayerFile({ path });
+      return result.detached;
+    } catch (error) {
+      return false;
+    }
+  }
+
   // Storage & File System Methods
   static async getStorageInfo(): Promise<StorageInfo | null> {
     if (Capacitor.isNativePlatform()) {
@@ -223,10 +1187,10 @@ export class AndroidShell {
     }
   }
 
-  static async listDirectory(path?: string): Promise<{ path: string; files: FileInfo[]; count: number; error?: string }> {
+  static async listDirectory(path?: string, options: ListDirectoryOptions = {}): Promise<ListDirectoryResult> {
     if (Capacitor.isNativePlatform()) {
       try {
-        return await NativeShell.listDirectory({ path });
+        return await NativeShell.listDirectory({ path, ...options });
       } catch (error) {
         return { path: path || '.', files: [], count: 0, error: String(error) };
       }
@@ -244,10 +1208,94 @@ export class AndroidShell {
     }
   }
 
-  static async readFile(path: string): Promise<{ content: string; path: string; size: number } | null> {
+  /** Paths that complete `path`; directories end with a slash */
+  static async completePath(path: string): Promise<string[]> {
+    if (!Capacitor.isNativePlatform()) {
+      return [];
+    }
+    try {
+      return (await NativeShell.completePath({ path })).matches;
+    } catch (error) {
+      console.error('Failed to complete path:', error);
+      return [];
+    }
+  }
+
+  static async searchFiles(
+    path: string | undefined,
+    options: SearchFilesOptions,
+    onResults: (results: SearchHit[]) => void
+  ): Promise<SearchSummary | null> {
+    if (!Capacitor.isNativePlatform()) {
+      console.log(`[WEB SIMULATION] Would search: ${path}`);
+      return null;
+    }
+    const callId = options.callId ?? newCallId('search');
+    const handle = await NativeShell.addListener('searchResults', (event) => {
+      if (event.callId === callId) onResults(event.results);
+    });
+    try {
+      return await NativeShell.searchFiles({ ...options, path, callId });
+    } finally {
+      await handle.remove();
+    }
+  }
+
+  static async grepFiles(
+    path: string | undefined,
+    pattern: string,
+    options: GrepFilesOptions,
+    onResults: (results: SearchHit[]) => void
+  ): Promise<SearchSummary | null> {
+    if (!Capacitor.isNativePlatform()) {
+      console.log(`[WEB SIMULATION] Would grep: ${pattern} in ${path}`);
+      return null;
+    }
+    const callId = options.callId ?? newCallId('grep');
+    const handle = await NativeShell.addListener('searchResults', (event) => {
+      if (event.callId === callId) onResults(event.results);
+    });
+    try {
+      return await NativeShell.grepFiles({ ...options, path, pattern, callId });
+    } finally {
+      await handle.remove();
+    }
+  }
+
+  /** Records a fingerprint of every file under `path` as the integrity baseline */
+  static async hashTree(path: string | undefined, options: IntegrityOptions = {}): Promise<(IntegritySummary & { baselineBytes: number }) | null> {
+    if (!Capacitor.isNativePlatform()) {
+      console.log(`[WEB SIMULATION] Would hash: ${path}`);
+      return null;
+    }
+    return await NativeShell.hashTree({ ...options, path });
+  }
+
+  /** Compares `path` with its baseline, streaming added, removed and modified files as they are found */
+  static async verifyTree(
+    path: string | undefined,
+    options: VerifyTreeOptions,
+    onChanges: (changes: IntegrityChange[]) => void
+  ): Promise<IntegritySummary | null> {
+    if (!Capacitor.isNativePlatform()) {
+      console.log(`[WEB SIMULATION] Would verify: ${path}`);
+      return null;
+    }
+    const callId = options.callId ?? newCallId('verify');
+    const handle = await NativeShell.addListener('integrityChanges', (event) => {
+      if (event.callId === callId) onChanges(event.changes);
+    });
+    try {
+      return await NativeShell.verifyTree({ ...options, path, callId });
+    } finally {
+      await handle.remove();
+    }
+  }
+
+  static async readFile(path: string, options: ReadFileOptions = {}): Promise<ReadFileResult | null> {
     if (Capacitor.isNativePlatform()) {
       try {
-        return await NativeShell.readFile({ path });
+        return await NativeShell.readFile({ ...options, path });
       } catch (error) {
         console.error('Failed to read file:', error);
         return null;
@@ -261,6 +1309,67 @@ export class AndroidShell {
     }
   }
 
+  /**
+   * Reads a whole file as raw bytes. The WebView fetches it straight from
+   * the local server; base64 pages over the bridge are the fallback.
+   */
+  static async readFileBytes(path: string): Promise<Uint8Array | null> {
+    if (!Capacitor.isNativePlatform()) {
+      return null;
+    }
+    try {
+      const response = await fetch(Capacitor.convertFileSrc(path));
+      if (response.ok) {
+        return new Uint8Array(await response.arrayBuffer());
+      }
+    } catch {
+      // Fall through to the bridge
+    }
+    const pages: Uint8Array[] = [];
+    let offset = 0;
+    let total = 0;
+    for (;;) {
+      const page = await AndroidShell.readFile(path, { offset, encoding: 'base64' });
+      if (!page) return null;
+      const bytes = decodeBase64(page.content);
+      pages.push(bytes);
+      total += bytes.length;
+      if (page.eof !== false || page.nextOffset === undefined) break;
+      offset = page.nextOffset;
+    }
+    const data = new Uint8Array(total);
+    let position = 0;
+    for (const bytes of pages) {
+      data.set(bytes, position);
+      position += bytes.length;
+    }
+    return data;
+  }
+
+  /**
+   * Writes raw bytes to a file as base64 chunks, replacing it atomically
+   */
+  static async writeFileBytes(path: string, data: Uint8Array, chunkSize: number = 768 * 1024): Promise<{ success: boolean; path: string; size: number }> {
+    if (!Capacitor.isNativePlatform()) {
+      console.log(`[WEB SIMULATION] Would write ${data.length} bytes to: ${path}`);
+      return { success: true, path, size: data.length };
+    }
+    let writeId: string | undefined;
+    try {
+      writeId = (await NativeShell.openWrite({ path })).writeId;
+      for (let start = 0; start < data.length; start += chunkSize) {
+        await NativeShell.writeChunk({ writeId, data: encodeBase64(data.subarray(start, start + chunkSize)), encoding: 'base64' });
+      }
+      return await NativeShell.commit({ writeId });
+    } catch (error) {
+      console.error('Failed to write file:', error);
+      if (writeId) {
+        await NativeShell.abort({ writeId }).catch(() => undefined);
+      }
+      return { success: false, path, size: 0 };
+    }
+  }
+
   static async writeFile(path: string, content: string, append: boolean = false): Promise<{ success: boolean; path: string; size: number }> {
     if (Capacitor.isNativePlatform()) {
       try {
@@ -275,6 +1384,36 @@ export class AndroidShell {
     }
   }
 
+  /**
+   * Streams content to a file in chunks; the file is replaced atomically once
+   * every chunk has been written, or left untouched if anything fails.
+   */
+  static async writeFileChunked(path: string, content: string, chunkSize: number = 256 * 1024): Promise<{ success: boolean; path: string; size: number }> {
+    if (!Capacitor.isNativePlatform()) {
+      return AndroidShell.writeFile(path, content);
+    }
+    let writeId: string | undefined;
+    try {
+      writeId = (await NativeShell.openWrite({ path })).writeId;
+      for (let start = 0; start < content.length; ) {
+        let end = Math.min(start + chunkSize, content.length);
+        // Never split a surrogate pair across chunks
+        if (end < content.length && /[\uD800-\uDBFF]/.test(content[end - 1])) {
+          end--;
+        }
+        await NativeShell.writeChunk({ writeId, data: content.slice(start, end) });
+        start = end;
+      }
+      return await NativeShell.commit({ writeId });
+    } catch (error) {
+      console.error('Failed to write file:', error);
+      if (writeId) {
+        await NativeShell.abort({ writeId }).catch(() => undefined);
+      }
+      return { success: false, path, size: 0 };
+    }
+  }
+
   static async deleteFile(path: string, recursive: boolean = false): Promise<{ success: boolean; path: string }> {
     if (Capacitor.isNativePlatform()) {
       try {
@@ -289,6 +1428,20 @@ export class AndroidShell {
     }
   }
 
+  static async diskUsage(path?: string, perChild: boolean = false): Promise<DiskUsage | null> {
+    if (Capacitor.isNativePlatform()) {
+      try {
+        return await NativeShell.diskUsage({ path, perChild });
+      } catch (error) {
+        console.error('Failed to compute disk usage:', error);
+        return null;
+      }
+    } else {
+      console.log(`[WEB SIMULATION] Would compute disk usage: ${path}`);
+      return null;
+    }
+  }
+
   static async createDirectory(path: string, recursive: boolean = true): Promise<{ success: boolean; path: string }> {
     if (Capacitor.isNativePlatform()) {
       try {
@@ -303,10 +1456,10 @@ export class AndroidShell {
     }
   }
 
-  static async copyFile(source: string, destination: string): Promise<{ success: boolean; source: string; destination: string }> {
+  static async copyFile(source: string, destination: string, recursive: boolean = false): Promise<{ success: boolean; source: string; destination: string }> {
     if (Capacitor.isNativePlatform()) {
       try {
-        return await NativeShell.copyFile({ source, destination });
+        return await NativeShell.copyFile({ source, destination, recursive });
       } catch (error) {
         console.error('Failed to copy file:', error);
         return { success: false, source, destination };
@@ -399,6 +1552,93 @@ export class AndroidShell {
     return true; // Web always has access
   }
 
+  /**
+   * Opens an interactive shell session. Output is passed to onOutput (and
+   * acknowledged) until the session exits or the returned dispose is called.
+   */
+  static async openSession(
+    onOutput: (chunk: SessionOutput) => void,
+    onExit: (exitCode: number) => void,
+    options: { root?: boolean; cwd?: string; env?: Record<string, string>; cols?: number; rows?: number; encoding?: 'utf8' | 'base64' } = {}
+  ): Promise<{ session: SessionInfo; dispose: () => Promise<void> } | null> {
+    if (!Capacitor.isNativePlatform()) {
+      return null;
+    }
+    const sessionId = newCallId('session');
+    const outputHandle = await NativeShell.addListener('sessionOutput', (chunk) => {
+      if (chunk.sessionId !== sessionId) return;
+      onOutput(chunk);
+      NativeShell.ackOutput({ callId: sessionId, seq: chunk.seq }).catch(() => undefined);
+    });
+    const exitHandle = await NativeShell.addListener('sessionExit', (event) => {
+      if (event.sessionId !== sessionId) return;
+      outputHandle.remove();
+      exitHandle.remove();
+      onExit(event.exitCode);
+    });
+    try {
+      const session = await NativeShell.openSession({ ...options, sessionId });
+      const dispose = async () => {
+        await NativeShell.close({ sessionId }).catch(() => undefined);
+      };
+      return { session, dispose };
+    } catch (error) {
+      console.error('Failed to open session:', error);
+      await outputHandle.remove();
+      await exitHandle.remove();
+      return null;
+    }
+  }
+
+  static async writeSession(sessionId: string, data: string): Promise<boolean> {
+    try {
+      await NativeShell.write({ sessionId, data });
+      return true;
+    } catch (error) {
+      console.error('Failed to write to session:', error);
+      return false;
+    }
+  }
+
+  static async resizeSession(sessionId: string, cols: number, rows: number): Promise<void> {
+    try {
+      await NativeShell.resize({ sessionId, cols, rows });
+    } catch (error) {
+      console.error('Failed to resize session:', error);
+    }
+  }
+
+  static async cancel(callId: string): Promise<boolean> {
+    if (Capacitor.isNativePlatform()) {
+      try {
+        const result = await NativeShell.cancel({ callId });
+        return result.cancelled;
+      } catch (error) {
+        console.error('Failed to cancel call:', error);
+        return false;
+      }
+    }
+    return false;
+  }
+
+  static async getPerformanceStats(): Promise<PerformanceStats | null> {
+    if (!Capacitor.isNativePlatform()) {
+      return null;
+    }
+    try {
+      return await NativeShell.getPerformanceStats();
+    } catch (error) {
+      console.error('Failed to get performance stats:', error);
+      return null;
+    }
+  }
+
+  static async resetPerformanceStats(): Promise<void> {
+    if (Capacitor.isNativePlatform()) {
+      await NativeShell.resetPerformanceStats().catch(() => undefined);
+    }
+  }
+
   static isNative(): boolean {
     return Capacitor.isNativePlatform();
   }
@@ -1,5 +1,6 @@
 import { OSInstance } from './osManager';
 import { Capacitor } from '@capacitor/core';
+import { AndroidShell, PortScanOptions, PortScanResult, PortScanSummary } from './nativeShell';
 
 export interface NetworkInterface {
   name: string;
@@ -365,12 +366,6 @@ export class NetworkManager {
     service?: string;
     version?: string;
   }> {
-    // First check connectivity
-    const connectivity = this.getConnectivityStatus();
-    if (!connectivity.online) {
-      return { open: false };
-    }
-
     const commonPorts: Record<number, { service: string; version?: string }> = {
       22: { service: 'ssh', version: 'OpenSSH 8.9' },
       80: { service: 'http', version: 'nginx/1.18.0' },
@@ -381,6 +376,23 @@ export class NetworkManager {
       8080: { service: 'http-alt', version: 'Jetty 9.4' }
     };
 
+    // Real connect probe on the device; only local network targets are allowed
+    if (Capacitor.isNativePlatform()) {
+      try {
+        const summary = await this.scanPorts([targetIP], { ports: String(port), rate: 0 }, () => {});
+        const open = (summary?.open ?? 0) > 0;
+        return open ? { open, service: commonPorts[port]?.service } : { open };
+      } catch {
+        return { open: false };
+      }
+    }
+
+    // First check connectivity
+    const connectivity = this.getConnectivityStatus();
+    if (!connectivity.online) {
+      return { open: false };
+    }
+
     // Try to actually connect for common web ports
     if (port === 80 || port === 443 || port === 8080) {
       try {
@@ -412,6 +424,18 @@ export class NetworkManager {
     };
   }
 
+  /**
+   * Native TCP connect scan of local network hosts, streaming results as they
+   * arrive; null when not running on a device
+   */
+  async scanPorts(
+    targets: string[],
+    options: PortScanOptions,
+    onResults: (results: PortScanResult[]) => void
+  ): Promise<PortScanSummary | null> {
+    return await AndroidShell.scanPorts(targets, options, onResults);
+  }
+
   getNetworkTopology(): {
     instances: Array<{
       id: string;
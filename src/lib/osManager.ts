@@ -1,3 +1,4 @@
+import { Capacitor } from '@capacitor/core';
 import { AndroidShell, ShellResult } from './nativeShell';
 import { osSimulation } from './osSimulation';
 
@@ -14,6 +15,8 @@ export interface OSInstance {
     cpu: number; // percentage
   };
   rootPath: string;
+  /** Layer store entry the root was assembled from, when it is a real tree on the device */
+  layer?: string;
   bootTime?: Date;
   lastActivity?: Date;
 }
@@ -25,6 +28,7 @@ export interface OSTemplate {
   description: string;
   version: string;
   architecture: 'x86_64' | 'arm64' | 'x86';
+  /** Rootfs tarball; Linux templates with one get real instances built from the shared layer store */
   downloadUrl?: string;
   diskSize: number; // MB
   minMemory: number; // MB
@@ -299,6 +303,16 @@ export class OSManager {
 
     this.instances.set(instanceId, instance);
 
+    if (template.type === 'linux' && template.downloadUrl && Capacitor.isNativePlatform()) {
+      try {
+        await this.buildFromLayer(instance, template);
+      } catch (error) {
+        this.instances.delete(instanceId);
+        throw error;
+      }
+      return instance;
+    }
+
     // Simulate installation process
     setTimeout(() => {
       instance.status = 'stopped';
@@ -308,6 +322,29 @@ export class OSManager {
     return instance;
   }
 
+  /**
+   * The template's rootfs is imported into the layer store once; every
+   * instance after that is a tree of hard links to it, built in seconds
+   * and sharing disk space with the others.
+   */
+  private async buildFromLayer(instance: OSInstance, template: OSTemplate): Promise<void> {
+    const { layers } = await AndroidShell.listLayers();
+    if (!layers.some((layer) => layer.name === template.id)) {
+      const imported = await AndroidShell.importLayer(template.id, template.downloadUrl!);
+      if (imported.exitCode !== 0) {
+        throw new Error(imported.error);
+      }
+    }
+    const built = await AndroidShell.createLayerInstance(template.id, instance.id);
+    if (built.exitCode !== 0 || !built.rootPath) {
+      throw new Error(built.error);
+    }
+    instance.rootPath = built.rootPath;
+    instance.layer = template.id;
+    instance.status = 'stopped';
+    instance.lastActivity = new Date();
+  }
+
   async startInstance(id: string): Promise<ShellResult> {
     const instance = this.instances.get(id);
     if (!instance) {
@@ -451,6 +488,10 @@ ${this.getOSPrompt(instance)}`,
       };
     }
 
+    if (instance.layer) {
+      // Only the links go; the layer keeps the shared content
+      await AndroidShell.deleteFile(instance.rootPath, true);
+    }
     this.instances.delete(id);
 
     return {
@@ -466,9 +507,11 @@ Freed ${instance.resources.memory}MB memory`,
     // Setup virtual file system structure based on OS type
     const setupCommands = this.getSetupCommands(instance);
     
-    for (const command of setupCommands) {
-      await AndroidShell.executeCommand(command.cmd, command.args);
-    }
+    // One bridge round trip for the whole tree; a failed mkdir does not stop the rest
+    await AndroidShell.executeBatch(
+      setupCommands.map((command) => ({ command: command.cmd, args: command.args })),
+      { stopOnError: false }
+    );
   }
 
   private getSetupCommands(instance: OSInstance): Array<{cmd: string, args: string[]}> {
@@ -1,5 +1,5 @@
 import { fileSystem } from './fileSystem';
-import { AndroidShell, FileInfo } from './nativeShell';
+import { AndroidShell, FileInfo, HttpRequestOptions, PortScanResult } from './nativeShell';
 import { Capacitor } from '@capacitor/core';
 import { osManager } from './osManager';
 import { networkManager } from './networkManager';
@@ -10,6 +10,10 @@ export interface CommandResult {
   exitCode: number;
 }
 
+// cat reads native files in pages and stops echoing very large files
+const CAT_PAGE_SIZE = 1024 * 1024;
+const CAT_MAX_OUTPUT = 16 * 1024 * 1024;
+
 // Real Unix command implementations with native Android integration
 export class UnixCommands {
   private currentUser = 'cvj';
@@ -53,7 +57,8 @@ export class UnixCommands {
     // Use native shell when available
     if (this.isNative()) {
       try {
-        const result = await AndroidShell.listDirectory(targetPath === '.' ? undefined : targetPath);
+        const result = await AndroidShell.listDirectory(targetPath === '.' ? undefined : targetPath,
+          longFormat ? {} : { fields: ['name'] });
         
         if (result.error) {
           return { output: '', error: `ls: ${result.error}`, exitCode: 1 };
@@ -150,12 +155,27 @@ export class UnixCommands {
       try {
         const results: string[] = [];
         for (const file of args) {
-          const result = await AndroidShell.readFile(file);
-          if (result) {
-            results.push(result.content);
-          } else {
-            return { output: '', error: `cat: ${file}: No such file or directory`, exitCode: 1 };
+          // Page through the file so large files are read in bounded chunks
+          const pages: string[] = [];
+          let offset = 0;
+          let shown = 0;
+          for (;;) {
+            const result = await AndroidShell.readFile(file, { offset, length: CAT_PAGE_SIZE });
+            if (!result) {
+              return { output: '', error: `cat: ${file}: No such file or directory`, exitCode: 1 };
+            }
+            pages.push(result.content);
+            shown += result.length ?? result.content.length;
+            if (result.eof !== false || result.nextOffset === undefined) {
+              break;
+            }
+            if (shown >= CAT_MAX_OUTPUT) {
+              pages.push(`\n[cat: output truncated after ${shown} of ${result.size} bytes]`);
+              break;
+            }
+            offset = result.nextOffset;
           }
+          results.push(pages.join(''));
         }
         return { output: results.join('\n'), exitCode: 0 };
       } catch (error) {
@@ -264,7 +284,8 @@ export class UnixCommands {
 
     if (this.isNative()) {
       try {
-        const result = await AndroidShell.copyFile(source, destination);
+        const recursive = flags.some(flag => /^-[a-zA-Z]*[rRa]/.test(flag));
+        const result = await AndroidShell.copyFile(source, destination, recursive);
         if (!result.success) {
           return { output: '', error: `cp: cannot copy '${source}' to '${destination}'`, exitCode: 1 };
         }
@@ -302,23 +323,33 @@ export class UnixCommands {
   }
 
   async grep(args: string[]): Promise<CommandResult> {
-    if (args.length < 2) {
-      return { output: '', error: 'grep: usage: grep pattern file', exitCode: 1 };
+    const flags = args.filter(arg => arg.startsWith('-')).join('');
+    const operands = args.filter(arg => !arg.startsWith('-'));
+    if (operands.length < 2) {
+      return { output: '', error: 'grep: usage: grep [-inrF] pattern file', exitCode: 1 };
     }
 
-    const pattern = args[0];
-    const filename = args[1];
+    const pattern = operands[0];
+    const filename = operands[1];
 
     if (this.isNative()) {
       try {
-        const result = await AndroidShell.readFile(filename);
-        if (result) {
-          const lines = result.content.split('\n');
-          const regex = new RegExp(pattern, 'g');
-          const matches = lines.filter(line => regex.test(line));
-          return { output: matches.join('\n'), exitCode: matches.length > 0 ? 0 : 1 };
+        const recursive = flags.includes('r') || flags.includes('R');
+        const lines: string[] = [];
+        const summary = await AndroidShell.grepFiles(filename, pattern, {
+          ignoreCase: flags.includes('i'),
+          fixedStrings: flags.includes('F'),
+          maxDepth: recursive ? undefined : 0
+        }, (results) => {
+          for (const hit of results) {
+            const prefix = (recursive ? `${hit.path}:` : '') + (flags.includes('n') ? `${hit.line}:` : '');
+            lines.push(prefix + hit.text);
+          }
+        });
+        if (!summary) {
+          return { output: '', error: `grep: ${filename}: No such file or directory`, exitCode: 2 };
         }
-        return { output: '', error: `grep: ${filename}: No such file or directory`, exitCode: 2 };
+        return { output: lines.join('\n'), exitCode: summary.count > 0 ? 0 : 1 };
       } catch (error) {
         return { output: '', error: `grep: ${error instanceof Error ? error.message : 'Unknown error'}`, exitCode: 2 };
       }
@@ -335,6 +366,78 @@ export class UnixCommands {
     }
   }
 
+  async find(args: string[]): Promise<CommandResult> {
+    const path = args[0] && !args[0].startsWith('-') ? args[0] : undefined;
+    const option = (name: string) => {
+      const index = args.indexOf(name);
+      return index >= 0 ? args[index + 1] : undefined;
+    };
+    const type = option('-type');
+    const maxDepth = option('-maxdepth');
+
+    if (!this.isNative()) {
+      return { output: '', error: 'find: not supported in web mode', exitCode: 1 };
+    }
+
+    try {
+      const lines: string[] = [];
+      const summary = await AndroidShell.searchFiles(path, {
+        name: option('-name'),
+        type: type === 'f' || type === 'd' ? type : undefined,
+        maxDepth: maxDepth !== undefined ? parseInt(maxDepth, 10) : undefined
+      }, (results) => {
+        for (const hit of results) lines.push(hit.path);
+      });
+      if (!summary) {
+        return { output: '', error: 'find: search failed', exitCode: 1 };
+      }
+      return { output: lines.join('\n'), exitCode: summary.errors > 0 ? 1 : 0 };
+    } catch (error) {
+      return { output: '', error: `find: ${error instanceof Error ? error.message : 'Unknown error'}`, exitCode: 1 };
+    }
+  }
+
+  async integrity(args: string[]): Promise<CommandResult> {
+    const [action, ...rest] = args;
+    const path = rest.find(arg => !arg.startsWith('-'));
+    if (action !== 'init' && action !== 'check') {
+      return { output: '', error: 'Usage: integrity init [path] | integrity check [path] [--update] [--full]', exitCode: 1 };
+    }
+    if (!this.isNative()) {
+      return { output: '', error: 'integrity: not supported in web mode', exitCode: 1 };
+    }
+
+    try {
+      if (action === 'init') {
+        const summary = await AndroidShell.hashTree(path);
+        if (!summary) {
+          return { output: '', error: 'integrity: hashing failed', exitCode: 1 };
+        }
+        return {
+          output: `Baseline of ${summary.files} files (${summary.bytesHashed} bytes) saved in ${summary.elapsedMs} ms`,
+          exitCode: summary.errors > 0 ? 1 : 0
+        };
+      }
+
+      const lines: string[] = [];
+      const summary = await AndroidShell.verifyTree(path, {
+        update: rest.includes('--update'),
+        rehashAll: rest.includes('--full')
+      }, (changes) => {
+        for (const change of changes) lines.push(`${change.type.padEnd(8)} ${change.path}`);
+      });
+      if (!summary) {
+        return { output: '', error: 'integrity: check failed', exitCode: 1 };
+      }
+      lines.push(`${summary.added} added, ${summary.removed} removed, ${summary.modified} modified; ` +
+        `${summary.hashed} of ${summary.files} files rehashed in ${summary.elapsedMs} ms`);
+      const changed = summary.added + summary.removed + summary.modified > 0;
+      return { output: lines.join('\n'), exitCode: changed || summary.errors > 0 ? 1 : 0 };
+    } catch (error) {
+      return { output: '', error: `integrity: ${error instanceof Error ? error.message : 'Unknown error'}`, exitCode: 1 };
+    }
+  }
+
   async wget(args: string[]): Promise<CommandResult> {
     if (args.length === 0) {
       return { output: '', error: 'wget: missing URL', exitCode: 1 };
@@ -363,6 +466,74 @@ export class UnixCommands {
     }
   }
 
+  /**
+   * curl through the native HTTP client: -I, -X <method>, -H 'Name: value',
+   * -d <data>, -o <file> and --no-cache; the cache status is printed with -v
+   */
+  async curl(args: string[]): Promise<CommandResult> {
+    let url: string | undefined;
+    let method: HttpRequestOptions['method'];
+    let body: string | undefined;
+    let destination: string | undefined;
+    let cache: HttpRequestOptions['cache'];
+    let headOnly = false;
+    let verbose = false;
+    const headers: Record<string, string> = {};
+    for (let i = 0; i < args.length; i++) {
+      const arg = args[i];
+      if (arg === '-I' || arg === '--head') {
+        headOnly = true;
+      } else if (arg === '-v' || arg === '--verbose') {
+        verbose = true;
+      } else if (arg === '--no-cache') {
+        cache = 'no-cache';
+      } else if ((arg === '-X' || arg === '--request') && args[i + 1]) {
+        method = args[++i].toUpperCase() as HttpRequestOptions['method'];
+      } else if ((arg === '-H' || arg === '--header') && args[i + 1]) {
+        const header = args[++i];
+        const colon = header.indexOf(':');
+        if (colon > 0) {
+          headers[header.slice(0, colon).trim()] = header.slice(colon + 1).trim();
+        }
+      } else if ((arg === '-d' || arg === '--data') && args[i + 1]) {
+        body = args[++i];
+      } else if ((arg === '-o' || arg === '--output') && args[i + 1]) {
+        destination = args[++i];
+      } else if (!arg.startsWith('-')) {
+        url = arg;
+      }
+    }
+    if (!url) {
+      return { output: '', error: 'curl: no URL specified', exitCode: 2 };
+    }
+    if (!method) {
+      method = headOnly ? 'HEAD' : body !== undefined ? 'POST' : 'GET';
+    }
+
+    try {
+      const response = await AndroidShell.httpRequest(url, { method, headers, body, destination, cache });
+      const lines: string[] = [];
+      if (headOnly || verbose) {
+        lines.push(`HTTP ${response.status} ${response.statusText}`.trimEnd());
+        for (const [name, value] of Object.entries(response.headers)) {
+          lines.push(`${name}: ${value}`);
+        }
+        if (verbose) {
+          lines.push(`* cache: ${response.cache}, ${response.size} bytes in ${response.elapsedMs} ms`);
+        }
+        lines.push('');
+      }
+      if (response.path) {
+        lines.push(`'${response.path}' saved [${response.size}]`);
+      } else if (!headOnly && response.body) {
+        lines.push(response.body);
+      }
+      return { output: lines.join('\n'), exitCode: response.status >= 400 ? 22 : 0 };
+    } catch (error) {
+      return { output: '', error: `curl: ${error instanceof Error ? error.message : 'Unknown error'}`, exitCode: 1 };
+    }
+  }
+
   async touch(args: string[]): Promise<CommandResult> {
     if (args.length === 0) {
       return { output: '', error: 'touch: missing file operand', exitCode: 1 };
@@ -445,6 +616,32 @@ export class UnixCommands {
     return { output: processes.join('\n'), exitCode: 0 };
   }
 
+  async du(args: string[]): Promise<CommandResult> {
+    const flags = args.filter(arg => arg.startsWith('-')).join('');
+    const path = args.find(arg => !arg.startsWith('-'));
+    const humanReadable = flags.includes('h');
+    const summarize = flags.includes('s');
+
+    if (!this.isNative()) {
+      return { output: '', error: 'du: not supported in web mode', exitCode: 1 };
+    }
+
+    const usage = await AndroidShell.diskUsage(path, !summarize);
+    if (!usage) {
+      return { output: '', error: `du: cannot access '${path ?? '.'}'`, exitCode: 1 };
+    }
+    const format = (bytes: number) => humanReadable ? this.formatFileSize(bytes) : Math.ceil(bytes / 1024).toString();
+    const lines = (usage.children ?? [])
+      .filter(child => child.directories > 0)
+      .map(child => `${format(child.bytes)}\t${path ?? '.'}/${child.name}`);
+    lines.push(`${format(usage.bytes)}\t${path ?? '.'}`);
+    return {
+      output: lines.join('\n'),
+      error: usage.error ? `du: ${usage.error}` : undefined,
+      exitCode: usage.errors > 0 ? 1 : 0
+    };
+  }
+
   async df(args: string[]): Promise<CommandResult> {
     const humanReadable = args.some(f => f.includes('h'));
 
@@ -1065,6 +1262,10 @@ Address: ${ip}`,
       return { output: '', error: 'nmap: missing target specification', exitCode: 1 };
     }
 
+    if (this.isNative()) {
+      return await this.nativePortScan(args);
+    }
+
     const target = args[0];
     const flags = args.filter(arg => arg.startsWith('-'));
     const portScan = flags.includes('-p') || flags.includes('--port');
@@ -1097,6 +1298,65 @@ Nmap done: 1 IP address (1 host up) scanned in 2.34 seconds`;
     return { output, exitCode: 0 };
   }
 
+  /**
+   * nmap-style connect scan through the native scanner: -p <ports>,
+   * --max-rate <n>, --timeout <ms> and --all to list closed ports too
+   */
+  private async nativePortScan(args: string[]): Promise<CommandResult> {
+    const targets: string[] = [];
+    let ports: string | undefined;
+    let rate: number | undefined;
+    let timeout: number | undefined;
+    let reportAll = false;
+    for (let i = 0; i < args.length; i++) {
+      const arg = args[i];
+      if (arg === '-p' && args[i + 1]) {
+        ports = args[++i];
+      } else if (arg.startsWith('-p') && arg.length > 2) {
+        ports = arg.slice(2);
+      } else if (arg === '--max-rate' && args[i + 1]) {
+        rate = parseInt(args[++i], 10);
+      } else if (arg === '--timeout' && args[i + 1]) {
+        timeout = parseInt(args[++i], 10);
+      } else if (arg === '--all') {
+        reportAll = true;
+      } else if (!arg.startsWith('-')) {
+        targets.push(arg);
+      }
+    }
+    if (targets.length === 0) {
+      return { output: '', error: 'nmap: missing target specification', exitCode: 1 };
+    }
+
+    const byHost = new Map<string, PortScanResult[]>();
+    try {
+      const summary = await AndroidShell.scanPorts(targets, { ports, rate, timeout, reportAll }, (results) => {
+        for (const result of results) {
+          const list = byHost.get(result.host) ?? [];
+          list.push(result);
+          byHost.set(result.host, list);
+        }
+      });
+      if (!summary) {
+        return { output: '', error: 'nmap: scan failed', exitCode: 1 };
+      }
+
+      const lines = [`Connect scan of ${summary.hosts} host(s), ${summary.ports} port(s)`];
+      for (const host of summary.hostsUp) {
+        const results = (byHost.get(host) ?? []).sort((a, b) => a.port - b.port);
+        lines.push('', `Scan report for ${host}`, 'PORT        STATE     RTT');
+        for (const result of results) {
+          lines.push(`${`${result.port}/tcp`.padEnd(12)}${result.state.padEnd(10)}${result.rttMs.toFixed(1)}ms`);
+        }
+      }
+      lines.push('', `Done: ${summary.hosts} host(s), ${summary.hostsUp.length} up; ${summary.open} open, ` +
+        `${summary.closed} closed, ${summary.filtered} filtered in ${(summary.elapsedMs / 1000).toFixed(2)}s`);
+      return { output: lines.join('\n'), exitCode: 0 };
+    } catch (error) {
+      return { output: '', error: `nmap: ${error instanceof Error ? error.message : 'Unknown error'}`, exitCode: 1 };
+    }
+  }
+
   async ssh(args: string[]): Promise<CommandResult> {
     if (args.length === 0) {
       return { output: '', error: 'ssh: missing destination', exitCode: 1 };